@@ -26,21 +26,34 @@ import static com.treasuredata.client.TDClientConfig.ENV_TD_CLIENT_APIKEY;
 import static com.treasuredata.client.TDClientConfig.Type.APIKEY;
 import static com.treasuredata.client.TDClientConfig.Type.API_ENDPOINT;
 import static com.treasuredata.client.TDClientConfig.Type.API_PORT;
+import static com.treasuredata.client.TDClientConfig.Type.CIRCUIT_BREAKER_FAILURE_RATE_THRESHOLD;
+import static com.treasuredata.client.TDClientConfig.Type.CIRCUIT_BREAKER_OPEN_DURATION_MILLIS;
+import static com.treasuredata.client.TDClientConfig.Type.CIRCUIT_BREAKER_WINDOW_SIZE;
 import static com.treasuredata.client.TDClientConfig.Type.CONNECTION_POOL_SIZE;
 import static com.treasuredata.client.TDClientConfig.Type.CONNECT_TIMEOUT_MILLIS;
+import static com.treasuredata.client.TDClientConfig.Type.HEDGE_MAX_RATIO;
+import static com.treasuredata.client.TDClientConfig.Type.HEDGE_MIN_DELAY_MILLIS;
+import static com.treasuredata.client.TDClientConfig.Type.HEDGE_PERCENTILE;
 import static com.treasuredata.client.TDClientConfig.Type.IDLE_TIMEOUT_MILLIS;
+import static com.treasuredata.client.TDClientConfig.Type.MAX_CONNECTIONS_PER_DESTINATION;
+import static com.treasuredata.client.TDClientConfig.Type.MAX_REQUESTS_QUEUED_PER_DESTINATION;
 import static com.treasuredata.client.TDClientConfig.Type.PASSOWRD;
 import static com.treasuredata.client.TDClientConfig.Type.PROXY_HOST;
 import static com.treasuredata.client.TDClientConfig.Type.PROXY_PASSWORD;
 import static com.treasuredata.client.TDClientConfig.Type.PROXY_PORT;
 import static com.treasuredata.client.TDClientConfig.Type.PROXY_USER;
 import static com.treasuredata.client.TDClientConfig.Type.PROXY_USESSL;
+import static com.treasuredata.client.TDClientConfig.Type.RETRY_BUDGET_MIN_RETRIES_PER_SECOND;
+import static com.treasuredata.client.TDClientConfig.Type.RETRY_BUDGET_RATIO;
 import static com.treasuredata.client.TDClientConfig.Type.RETRY_INITIAL_INTERVAL_MILLIS;
+import static com.treasuredata.client.TDClientConfig.Type.RETRY_JITTER;
 import static com.treasuredata.client.TDClientConfig.Type.RETRY_LIMIT;
 import static com.treasuredata.client.TDClientConfig.Type.RETRY_MAX_INTERVAL_MILLIS;
 import static com.treasuredata.client.TDClientConfig.Type.RETRY_MULTIPLIER;
 import static com.treasuredata.client.TDClientConfig.Type.USER;
 import static com.treasuredata.client.TDClientConfig.Type.USESSL;
+import static com.treasuredata.client.TDClientConfig.Type.USE_VIRTUAL_THREADS;
+import static com.treasuredata.client.TDClientConfig.Type.WARM_UP_CONNECTIONS;
 import static com.treasuredata.client.TDClientConfig.getTDConfProperties;
 
 /**
@@ -59,9 +72,24 @@ public abstract class AbstractTDClientBuilder<ClientImpl>
     protected int retryInitialIntervalMillis = 500;
     protected int retryMaxIntervalMillis = 60000;
     protected double retryMultiplier = 2.0;
+    protected ExponentialBackOff.Jitter retryJitter = TDClientConfig.DEFAULT_RETRY_JITTER;
+    protected double retryBudgetRatio = RetryBudget.DEFAULT_RATIO;
+    protected int retryBudgetMinRetriesPerSecond = RetryBudget.DEFAULT_MIN_RETRIES_PER_SECOND;
+    protected double circuitBreakerFailureRateThreshold = CircuitBreaker.DISABLED;
+    protected int circuitBreakerWindowSize = CircuitBreaker.DEFAULT_WINDOW_SIZE;
+    protected int circuitBreakerOpenDurationMillis = CircuitBreaker.DEFAULT_OPEN_DURATION_MILLIS;
+    protected double hedgePercentile = 0.0;
+    protected int hedgeMinDelayMillis = HedgingPolicy.DEFAULT_MIN_DELAY_MILLIS;
+    protected double hedgeMaxRatio = HedgingPolicy.DEFAULT_MAX_RATIO;
     protected int connectTimeoutMillis = 15000;
     protected int idleTimeoutMillis = 60000;
     protected int connectionPoolSize = 64;
+    protected int maxConnectionsPerDestination = TDClientConfig.DEFAULT_MAX_CONNECTIONS_PER_DESTINATION;
+    protected int maxRequestsQueuedPerDestination = TDClientConfig.DEFAULT_MAX_REQUESTS_QUEUED_PER_DESTINATION;
+    protected int warmUpConnections = 0;
+    protected boolean useVirtualThreads = false;
+    protected TDClientMetrics metrics = TDClientMetrics.NONE;
+    protected CircuitBreaker.Listener circuitBreakerListener = CircuitBreaker.Listener.NONE;
 
     private static Optional<String> getConfigProperty(Properties p, TDClientConfig.Type key)
     {
@@ -197,9 +225,32 @@ public abstract class AbstractTDClientBuilder<ClientImpl>
         this.retryInitialIntervalMillis = getConfigPropertyInt(p, RETRY_INITIAL_INTERVAL_MILLIS).or(retryInitialIntervalMillis);
         this.retryMaxIntervalMillis = getConfigPropertyInt(p, RETRY_MAX_INTERVAL_MILLIS).or(retryMaxIntervalMillis);
         this.retryMultiplier = getConfigPropertyDouble(p, RETRY_MULTIPLIER).or(retryMultiplier);
+        Optional<String> jitter = getConfigProperty(p, RETRY_JITTER);
+        if (jitter.isPresent()) {
+            try {
+                this.retryJitter = ExponentialBackOff.Jitter.fromName(jitter.get());
+            }
+            catch (IllegalArgumentException e) {
+                throw new TDClientException(TDClientException.ErrorType.INVALID_CONFIGURATION, String.format("[%s] %s", RETRY_JITTER, e.getMessage()));
+            }
+        }
+        this.retryBudgetRatio = getConfigPropertyDouble(p, RETRY_BUDGET_RATIO).or(retryBudgetRatio);
+        this.retryBudgetMinRetriesPerSecond = getConfigPropertyInt(p, RETRY_BUDGET_MIN_RETRIES_PER_SECOND).or(retryBudgetMinRetriesPerSecond);
+        this.circuitBreakerFailureRateThreshold = getConfigPropertyDouble(p, CIRCUIT_BREAKER_FAILURE_RATE_THRESHOLD).or(circuitBreakerFailureRateThreshold);
+        this.circuitBreakerWindowSize = getConfigPropertyInt(p, CIRCUIT_BREAKER_WINDOW_SIZE).or(circuitBreakerWindowSize);
+        this.circuitBreakerOpenDurationMillis = getConfigPropertyInt(p, CIRCUIT_BREAKER_OPEN_DURATION_MILLIS).or(circuitBreakerOpenDurationMillis);
+        this.hedgePercentile = getConfigPropertyDouble(p, HEDGE_PERCENTILE).or(hedgePercentile);
+        this.hedgeMinDelayMillis = getConfigPropertyInt(p, HEDGE_MIN_DELAY_MILLIS).or(hedgeMinDelayMillis);
+        this.hedgeMaxRatio = getConfigPropertyDouble(p, HEDGE_MAX_RATIO).or(hedgeMaxRatio);
         this.connectTimeoutMillis = getConfigPropertyInt(p, CONNECT_TIMEOUT_MILLIS).or(connectTimeoutMillis);
         this.idleTimeoutMillis = getConfigPropertyInt(p, IDLE_TIMEOUT_MILLIS).or(idleTimeoutMillis);
         this.connectionPoolSize = getConfigPropertyInt(p, CONNECTION_POOL_SIZE).or(connectionPoolSize);
+        this.maxConnectionsPerDestination = getConfigPropertyInt(p, MAX_CONNECTIONS_PER_DESTINATION).or(maxConnectionsPerDestination);
+        this.maxRequestsQueuedPerDestination = getConfigPropertyInt(p, MAX_REQUESTS_QUEUED_PER_DESTINATION).or(maxRequestsQueuedPerDestination);
+        this.warmUpConnections = getConfigPropertyInt(p, WARM_UP_CONNECTIONS).or(warmUpConnections);
+        if (p.containsKey(USE_VIRTUAL_THREADS.key)) {
+            setUseVirtualThreads(Boolean.parseBoolean(p.getProperty(USE_VIRTUAL_THREADS.key)));
+        }
 
         return this;
     }
@@ -270,6 +321,106 @@ public abstract class AbstractTDClientBuilder<ClientImpl>
         return this;
     }
 
+    /**
+     * Set how retry intervals are randomized. The default is {@link ExponentialBackOff.Jitter#EQUAL}, which never waits
+     * shorter than a half of the initial interval. {@link ExponentialBackOff.Jitter#FULL} can retry immediately.
+     *
+     * @param retryJitter
+     * @return
+     */
+    public AbstractTDClientBuilder<ClientImpl> setRetryJitter(ExponentialBackOff.Jitter retryJitter)
+    {
+        this.retryJitter = retryJitter;
+        return this;
+    }
+
+    /**
+     * Set the max ratio of retries to successful requests in the last {@value RetryBudget#WINDOW_SECONDS} seconds.
+     * A negative value disables the retry budget.
+     *
+     * @param retryBudgetRatio
+     * @return
+     */
+    public AbstractTDClientBuilder<ClientImpl> setRetryBudgetRatio(double retryBudgetRatio)
+    {
+        this.retryBudgetRatio = retryBudgetRatio;
+        return this;
+    }
+
+    public AbstractTDClientBuilder<ClientImpl> setRetryBudgetMinRetriesPerSecond(int retryBudgetMinRetriesPerSecond)
+    {
+        this.retryBudgetMinRetriesPerSecond = retryBudgetMinRetriesPerSecond;
+        return this;
+    }
+
+    /**
+     * Set the failure rate of an endpoint group to open its circuit breaker, e.g., {@link CircuitBreaker#RECOMMENDED_FAILURE_RATE_THRESHOLD}.
+     * Circuit breakers are disabled by default (0).
+     *
+     * @param circuitBreakerFailureRateThreshold
+     * @return
+     */
+    public AbstractTDClientBuilder<ClientImpl> setCircuitBreakerFailureRateThreshold(double circuitBreakerFailureRateThreshold)
+    {
+        this.circuitBreakerFailureRateThreshold = circuitBreakerFailureRateThreshold;
+        return this;
+    }
+
+    public AbstractTDClientBuilder<ClientImpl> setCircuitBreakerWindowSize(int circuitBreakerWindowSize)
+    {
+        this.circuitBreakerWindowSize = circuitBreakerWindowSize;
+        return this;
+    }
+
+    public AbstractTDClientBuilder<ClientImpl> setCircuitBreakerOpenDurationMillis(int circuitBreakerOpenDurationMillis)
+    {
+        this.circuitBreakerOpenDurationMillis = circuitBreakerOpenDurationMillis;
+        return this;
+    }
+
+    /**
+     * Enable hedging of GET requests. If no response arrives within this percentile of recent response times of the endpoint,
+     * the same request is sent again and the first response is used. 0 disables hedging.
+     *
+     * @param hedgePercentile
+     * @return
+     */
+    public AbstractTDClientBuilder<ClientImpl> setHedgePercentile(double hedgePercentile)
+    {
+        this.hedgePercentile = hedgePercentile;
+        return this;
+    }
+
+    public AbstractTDClientBuilder<ClientImpl> setHedgeMinDelayMillis(int hedgeMinDelayMillis)
+    {
+        this.hedgeMinDelayMillis = hedgeMinDelayMillis;
+        return this;
+    }
+
+    /**
+     * Set the max ratio of hedged requests to all GET requests, which caps the extra load caused by hedging
+     *
+     * @param hedgeMaxRatio
+     * @return
+     */
+    public AbstractTDClientBuilder<ClientImpl> setHedgeMaxRatio(double hedgeMaxRatio)
+    {
+        this.hedgeMaxRatio = hedgeMaxRatio;
+        return this;
+    }
+
+    /**
+     * Set a listener of circuit breaker state changes
+     *
+     * @param circuitBreakerListener
+     * @return
+     */
+    public AbstractTDClientBuilder<ClientImpl> setCircuitBreakerListener(CircuitBreaker.Listener circuitBreakerListener)
+    {
+        this.circuitBreakerListener = circuitBreakerListener;
+        return this;
+    }
+
     public AbstractTDClientBuilder<ClientImpl> setConnectTimeoutMillis(int connectTimeoutMillis)
     {
         this.connectTimeoutMillis = connectTimeoutMillis;
@@ -288,6 +439,71 @@ public abstract class AbstractTDClientBuilder<ClientImpl>
         return this;
     }
 
+    /**
+     * Set the max number of connections to the API endpoint
+     *
+     * @param maxConnectionsPerDestination
+     * @return
+     */
+    public AbstractTDClientBuilder<ClientImpl> setMaxConnectionsPerDestination(int maxConnectionsPerDestination)
+    {
+        this.maxConnectionsPerDestination = maxConnectionsPerDestination;
+        return this;
+    }
+
+    /**
+     * Set the max number of requests waiting for a connection to the API endpoint. Requests exceeding this limit are rejected.
+     *
+     * @param maxRequestsQueuedPerDestination
+     * @return
+     */
+    public AbstractTDClientBuilder<ClientImpl> setMaxRequestsQueuedPerDestination(int maxRequestsQueuedPerDestination)
+    {
+        this.maxRequestsQueuedPerDestination = maxRequestsQueuedPerDestination;
+        return this;
+    }
+
+    /**
+     * Open this number of keep-alive connections to the API endpoint when starting the client,
+     * so that the first requests do not wait for TCP and TLS handshakes. The connections are opened in the background.
+     *
+     * @param warmUpConnections
+     * @return
+     */
+    public AbstractTDClientBuilder<ClientImpl> setWarmUpConnections(int warmUpConnections)
+    {
+        this.warmUpConnections = warmUpConnections;
+        return this;
+    }
+
+    /**
+     * Process http responses and retries on virtual threads instead of a thread pool of connectionPoolSize threads.
+     * This requires Java 21 or later, and is ignored with a warning on older Java.
+     * <p/>
+     * Blocking calls of TDClient wait for responses without holding monitors, so they can also be called
+     * from many virtual threads at the same time.
+     *
+     * @param useVirtualThreads
+     * @return
+     */
+    public AbstractTDClientBuilder<ClientImpl> setUseVirtualThreads(boolean useVirtualThreads)
+    {
+        this.useVirtualThreads = useVirtualThreads;
+        return this;
+    }
+
+    /**
+     * Set a listener of API request events, e.g., {@link HistogramTDClientMetrics}
+     *
+     * @param metrics
+     * @return
+     */
+    public AbstractTDClientBuilder<ClientImpl> setMetrics(TDClientMetrics metrics)
+    {
+        this.metrics = metrics;
+        return this;
+    }
+
     /**
      * Build a config object.
      * @return
@@ -306,9 +522,24 @@ public abstract class AbstractTDClientBuilder<ClientImpl>
                 retryInitialIntervalMillis,
                 retryMaxIntervalMillis,
                 retryMultiplier,
+                retryJitter,
+                retryBudgetRatio,
+                retryBudgetMinRetriesPerSecond,
+                circuitBreakerFailureRateThreshold,
+                circuitBreakerWindowSize,
+                circuitBreakerOpenDurationMillis,
+                hedgePercentile,
+                hedgeMinDelayMillis,
+                hedgeMaxRatio,
                 connectTimeoutMillis,
                 idleTimeoutMillis,
-                connectionPoolSize
+                connectionPoolSize,
+                maxConnectionsPerDestination,
+                maxRequestsQueuedPerDestination,
+                warmUpConnections,
+                useVirtualThreads,
+                metrics,
+                circuitBreakerListener
         );
     }
 
@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.treasuredata.client;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Limits the number of concurrent API requests with AIMD (additive increase, multiplicative decrease), the same scheme
+ * as TCP congestion control.
+ * <p/>
+ * The limit starts at the maximum. When the API throttles a request (429 or 503), the limit is multiplied by the
+ * decrease factor, and each successful request raises it by 1/limit, i.e., by one after a limit's worth of successes.
+ * Only requests started after the last decrease can decrease the limit again, so a burst of throttled responses
+ * to requests that were sent together counts as a single congestion signal.
+ * <p/>
+ * Requests exceeding the limit wait in a FIFO queue without blocking any thread. A waiting task runs on the thread
+ * releasing a permit, so it should only start an asynchronous request. A waiting task can be removed with {@link #cancel(Runnable)}
+ * (e.g., when it has waited too long). A TDHttpClient has one limiter, which is shared by all clients using it,
+ * so their total request rate converges to what the API allows.
+ */
+public class AdaptiveRateLimiter
+{
+    public static enum Feedback
+    {
+        /**
+         * The API has processed the request
+         */
+        SUCCESS,
+        /**
+         * The API has throttled the request
+         */
+        THROTTLED,
+        /**
+         * The request failed for other reasons, which do not tell the API capacity
+         */
+        IGNORE
+    }
+
+    public static final double DEFAULT_DECREASE_FACTOR = 0.5;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double decreaseFactor;
+    private final Queue<Runnable> waitingTasks = new ArrayDeque<>();
+    private double limit;
+    private int inFlight = 0;
+    private boolean decreased = false;
+    private long lastDecreaseNanos;
+
+    public AdaptiveRateLimiter(int minLimit, int maxLimit, double decreaseFactor)
+    {
+        checkArgument(minLimit >= 1, "minLimit must be >= 1");
+        checkArgument(maxLimit >= minLimit, "maxLimit must be >= minLimit");
+        checkArgument(0.0 < decreaseFactor && decreaseFactor < 1.0, "decreaseFactor must be between 0.0 and 1.0");
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.decreaseFactor = decreaseFactor;
+        this.limit = maxLimit;
+    }
+
+    /**
+     * Run the task now if the number of in-flight requests is below the limit, or later when a running request releases its permit.
+     * The task must call {@link #release(long, Feedback)} exactly once when its request completes.
+     *
+     * @param task
+     * @return true if the task has run, or false if it is waiting for a permit
+     */
+    public boolean acquire(Runnable task)
+    {
+        synchronized (this) {
+            if (inFlight >= (int) limit || !waitingTasks.isEmpty()) {
+                waitingTasks.add(task);
+                return false;
+            }
+            inFlight++;
+        }
+        task.run();
+        return true;
+    }
+
+    /**
+     * Remove a task waiting for a permit
+     *
+     * @param task
+     * @return true if the task was waiting and will not run, or false if it has already started running
+     */
+    public synchronized boolean cancel(Runnable task)
+    {
+        return waitingTasks.remove(task);
+    }
+
+    /**
+     * Release the permit of a completed request, and adjust the limit according to the feedback.
+     *
+     * @param acquiredNanos the System.nanoTime() when the task started running
+     * @param feedback
+     */
+    public void release(long acquiredNanos, Feedback feedback)
+    {
+        List<Runnable> readyTasks = new ArrayList<>();
+        synchronized (this) {
+            inFlight--;
+            switch (feedback) {
+                case SUCCESS:
+                    limit = Math.min(maxLimit, limit + 1.0 / limit);
+                    break;
+                case THROTTLED:
+                    if (!decreased || acquiredNanos - lastDecreaseNanos > 0) {
+                        limit = Math.max(minLimit, limit * decreaseFactor);
+                        decreased = true;
+                        lastDecreaseNanos = System.nanoTime();
+                    }
+                    break;
+                default:
+                    break;
+            }
+            while (inFlight < (int) limit && !waitingTasks.isEmpty()) {
+                inFlight++;
+                readyTasks.add(waitingTasks.poll());
+            }
+        }
+        for (Runnable task : readyTasks) {
+            task.run();
+        }
+    }
+
+    public int getMaxLimit()
+    {
+        return maxLimit;
+    }
+
+    public synchronized double getLimit()
+    {
+        return limit;
+    }
+
+    public synchronized int getInFlightRequests()
+    {
+        return inFlight;
+    }
+
+    public synchronized int getWaitingRequests()
+    {
+        return waitingTasks.size();
+    }
+}
@@ -0,0 +1,677 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.treasuredata.client;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.FutureFallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.treasuredata.client.model.TDAuthenticationResult;
+import com.treasuredata.client.model.TDBulkImportParts;
+import com.treasuredata.client.model.TDBulkImportSession;
+import com.treasuredata.client.model.TDBulkImportSessionList;
+import com.treasuredata.client.model.TDBulkLoadSessionStartRequest;
+import com.treasuredata.client.model.TDBulkLoadSessionStartResult;
+import com.treasuredata.client.model.TDColumn;
+import com.treasuredata.client.model.TDDatabase;
+import com.treasuredata.client.model.TDExportJobRequest;
+import com.treasuredata.client.model.TDJob;
+import com.treasuredata.client.model.TDJobList;
+import com.treasuredata.client.model.TDJobRequest;
+import com.treasuredata.client.model.TDJobSubmitResult;
+import com.treasuredata.client.model.TDJobSummary;
+import com.treasuredata.client.model.TDPartialDeleteJob;
+import com.treasuredata.client.model.TDSaveQueryRequest;
+import com.treasuredata.client.model.TDSavedQuery;
+import com.treasuredata.client.model.TDSavedQueryUpdateRequest;
+import com.treasuredata.client.model.TDTable;
+import com.treasuredata.client.model.TDTableList;
+import com.treasuredata.client.model.TDTableType;
+import com.treasuredata.client.model.TDUpdateTableResult;
+import com.treasuredata.client.model.impl.TDDatabaseList;
+import com.treasuredata.client.model.impl.TDScheduleRunResult;
+import org.eclipse.jetty.http.HttpStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.treasuredata.client.TDClient.buildPostRequest;
+import static com.treasuredata.client.TDClient.buildUrl;
+import static com.treasuredata.client.TDClient.validateDatabaseName;
+import static com.treasuredata.client.TDClient.validateTableName;
+
+/**
+ * A non-blocking counterpart of {@link TDClient}. Every API call returns a {@link ListenableFuture} immediately,
+ * and the underlying HTTP request is processed by the Jetty client without holding the caller thread,
+ * including the wait time between retries.
+ * <p/>
+ * Failed futures report {@link TDClientException} as the cause of {@link java.util.concurrent.ExecutionException}.
+ * Callbacks registered without an explicit executor run on Jetty client threads, so they must not block.
+ */
+public class AsyncTDClient
+        implements AutoCloseable
+{
+    private static final Logger logger = LoggerFactory.getLogger(AsyncTDClient.class);
+
+    public static AsyncTDClient newClient()
+    {
+        return new AsyncTDClientBuilder(true).build();
+    }
+
+    public static AsyncTDClientBuilder newBuilder()
+    {
+        return new AsyncTDClientBuilder(true);
+    }
+
+    public static AsyncTDClientBuilder newBuilder(boolean loadTDConf)
+    {
+        return new AsyncTDClientBuilder(loadTDConf);
+    }
+
+    protected final TDClientConfig config;
+    protected final TDHttpClient httpClient;
+    protected final Optional<String> apiKeyCache;
+
+    public AsyncTDClient(TDClientConfig config)
+    {
+        this(config, new TDHttpClient(config), config.apiKey);
+    }
+
+    protected AsyncTDClient(TDClientConfig config, TDHttpClient httpClient, Optional<String> apiKeyCache)
+    {
+        this.config = config;
+        this.httpClient = httpClient;
+        this.apiKeyCache = apiKeyCache;
+    }
+
+    /**
+     * Create a new AsyncTDClient that uses the given api key for the authentication.
+     * The new instance shares the same HttpClient, so closing this will invalidate the other copy of AsyncTDClient instances
+     *
+     * @param newApiKey
+     * @return
+     */
+    public AsyncTDClient withApiKey(String newApiKey)
+    {
+        return new AsyncTDClient(config, httpClient, Optional.of(newApiKey));
+    }
+
+    /**
+     * Return a blocking TDClient sharing the same http client and api key with this instance.
+     *
+     * @return
+     */
+    public TDClient toBlockingClient()
+    {
+        return new TDClient(config, httpClient, apiKeyCache);
+    }
+
+    @Override
+    public void close()
+    {
+        httpClient.close();
+    }
+
+    protected <ResultType> ListenableFuture<ResultType> doGet(String path, Class<ResultType> resultTypeClass)
+    {
+        checkNotNull(path, "path is null");
+        checkNotNull(resultTypeClass, "resultTypeClass is null");
+
+        return httpClient.callAsync(TDApiRequest.Builder.GET(path).build(), apiKeyCache, resultTypeClass);
+    }
+
+    protected <ResultType> ListenableFuture<ResultType> doPost(String path, Map<String, String> queryParam, Optional<String> jsonBody, Class<ResultType> resultTypeClass)
+    {
+        checkNotNull(path, "path is null");
+        checkNotNull(queryParam, "param is null");
+        checkNotNull(jsonBody, "body is null");
+        checkNotNull(resultTypeClass, "resultTypeClass is null");
+
+        return httpClient.callAsync(buildPostRequest(path, queryParam, jsonBody), apiKeyCache, resultTypeClass);
+    }
+
+    protected <ResultType> ListenableFuture<ResultType> doPost(String path, Map<String, String> queryParam, Class<ResultType> resultTypeClass)
+    {
+        return this.<ResultType>doPost(path, queryParam, Optional.<String>absent(), resultTypeClass);
+    }
+
+    protected <ResultType> ListenableFuture<ResultType> doPost(String path, Class<ResultType> resultTypeClass)
+    {
+        return this.<ResultType>doPost(path, ImmutableMap.<String, String>of(), Optional.<String>absent(), resultTypeClass);
+    }
+
+    protected ListenableFuture<Void> doPost(String path)
+    {
+        checkNotNull(path, "path is null");
+
+        return ignoreResult(httpClient.callAsync(TDApiRequest.Builder.POST(path).build(), apiKeyCache));
+    }
+
+    protected ListenableFuture<Void> doPut(String path, File filePath)
+    {
+        checkNotNull(path, "path is null");
+        checkNotNull(filePath, "filePath is null");
+
+        return ignoreResult(httpClient.callAsync(TDApiRequest.Builder.PUT(path).setFile(filePath).build(), apiKeyCache));
+    }
+
+    protected ListenableFuture<Void> doPut(String path, ByteBuffer content)
+    {
+        checkNotNull(path, "path is null");
+        checkNotNull(content, "content is null");
+
+        return ignoreResult(httpClient.callAsync(TDApiRequest.Builder.PUT(path).setContent(content).build(), apiKeyCache));
+    }
+
+    private static <T> ListenableFuture<Void> ignoreResult(ListenableFuture<T> future)
+    {
+        return Futures.transform(future, new Function<T, Void>()
+        {
+            @Override
+            public Void apply(T input)
+            {
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Returns a future that completes normally with the given value when the input future fails with the given exception type.
+     */
+    private static <T> ListenableFuture<T> recoverFrom(ListenableFuture<T> future, final Class<? extends TDClientException> exceptionType, final T value)
+    {
+        return Futures.withFallback(future, new FutureFallback<T>()
+        {
+            @Override
+            public ListenableFuture<T> create(Throwable t)
+                    throws Exception
+            {
+                if (exceptionType.isInstance(t)) {
+                    return Futures.immediateFuture(value);
+                }
+                return Futures.immediateFailedFuture(t);
+            }
+        });
+    }
+
+    public ListenableFuture<AsyncTDClient> authenticate(String email, String password)
+    {
+        return Futures.transform(
+                doPost("/v3/user/authenticate", ImmutableMap.of("user", email, "password", password), TDAuthenticationResult.class),
+                new Function<TDAuthenticationResult, AsyncTDClient>()
+                {
+                    @Override
+                    public AsyncTDClient apply(TDAuthenticationResult authResult)
+                    {
+                        return withApiKey(authResult.getApikey());
+                    }
+                });
+    }
+
+    public ListenableFuture<String> serverStatus()
+    {
+        // No API key is requried for server_status
+        return httpClient.callAsync(TDApiRequest.Builder.GET("/v3/system/server_status").build(), Optional.<String>absent());
+    }
+
+    // Database operations
+
+    public ListenableFuture<List<String>> listDatabaseNames()
+    {
+        return Futures.transform(listDatabases(), new Function<List<TDDatabase>, List<String>>()
+        {
+            @Override
+            public List<String> apply(List<TDDatabase> databases)
+            {
+                List<String> databaseNames = new ArrayList<>(databases.size());
+                for (TDDatabase db : databases) {
+                    databaseNames.add(db.getName());
+                }
+                return databaseNames;
+            }
+        });
+    }
+
+    public ListenableFuture<List<TDDatabase>> listDatabases()
+    {
+        return Futures.transform(doGet("/v3/database/list", TDDatabaseList.class), new Function<TDDatabaseList, List<TDDatabase>>()
+        {
+            @Override
+            public List<TDDatabase> apply(TDDatabaseList result)
+            {
+                return result.getDatabases();
+            }
+        });
+    }
+
+    public ListenableFuture<Void> createDatabase(String databaseName)
+    {
+        return doPost(buildUrl("/v3/database/create", validateDatabaseName(databaseName)));
+    }
+
+    public ListenableFuture<Void> createDatabaseIfNotExists(String databaseName)
+    {
+        // Conflict can be returned when the database already exists or Nginx returns conflict(409) upon request retry
+        return recoverFrom(createDatabase(databaseName), TDClientHttpConflictException.class, null);
+    }
+
+    public ListenableFuture<Void> deleteDatabase(String databaseName)
+    {
+        return doPost(buildUrl("/v3/database/delete", validateDatabaseName(databaseName)));
+    }
+
+    public ListenableFuture<Void> deleteDatabaseIfExists(String databaseName)
+    {
+        // Not found will be returned when the database does not exist, or Nginx calls this delete request twice
+        return recoverFrom(deleteDatabase(databaseName), TDClientHttpNotFoundException.class, null);
+    }
+
+    public ListenableFuture<Boolean> existsDatabase(final String databaseName)
+    {
+        return Futures.transform(listDatabaseNames(), new Function<List<String>, Boolean>()
+        {
+            @Override
+            public Boolean apply(List<String> databaseNames)
+            {
+                return databaseNames.contains(databaseName);
+            }
+        });
+    }
+
+    // Table operations
+
+    public ListenableFuture<List<TDTable>> listTables(String databaseName)
+    {
+        return Futures.transform(doGet(buildUrl("/v3/table/list", databaseName), TDTableList.class), new Function<TDTableList, List<TDTable>>()
+        {
+            @Override
+            public List<TDTable> apply(TDTableList tableList)
+            {
+                return tableList.getTables();
+            }
+        });
+    }
+
+    public ListenableFuture<Boolean> existsTable(String databaseName, final String tableName)
+    {
+        ListenableFuture<Boolean> exists = Futures.transform(listTables(databaseName), new Function<List<TDTable>, Boolean>()
+        {
+            @Override
+            public Boolean apply(List<TDTable> tables)
+            {
+                for (TDTable table : tables) {
+                    if (table.getName().equals(tableName)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        });
+        return Futures.withFallback(exists, new FutureFallback<Boolean>()
+        {
+            @Override
+            public ListenableFuture<Boolean> create(Throwable t)
+                    throws Exception
+            {
+                if (t instanceof TDClientHttpException && ((TDClientHttpException) t).getStatusCode() == HttpStatus.NOT_FOUND_404) {
+                    return Futures.immediateFuture(false);
+                }
+                return Futures.immediateFailedFuture(t);
+            }
+        });
+    }
+
+    public ListenableFuture<Void> createTable(String databaseName, String tableName)
+    {
+        return doPost(buildUrl("/v3/table/create", databaseName, validateTableName(tableName), TDTableType.LOG.getTypeName()));
+    }
+
+    public ListenableFuture<Void> createTableIfNotExists(String databaseName, String tableName)
+    {
+        return recoverFrom(createTable(databaseName, tableName), TDClientHttpConflictException.class, null);
+    }
+
+    public ListenableFuture<Void> renameTable(String databaseName, String tableName, String newTableName)
+    {
+        return renameTable(databaseName, tableName, newTableName, false);
+    }
+
+    public ListenableFuture<Void> renameTable(String databaseName, String tableName, String newTableName, boolean overwrite)
+    {
+        return ignoreResult(doPost(buildUrl("/v3/table/rename", databaseName, tableName, validateTableName(newTableName)),
+                ImmutableMap.of("overwrite", Boolean.toString(overwrite)),
+                TDUpdateTableResult.class));
+    }
+
+    public ListenableFuture<Void> deleteTable(String databaseName, String tableName)
+    {
+        return doPost(buildUrl("/v3/table/delete", databaseName, tableName));
+    }
+
+    public ListenableFuture<Void> deleteTableIfExists(String databaseName, String tableName)
+    {
+        return recoverFrom(deleteTable(databaseName, tableName), TDClientHttpNotFoundException.class, null);
+    }
+
+    public ListenableFuture<TDPartialDeleteJob> partialDelete(String databaseName, String tableName, long from, long to)
+    {
+        if ((from % 3600 != 0) || (to % 3600 != 0)) {
+            return Futures.immediateFailedFuture(new TDClientException(TDClientException.ErrorType.INVALID_INPUT, String.format("from/to value must be a multiple of 3600: [%s, %s)", from, to)));
+        }
+
+        Map<String, String> queryParams = ImmutableMap.of(
+                "from", Long.toString(from),
+                "to", Long.toString(to));
+        return doPost(buildUrl("/v3/table/partialdelete", databaseName, tableName), queryParams, TDPartialDeleteJob.class);
+    }
+
+    public ListenableFuture<Void> swapTables(String databaseName, String tableName1, String tableName2)
+    {
+        return doPost(buildUrl("/v3/table/swap", databaseName, tableName1, tableName2));
+    }
+
+    public ListenableFuture<Void> updateTableSchema(String databaseName, String tableName, List<TDColumn> newSchema)
+    {
+        checkNotNull(databaseName, "databaseName is null");
+        checkNotNull(tableName, "tableName is null");
+        checkNotNull(newSchema, "newSchema is null");
+
+        return ignoreResult(doPost(buildUrl("/v3/table/update-schema", databaseName, tableName), ImmutableMap.<String, String>of(), Optional.of(TDClient.toSchemaJson(newSchema)), String.class));
+    }
+
+    // Job operations
+
+    /**
+     * Submit a new job request
+     *
+     * @param jobRequest
+     * @return a future of the job_id
+     */
+    public ListenableFuture<String> submit(TDJobRequest jobRequest)
+    {
+        if (logger.isDebugEnabled()) {
+            logger.debug("submit job: " + jobRequest);
+        }
+
+        return toJobId(doPost(
+                buildUrl("/v3/job/issue", jobRequest.getType().getType(), jobRequest.getDatabase()),
+                TDClient.toJobQueryParams(jobRequest),
+                TDClient.toJobConfigJson(jobRequest),
+                TDJobSubmitResult.class));
+    }
+
+    private static ListenableFuture<String> toJobId(ListenableFuture<TDJobSubmitResult> result)
+    {
+        return Futures.transform(result, new Function<TDJobSubmitResult, String>()
+        {
+            @Override
+            public String apply(TDJobSubmitResult input)
+            {
+                return input.getJobId();
+            }
+        });
+    }
+
+    public ListenableFuture<TDJobList> listJobs()
+    {
+        return doGet("/v3/job/list", TDJobList.class);
+    }
+
+    public ListenableFuture<TDJobList> listJobs(long fromJobId, long toJobId)
+    {
+        return doGet(String.format("/v3/job/list?from_id=%d&to_id=%d", fromJobId, toJobId), TDJobList.class);
+    }
+
+    public ListenableFuture<Void> killJob(String jobId)
+    {
+        return doPost(buildUrl("/v3/job/kill", jobId));
+    }
+
+    public ListenableFuture<TDJobSummary> jobStatus(String jobId)
+    {
+        return doGet(buildUrl("/v3/job/status", jobId), TDJobSummary.class);
+    }
+
+    /**
+     * Create a JobWatcher that waits for the completion of jobs with a single polling thread.
+     * The watcher shares the http client with this instance and must be closed after use.
+     *
+     * @return
+     */
+    public JobWatcher newJobWatcher()
+    {
+        return new JobWatcher(this);
+    }
+
+    public ListenableFuture<TDJob> jobInfo(String jobId)
+    {
+        return doGet(buildUrl("/v3/job/show", jobId), TDJob.class);
+    }
+
+    // bulk import API
+
+    public ListenableFuture<List<TDBulkImportSession>> listBulkImportSessions()
+    {
+        return Futures.transform(doGet(buildUrl("/v3/bulk_import/list"), TDBulkImportSessionList.class), new Function<TDBulkImportSessionList, List<TDBulkImportSession>>()
+        {
+            @Override
+            public List<TDBulkImportSession> apply(TDBulkImportSessionList input)
+            {
+                return input.getSessions();
+            }
+        });
+    }
+
+    public ListenableFuture<List<String>> listBulkImportParts(String sessionName)
+    {
+        return Futures.transform(doGet(buildUrl("/v3/bulk_import/list_parts", sessionName), TDBulkImportParts.class), new Function<TDBulkImportParts, List<String>>()
+        {
+            @Override
+            public List<String> apply(TDBulkImportParts input)
+            {
+                return input.getParts();
+            }
+        });
+    }
+
+    public ListenableFuture<Void> createBulkImportSession(String sessionName, String databaseName, String tableName)
+    {
+        return doPost(buildUrl("/v3/bulk_import/create", sessionName, databaseName, tableName));
+    }
+
+    public ListenableFuture<TDBulkImportSession> getBulkImportSession(String sessionName)
+    {
+        return doGet(buildUrl("/v3/bulk_import/show", sessionName), TDBulkImportSession.class);
+    }
+
+    public ListenableFuture<Void> uploadBulkImportPart(String sessionName, String uniquePartName, File path)
+    {
+        return doPut(buildUrl("/v3/bulk_import/upload_part", sessionName, uniquePartName), path);
+    }
+
+    /**
+     * Upload a part from memory. The content must be a gzip-compressed msgpack stream.
+     *
+     * @param sessionName
+     * @param uniquePartName
+     * @param content
+     * @return
+     */
+    public ListenableFuture<Void> uploadBulkImportPart(String sessionName, String uniquePartName, byte[] content)
+    {
+        return uploadBulkImportPart(sessionName, uniquePartName, ByteBuffer.wrap(content));
+    }
+
+    /**
+     * Upload the remaining bytes of a buffer as a part without copying them. The buffer must not be modified until the upload completes.
+     *
+     * @param sessionName
+     * @param uniquePartName
+     * @param content
+     * @return
+     */
+    public ListenableFuture<Void> uploadBulkImportPart(String sessionName, String uniquePartName, ByteBuffer content)
+    {
+        return doPut(buildUrl("/v3/bulk_import/upload_part", sessionName, uniquePartName), content);
+    }
+
+    /**
+     * Create a BulkImportUploader that uploads part files of the given session in parallel.
+     *
+     * @param sessionName
+     * @return
+     */
+    public BulkImportUploader newBulkImportUploader(String sessionName)
+    {
+        return new BulkImportUploader(this, sessionName);
+    }
+
+    public ListenableFuture<Void> deleteBulkImportPart(String sessionName, String uniquePartName)
+    {
+        return doPost(buildUrl("/v3/bulk_import/delete_part", sessionName, uniquePartName));
+    }
+
+    public ListenableFuture<Void> freezeBulkImportSession(String sessionName)
+    {
+        return doPost(buildUrl("/v3/bulk_import/freeze", sessionName));
+    }
+
+    public ListenableFuture<Void> unfreezeBulkImportSession(String sessionName)
+    {
+        return doPost(buildUrl("/v3/bulk_import/unfreeze", sessionName));
+    }
+
+    public ListenableFuture<Void> performBulkImportSession(String sessionName)
+    {
+        return performBulkImportSession(sessionName, TDJob.Priority.NORMAL);
+    }
+
+    public ListenableFuture<Void> performBulkImportSession(String sessionName, TDJob.Priority priority)
+    {
+        return ignoreResult(doPost(buildUrl("/v3/bulk_import/perform", sessionName), ImmutableMap.of("priority", Integer.toString(priority.toInt())), Optional.<String>absent(), String.class));
+    }
+
+    public ListenableFuture<Void> commitBulkImportSession(String sessionName)
+    {
+        return doPost(buildUrl("/v3/bulk_import/commit", sessionName));
+    }
+
+    public ListenableFuture<Void> deleteBulkImportSession(String sessionName)
+    {
+        return doPost(buildUrl("/v3/bulk_import/delete", sessionName));
+    }
+
+    // Saved query APIs
+
+    public ListenableFuture<String> startSavedQuery(String name, Date scheduledTime)
+    {
+        return Futures.transform(
+                doPost(buildUrl("/v3/schedule/run", name, Long.toString(scheduledTime.getTime() / 1000)), TDScheduleRunResult.class),
+                new Function<TDScheduleRunResult, String>()
+                {
+                    @Override
+                    public String apply(TDScheduleRunResult result)
+                    {
+                        return result.getJobs().get(0).getJobId();
+                    }
+                });
+    }
+
+    public ListenableFuture<List<TDSavedQuery>> listSavedQueries()
+    {
+        return Futures.transform(doGet(buildUrl("/v3/schedule/list"), TDSavedQuery.TDSavedQueryList.class), new Function<TDSavedQuery.TDSavedQueryList, List<TDSavedQuery>>()
+        {
+            @Override
+            public List<TDSavedQuery> apply(TDSavedQuery.TDSavedQueryList input)
+            {
+                return input.getSchedules();
+            }
+        });
+    }
+
+    public ListenableFuture<TDSavedQuery> saveQuery(TDSaveQueryRequest request)
+    {
+        String json;
+        try {
+            json = httpClient.getObjectMapper().writeValueAsString(request);
+        }
+        catch (JsonProcessingException e) {
+            logger.error("Failed to produce json", e);
+            return Futures.immediateFailedFuture(new TDClientException(TDClientException.ErrorType.INVALID_INPUT, String.format("Failed to create JSON string from %s", request)));
+        }
+        return doPost(buildUrl("/v3/schedule/create", request.getName()), ImmutableMap.<String, String>of(), Optional.of(json), TDSavedQuery.class);
+    }
+
+    public ListenableFuture<TDSavedQuery> updateSavedQuery(String name, TDSavedQueryUpdateRequest request)
+    {
+        return doPost(buildUrl("/v3/schedule/update", name), ImmutableMap.<String, String>of(), Optional.of(request.toJson()), TDSavedQuery.class);
+    }
+
+    public ListenableFuture<TDSavedQuery> deleteSavedQuery(String name)
+    {
+        return doPost(buildUrl("/v3/schedule/delete", name), TDSavedQuery.class);
+    }
+
+    /**
+     * Start a table export job.
+     *
+     * @param jobRequest
+     * @return a future of the job id
+     */
+    public ListenableFuture<String> submitExportJob(TDExportJobRequest jobRequest)
+    {
+        if (logger.isDebugEnabled()) {
+            logger.debug("submit job: " + jobRequest);
+        }
+
+        return toJobId(doPost(
+                buildUrl("/v3/export/run", jobRequest.getDatabase(), jobRequest.getTable()),
+                TDClient.toExportJobQueryParams(jobRequest),
+                TDJobSubmitResult.class));
+    }
+
+    // Data Connector Bulk Loading Session APIs
+
+    public ListenableFuture<TDBulkLoadSessionStartResult> startBulkLoadSession(String name)
+    {
+        return startBulkLoadSession(name, TDBulkLoadSessionStartRequest.builder().build());
+    }
+
+    public ListenableFuture<TDBulkLoadSessionStartResult> startBulkLoadSession(String name, long scheduledTime)
+    {
+        return startBulkLoadSession(name, TDBulkLoadSessionStartRequest.builder().setScheduledTime(scheduledTime).build());
+    }
+
+    public ListenableFuture<TDBulkLoadSessionStartResult> startBulkLoadSession(String name, TDBulkLoadSessionStartRequest request)
+    {
+        return doPost(buildUrl("/v3/bulk_loads", name, "jobs"),
+                ImmutableMap.<String, String>of(), Optional.of(TDClient.toBulkLoadPayload(request)),
+                TDBulkLoadSessionStartResult.class);
+    }
+}
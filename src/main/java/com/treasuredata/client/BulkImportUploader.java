@@ -0,0 +1,478 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.treasuredata.client;
+
+import com.google.common.base.Optional;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.treasuredata.client.model.TDBulkImportSession;
+import com.treasuredata.client.model.TDColumn;
+import com.treasuredata.client.model.TDJob;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Uploads bulk import part files of a session in parallel.
+ * <p/>
+ * At most maxConcurrentUploads parts are in flight at the same time, and a part failed with a server error,
+ * a timeout or an I/O error is uploaded again up to maxPartRetries times, in addition to the request retries of the client.
+ * <pre>
+ * {@code
+ * BulkImportUploader uploader = client.newBulkImportUploader("my_session").setMaxConcurrentUploads(8);
+ * uploader.upload(partFiles);
+ * uploader.freezeAndCommit();
+ * }
+ * </pre>
+ */
+public class BulkImportUploader
+{
+    private static final Logger logger = LoggerFactory.getLogger(BulkImportUploader.class);
+    private static final String MSGPACK_GZ_SUFFIX = ".msgpack.gz";
+
+    public static final int DEFAULT_MAX_CONCURRENT_UPLOADS = 4;
+    public static final int DEFAULT_MAX_PART_RETRIES = 2;
+
+    private final AsyncTDClient client;
+    private final String sessionName;
+    private Semaphore uploadPermits = new Semaphore(DEFAULT_MAX_CONCURRENT_UPLOADS);
+    private int maxPartRetries = DEFAULT_MAX_PART_RETRIES;
+
+    public BulkImportUploader(AsyncTDClient client, String sessionName)
+    {
+        this.client = checkNotNull(client, "client is null");
+        this.sessionName = checkNotNull(sessionName, "sessionName is null");
+    }
+
+    public String getSessionName()
+    {
+        return sessionName;
+    }
+
+    /**
+     * Set the number of parts uploaded at the same time. This needs to be set before starting uploads.
+     *
+     * @param maxConcurrentUploads
+     * @return
+     */
+    public BulkImportUploader setMaxConcurrentUploads(int maxConcurrentUploads)
+    {
+        checkArgument(maxConcurrentUploads > 0, "maxConcurrentUploads must be > 0");
+        this.uploadPermits = new Semaphore(maxConcurrentUploads);
+        return this;
+    }
+
+    public BulkImportUploader setMaxPartRetries(int maxPartRetries)
+    {
+        checkArgument(maxPartRetries >= 0, "maxPartRetries must be >= 0");
+        this.maxPartRetries = maxPartRetries;
+        return this;
+    }
+
+    /**
+     * Upload all files in the given directory as parts of the session.
+     *
+     * @param directory
+     * @return
+     * @throws TDClientException if any of the parts cannot be uploaded
+     */
+    public List<PartResult> uploadDirectory(File directory)
+    {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            throw new TDClientException(TDClientException.ErrorType.INVALID_INPUT, "Not a directory: " + directory);
+        }
+        List<File> partFiles = new ArrayList<>();
+        for (File f : files) {
+            if (f.isFile()) {
+                partFiles.add(f);
+            }
+        }
+        return upload(partFiles);
+    }
+
+    /**
+     * Upload the given files as parts of the session, and wait until all of the uploads finish.
+     * The part name of each file is the file name without the .msgpack.gz suffix, or without the last extension for other files
+     * (e.g., data.1.msgpack.gz is uploaded as data.1, and part1.gz as part1).
+     * Nothing is uploaded if two files have the same part name, because the later upload would overwrite the former part.
+     *
+     * @param files
+     * @return the upload results in the order of the given files
+     * @throws TDClientException if any of the parts cannot be uploaded, or if the part names of the files are not unique
+     */
+    public List<PartResult> upload(Collection<File> files)
+    {
+        Map<String, File> parts = new LinkedHashMap<>();
+        for (File file : files) {
+            String partName = partNameOf(file);
+            File duplicate = parts.put(partName, file);
+            if (duplicate != null) {
+                throw new TDClientException(TDClientException.ErrorType.INVALID_INPUT,
+                        String.format("%s and %s have the same part name: %s", duplicate, file, partName));
+            }
+        }
+        List<ListenableFuture<PartResult>> futures = new ArrayList<>(parts.size());
+        for (Map.Entry<String, File> part : parts.entrySet()) {
+            futures.add(uploadPart(part.getKey(), part.getValue()));
+        }
+        return waitForParts(futures);
+    }
+
+    /**
+     * Wait for the given part uploads.
+     *
+     * @param futures
+     * @return the upload results in the order of the given futures
+     * @throws TDClientException if any of the parts cannot be uploaded
+     */
+    List<PartResult> waitForParts(List<ListenableFuture<PartResult>> futures)
+    {
+        List<PartResult> results = new ArrayList<>(futures.size());
+        Optional<TDClientException> firstError = Optional.absent();
+        int numErrors = 0;
+        for (ListenableFuture<PartResult> future : futures) {
+            PartResult result = waitFor(future);
+            results.add(result);
+            if (result.getError().isPresent()) {
+                numErrors++;
+                firstError = firstError.or(result.getError());
+            }
+        }
+        if (firstError.isPresent()) {
+            throw new TDClientException(firstError.get().getErrorType(),
+                    String.format("Failed to upload %d of %d parts to bulk import session %s", numErrors, results.size(), sessionName), firstError.get());
+        }
+        return results;
+    }
+
+    /**
+     * Start uploading a part. This method blocks while maxConcurrentUploads parts are being uploaded.
+     * The returned future always completes with a PartResult, which holds the error if the upload has failed.
+     *
+     * @param partName
+     * @param file
+     * @return
+     */
+    public ListenableFuture<PartResult> uploadPart(String partName, final File file)
+    {
+        checkNotNull(partName, "partName is null");
+        checkNotNull(file, "file is null");
+        return startUpload(new PartUpload(partName, Optional.of(file), file.length())
+        {
+            @Override
+            ListenableFuture<Void> send()
+            {
+                return client.uploadBulkImportPart(sessionName, partName, file);
+            }
+        });
+    }
+
+    /**
+     * Start uploading a part from memory. This method blocks while maxConcurrentUploads parts are being uploaded.
+     *
+     * @param partName
+     * @param content gzip-compressed msgpack stream
+     * @return
+     */
+    public ListenableFuture<PartResult> uploadPart(String partName, byte[] content)
+    {
+        checkNotNull(content, "content is null");
+        return uploadPart(partName, ByteBuffer.wrap(content));
+    }
+
+    /**
+     * Start uploading the remaining bytes of a buffer as a part without copying them.
+     * The buffer must not be modified until the returned future completes.
+     *
+     * @param partName
+     * @param content gzip-compressed msgpack stream
+     * @return
+     */
+    public ListenableFuture<PartResult> uploadPart(String partName, final ByteBuffer content)
+    {
+        checkNotNull(partName, "partName is null");
+        checkNotNull(content, "content is null");
+        return startUpload(new PartUpload(partName, Optional.<File>absent(), content.remaining())
+        {
+            @Override
+            ListenableFuture<Void> send()
+            {
+                return client.uploadBulkImportPart(sessionName, partName, content);
+            }
+        });
+    }
+
+    private ListenableFuture<PartResult> startUpload(PartUpload upload)
+    {
+        final Semaphore permits = uploadPermits;
+        try {
+            permits.acquire();
+        }
+        catch (InterruptedException e) {
+            throw new TDClientInterruptedException(e);
+        }
+        Futures.addCallback(upload.result, new FutureCallback<PartResult>()
+        {
+            @Override
+            public void onSuccess(PartResult partResult)
+            {
+                permits.release();
+            }
+
+            @Override
+            public void onFailure(Throwable t)
+            {
+                permits.release();
+            }
+        });
+        upload.start();
+        return upload.result;
+    }
+
+    /**
+     * Create a writer that encodes rows into msgpack.gz parts in memory and uploads them with this uploader.
+     *
+     * @param partNamePrefix
+     * @param columns the schema of rows, excluding the time column
+     * @return
+     */
+    public BulkImportWriter newWriter(String partNamePrefix, List<TDColumn> columns)
+    {
+        return new BulkImportWriter(this, partNamePrefix, columns);
+    }
+
+    /**
+     * Freeze the session, perform it, wait for the perform job, and commit the session.
+     *
+     * @return the session state after the perform job
+     * @throws TDClientException if the perform job has failed or no record is imported
+     */
+    public TDBulkImportSession freezeAndCommit()
+    {
+        waitFor(client.freezeBulkImportSession(sessionName));
+        waitFor(client.performBulkImportSession(sessionName));
+        TDBulkImportSession session = waitFor(client.getBulkImportSession(sessionName));
+        if (session.getJobId() != null) {
+            try (JobWatcher watcher = client.newJobWatcher()) {
+                TDJob.Status status = waitFor(watcher.watch(session.getJobId()));
+                if (status != TDJob.Status.SUCCESS) {
+                    throw new TDClientException(TDClientException.ErrorType.EXECUTION_FAILURE,
+                            String.format("Perform job %s of bulk import session %s has finished with %s", session.getJobId(), sessionName, status));
+                }
+            }
+            session = waitFor(client.getBulkImportSession(sessionName));
+        }
+        if (session.getValidRecords() == 0) {
+            throw new TDClientException(TDClientException.ErrorType.EXECUTION_FAILURE,
+                    String.format("No record is imported by bulk import session %s", sessionName));
+        }
+        if (session.hasErrorOnPerform()) {
+            logger.warn("Bulk import session {} has {} error records in {} error parts", sessionName, session.getErrorRecords(), session.getErrorParts());
+        }
+        waitFor(client.commitBulkImportSession(sessionName));
+        return session;
+    }
+
+    static String partNameOf(File file)
+    {
+        String name = file.getName();
+        if (name.endsWith(MSGPACK_GZ_SUFFIX) && name.length() > MSGPACK_GZ_SUFFIX.length()) {
+            return name.substring(0, name.length() - MSGPACK_GZ_SUFFIX.length());
+        }
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    private static <T> T waitFor(ListenableFuture<T> future)
+    {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            throw new TDClientInterruptedException(e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof TDClientException) {
+                throw (TDClientException) e.getCause();
+            }
+            throw new TDClientProcessingException(e);
+        }
+    }
+
+    private static boolean isRetryable(Throwable e)
+    {
+        if (e instanceof TDClientException) {
+            switch (((TDClientException) e).getErrorType()) {
+                case SERVER_ERROR:
+                case REQUEST_TIMEOUT:
+                case EXECUTION_FAILURE:
+                    return true;
+                default:
+                    return false;
+            }
+        }
+        return false;
+    }
+
+    private abstract class PartUpload
+    {
+        protected final String partName;
+        private final Optional<File> file;
+        private final long bytes;
+        private final SettableFuture<PartResult> result = SettableFuture.create();
+        private final long startTimeNanos = System.nanoTime();
+        private int attempts = 0;
+
+        PartUpload(String partName, Optional<File> file, long bytes)
+        {
+            this.partName = partName;
+            this.file = file;
+            this.bytes = bytes;
+        }
+
+        abstract ListenableFuture<Void> send();
+
+        void start()
+        {
+            attempts++;
+            Futures.addCallback(send(), new FutureCallback<Void>()
+            {
+                @Override
+                public void onSuccess(Void unused)
+                {
+                    PartResult partResult = newResult(Optional.<TDClientException>absent());
+                    logger.info(String.format("Uploaded part %s of %s: %,d bytes in %.2f sec. (%.2f MB/s)",
+                            partName, sessionName, partResult.getBytes(), partResult.getElapsedMillis() / 1000.0, partResult.getBytesPerSecond() / 1024.0 / 1024.0));
+                    result.set(partResult);
+                }
+
+                @Override
+                public void onFailure(Throwable t)
+                {
+                    if (isRetryable(t) && attempts <= maxPartRetries) {
+                        logger.warn(String.format("Failed to upload part %s of %s. Retrying (%d/%d)", partName, sessionName, attempts, maxPartRetries), t);
+                        start();
+                        return;
+                    }
+                    logger.error(String.format("Failed to upload part %s of %s", partName, sessionName), t);
+                    TDClientException error = t instanceof TDClientException ?
+                            (TDClientException) t : new TDClientException(TDClientException.ErrorType.EXECUTION_FAILURE, new ExecutionException(t));
+                    result.set(newResult(Optional.of(error)));
+                }
+            });
+        }
+
+        private PartResult newResult(Optional<TDClientException> error)
+        {
+            long elapsedMillis = (System.nanoTime() - startTimeNanos) / 1000000;
+            return new PartResult(partName, file, bytes, elapsedMillis, attempts, error);
+        }
+    }
+
+    /**
+     * The outcome of a part upload
+     */
+    public static class PartResult
+    {
+        private final String partName;
+        private final Optional<File> file;
+        private final long bytes;
+        private final long elapsedMillis;
+        private final int attempts;
+        private final Optional<TDClientException> error;
+
+        public PartResult(String partName, Optional<File> file, long bytes, long elapsedMillis, int attempts, Optional<TDClientException> error)
+        {
+            this.partName = partName;
+            this.file = file;
+            this.bytes = bytes;
+            this.elapsedMillis = elapsedMillis;
+            this.attempts = attempts;
+            this.error = error;
+        }
+
+        public String getPartName()
+        {
+            return partName;
+        }
+
+        /**
+         * The uploaded file, or absent if the part was uploaded from memory
+         */
+        public Optional<File> getFile()
+        {
+            return file;
+        }
+
+        public long getBytes()
+        {
+            return bytes;
+        }
+
+        /**
+         * Elapsed time including retries
+         */
+        public long getElapsedMillis()
+        {
+            return elapsedMillis;
+        }
+
+        public int getAttempts()
+        {
+            return attempts;
+        }
+
+        public Optional<TDClientException> getError()
+        {
+            return error;
+        }
+
+        public boolean isSuccess()
+        {
+            return !error.isPresent();
+        }
+
+        public double getBytesPerSecond()
+        {
+            return elapsedMillis > 0 ? bytes * 1000.0 / elapsedMillis : 0.0;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("PartResult{partName=%s, bytes=%d, elapsedMillis=%d, attempts=%d, error=%s}",
+                    partName, bytes, elapsedMillis, attempts, error.isPresent() ? error.get().getMessage() : "none");
+        }
+    }
+}
@@ -0,0 +1,394 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.treasuredata.client;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.treasuredata.client.model.TDColumn;
+import com.treasuredata.client.model.TDColumnType;
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessagePacker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.GZIPOutputStream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Encodes rows into gzip-compressed msgpack parts in memory and uploads each part in the background
+ * as soon as it reaches the part size.
+ * <p/>
+ * Part uploads go through {@link BulkImportUploader}, so writing a row blocks while maxConcurrentUploads
+ * parts are being uploaded. A sealed part is uploaded from the buffer it was written to without copying it,
+ * so the memory usage is bounded by about (maxConcurrentUploads + 1) * partSize.
+ * <p/>
+ * The part size is checked against the compressed bytes written so far. Rows still held in the packer buffer
+ * and the deflater are not counted, so a part can exceed partSize by up to their compressed size,
+ * typically a few tens of KB. Flushing them for each check would add a sync marker to every row and lower the compression ratio.
+ * This class is not thread-safe.
+ * <pre>
+ * {@code
+ * try (BulkImportWriter writer = client.newBulkImportUploader("my_session").newWriter("part", columns)) {
+ *     writer.write(time, "id-1", 10L);
+ * }
+ * }
+ * </pre>
+ */
+public class BulkImportWriter
+        implements AutoCloseable
+{
+    private static final Logger logger = LoggerFactory.getLogger(BulkImportWriter.class);
+
+    public static final long DEFAULT_PART_SIZE = 16 * 1024 * 1024;
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    private final BulkImportUploader uploader;
+    private final String partNamePrefix;
+    private final List<TDColumn> columns;
+    private final long partSize;
+    private final List<ListenableFuture<BulkImportUploader.PartResult>> parts = new ArrayList<>();
+
+    private PartBuffer buffer;
+    private MessagePacker packer;
+    private long numRowsInPart = 0;
+    private long numRows = 0;
+    private List<BulkImportUploader.PartResult> partResults;
+
+    public BulkImportWriter(BulkImportUploader uploader, String partNamePrefix, List<TDColumn> columns)
+    {
+        this(uploader, partNamePrefix, columns, DEFAULT_PART_SIZE);
+    }
+
+    /**
+     * @param uploader
+     * @param partNamePrefix parts are named partNamePrefix_00000, partNamePrefix_00001, ...
+     * @param columns the schema of rows, excluding the time column
+     * @param partSize the size of a compressed part in bytes. Parts can be slightly larger (see the class comment)
+     */
+    public BulkImportWriter(BulkImportUploader uploader, String partNamePrefix, List<TDColumn> columns, long partSize)
+    {
+        checkArgument(partSize > 0, "partSize must be > 0");
+        this.uploader = checkNotNull(uploader, "uploader is null");
+        this.partNamePrefix = checkNotNull(partNamePrefix, "partNamePrefix is null");
+        this.columns = ImmutableList.copyOf(checkNotNull(columns, "columns is null"));
+        this.partSize = partSize;
+    }
+
+    /**
+     * Write a row with values in the order of the columns.
+     *
+     * @param time unix time in seconds
+     * @param values
+     */
+    public void write(long time, Object... values)
+    {
+        if (values.length != columns.size()) {
+            throw new TDClientException(TDClientException.ErrorType.INVALID_INPUT,
+                    String.format("Expected %d values but got %d", columns.size(), values.length));
+        }
+        try {
+            MessagePacker out = startRow();
+            out.packMapHeader(columns.size() + 1);
+            out.packString("time");
+            out.packLong(time);
+            for (int i = 0; i < values.length; ++i) {
+                TDColumn column = columns.get(i);
+                out.packString(column.getName());
+                packTypedValue(out, column.getType(), values[i]);
+            }
+            endRow();
+        }
+        catch (IOException e) {
+            throw new TDClientProcessingException(new ExecutionException(e));
+        }
+    }
+
+    /**
+     * Write a row given as a map from column names to values. The row must have a time column.
+     * Values of the columns in the schema are converted to the column types.
+     *
+     * @param row
+     */
+    public void write(Map<String, ?> row)
+    {
+        if (!(row.get("time") instanceof Number)) {
+            throw new TDClientException(TDClientException.ErrorType.INVALID_INPUT, "Row must have a numeric time column: " + row);
+        }
+        try {
+            MessagePacker out = startRow();
+            out.packMapHeader(row.size());
+            for (Map.Entry<String, ?> entry : row.entrySet()) {
+                out.packString(entry.getKey());
+                TDColumnType type = findColumnType(entry.getKey());
+                if (type != null) {
+                    packTypedValue(out, type, entry.getValue());
+                }
+                else {
+                    packValue(out, entry.getValue());
+                }
+            }
+            endRow();
+        }
+        catch (IOException e) {
+            throw new TDClientProcessingException(new ExecutionException(e));
+        }
+    }
+
+    public long getNumberOfRows()
+    {
+        return numRows;
+    }
+
+    public int getNumberOfParts()
+    {
+        return parts.size();
+    }
+
+    /**
+     * Upload the remaining rows and wait until all of the parts are uploaded.
+     *
+     * @throws TDClientException if any of the parts cannot be uploaded
+     */
+    @Override
+    public void close()
+    {
+        if (partResults != null) {
+            return;
+        }
+        if (numRowsInPart > 0) {
+            sealPart();
+        }
+        partResults = uploader.waitForParts(parts);
+    }
+
+    /**
+     * The upload results of the parts, available after {@link #close()}
+     */
+    public List<BulkImportUploader.PartResult> getPartResults()
+    {
+        checkState(partResults != null, "Writer is not closed yet");
+        return partResults;
+    }
+
+    @VisibleForTesting
+    int getBufferCapacity()
+    {
+        return buffer == null ? 0 : buffer.capacity();
+    }
+
+    private MessagePacker startRow()
+            throws IOException
+    {
+        checkState(partResults == null, "Writer is already closed");
+        if (packer == null) {
+            // Leave room for the overshoot described in the class comment
+            int maxCapacity = (int) Math.min(partSize + partSize / 4, Integer.MAX_VALUE - 8);
+            buffer = new PartBuffer(Math.min(INITIAL_BUFFER_SIZE, maxCapacity), maxCapacity);
+            packer = MessagePack.newDefaultPacker(new GZIPOutputStream(buffer));
+        }
+        return packer;
+    }
+
+    private void endRow()
+    {
+        numRowsInPart++;
+        numRows++;
+        // The compressed size lags behind the rows held in the packer and deflater buffers
+        if (buffer.size() >= partSize) {
+            sealPart();
+        }
+    }
+
+    private void sealPart()
+    {
+        try {
+            packer.close();
+        }
+        catch (IOException e) {
+            throw new TDClientProcessingException(new ExecutionException(e));
+        }
+        ByteBuffer content = buffer.toByteBuffer();
+        String partName = String.format("%s_%05d", partNamePrefix, parts.size());
+        logger.debug("Sealed part {}: {} rows, {} bytes", partName, numRowsInPart, content.remaining());
+        packer = null;
+        buffer = null;
+        numRowsInPart = 0;
+        parts.add(uploader.uploadPart(partName, content));
+    }
+
+    /**
+     * Exposes the written bytes without copying them. The buffer starts small and doubles up to maxCapacity,
+     * so a part with a few rows does not take partSize bytes.
+     */
+    private static class PartBuffer
+            extends ByteArrayOutputStream
+    {
+        private final int maxCapacity;
+
+        PartBuffer(int initialSize, int maxCapacity)
+        {
+            super(initialSize);
+            this.maxCapacity = maxCapacity;
+        }
+
+        @Override
+        public synchronized void write(int b)
+        {
+            ensureCapacity(count + 1);
+            super.write(b);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len)
+        {
+            ensureCapacity(count + len);
+            super.write(b, off, len);
+        }
+
+        private void ensureCapacity(int minCapacity)
+        {
+            if (minCapacity > buf.length) {
+                // Grow no further than maxCapacity unless more bytes are written
+                int doubled = (int) Math.min((long) buf.length * 2, maxCapacity);
+                buf = Arrays.copyOf(buf, Math.max(minCapacity, doubled));
+            }
+        }
+
+        int capacity()
+        {
+            return buf.length;
+        }
+
+        ByteBuffer toByteBuffer()
+        {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+
+    private TDColumnType findColumnType(String name)
+    {
+        for (TDColumn column : columns) {
+            if (column.getName().equals(name)) {
+                return column.getType();
+            }
+        }
+        return null;
+    }
+
+    private static void packTypedValue(MessagePacker out, TDColumnType type, Object v)
+            throws IOException
+    {
+        if (v == null) {
+            out.packNil();
+            return;
+        }
+        switch (type.getTypeName()) {
+            case INT:
+            case LONG:
+                if (v instanceof Number && !(v instanceof BigInteger)) {
+                    out.packLong(((Number) v).longValue());
+                    return;
+                }
+                break;
+            case FLOAT:
+            case DOUBLE:
+                if (v instanceof Number) {
+                    out.packDouble(((Number) v).doubleValue());
+                    return;
+                }
+                break;
+            case STRING:
+                if (!(v instanceof byte[])) {
+                    out.packString(v.toString());
+                    return;
+                }
+                break;
+            default:
+                break;
+        }
+        packValue(out, v);
+    }
+
+    private static void packValue(MessagePacker out, Object v)
+            throws IOException
+    {
+        if (v == null) {
+            out.packNil();
+        }
+        else if (v instanceof String) {
+            out.packString((String) v);
+        }
+        else if (v instanceof Integer || v instanceof Long || v instanceof Short || v instanceof Byte) {
+            out.packLong(((Number) v).longValue());
+        }
+        else if (v instanceof BigInteger) {
+            out.packBigInteger((BigInteger) v);
+        }
+        else if (v instanceof Number) {
+            out.packDouble(((Number) v).doubleValue());
+        }
+        else if (v instanceof Boolean) {
+            out.packBoolean((Boolean) v);
+        }
+        else if (v instanceof byte[]) {
+            byte[] b = (byte[]) v;
+            out.packBinaryHeader(b.length);
+            out.writePayload(b);
+        }
+        else if (v instanceof Map) {
+            Map<?, ?> m = (Map<?, ?>) v;
+            out.packMapHeader(m.size());
+            for (Map.Entry<?, ?> e : m.entrySet()) {
+                packValue(out, e.getKey());
+                packValue(out, e.getValue());
+            }
+        }
+        else if (v instanceof Collection) {
+            Collection<?> c = (Collection<?>) v;
+            out.packArrayHeader(c.size());
+            for (Object e : c) {
+                packValue(out, e);
+            }
+        }
+        else if (v instanceof Object[]) {
+            Object[] a = (Object[]) v;
+            out.packArrayHeader(a.length);
+            for (Object e : a) {
+                packValue(out, e);
+            }
+        }
+        else {
+            out.packString(v.toString());
+        }
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.treasuredata.client;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
+import com.google.common.base.Ticker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A circuit breaker of an API endpoint group (e.g., "job.result", "bulk_import.upload_part").
+ * <p/>
+ * While CLOSED, the breaker records the outcomes of the last windowSize requests, and opens when the failure rate
+ * of a full window reaches the threshold. While OPEN, requests fail immediately with {@link TDClientCircuitOpenException}
+ * instead of going through retries. After the open duration, the breaker becomes HALF_OPEN and lets {@link #HALF_OPEN_PROBES}
+ * probe requests through. If all of them succeed, the breaker closes. A failed probe opens it again.
+ * <p/>
+ * Each outcome is that of a logical API request including its retries, so a single failing call occupies one slot of the window.
+ * An outcome counts only in the state period where its {@link Permit} was issued. For example, a request sent before the breaker
+ * opened does not count as a probe even if it completes while HALF_OPEN.
+ * Server errors (5xx) and requests without any response (e.g., timeouts, connection failures) are failures.
+ * Other responses, including 4xx errors, are successes because the API is serving them. 429 responses are not recorded,
+ * because throttling is handled by {@link AdaptiveRateLimiter}, which reduces the concurrency instead of failing requests.
+ * <p/>
+ * Circuit breakers are disabled by default. Set td.client.circuit-breaker.failure-rate-threshold to enable them.
+ */
+public class CircuitBreaker
+{
+    private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    /**
+     * Circuit breakers are disabled unless a failure rate threshold is set
+     */
+    public static final double DISABLED = 0.0;
+    /**
+     * A reasonable threshold for enabling circuit breakers
+     */
+    public static final double RECOMMENDED_FAILURE_RATE_THRESHOLD = 0.5;
+    public static final int DEFAULT_WINDOW_SIZE = 20;
+    public static final int DEFAULT_OPEN_DURATION_MILLIS = 30000;
+    public static final int HALF_OPEN_PROBES = 3;
+
+    public static enum State
+    {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * A permission to send a request, which tells the state period where it was issued
+     */
+    public static final class Permit
+    {
+        private final boolean probe;
+        private final long period;
+
+        private Permit(boolean probe, long period)
+        {
+            this.probe = probe;
+            this.period = period;
+        }
+
+        public boolean isProbe()
+        {
+            return probe;
+        }
+    }
+
+    /**
+     * Receives state changes of circuit breakers
+     */
+    public static interface Listener
+    {
+        Listener NONE = new Listener()
+        {
+            @Override
+            public void onStateChange(String endpoint, State from, State to)
+            {
+            }
+        };
+
+        /**
+         * Called after the state of the circuit breaker of the endpoint has changed.
+         * This method is called while holding the lock of the circuit breaker, so it must not block.
+         *
+         * @param endpoint
+         * @param from
+         * @param to
+         */
+        void onStateChange(String endpoint, State from, State to);
+    }
+
+    private final String endpoint;
+    private final double failureRateThreshold;
+    private final long openDurationNanos;
+    private final Listener listener;
+    private final Ticker ticker;
+    // Outcomes of the recent requests in a ring buffer. true means a failure
+    private final boolean[] window;
+    private int windowCount = 0;
+    private int windowIndex = 0;
+    private int failureCount = 0;
+    private State state = State.CLOSED;
+    private long openedAtNanos;
+    private int issuedProbes;
+    private int succeededProbes;
+    // Incremented at each state change. Permits are shared within a period since they hold no other state
+    private long period = 0;
+    private Permit currentPermit = new Permit(false, period);
+
+    public CircuitBreaker(String endpoint, double failureRateThreshold, int windowSize, long openDurationMillis, Listener listener)
+    {
+        this(endpoint, failureRateThreshold, windowSize, openDurationMillis, listener, Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    CircuitBreaker(String endpoint, double failureRateThreshold, int windowSize, long openDurationMillis, Listener listener, Ticker ticker)
+    {
+        checkArgument(0.0 < failureRateThreshold && failureRateThreshold <= 1.0, "failureRateThreshold must be in (0.0, 1.0]");
+        checkArgument(windowSize > 0, "windowSize must be > 0");
+        checkArgument(openDurationMillis >= 0, "openDurationMillis must be >= 0");
+        this.endpoint = checkNotNull(endpoint, "endpoint is null");
+        this.failureRateThreshold = failureRateThreshold;
+        this.window = new boolean[windowSize];
+        this.openDurationNanos = TimeUnit.MILLISECONDS.toNanos(openDurationMillis);
+        this.listener = checkNotNull(listener, "listener is null");
+        this.ticker = checkNotNull(ticker, "ticker is null");
+    }
+
+    public String getEndpoint()
+    {
+        return endpoint;
+    }
+
+    public synchronized State getState()
+    {
+        if (state == State.OPEN && ticker.read() - openedAtNanos >= openDurationNanos) {
+            transitionTo(State.HALF_OPEN);
+        }
+        return state;
+    }
+
+    /**
+     * Check whether a request can be sent now. In the half-open state, this takes one of the probe permits.
+     *
+     * @return absent if the request must fail fast
+     */
+    public synchronized Optional<Permit> tryAcquire()
+    {
+        switch (getState()) {
+            case CLOSED:
+                return Optional.of(currentPermit);
+            case HALF_OPEN:
+                if (issuedProbes < HALF_OPEN_PROBES) {
+                    issuedProbes++;
+                    return Optional.of(currentPermit);
+                }
+                return Optional.absent();
+            default:
+                return Optional.absent();
+        }
+    }
+
+    /**
+     * Return a permit taken by {@link #tryAcquire()} for a request that has not been sent
+     *
+     * @param permit
+     */
+    public synchronized void releaseUnused(Permit permit)
+    {
+        if (isCurrent(permit) && permit.isProbe() && issuedProbes > 0) {
+            issuedProbes--;
+        }
+    }
+
+    public synchronized void recordSuccess(Permit permit)
+    {
+        if (!isCurrent(permit)) {
+            return;
+        }
+        switch (state) {
+            case CLOSED:
+                record(false);
+                break;
+            case HALF_OPEN:
+                succeededProbes++;
+                if (succeededProbes >= HALF_OPEN_PROBES) {
+                    transitionTo(State.CLOSED);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    public synchronized void recordFailure(Permit permit)
+    {
+        if (!isCurrent(permit)) {
+            return;
+        }
+        switch (state) {
+            case CLOSED:
+                record(true);
+                break;
+            case HALF_OPEN:
+                transitionTo(State.OPEN);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Record the outcome of a request by its response status code, or 0 if no response is received
+     *
+     * @param permit the permit taken for the request
+     * @param statusCode
+     */
+    public void recordResult(Permit permit, int statusCode)
+    {
+        if (statusCode == TDClientHttpTooManyRequestsException.TOO_MANY_REQUESTS_429) {
+            // Throttling tells nothing about the API health
+            releaseUnused(permit);
+        }
+        else if (isFailure(statusCode)) {
+            recordFailure(permit);
+        }
+        else {
+            recordSuccess(permit);
+        }
+    }
+
+    private boolean isCurrent(Permit permit)
+    {
+        // Outcomes of permits issued before the last state change are ignored
+        return checkNotNull(permit, "permit is null").period == period;
+    }
+
+    static boolean isFailure(int statusCode)
+    {
+        return statusCode <= 0 || statusCode >= 500;
+    }
+
+    private void record(boolean failure)
+    {
+        if (windowCount == window.length) {
+            if (window[windowIndex]) {
+                failureCount--;
+            }
+        }
+        else {
+            windowCount++;
+        }
+        window[windowIndex] = failure;
+        if (failure) {
+            failureCount++;
+        }
+        windowIndex = (windowIndex + 1) % window.length;
+        if (windowCount == window.length && failureCount >= failureRateThreshold * windowCount) {
+            transitionTo(State.OPEN);
+        }
+    }
+
+    private void transitionTo(State newState)
+    {
+        State oldState = state;
+        state = newState;
+        period++;
+        currentPermit = new Permit(newState == State.HALF_OPEN, period);
+        switch (newState) {
+            case OPEN:
+                openedAtNanos = ticker.read();
+                break;
+            case HALF_OPEN:
+                issuedProbes = 0;
+                succeededProbes = 0;
+                break;
+            case CLOSED:
+                windowCount = 0;
+                windowIndex = 0;
+                failureCount = 0;
+                break;
+            default:
+                break;
+        }
+        logger.info("Circuit breaker of {} changed from {} to {}", endpoint, oldState, newState);
+        try {
+            listener.onStateChange(endpoint, oldState, newState);
+        }
+        catch (RuntimeException e) {
+            logger.warn("Circuit breaker listener failed", e);
+        }
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return String.format("CircuitBreaker(%s, %s, failures:%d/%d)", endpoint, state, failureCount, windowCount);
+    }
+}
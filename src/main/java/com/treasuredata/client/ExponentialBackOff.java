@@ -20,14 +20,72 @@ package com.treasuredata.client;
 
 import com.google.common.base.Preconditions;
 
+import java.util.concurrent.ThreadLocalRandom;
+
 /**
- *
+ * Computes retry intervals growing exponentially from the initial interval up to the max interval.
+ * <p/>
+ * Without jitter, every client retrying after the same failure waits for exactly the same intervals, and their retries
+ * hit the server at the same instants. {@link Jitter#EQUAL}, {@link Jitter#FULL} and {@link Jitter#DECORRELATED} randomize
+ * the intervals to spread such retries over time.
  */
 public class ExponentialBackOff
 {
+    public static enum Jitter
+    {
+        /**
+         * interval = min(max, initial * multiplier ^ (retry count))
+         */
+        NONE("none"),
+        /**
+         * A random interval between a half of the interval of {@link #NONE} and the interval of {@link #NONE}.
+         * The wait time is never shorter than a half of the initial interval.
+         */
+        EQUAL("equal"),
+        /**
+         * A random interval between 0 and the interval of {@link #NONE}. This spreads retries the most,
+         * but a retry can be sent immediately, regardless of the initial interval.
+         */
+        FULL("full"),
+        /**
+         * interval = min(max, random between initial and (previous interval) * multiplier), where the first previous interval is initial.
+         * Each interval depends on the previous random interval rather than the retry count.
+         */
+        DECORRELATED("decorrelated");
+
+        private final String name;
+
+        private Jitter(String name)
+        {
+            this.name = name;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public static Jitter fromName(String name)
+        {
+            for (Jitter jitter : values()) {
+                if (jitter.name.equalsIgnoreCase(name)) {
+                    return jitter;
+                }
+            }
+            throw new IllegalArgumentException("Unknown jitter type: " + name);
+        }
+
+        @Override
+        public String toString()
+        {
+            return name;
+        }
+    }
+
     private final int initialIntervalMills;
     private final int maxIntervalMillis;
     private final double multiplier;
+    private final Jitter jitter;
     private int executionCount;
     private int nextIntervalMillis;
 
@@ -37,10 +95,16 @@ public class ExponentialBackOff
     }
 
     public ExponentialBackOff(int initialIntervalMillis, int maxIntervalMillis, double multiplier)
+    {
+        this(initialIntervalMillis, maxIntervalMillis, multiplier, Jitter.NONE);
+    }
+
+    public ExponentialBackOff(int initialIntervalMillis, int maxIntervalMillis, double multiplier, Jitter jitter)
     {
         this.initialIntervalMills = initialIntervalMillis;
         this.maxIntervalMillis = maxIntervalMillis;
         this.multiplier = multiplier;
+        this.jitter = Preconditions.checkNotNull(jitter, "jitter is null");
         this.executionCount = 0;
         this.nextIntervalMillis = initialIntervalMillis;
 
@@ -56,9 +120,35 @@ public class ExponentialBackOff
 
     public int nextWaitTimeMillis()
     {
-        int currentWaitTimeMillis = nextIntervalMillis;
-        nextIntervalMillis = Math.min((int) (nextIntervalMillis * multiplier), maxIntervalMillis);
+        int currentWaitTimeMillis;
+        switch (jitter) {
+            case EQUAL:
+                currentWaitTimeMillis = randomBetween(nextIntervalMillis / 2, nextIntervalMillis);
+                nextIntervalMillis = Math.min((int) (nextIntervalMillis * multiplier), maxIntervalMillis);
+                break;
+            case FULL:
+                currentWaitTimeMillis = randomBetween(0, nextIntervalMillis);
+                nextIntervalMillis = Math.min((int) (nextIntervalMillis * multiplier), maxIntervalMillis);
+                break;
+            case DECORRELATED:
+                // nextIntervalMillis holds the previous interval here
+                currentWaitTimeMillis = Math.min(randomBetween(initialIntervalMills, (int) Math.min(nextIntervalMillis * multiplier, Integer.MAX_VALUE)), maxIntervalMillis);
+                nextIntervalMillis = currentWaitTimeMillis;
+                break;
+            default:
+                currentWaitTimeMillis = nextIntervalMillis;
+                nextIntervalMillis = Math.min((int) (nextIntervalMillis * multiplier), maxIntervalMillis);
+                break;
+        }
         executionCount++;
         return currentWaitTimeMillis;
     }
+
+    private static int randomBetween(int min, int max)
+    {
+        if (max <= min) {
+            return min;
+        }
+        return min + ThreadLocalRandom.current().nextInt(max - min + 1);
+    }
 }
@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.treasuredata.client;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Decides when to send a hedged (duplicate) request for a small idempotent GET request that has not received a response yet.
+ * <p/>
+ * The hedging delay of an endpoint is the given percentile of its recent response times, but no shorter than the min delay.
+ * No request is hedged until {@link #MIN_SAMPLES} response times are recorded for the endpoint.
+ * The extra load is capped: hedged requests in the last {@link RetryBudget#WINDOW_SECONDS} seconds can be at most maxRatio
+ * of all requests in the same period.
+ */
+public class HedgingPolicy
+{
+    public static final int MIN_SAMPLES = 32;
+    public static final double DEFAULT_MAX_RATIO = 0.05;
+    public static final int DEFAULT_MIN_DELAY_MILLIS = 50;
+
+    // The number of recent response times used for computing the percentile
+    private static final int MAX_SAMPLES = 2048;
+    // Recompute the delay after this number of new samples
+    private static final int RECOMPUTE_INTERVAL = 64;
+    private static final long MAX_TRACKABLE_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private final double percentile;
+    private final long minDelayMillis;
+    // Counts hedged requests against all requests in the same manner with retries
+    private final RetryBudget budget;
+    private final ConcurrentMap<String, ResponseTimes> responseTimes = new ConcurrentHashMap<>();
+
+    public HedgingPolicy(double percentile, long minDelayMillis, double maxRatio)
+    {
+        checkArgument(0.0 < percentile && percentile < 100.0, "percentile must be between 0 and 100");
+        checkArgument(minDelayMillis >= 0, "minDelayMillis must be >= 0");
+        checkArgument(maxRatio >= 0.0, "maxRatio must be >= 0");
+        this.percentile = percentile;
+        this.minDelayMillis = minDelayMillis;
+        this.budget = new RetryBudget(maxRatio, 0);
+    }
+
+    private ResponseTimes responseTimesOf(String endpoint)
+    {
+        ResponseTimes times = responseTimes.get(endpoint);
+        if (times == null) {
+            ResponseTimes newTimes = new ResponseTimes();
+            times = responseTimes.putIfAbsent(endpoint, newTimes);
+            if (times == null) {
+                times = newTimes;
+            }
+        }
+        return times;
+    }
+
+    /**
+     * Record the response time of a primary request. This must be recorded even if a hedged request has returned first,
+     * otherwise the recorded response times never exceed the hedging delay.
+     *
+     * @param endpoint
+     * @param elapsedNanos
+     */
+    public void recordResponseTime(String endpoint, long elapsedNanos)
+    {
+        responseTimesOf(endpoint).record(Math.min(MAX_TRACKABLE_MILLIS, Math.max(0, TimeUnit.NANOSECONDS.toMillis(elapsedNanos))));
+    }
+
+    @VisibleForTesting
+    long[] getResponseTimesMillis(String endpoint)
+    {
+        return responseTimesOf(endpoint).toArray();
+    }
+
+    /**
+     * Get the delay for sending a hedged request to the endpoint. This also counts the request for the load cap.
+     *
+     * @param endpoint
+     * @return absent if the response times of the endpoint are not known yet
+     */
+    public Optional<Long> getHedgeDelayMillis(String endpoint)
+    {
+        budget.recordSuccess();
+        Optional<Long> delay = responseTimesOf(endpoint).getPercentile(percentile);
+        if (!delay.isPresent()) {
+            return delay;
+        }
+        return Optional.of(Math.max(minDelayMillis, delay.get()));
+    }
+
+    /**
+     * Take a hedged request from the load cap
+     *
+     * @return true if a hedged request can be sent
+     */
+    public boolean tryAcquireHedge()
+    {
+        return budget.tryAcquireRetry();
+    }
+
+    /**
+     * Recent response times in a ring buffer. The percentile is computed by sorting a copy of them,
+     * which is cheap enough for a few thousand samples once in {@link #RECOMPUTE_INTERVAL} requests.
+     */
+    private static class ResponseTimes
+    {
+        private final long[] samples = new long[MAX_SAMPLES];
+        private int numSamples = 0;
+        private int next = 0;
+        private long samplesSinceRecompute = 0;
+        private Optional<Long> cachedPercentile = Optional.absent();
+
+        synchronized void record(long millis)
+        {
+            samples[next] = millis;
+            next = (next + 1) % MAX_SAMPLES;
+            numSamples = Math.min(numSamples + 1, MAX_SAMPLES);
+            samplesSinceRecompute++;
+        }
+
+        synchronized long[] toArray()
+        {
+            return Arrays.copyOf(samples, numSamples);
+        }
+
+        synchronized Optional<Long> getPercentile(double percentile)
+        {
+            if (cachedPercentile.isPresent() && samplesSinceRecompute < RECOMPUTE_INTERVAL) {
+                return cachedPercentile;
+            }
+            if (numSamples < MIN_SAMPLES) {
+                return Optional.absent();
+            }
+            long[] sorted = Arrays.copyOf(samples, numSamples);
+            Arrays.sort(sorted);
+            // Nearest-rank percentile
+            int rank = (int) Math.ceil(percentile / 100.0 * numSamples);
+            cachedPercentile = Optional.of(sorted[Math.max(0, Math.min(numSamples, rank) - 1)]);
+            samplesSinceRecompute = 0;
+            return cachedPercentile;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.treasuredata.client;
+
+import com.google.common.collect.ImmutableSortedMap;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects request counts and latency histograms for each API endpoint with HdrHistogram.
+ * <pre>
+ * HistogramTDClientMetrics metrics = new HistogramTDClientMetrics();
+ * TDClient client = TDClient.newBuilder().setMetrics(metrics).build();
+ * ...
+ * for (HistogramTDClientMetrics.EndpointStats stats : metrics.getEndpointStats().values()) {
+ *     System.out.println(stats);
+ * }
+ * </pre>
+ * Latencies are recorded in microseconds for each request attempt.
+ * <p/>
+ * HdrHistogram is an optional dependency of td-client, so applications using this class need to add
+ * org.hdrhistogram:HdrHistogram to their dependencies.
+ */
+public class HistogramTDClientMetrics
+        implements TDClientMetrics
+{
+    private static final int SIGNIFICANT_VALUE_DIGITS = 3;
+
+    private final ConcurrentMap<String, EndpointStats> endpoints = new ConcurrentHashMap<>();
+
+    private EndpointStats statsOf(String endpoint)
+    {
+        EndpointStats stats = endpoints.get(endpoint);
+        if (stats == null) {
+            EndpointStats newStats = new EndpointStats(endpoint);
+            stats = endpoints.putIfAbsent(endpoint, newStats);
+            if (stats == null) {
+                stats = newStats;
+            }
+        }
+        return stats;
+    }
+
+    @Override
+    public void onRequestStart(String endpoint)
+    {
+        statsOf(endpoint).inFlight.incrementAndGet();
+    }
+
+    @Override
+    public void onRequestEnd(String endpoint, int statusCode, long elapsedNanos, long bytesSent, long bytesReceived)
+    {
+        EndpointStats stats = statsOf(endpoint);
+        stats.inFlight.decrementAndGet();
+        stats.requests.incrementAndGet();
+        if (statusCode == 0 || statusCode >= 400) {
+            stats.errors.incrementAndGet();
+        }
+        stats.bytesSent.addAndGet(bytesSent);
+        stats.bytesReceived.addAndGet(bytesReceived);
+        stats.latencyMicros.recordValue(Math.max(0, TimeUnit.NANOSECONDS.toMicros(elapsedNanos)));
+    }
+
+    @Override
+    public void onRetry(String endpoint, int retryCount, long waitTimeMillis)
+    {
+        statsOf(endpoint).retries.incrementAndGet();
+    }
+
+    @Override
+    public void onTimeout(String endpoint, long elapsedNanos)
+    {
+        statsOf(endpoint).timeouts.incrementAndGet();
+    }
+
+    @Override
+    public void onResponseDecoded(String endpoint, long compressedBytes, long decodedBytes)
+    {
+        EndpointStats stats = statsOf(endpoint);
+        stats.compressedBytesReceived.addAndGet(compressedBytes);
+        stats.decodedBytesReceived.addAndGet(decodedBytes);
+    }
+
+    /**
+     * Returns the statistics of the endpoints called so far, sorted by the endpoint name
+     *
+     * @return
+     */
+    public Map<String, EndpointStats> getEndpointStats()
+    {
+        return ImmutableSortedMap.copyOf(endpoints);
+    }
+
+    /**
+     * Discard all statistics collected so far
+     */
+    public void reset()
+    {
+        endpoints.clear();
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        for (EndpointStats stats : getEndpointStats().values()) {
+            sb.append(stats).append("\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Statistics of a single API endpoint. Values are updated while requests are running.
+     */
+    public static class EndpointStats
+    {
+        private final String endpoint;
+        private final Histogram latencyMicros = new ConcurrentHistogram(SIGNIFICANT_VALUE_DIGITS);
+        private final AtomicLong inFlight = new AtomicLong();
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong retries = new AtomicLong();
+        private final AtomicLong timeouts = new AtomicLong();
+        private final AtomicLong bytesSent = new AtomicLong();
+        private final AtomicLong bytesReceived = new AtomicLong();
+        private final AtomicLong compressedBytesReceived = new AtomicLong();
+        private final AtomicLong decodedBytesReceived = new AtomicLong();
+
+        EndpointStats(String endpoint)
+        {
+            this.endpoint = endpoint;
+        }
+
+        public String getEndpoint()
+        {
+            return endpoint;
+        }
+
+        public long getInFlightRequestCount()
+        {
+            return inFlight.get();
+        }
+
+        /**
+         * The number of completed request attempts
+         */
+        public long getRequestCount()
+        {
+            return requests.get();
+        }
+
+        /**
+         * The number of request attempts that failed to receive a response, or received 4xx or 5xx responses
+         */
+        public long getErrorCount()
+        {
+            return errors.get();
+        }
+
+        public long getRetryCount()
+        {
+            return retries.get();
+        }
+
+        public long getTimeoutCount()
+        {
+            return timeouts.get();
+        }
+
+        public long getBytesSent()
+        {
+            return bytesSent.get();
+        }
+
+        /**
+         * The size of response bodies as received. Compressed responses are counted in the compressed size
+         */
+        public long getBytesReceived()
+        {
+            return bytesReceived.get();
+        }
+
+        /**
+         * The size of compressed response bodies as received
+         */
+        public long getCompressedBytesReceived()
+        {
+            return compressedBytesReceived.get();
+        }
+
+        /**
+         * The size of compressed response bodies after decoding
+         */
+        public long getDecodedBytesReceived()
+        {
+            return decodedBytesReceived.get();
+        }
+
+        /**
+         * @param percentile a value in 0.0 - 100.0
+         * @return the request latency at the given percentile in milliseconds
+         */
+        public double getLatencyMillisAtPercentile(double percentile)
+        {
+            return latencyMicros.getValueAtPercentile(percentile) / 1000.0;
+        }
+
+        public double getP50Millis()
+        {
+            return getLatencyMillisAtPercentile(50.0);
+        }
+
+        public double getP99Millis()
+        {
+            return getLatencyMillisAtPercentile(99.0);
+        }
+
+        public double getP999Millis()
+        {
+            return getLatencyMillisAtPercentile(99.9);
+        }
+
+        public double getMaxMillis()
+        {
+            return latencyMicros.getMaxValue() / 1000.0;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s: requests=%d, errors=%d, retries=%d, timeouts=%d, sent=%,dB, received=%,dB (compressed=%,dB, decoded=%,dB), p50=%.1fms, p99=%.1fms, p999=%.1fms, max=%.1fms",
+                    endpoint, getRequestCount(), getErrorCount(), getRetryCount(), getTimeoutCount(), getBytesSent(), getBytesReceived(),
+                    getCompressedBytesReceived(), getDecodedBytesReceived(),
+                    getP50Millis(), getP99Millis(), getP999Millis(), getMaxMillis());
+        }
+    }
+}
@@ -0,0 +1,496 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.treasuredata.client;
+
+import com.google.common.base.Optional;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.treasuredata.client.model.TDResultFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Downloads a job result into a file with concurrent HTTP Range requests.
+ * <p/>
+ * The result is split into chunks of chunkSize bytes, and up to maxConcurrentChunks chunks are downloaded at the same time.
+ * Each chunk is written to the file at its offset. When a chunk stream breaks, only the rest of the chunk is requested again.
+ * If the server does not return partial content, the result is downloaded with a single request.
+ */
+public class JobResultDownloader
+{
+    private static final Logger logger = LoggerFactory.getLogger(JobResultDownloader.class);
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes\\s+(\\d+)-(\\d+)/(\\d+|\\*)");
+
+    public static final long DEFAULT_CHUNK_SIZE = 64L * 1024 * 1024;
+    public static final int DEFAULT_MAX_CONCURRENT_CHUNKS = 4;
+    public static final int DEFAULT_MAX_CHUNK_RETRIES = 5;
+
+    private final TDHttpClient httpClient;
+    private final Optional<String> apiKeyCache;
+    private long chunkSize = DEFAULT_CHUNK_SIZE;
+    private int maxConcurrentChunks = DEFAULT_MAX_CONCURRENT_CHUNKS;
+    private int maxChunkRetries = DEFAULT_MAX_CHUNK_RETRIES;
+
+    JobResultDownloader(TDHttpClient httpClient, Optional<String> apiKeyCache)
+    {
+        this.httpClient = checkNotNull(httpClient, "httpClient is null");
+        this.apiKeyCache = checkNotNull(apiKeyCache, "apiKeyCache is null");
+    }
+
+    public JobResultDownloader setChunkSize(long chunkSize)
+    {
+        checkArgument(chunkSize > 0, "chunkSize must be > 0");
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    public JobResultDownloader setMaxConcurrentChunks(int maxConcurrentChunks)
+    {
+        checkArgument(maxConcurrentChunks > 0, "maxConcurrentChunks must be > 0");
+        this.maxConcurrentChunks = maxConcurrentChunks;
+        return this;
+    }
+
+    /**
+     * Set the number of times a broken chunk is requested again, in addition to the request retries of the client.
+     *
+     * @param maxChunkRetries
+     * @return
+     */
+    public JobResultDownloader setMaxChunkRetries(int maxChunkRetries)
+    {
+        checkArgument(maxChunkRetries >= 0, "maxChunkRetries must be >= 0");
+        this.maxChunkRetries = maxChunkRetries;
+        return this;
+    }
+
+    /**
+     * Download the job result into the target file.
+     * <p/>
+     * The download progress is recorded in a checkpoint file next to the target (target + ".progress").
+     * If a previous download of the same result into the target has failed, the download resumes from the checkpoint.
+     * The checkpoint file is removed when the download completes.
+     *
+     * @param jobId
+     * @param format the result format. resultSize must be the size of the result in this format
+     * @param resultSize the result size in bytes, usually {@link com.treasuredata.client.model.TDJob#getResultSize()}, or -1 if unknown
+     * @param target
+     * @return the number of downloaded bytes
+     * @throws TDClientException
+     */
+    public long download(String jobId, TDResultFormat format, long resultSize, Path target)
+            throws TDClientException
+    {
+        checkNotNull(jobId, "jobId is null");
+        checkNotNull(format, "format is null");
+        checkNotNull(target, "target is null");
+
+        long plannedChunkSize = resultSize > chunkSize ? chunkSize : -1;
+        Checkpoint checkpoint = Checkpoint.open(checkpointPathOf(target), jobId, format, resultSize, plannedChunkSize);
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            if (checkpoint.isResumed()) {
+                logger.info("Resuming the download of job {} result into {}", jobId, target);
+            }
+            else {
+                channel.truncate(0);
+            }
+            long size = -1;
+            if (plannedChunkSize > 0) {
+                try {
+                    size = downloadChunks(jobId, format, resultSize, channel, checkpoint);
+                    logger.debug("Downloaded {} bytes of job {} result in {} chunks", size, jobId, (resultSize + chunkSize - 1) / chunkSize);
+                }
+                catch (RangeNotSupportedException e) {
+                    logger.warn("Range requests are not supported for the result of job {}. Downloading it with a single request", jobId);
+                    channel.truncate(0);
+                    checkpoint.reset(-1);
+                }
+            }
+            if (size < 0) {
+                size = new Chunk(jobId, format, 0, 0, -1, -1, channel, checkpoint).download();
+            }
+            channel.truncate(size);
+            checkpoint.delete();
+            return size;
+        }
+        catch (IOException e) {
+            throw new TDClientException(TDClientException.ErrorType.INVALID_INPUT, "Failed to write the job result to " + target, e);
+        }
+    }
+
+    /**
+     * The checkpoint file of a download into the given target
+     *
+     * @param target
+     * @return
+     */
+    public static Path checkpointPathOf(Path target)
+    {
+        return target.resolveSibling(target.getFileName() + ".progress");
+    }
+
+    private long downloadChunks(String jobId, TDResultFormat format, long resultSize, FileChannel channel, Checkpoint checkpoint)
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(maxConcurrentChunks,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("td-result-download-%d").build());
+        List<Chunk> chunks = new ArrayList<>();
+        try {
+            List<Future<Long>> futures = new ArrayList<>();
+            int index = 0;
+            for (long offset = 0; offset < resultSize; offset += chunkSize) {
+                Chunk chunk = new Chunk(jobId, format, index++, offset, Math.min(offset + chunkSize, resultSize) - 1, resultSize, channel, checkpoint);
+                chunks.add(chunk);
+                futures.add(executor.submit(chunk));
+            }
+            long total = 0;
+            for (Future<Long> future : futures) {
+                total += future.get();
+            }
+            return total;
+        }
+        catch (InterruptedException e) {
+            throw new TDClientInterruptedException(e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof RangeNotSupportedException) {
+                throw (RangeNotSupportedException) e.getCause();
+            }
+            if (e.getCause() instanceof TDClientException) {
+                throw (TDClientException) e.getCause();
+            }
+            throw new TDClientProcessingException(e);
+        }
+        finally {
+            // Stop the remaining chunks before the file channel is closed. Chunk threads are not interrupted
+            // since an interrupted write closes the file channel shared by all chunks
+            for (Chunk chunk : chunks) {
+                chunk.cancel();
+            }
+            executor.shutdown();
+            try {
+                if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                    logger.warn("Some chunk downloads of job {} result are still running", jobId);
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static class RangeNotSupportedException
+            extends TDClientException
+    {
+        RangeNotSupportedException(String message)
+        {
+            super(ErrorType.UNEXPECTED_RESPONSE_CODE, message);
+        }
+    }
+
+    /**
+     * A byte range [start, end] of the result whose size is resultSize. end = -1 means the whole result of an unknown size.
+     */
+    private class Chunk
+            implements Callable<Long>
+    {
+        private final String jobId;
+        private final TDResultFormat format;
+        private final int index;
+        private final long start;
+        private final long end;
+        private final long resultSize;
+        private final FileChannel channel;
+        private final Checkpoint checkpoint;
+        private long written;
+        private volatile boolean cancelled = false;
+
+        Chunk(String jobId, TDResultFormat format, int index, long start, long end, long resultSize, FileChannel channel, Checkpoint checkpoint)
+        {
+            this.jobId = jobId;
+            this.format = format;
+            this.index = index;
+            this.start = start;
+            this.end = end;
+            this.resultSize = resultSize;
+            this.channel = channel;
+            this.checkpoint = checkpoint;
+            this.written = checkpoint.getWritten(index);
+        }
+
+        @Override
+        public Long call()
+        {
+            return download();
+        }
+
+        void cancel()
+        {
+            cancelled = true;
+        }
+
+        long download()
+        {
+            int failures = 0;
+            while (true) {
+                try {
+                    if (cancelled) {
+                        throw new CancellationException();
+                    }
+                    if (end < 0 || start + written <= end) {
+                        readFrom(start + written);
+                    }
+                    checkpoint.update(index, written, channel, true);
+                    return written;
+                }
+                catch (CancellationException e) {
+                    checkpoint.update(index, written, channel, true);
+                    throw e;
+                }
+                catch (IOException | TDClientException e) {
+                    checkpoint.update(index, written, channel, true);
+                    if (e instanceof RangeNotSupportedException || !isRetryable(e) || failures >= maxChunkRetries) {
+                        throw e instanceof TDClientException ? (TDClientException) e
+                                : new TDClientException(TDClientException.ErrorType.EXECUTION_FAILURE, "Failed to read the result of job " + jobId, (IOException) e);
+                    }
+                    failures++;
+                    logger.warn(String.format("Failed to read the result of job %s at offset %,d. Resuming (%d/%d)", jobId, start + written, failures, maxChunkRetries), e);
+                }
+            }
+        }
+
+        private boolean isRetryable(Exception e)
+        {
+            if (Thread.currentThread().isInterrupted() || e instanceof InterruptedIOException || e instanceof ClosedChannelException) {
+                return false;
+            }
+            if (e instanceof IOException) {
+                return true;
+            }
+            switch (((TDClientException) e).getErrorType()) {
+                case SERVER_ERROR:
+                case REQUEST_TIMEOUT:
+                case EXECUTION_FAILURE:
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        private void readFrom(long offset)
+                throws IOException
+        {
+            boolean ranged = end >= 0 || offset > 0;
+            TDApiRequest.Builder request = TDApiRequest.Builder
+                    .GET(TDClient.buildUrl("/v3/job/result", jobId))
+                    .addQueryParam("format", format.getName());
+            if (ranged) {
+                request.addHeader("Range", end >= 0 ? String.format("bytes=%d-%d", offset, end) : String.format("bytes=%d-", offset));
+            }
+            TDHttpClient.StreamResponse response = waitFor(httpClient.openStreamAsync(request.build(), apiKeyCache));
+            try (InputStream in = response.getContent()) {
+                if (ranged && end < 0 && response.getStatus() == 200) {
+                    // The server ignored the Range header of a resumed request. Read the whole result again
+                    logger.warn("Restarting the download of job {} result since the server does not support range requests", jobId);
+                    written = 0;
+                }
+                else if (ranged) {
+                    checkContentRange(response, offset);
+                }
+                byte[] buf = new byte[64 * 1024];
+                ByteBuffer bb = ByteBuffer.wrap(buf);
+                int readLen;
+                while ((readLen = in.read(buf)) != -1) {
+                    if (cancelled) {
+                        throw new CancellationException();
+                    }
+                    if (end >= 0 && start + written + readLen > end + 1) {
+                        throw new TDClientException(TDClientException.ErrorType.EXECUTION_FAILURE,
+                                String.format("Received more bytes than requested for the result of job %s", jobId));
+                    }
+                    bb.clear().limit(readLen);
+                    long position = start + written;
+                    while (bb.hasRemaining()) {
+                        position += channel.write(bb, position);
+                    }
+                    written += readLen;
+                    checkpoint.update(index, written, channel, false);
+                }
+            }
+            if (end >= 0 && start + written != end + 1) {
+                throw new IOException(String.format("Premature end of the result of job %s at offset %,d", jobId, start + written));
+            }
+        }
+
+        private void checkContentRange(TDHttpClient.StreamResponse response, long offset)
+        {
+            if (response.getStatus() != 206) {
+                throw new RangeNotSupportedException(String.format("Expected 206 Partial Content for the result of job %s, but got %d", jobId, response.getStatus()));
+            }
+            Optional<String> contentRange = response.getHeader("Content-Range");
+            Matcher m = CONTENT_RANGE.matcher(contentRange.or(""));
+            if (!m.matches() || Long.parseLong(m.group(1)) != offset || (resultSize >= 0 && !m.group(3).equals(Long.toString(resultSize)))) {
+                throw new RangeNotSupportedException(String.format("Unexpected Content-Range of the result of job %s: %s", jobId, contentRange.orNull()));
+            }
+        }
+    }
+
+    /**
+     * The number of bytes written for each chunk, saved in a properties file. The file content is forced to the disk
+     * before the checkpoint is saved, so the recorded bytes are always in the target file.
+     */
+    private static class Checkpoint
+    {
+        private static final long SAVE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+        private final Path path;
+        private final Properties properties;
+        private final boolean resumed;
+        private long lastSaveTimeNanos = System.nanoTime();
+
+        private Checkpoint(Path path, Properties properties, boolean resumed)
+        {
+            this.path = path;
+            this.properties = properties;
+            this.resumed = resumed;
+        }
+
+        static Checkpoint open(Path path, String jobId, TDResultFormat format, long resultSize, long chunkSize)
+        {
+            Properties expected = new Properties();
+            expected.setProperty("job_id", jobId);
+            expected.setProperty("format", format.getName());
+            expected.setProperty("result_size", Long.toString(resultSize));
+            expected.setProperty("chunk_size", Long.toString(chunkSize));
+
+            if (Files.exists(path)) {
+                Properties saved = new Properties();
+                try (InputStream in = Files.newInputStream(path)) {
+                    saved.load(in);
+                    boolean matched = true;
+                    for (String key : expected.stringPropertyNames()) {
+                        matched &= expected.getProperty(key).equals(saved.getProperty(key));
+                    }
+                    if (matched) {
+                        return new Checkpoint(path, saved, true);
+                    }
+                    logger.info("Ignoring the checkpoint {} of a different download", path);
+                }
+                catch (IOException | IllegalArgumentException e) {
+                    logger.warn("Ignoring a broken checkpoint " + path, e);
+                }
+            }
+            return new Checkpoint(path, expected, false);
+        }
+
+        boolean isResumed()
+        {
+            return resumed;
+        }
+
+        synchronized long getWritten(int chunk)
+        {
+            return Long.parseLong(properties.getProperty("written." + chunk, "0"));
+        }
+
+        synchronized void update(int chunk, long written, FileChannel channel, boolean force)
+        {
+            properties.setProperty("written." + chunk, Long.toString(written));
+            long now = System.nanoTime();
+            if (force || now - lastSaveTimeNanos >= SAVE_INTERVAL_NANOS) {
+                lastSaveTimeNanos = now;
+                try {
+                    channel.force(false);
+                    save();
+                }
+                catch (IOException e) {
+                    logger.warn("Failed to save the checkpoint " + path, e);
+                }
+            }
+        }
+
+        synchronized void reset(long chunkSize)
+        {
+            for (String key : properties.stringPropertyNames()) {
+                if (key.startsWith("written.")) {
+                    properties.remove(key);
+                }
+            }
+            properties.setProperty("chunk_size", Long.toString(chunkSize));
+        }
+
+        private void save()
+                throws IOException
+        {
+            Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                properties.store(out, "td-client job result download");
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        void delete()
+                throws IOException
+        {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    private static <T> T waitFor(Future<T> future)
+    {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            future.cancel(true);
+            throw new TDClientInterruptedException(e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof TDClientException) {
+                throw (TDClientException) e.getCause();
+            }
+            throw new TDClientProcessingException(e);
+        }
+    }
+}
@@ -0,0 +1,353 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.treasuredata.client;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.treasuredata.client.model.TDJob;
+import com.treasuredata.client.model.TDJobList;
+import com.treasuredata.client.model.TDJobSummary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Waits for the completion of many jobs with a single polling thread.
+ * <p/>
+ * In each polling round, the watched job ids are sorted and adjacent ones within a small id span are checked together with a
+ * {@link AsyncTDClient#listJobs(long, long)} range call. Jobs that are not covered by a range are checked with
+ * {@link AsyncTDClient#jobStatus(String)}. The next round starts when all requests of the previous round have completed,
+ * so a slow API never piles up polling requests.
+ */
+public class JobWatcher
+        implements AutoCloseable
+{
+    private static final Logger logger = LoggerFactory.getLogger(JobWatcher.class);
+
+    public static final long DEFAULT_POLL_INTERVAL_MILLIS = 2000;
+    /**
+     * The number of jobs returned by a single /v3/job/list call
+     */
+    public static final int DEFAULT_MAX_JOBS_PER_RANGE = 20;
+    /**
+     * The max difference between the first and the last job ids of a range. A range spanning many job ids
+     * likely contains other jobs, which can push the watched jobs out of the truncated job list.
+     */
+    public static final long DEFAULT_MAX_JOB_ID_SPAN = 100;
+
+    private final AsyncTDClient client;
+    private final long pollIntervalMillis;
+    private final int maxJobsPerRange;
+    private final long maxJobIdSpan;
+    private final ScheduledExecutorService scheduler;
+    private final ConcurrentMap<String, SettableFuture<TDJob.Status>> watchedJobs = new ConcurrentHashMap<>();
+    private boolean polling = false;
+    private boolean closed = false;
+
+    public JobWatcher(AsyncTDClient client)
+    {
+        this(client, DEFAULT_POLL_INTERVAL_MILLIS, DEFAULT_MAX_JOBS_PER_RANGE);
+    }
+
+    public JobWatcher(AsyncTDClient client, long pollIntervalMillis, int maxJobsPerRange)
+    {
+        this(client, pollIntervalMillis, maxJobsPerRange, DEFAULT_MAX_JOB_ID_SPAN);
+    }
+
+    public JobWatcher(AsyncTDClient client, long pollIntervalMillis, int maxJobsPerRange, long maxJobIdSpan)
+    {
+        checkArgument(pollIntervalMillis >= 0, "pollIntervalMillis must be >= 0");
+        checkArgument(maxJobsPerRange > 0, "maxJobsPerRange must be > 0");
+        checkArgument(maxJobIdSpan >= 0, "maxJobIdSpan must be >= 0");
+        this.client = checkNotNull(client, "client is null");
+        this.pollIntervalMillis = pollIntervalMillis;
+        this.maxJobsPerRange = maxJobsPerRange;
+        this.maxJobIdSpan = maxJobIdSpan;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("td-job-watcher-%d").build());
+    }
+
+    /**
+     * Start watching the given job. The returned future completes with the final job status (SUCCESS, ERROR or KILLED).
+     * Cancelling the future stops watching the job.
+     *
+     * @param jobId
+     * @return
+     */
+    public ListenableFuture<TDJob.Status> watch(final String jobId)
+    {
+        checkNotNull(jobId, "jobId is null");
+        SettableFuture<TDJob.Status> future = SettableFuture.create();
+        SettableFuture<TDJob.Status> existing = watchedJobs.putIfAbsent(jobId, future);
+        if (existing != null) {
+            return existing;
+        }
+        future.addListener(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                watchedJobs.remove(jobId);
+            }
+        }, MoreExecutors.directExecutor());
+        synchronized (this) {
+            if (closed) {
+                future.cancel(false);
+            }
+            else if (!polling) {
+                polling = true;
+                schedulePoll(0);
+            }
+        }
+        return future;
+    }
+
+    public int getNumberOfWatchedJobs()
+    {
+        return watchedJobs.size();
+    }
+
+    @Override
+    public void close()
+    {
+        synchronized (this) {
+            closed = true;
+        }
+        scheduler.shutdownNow();
+        for (SettableFuture<TDJob.Status> future : watchedJobs.values()) {
+            future.cancel(false);
+        }
+    }
+
+    private void schedulePoll(long delayMillis)
+    {
+        try {
+            scheduler.schedule(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    poll();
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        }
+        catch (RejectedExecutionException e) {
+            // Already closed
+        }
+    }
+
+    private void poll()
+    {
+        List<JobRange> ranges = groupJobIds(watchedJobs.keySet(), maxJobsPerRange, maxJobIdSpan);
+        if (ranges.isEmpty()) {
+            synchronized (this) {
+                if (watchedJobs.isEmpty()) {
+                    // Stop polling until a new job is watched
+                    polling = false;
+                    return;
+                }
+            }
+            // A job was added while grouping
+            schedulePoll(0);
+            return;
+        }
+
+        final AtomicInteger remaining = new AtomicInteger(ranges.size());
+        final Runnable onRequestCompletion = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if (remaining.decrementAndGet() == 0) {
+                    schedulePoll(pollIntervalMillis);
+                }
+            }
+        };
+        for (JobRange range : ranges) {
+            if (range.jobIds.size() == 1) {
+                checkJobStatus(range.jobIds.get(0), onRequestCompletion);
+            }
+            else {
+                checkJobRange(range, onRequestCompletion);
+            }
+        }
+    }
+
+    private void checkJobStatus(final String jobId, final Runnable onCompletion)
+    {
+        Futures.addCallback(client.jobStatus(jobId), new FutureCallback<TDJobSummary>()
+        {
+            @Override
+            public void onSuccess(TDJobSummary result)
+            {
+                updateStatus(jobId, result.getStatus());
+                onCompletion.run();
+            }
+
+            @Override
+            public void onFailure(Throwable t)
+            {
+                if (t instanceof TDClientHttpNotFoundException) {
+                    failJob(jobId, (TDClientException) t);
+                }
+                else {
+                    logger.warn(String.format("Failed to check the status of job %s. Retry in the next round", jobId), t);
+                }
+                onCompletion.run();
+            }
+        });
+    }
+
+    private void checkJobRange(final JobRange range, final Runnable onCompletion)
+    {
+        Futures.addCallback(client.listJobs(range.fromJobId, range.toJobId), new FutureCallback<TDJobList>()
+        {
+            @Override
+            public void onSuccess(TDJobList result)
+            {
+                Set<String> missingJobIds = new HashSet<>(range.jobIds);
+                for (TDJob job : result.getJobs()) {
+                    if (missingJobIds.remove(job.getJobId())) {
+                        updateStatus(job.getJobId(), job.getStatus());
+                    }
+                }
+                if (missingJobIds.isEmpty()) {
+                    onCompletion.run();
+                    return;
+                }
+                // The job list can be truncated when the range contains other jobs
+                final AtomicInteger remaining = new AtomicInteger(missingJobIds.size());
+                Runnable onMissingJobCompletion = new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        if (remaining.decrementAndGet() == 0) {
+                            onCompletion.run();
+                        }
+                    }
+                };
+                for (String jobId : missingJobIds) {
+                    checkJobStatus(jobId, onMissingJobCompletion);
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable t)
+            {
+                logger.warn(String.format("Failed to list jobs from %d to %d. Retry in the next round", range.fromJobId, range.toJobId), t);
+                onCompletion.run();
+            }
+        });
+    }
+
+    private void updateStatus(String jobId, TDJob.Status status)
+    {
+        if (status != null && status.isFinished()) {
+            // Remove the job before completing the future so that a caller woken up by the future no longer sees it
+            SettableFuture<TDJob.Status> future = watchedJobs.remove(jobId);
+            if (future != null) {
+                future.set(status);
+            }
+        }
+    }
+
+    private void failJob(String jobId, TDClientException e)
+    {
+        SettableFuture<TDJob.Status> future = watchedJobs.remove(jobId);
+        if (future != null) {
+            future.setException(e);
+        }
+    }
+
+    @VisibleForTesting
+    static class JobRange
+    {
+        final long fromJobId;
+        final long toJobId;
+        final List<String> jobIds;
+
+        JobRange(long fromJobId, long toJobId, List<String> jobIds)
+        {
+            this.fromJobId = fromJobId;
+            this.toJobId = toJobId;
+            this.jobIds = jobIds;
+        }
+    }
+
+    /**
+     * Group job ids into ranges of adjacent ids containing at most maxJobsPerRange jobs, whose first and last ids differ
+     * by at most maxJobIdSpan. Non-numeric job ids form a range of their own.
+     */
+    @VisibleForTesting
+    static List<JobRange> groupJobIds(Iterable<String> jobIds, int maxJobsPerRange, long maxJobIdSpan)
+    {
+        List<JobRange> ranges = new ArrayList<>();
+        TreeMap<Long, String> sortedJobIds = new TreeMap<>();
+        for (String jobId : jobIds) {
+            try {
+                sortedJobIds.put(Long.parseLong(jobId), jobId);
+            }
+            catch (NumberFormatException e) {
+                ranges.add(new JobRange(-1, -1, ImmutableList.of(jobId)));
+            }
+        }
+
+        List<String> current = new ArrayList<>();
+        long from = -1;
+        long to = -1;
+        for (Map.Entry<Long, String> entry : sortedJobIds.entrySet()) {
+            if (current.size() == maxJobsPerRange || (!current.isEmpty() && entry.getKey() - from > maxJobIdSpan)) {
+                ranges.add(new JobRange(from, to, current));
+                current = new ArrayList<>();
+            }
+            if (current.isEmpty()) {
+                from = entry.getKey();
+            }
+            to = entry.getKey();
+            current.add(entry.getValue());
+        }
+        if (!current.isEmpty()) {
+            ranges.add(new JobRange(from, to, current));
+        }
+        return ranges;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.treasuredata.client;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.AbstractIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import static com.treasuredata.client.TDClientException.ErrorType.INVALID_JSON_RESPONSE;
+
+/**
+ * Iterates over the elements of an array field in a JSON response while the response body is being received.
+ * Each element is bound to an object only when it is requested, so the memory usage does not depend on the size of the array.
+ * <p/>
+ * The response stream is closed when the iteration reaches the end of the array or fails.
+ * Call {@link #close()} to stop reading the response in the middle.
+ *
+ * @param <T>
+ */
+public class JsonArrayIterator<T>
+        extends AbstractIterator<T>
+        implements AutoCloseable
+{
+    private static final Logger logger = LoggerFactory.getLogger(JsonArrayIterator.class);
+
+    private final ObjectMapper objectMapper;
+    private final Class<T> elementType;
+    private final JsonParser parser;
+    private final String fieldName;
+    private boolean started = false;
+
+    JsonArrayIterator(ObjectMapper objectMapper, InputStream in, String fieldName, Class<T> elementType)
+            throws TDClientException
+    {
+        this.objectMapper = objectMapper;
+        this.elementType = elementType;
+        this.fieldName = fieldName;
+        try {
+            this.parser = objectMapper.getFactory().createParser(in);
+        }
+        catch (IOException e) {
+            closeQuietly(in);
+            throw new TDClientException(INVALID_JSON_RESPONSE, e);
+        }
+    }
+
+    @Override
+    protected T computeNext()
+    {
+        try {
+            if (!started) {
+                started = true;
+                if (!seekArrayField()) {
+                    close();
+                    return endOfData();
+                }
+            }
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.END_ARRAY) {
+                close();
+                return endOfData();
+            }
+            if (token == null) {
+                throw new TDClientException(INVALID_JSON_RESPONSE, String.format("Unexpected end of %s array", fieldName));
+            }
+            return objectMapper.readValue(parser, elementType);
+        }
+        catch (JsonMappingException e) {
+            logger.error("Jackson mapping error", e);
+            close();
+            throw new TDClientException(INVALID_JSON_RESPONSE, e);
+        }
+        catch (IOException e) {
+            close();
+            throw new TDClientException(INVALID_JSON_RESPONSE, e);
+        }
+        catch (TDClientException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Move the parser to the beginning of the array field in the top-level object.
+     *
+     * @return false if the field is missing or null
+     * @throws IOException
+     */
+    private boolean seekArrayField()
+            throws IOException
+    {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new TDClientException(INVALID_JSON_RESPONSE, "The response is not a JSON object");
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (fieldName.equals(name)) {
+                if (value == JsonToken.START_ARRAY) {
+                    return true;
+                }
+                if (value == JsonToken.VALUE_NULL) {
+                    return false;
+                }
+                throw new TDClientException(INVALID_JSON_RESPONSE, String.format("%s is not an array: %s", fieldName, value));
+            }
+            parser.skipChildren();
+        }
+        return false;
+    }
+
+    @Override
+    public void close()
+    {
+        try {
+            parser.close();
+        }
+        catch (IOException e) {
+            logger.debug("Failed to close the response stream", e);
+        }
+    }
+
+    private static void closeQuietly(InputStream in)
+    {
+        try {
+            in.close();
+        }
+        catch (IOException e) {
+            logger.debug("Failed to close the response stream", e);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.treasuredata.client;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Caps the number of retries to a fraction of recent successful requests, so that retries cannot multiply the load
+ * on a failing API.
+ * <p/>
+ * Successful requests and retries are counted in a sliding window of {@link #WINDOW_SECONDS} seconds.
+ * A retry is allowed while (retries in the window) < (ratio) * (successful requests in the window) + (minRetriesPerSecond) * {@link #WINDOW_SECONDS}.
+ * The minimum part allows a client sending only a few requests to retry them.
+ * A TDHttpClient has one budget, which is shared by all clients using it.
+ */
+public class RetryBudget
+{
+    public static final double DEFAULT_RATIO = 0.2;
+    public static final int DEFAULT_MIN_RETRIES_PER_SECOND = 10;
+    public static final int WINDOW_SECONDS = 10;
+
+    private final double ratio;
+    private final int minRetriesPerSecond;
+    private final Ticker ticker;
+    // Per-second counts in a ring buffer
+    private final long[] successCounts = new long[WINDOW_SECONDS];
+    private final long[] retryCounts = new long[WINDOW_SECONDS];
+    private long currentSecond;
+    private long successCountInWindow = 0;
+    private long retryCountInWindow = 0;
+
+    public RetryBudget(double ratio, int minRetriesPerSecond)
+    {
+        this(ratio, minRetriesPerSecond, Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    RetryBudget(double ratio, int minRetriesPerSecond, Ticker ticker)
+    {
+        checkArgument(ratio >= 0.0, "ratio must be >= 0");
+        checkArgument(minRetriesPerSecond >= 0, "minRetriesPerSecond must be >= 0");
+        this.ratio = ratio;
+        this.minRetriesPerSecond = minRetriesPerSecond;
+        this.ticker = checkNotNull(ticker, "ticker is null");
+        this.currentSecond = TimeUnit.NANOSECONDS.toSeconds(ticker.read());
+    }
+
+    /**
+     * A budget allowing unlimited retries
+     *
+     * @return
+     */
+    public static RetryBudget unlimited()
+    {
+        return new RetryBudget(Double.POSITIVE_INFINITY, 0);
+    }
+
+    public synchronized void recordSuccess()
+    {
+        advance();
+        successCounts[slot(currentSecond)]++;
+        successCountInWindow++;
+    }
+
+    /**
+     * Take a retry from the budget
+     *
+     * @return true if the retry is allowed
+     */
+    public synchronized boolean tryAcquireRetry()
+    {
+        if (Double.isInfinite(ratio)) {
+            return true;
+        }
+        advance();
+        double available = ratio * successCountInWindow + (double) minRetriesPerSecond * WINDOW_SECONDS - retryCountInWindow;
+        if (available < 1.0) {
+            return false;
+        }
+        retryCounts[slot(currentSecond)]++;
+        retryCountInWindow++;
+        return true;
+    }
+
+    private void advance()
+    {
+        long now = TimeUnit.NANOSECONDS.toSeconds(ticker.read());
+        long expired = Math.min(now - currentSecond, WINDOW_SECONDS);
+        for (long i = 1; i <= expired; ++i) {
+            int slot = slot(currentSecond + i);
+            successCountInWindow -= successCounts[slot];
+            retryCountInWindow -= retryCounts[slot];
+            successCounts[slot] = 0;
+            retryCounts[slot] = 0;
+        }
+        if (now > currentSecond) {
+            currentSecond = now;
+        }
+    }
+
+    private static int slot(long second)
+    {
+        return (int) (((second % WINDOW_SECONDS) + WINDOW_SECONDS) % WINDOW_SECONDS);
+    }
+}
@@ -19,15 +19,13 @@
 package com.treasuredata.client;
 
 import com.google.common.base.Optional;
-import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableMap;
 import org.eclipse.jetty.http.HttpMethod;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.io.UnsupportedEncodingException;
-import java.net.URLEncoder;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -41,12 +39,15 @@ import static com.google.common.base.Preconditions.checkNotNull;
 public class TDApiRequest
 {
     private static Logger logger = LoggerFactory.getLogger(TDApiRequest.class);
+    // Resources whose second path segment is a name given by users, not an action
+    private static final String[] NAMED_RESOURCES = {"bulk_loads"};
     private final HttpMethod method;
     private final String path;
     private final Map<String, String> queryParams;
     private final Map<String, String> headerParams;
     private final Optional<String> postJson;
     private final Optional<File> putFile;
+    private final Optional<ByteBuffer> putContent;
 
     TDApiRequest(
             HttpMethod method,
@@ -54,7 +55,8 @@ public class TDApiRequest
             Map<String, String> queryParams,
             Map<String, String> headerParams,
             Optional<String> postJson,
-            Optional<File> putFile
+            Optional<File> putFile,
+            Optional<ByteBuffer> putContent
     )
     {
         this.method = checkNotNull(method, "method is null");
@@ -63,6 +65,7 @@ public class TDApiRequest
         this.headerParams = checkNotNull(headerParams, "headerParams is null");
         this.postJson = checkNotNull(postJson, "postJson is null");
         this.putFile = checkNotNull(putFile, "putFile is null");
+        this.putContent = checkNotNull(putContent, "putContent is null");
     }
 
     public String getPath()
@@ -70,6 +73,68 @@ public class TDApiRequest
         return path;
     }
 
+    /**
+     * The name of the API endpoint, which is the first two path segments after /v3 joined with a period
+     * (e.g., job.status for /v3/job/status/{job_id}). Since path parameters are excluded,
+     * it can be used as a key of per-endpoint statistics. For resources addressed by a name in the second segment,
+     * the name is skipped (e.g., bulk_loads.jobs for /v3/bulk_loads/{name}/jobs).
+     *
+     * @return
+     */
+    public String getEndpointName()
+    {
+        return endpointNameOf(path);
+    }
+
+    static String endpointNameOf(String path)
+    {
+        int end = path.indexOf('?');
+        if (end < 0) {
+            end = path.length();
+        }
+        int start = 0;
+        while (start < end && path.charAt(start) == '/') {
+            start++;
+        }
+        if (path.startsWith("v3/", start)) {
+            start += 3;
+        }
+        StringBuilder name = new StringBuilder(24);
+        int numSegments = 0;
+        boolean skipNextSegment = false;
+        while (start < end && numSegments < 2) {
+            int next = path.indexOf('/', start);
+            if (next < 0 || next > end) {
+                next = end;
+            }
+            if (next > start) {
+                if (skipNextSegment) {
+                    skipNextSegment = false;
+                }
+                else {
+                    if (numSegments > 0) {
+                        name.append('.');
+                    }
+                    name.append(path, start, next);
+                    numSegments++;
+                    skipNextSegment = numSegments == 1 && isNamedResource(path, start, next);
+                }
+            }
+            start = next + 1;
+        }
+        return name.toString();
+    }
+
+    private static boolean isNamedResource(String path, int start, int end)
+    {
+        for (String resource : NAMED_RESOURCES) {
+            if (resource.length() == end - start && path.startsWith(resource, start)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public HttpMethod getMethod()
     {
         return method;
@@ -95,6 +160,16 @@ public class TDApiRequest
         return putFile;
     }
 
+    /**
+     * The content of a PUT request. The returned buffer is a duplicate, so reading it does not consume the content.
+     *
+     * @return
+     */
+    public Optional<ByteBuffer> getPutContent()
+    {
+        return putContent.isPresent() ? Optional.of(putContent.get().duplicate()) : putContent;
+    }
+
     public static class Builder
     {
         private static final Map<String, String> EMPTY_MAP = ImmutableMap.of();
@@ -104,6 +179,7 @@ public class TDApiRequest
         private Map<String, String> headerParams;
         private Optional<String> postJson = Optional.absent();
         private Optional<File> file = Optional.absent();
+        private Optional<ByteBuffer> content = Optional.absent();
 
         Builder(HttpMethod method, String path)
         {
@@ -161,6 +237,23 @@ public class TDApiRequest
             return this;
         }
 
+        public Builder setContent(byte[] content)
+        {
+            return setContent(ByteBuffer.wrap(content));
+        }
+
+        /**
+         * Set the remaining bytes of the buffer as the content. The buffer is not copied, so it must not be modified until the request completes.
+         *
+         * @param content
+         * @return
+         */
+        public Builder setContent(ByteBuffer content)
+        {
+            this.content = Optional.of(content.slice());
+            return this;
+        }
+
         public TDApiRequest build()
         {
             return new TDApiRequest(
@@ -169,18 +262,72 @@ public class TDApiRequest
                     queryParams != null ? queryParams : EMPTY_MAP,
                     headerParams != null ? headerParams : EMPTY_MAP,
                     postJson,
-                    file
+                    file,
+                    content
             );
         }
     }
 
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    /**
+     * Encode a value in application/x-www-form-urlencoded format. The result is the same with {@link java.net.URLEncoder#encode(String, String)} with UTF-8.
+     *
+     * @param value
+     * @return
+     */
     public static String urlEncode(String value)
     {
-        try {
-            return URLEncoder.encode(value, "UTF-8");
-        }
-        catch (UnsupportedEncodingException e) {
-            throw Throwables.propagate(e);
+        return appendUrlEncoded(new StringBuilder(value.length() + 16), value).toString();
+    }
+
+    /**
+     * Append a value encoded in the same manner with {@link #urlEncode(String)} without creating intermediate strings
+     *
+     * @param out
+     * @param value
+     * @return out
+     */
+    static StringBuilder appendUrlEncoded(StringBuilder out, String value)
+    {
+        int length = value.length();
+        for (int i = 0; i < length; ++i) {
+            char c = value.charAt(i);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '.' || c == '-' || c == '*' || c == '_') {
+                out.append(c);
+            }
+            else if (c == ' ') {
+                out.append('+');
+            }
+            else if (c < 0x80) {
+                appendEscapedByte(out, c);
+            }
+            else if (c < 0x800) {
+                appendEscapedByte(out, 0xC0 | (c >> 6));
+                appendEscapedByte(out, 0x80 | (c & 0x3F));
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                appendEscapedByte(out, 0xF0 | (codePoint >> 18));
+                appendEscapedByte(out, 0x80 | ((codePoint >> 12) & 0x3F));
+                appendEscapedByte(out, 0x80 | ((codePoint >> 6) & 0x3F));
+                appendEscapedByte(out, 0x80 | (codePoint & 0x3F));
+            }
+            else if (Character.isSurrogate(c)) {
+                // An unpaired surrogate is replaced with '?' in the UTF-8 encoding
+                appendEscapedByte(out, '?');
+            }
+            else {
+                appendEscapedByte(out, 0xE0 | (c >> 12));
+                appendEscapedByte(out, 0x80 | ((c >> 6) & 0x3F));
+                appendEscapedByte(out, 0x80 | (c & 0x3F));
+            }
         }
+        return out;
+    }
+
+    private static void appendEscapedByte(StringBuilder out, int b)
+    {
+        out.append('%').append(HEX_DIGITS[(b >> 4) & 0xF]).append(HEX_DIGITS[b & 0xF]);
     }
 }
@@ -60,6 +60,7 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.InputStream;
 import java.net.URL;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
@@ -69,7 +70,7 @@ import java.util.Properties;
 import java.util.regex.Pattern;
 
 import static com.google.common.base.Preconditions.checkNotNull;
-import static com.treasuredata.client.TDApiRequest.urlEncode;
+import static com.treasuredata.client.TDApiRequest.appendUrlEncoded;
 
 /**
  *
@@ -132,7 +133,25 @@ public class TDClient
     @Override
     public TDClient withApiKey(String newApiKey)
     {
-        return new TDClient(config, httpClient, Optional.of(newApiKey));
+        TDClient client = new TDClient(config, httpClient, Optional.of(newApiKey));
+        if (metadataCache.isPresent()) {
+            // Metadata visible to another user can be different
+            return client.withMetadataCache(metadataCache.get().getTtlMillis(), metadataCache.get().getRefreshAfterMillis());
+        }
+        return client;
+    }
+
+    /**
+     * Create a new TDClient that caches database and table lists for existsDatabase, existsTable, listDatabases and listTables.
+     * The new instance of TDClient shares the same HttpClient with this instance.
+     *
+     * @param ttlMillis the time to keep the lists
+     * @param refreshAfterMillis the time after which the lists are reloaded in the background upon access. Must be &lt;= ttlMillis
+     * @return
+     */
+    public TDClient withMetadataCache(long ttlMillis, long refreshAfterMillis)
+    {
+        return new TDClient(config, httpClient, apiKeyCache, ttlMillis, refreshAfterMillis);
     }
 
     @VisibleForTesting
@@ -140,6 +159,7 @@ public class TDClient
     @VisibleForTesting
     protected final TDHttpClient httpClient;
     protected final Optional<String> apiKeyCache;
+    protected final Optional<TDMetadataCache> metadataCache;
 
     public TDClient(TDClientConfig config)
     {
@@ -151,6 +171,52 @@ public class TDClient
         this.config = config;
         this.httpClient = httpClient;
         this.apiKeyCache = apiKeyCache;
+        this.metadataCache = Optional.absent();
+    }
+
+    private TDClient(TDClientConfig config, TDHttpClient httpClient, Optional<String> apiKeyCache, long cacheTtlMillis, long cacheRefreshAfterMillis)
+    {
+        this.config = config;
+        this.httpClient = httpClient;
+        this.apiKeyCache = apiKeyCache;
+        this.metadataCache = Optional.of(new TDMetadataCache(new TDMetadataCache.Loader()
+        {
+            @Override
+            public List<TDDatabase> listDatabases()
+            {
+                return doGet("/v3/database/list", TDDatabaseList.class).getDatabases();
+            }
+
+            @Override
+            public List<TDTable> listTables(String databaseName)
+            {
+                return doGet(buildUrl("/v3/table/list", databaseName), TDTableList.class).getTables();
+            }
+        }, cacheTtlMillis, cacheRefreshAfterMillis));
+    }
+
+    /**
+     * The metadata cache of this client, present if this client is created with {@link #withMetadataCache(long, long)}
+     *
+     * @return
+     */
+    public Optional<TDMetadataCache> getMetadataCache()
+    {
+        return metadataCache;
+    }
+
+    private void invalidateDatabases()
+    {
+        if (metadataCache.isPresent()) {
+            metadataCache.get().invalidateDatabases();
+        }
+    }
+
+    private void invalidateTables(String databaseName)
+    {
+        if (metadataCache.isPresent()) {
+            metadataCache.get().invalidateTables(databaseName);
+        }
     }
 
     public void close()
@@ -164,7 +230,7 @@ public class TDClient
         s.append(urlPrefix);
         for (String a : args) {
             s.append("/");
-            s.append(urlEncode(a));
+            appendUrlEncoded(s, a);
         }
         return s.toString();
     }
@@ -179,6 +245,20 @@ public class TDClient
         return httpClient.call(request, apiKeyCache, resultTypeClass);
     }
 
+    /**
+     * Iterate over an array field of the response while receiving it. Unlike {@link #doGet(String, Class)}, errors while reading
+     * the body are not retried, because a part of the body has been consumed already.
+     */
+    protected <ElementType> JsonArrayIterator<ElementType> doGetArray(String path, String fieldName, Class<ElementType> elementTypeClass)
+            throws TDClientException
+    {
+        checkNotNull(path, "path is null");
+        checkNotNull(elementTypeClass, "elementTypeClass is null");
+
+        TDApiRequest request = TDApiRequest.Builder.GET(path).build();
+        return httpClient.callForArray(request, apiKeyCache, fieldName, elementTypeClass);
+    }
+
     protected <ResultType> ResultType doPost(String path, Map<String, String> queryParam, Optional<String> jsonBody, Class<ResultType> resultTypeClass)
             throws TDClientException
     {
@@ -187,6 +267,11 @@ public class TDClient
         checkNotNull(jsonBody, "body is null");
         checkNotNull(resultTypeClass, "resultTypeClass is null");
 
+        return httpClient.call(buildPostRequest(path, queryParam, jsonBody), apiKeyCache, resultTypeClass);
+    }
+
+    static TDApiRequest buildPostRequest(String path, Map<String, String> queryParam, Optional<String> jsonBody)
+    {
         TDApiRequest.Builder request = TDApiRequest.Builder.POST(path);
         for (Map.Entry<String, String> e : queryParam.entrySet()) {
             request.addQueryParam(e.getKey(), e.getValue());
@@ -194,7 +279,7 @@ public class TDClient
         if (jsonBody.isPresent()) {
             request.setPostJson(jsonBody.get());
         }
-        return httpClient.call(request.build(), apiKeyCache, resultTypeClass);
+        return request.build();
     }
 
     protected <ResultType> ResultType doPost(String path, Class<ResultType> resultTypeClass)
@@ -228,6 +313,16 @@ public class TDClient
         return httpClient.call(request, apiKeyCache);
     }
 
+    protected String doPut(String path, byte[] content)
+            throws TDClientException
+    {
+        checkNotNull(path, "path is null");
+        checkNotNull(content, "content is null");
+
+        TDApiRequest request = TDApiRequest.Builder.PUT(path).setContent(content).build();
+        return httpClient.call(request, apiKeyCache);
+    }
+
     @Override
     public TDClient authenticate(String email, String password)
     {
@@ -257,6 +352,9 @@ public class TDClient
     public List<TDDatabase> listDatabases()
             throws TDClientException
     {
+        if (metadataCache.isPresent()) {
+            return metadataCache.get().listDatabases();
+        }
         TDDatabaseList result = doGet("/v3/database/list", TDDatabaseList.class);
         return result.getDatabases();
     }
@@ -293,7 +391,12 @@ public class TDClient
     public void createDatabase(String databaseName)
             throws TDClientException
     {
-        doPost(buildUrl("/v3/database/create", validateDatabaseName(databaseName)));
+        try {
+            doPost(buildUrl("/v3/database/create", validateDatabaseName(databaseName)));
+        }
+        finally {
+            invalidateDatabases();
+        }
     }
 
     @Override
@@ -312,7 +415,13 @@ public class TDClient
     public void deleteDatabase(String databaseName)
             throws TDClientException
     {
-        doPost(buildUrl("/v3/database/delete", validateDatabaseName(databaseName)));
+        try {
+            doPost(buildUrl("/v3/database/delete", validateDatabaseName(databaseName)));
+        }
+        finally {
+            invalidateDatabases();
+            invalidateTables(databaseName);
+        }
     }
 
     @Override
@@ -331,14 +440,35 @@ public class TDClient
     public List<TDTable> listTables(String databaseName)
             throws TDClientException
     {
+        if (metadataCache.isPresent()) {
+            return metadataCache.get().listTables(databaseName);
+        }
         TDTableList tableList = doGet(buildUrl("/v3/table/list", databaseName), TDTableList.class);
         return tableList.getTables();
     }
 
+    /**
+     * Iterate over the tables in the database while receiving the table list. Unlike {@link #listTables(String)},
+     * the memory usage does not grow with the number of tables. The iterator must be consumed to the end or closed.
+     * The metadata cache is not used.
+     *
+     * @param databaseName
+     * @return
+     * @throws TDClientException
+     */
+    public JsonArrayIterator<TDTable> iterateTables(String databaseName)
+            throws TDClientException
+    {
+        return doGetArray(buildUrl("/v3/table/list", databaseName), "tables", TDTable.class);
+    }
+
     @Override
     public boolean existsDatabase(String databaseName)
             throws TDClientException
     {
+        if (metadataCache.isPresent()) {
+            return metadataCache.get().existsDatabase(databaseName);
+        }
         return listDatabaseNames().contains(databaseName);
     }
 
@@ -347,6 +477,9 @@ public class TDClient
             throws TDClientException
     {
         try {
+            if (metadataCache.isPresent()) {
+                return metadataCache.get().getTable(databaseName, tableName).isPresent();
+            }
             for (TDTable table : listTables(databaseName)) {
                 if (table.getName().equals(tableName)) {
                     return true;
@@ -368,7 +501,12 @@ public class TDClient
     public void createTable(String databaseName, String tableName)
             throws TDClientException
     {
-        doPost(buildUrl("/v3/table/create", databaseName, validateTableName(tableName), TDTableType.LOG.getTypeName()));
+        try {
+            doPost(buildUrl("/v3/table/create", databaseName, validateTableName(tableName), TDTableType.LOG.getTypeName()));
+        }
+        finally {
+            invalidateTables(databaseName);
+        }
     }
 
     @Override
@@ -394,17 +532,27 @@ public class TDClient
     public void renameTable(String databaseName, String tableName, String newTableName, boolean overwrite)
             throws TDClientException
     {
-        doPost(buildUrl("/v3/table/rename", databaseName, tableName, validateTableName(newTableName)),
-                ImmutableMap.of("overwrite", Boolean.toString(overwrite)),
-                TDUpdateTableResult.class
-        );
+        try {
+            doPost(buildUrl("/v3/table/rename", databaseName, tableName, validateTableName(newTableName)),
+                    ImmutableMap.of("overwrite", Boolean.toString(overwrite)),
+                    TDUpdateTableResult.class
+            );
+        }
+        finally {
+            invalidateTables(databaseName);
+        }
     }
 
     @Override
     public void deleteTable(String databaseName, String tableName)
             throws TDClientException
     {
-        doPost(buildUrl("/v3/table/delete", databaseName, tableName));
+        try {
+            doPost(buildUrl("/v3/table/delete", databaseName, tableName));
+        }
+        finally {
+            invalidateTables(databaseName);
+        }
     }
 
     @Override
@@ -437,7 +585,12 @@ public class TDClient
     @Override
     public void swapTables(String databaseName, String tableName1, String tableName2)
     {
-        doPost(buildUrl("/v3/table/swap", databaseName, tableName1, tableName2));
+        try {
+            doPost(buildUrl("/v3/table/swap", databaseName, tableName1, tableName2));
+        }
+        finally {
+            invalidateTables(databaseName);
+        }
     }
 
     private TDTable getTable(String databaseName, String tableName)
@@ -445,6 +598,14 @@ public class TDClient
         checkNotNull(databaseName, "databaseName is null");
         checkNotNull(tableName, "tableName is null");
 
+        if (metadataCache.isPresent()) {
+            Optional<TDTable> table = metadataCache.get().getTable(databaseName, tableName);
+            if (table.isPresent()) {
+                return table.get();
+            }
+            throw new TDClientException(TDClientException.ErrorType.TARGET_NOT_FOUND, String.format("Table %s is not found", tableName));
+        }
+
         // TODO This should be improved via v4 api
         for (TDTable table : listTables(databaseName)) {
             if (table.getName().equals(tableName)) {
@@ -461,17 +622,41 @@ public class TDClient
         checkNotNull(tableName, "tableName is null");
         checkNotNull(newSchema, "newSchema is null");
 
+        try {
+            doPost(buildUrl("/v3/table/update-schema", databaseName, tableName), ImmutableMap.<String, String>of(), Optional.of(toSchemaJson(newSchema)), String.class);
+        }
+        finally {
+            invalidateTables(databaseName);
+        }
+    }
+
+    static String toSchemaJson(List<TDColumn> schema)
+    {
         ImmutableList.Builder<List<String>> builder = ImmutableList.<List<String>>builder();
-        for (TDColumn newColumn : newSchema) {
+        for (TDColumn newColumn : schema) {
             builder.add(ImmutableList.of(newColumn.getKeyString(), newColumn.getType().toString(), newColumn.getName()));
         }
-        String schemaJson = JSONObject.toJSONString(ImmutableMap.of("schema", builder.build()));
-        doPost(buildUrl("/v3/table/update-schema", databaseName, tableName), ImmutableMap.<String, String>of(), Optional.of(schemaJson), String.class);
+        return JSONObject.toJSONString(ImmutableMap.of("schema", builder.build()));
     }
 
     @Override
     public String submit(TDJobRequest jobRequest)
             throws TDClientException
+    {
+        if (logger.isDebugEnabled()) {
+            logger.debug("submit job: " + jobRequest);
+        }
+
+        TDJobSubmitResult result =
+                doPost(
+                        buildUrl("/v3/job/issue", jobRequest.getType().getType(), jobRequest.getDatabase()),
+                        toJobQueryParams(jobRequest),
+                        toJobConfigJson(jobRequest),
+                        TDJobSubmitResult.class);
+        return result.getJobId();
+    }
+
+    static Map<String, String> toJobQueryParams(TDJobRequest jobRequest)
     {
         Map<String, String> queryParam = new HashMap<>();
         queryParam.put("query", jobRequest.getQuery());
@@ -492,26 +677,20 @@ public class TDClient
         if (jobRequest.getScheduledTime().isPresent()) {
             queryParam.put("scheduled_time", String.valueOf(jobRequest.getScheduledTime().get()));
         }
+        return queryParam;
+    }
 
-        if (logger.isDebugEnabled()) {
-            logger.debug("submit job: " + jobRequest);
-        }
-
-        TDJobSubmitResult result =
-                doPost(
-                        buildUrl("/v3/job/issue", jobRequest.getType().getType(), jobRequest.getDatabase()),
-                        queryParam,
-                        jobRequest.getConfig().transform(new Function<ObjectNode, String>()
-                        {
-                            public String apply(ObjectNode config)
-                            {
-                                ObjectNode body = config.objectNode();
-                                body.set("config", config);
-                                return body.toString();
-                            }
-                        }),
-                        TDJobSubmitResult.class);
-        return result.getJobId();
+    static Optional<String> toJobConfigJson(TDJobRequest jobRequest)
+    {
+        return jobRequest.getConfig().transform(new Function<ObjectNode, String>()
+        {
+            public String apply(ObjectNode config)
+            {
+                ObjectNode body = config.objectNode();
+                body.set("config", config);
+                return body.toString();
+            }
+        });
     }
 
     @Override
@@ -528,6 +707,32 @@ public class TDClient
         return doGet(String.format("/v3/job/list?from_id=%d&to_id=%d", fromJobId, toJobId), TDJobList.class);
     }
 
+    /**
+     * Iterate over the recent jobs while receiving the job list. The iterator must be consumed to the end or closed.
+     *
+     * @return
+     * @throws TDClientException
+     */
+    public JsonArrayIterator<TDJob> iterateJobs()
+            throws TDClientException
+    {
+        return doGetArray("/v3/job/list", "jobs", TDJob.class);
+    }
+
+    /**
+     * Iterate over the jobs in the given job id range while receiving the job list. The iterator must be consumed to the end or closed.
+     *
+     * @param fromJobId
+     * @param toJobId
+     * @return
+     * @throws TDClientException
+     */
+    public JsonArrayIterator<TDJob> iterateJobs(long fromJobId, long toJobId)
+            throws TDClientException
+    {
+        return doGetArray(String.format("/v3/job/list?from_id=%d&to_id=%d", fromJobId, toJobId), "jobs", TDJob.class);
+    }
+
     @Override
     public void killJob(String jobId)
             throws TDClientException
@@ -542,6 +747,17 @@ public class TDClient
         return doGet(buildUrl("/v3/job/status", jobId), TDJobSummary.class);
     }
 
+    /**
+     * Create a JobWatcher that waits for the completion of jobs with a single polling thread.
+     * The watcher shares the http client with this instance and must be closed after use.
+     *
+     * @return
+     */
+    public JobWatcher newJobWatcher()
+    {
+        return new JobWatcher(new AsyncTDClient(config, httpClient, apiKeyCache));
+    }
+
     @Override
     public TDJob jobInfo(String jobId)
             throws TDClientException
@@ -560,6 +776,65 @@ public class TDClient
         return httpClient.<Result>call(request, apiKeyCache, resultStreamHandler);
     }
 
+    /**
+     * Create a JobResultDownloader that downloads job results into files with concurrent range requests.
+     *
+     * @return
+     */
+    public JobResultDownloader newJobResultDownloader()
+    {
+        return new JobResultDownloader(httpClient, apiKeyCache);
+    }
+
+    /**
+     * Download the job result into a file. A broken download is continued from the last written byte with range requests,
+     * and a failed download resumes from its checkpoint when this method is called again with the same target.
+     * msgpack.gz results are downloaded in parallel chunks. See {@link JobResultDownloader} for details.
+     *
+     * @param jobId
+     * @param format
+     * @param target
+     * @return the number of downloaded bytes
+     * @throws TDClientException
+     */
+    public long downloadJobResult(String jobId, TDResultFormat format, Path target)
+            throws TDClientException
+    {
+        // result_size is the size of the result stored in msgpack.gz format. Results in other formats are converted on the fly
+        long resultSize = format == TDResultFormat.MESSAGE_PACK_GZ ? jobInfo(jobId).getResultSize() : -1;
+        return newJobResultDownloader().download(jobId, format, resultSize, target);
+    }
+
+    /**
+     * Read the job result in msgpack.gz format with a {@link TDResultReader}. The column names and types are
+     * taken from the result schema of the job.
+     *
+     * @param jobId
+     * @param resultReader
+     * @param <Result>
+     * @return
+     * @throws TDClientException
+     */
+    public <Result> Result readJobResult(String jobId, final Function<TDResultReader, Result> resultReader)
+            throws TDClientException
+    {
+        Optional<String> schema = jobInfo(jobId).getResultSchema();
+        if (!schema.isPresent()) {
+            throw new TDClientException(TDClientException.ErrorType.INVALID_INPUT, "Job " + jobId + " has no result schema");
+        }
+        final String resultSchema = schema.get();
+        return jobResult(jobId, TDResultFormat.MESSAGE_PACK_GZ, new Function<InputStream, Result>()
+        {
+            @Override
+            public Result apply(InputStream input)
+            {
+                try (TDResultReader reader = new TDResultReader(input, resultSchema)) {
+                    return resultReader.apply(reader);
+                }
+            }
+        });
+    }
+
     @Override
     public List<TDBulkImportSession> listBulkImportSessions()
     {
@@ -590,6 +865,29 @@ public class TDClient
         doPut(buildUrl("/v3/bulk_import/upload_part", sessionName, uniquePartName), path);
     }
 
+    /**
+     * Upload a part from memory. The content must be a gzip-compressed msgpack stream.
+     *
+     * @param sessionName
+     * @param uniquePartName
+     * @param content
+     */
+    public void uploadBulkImportPart(String sessionName, String uniquePartName, byte[] content)
+    {
+        doPut(buildUrl("/v3/bulk_import/upload_part", sessionName, uniquePartName), content);
+    }
+
+    /**
+     * Create a BulkImportUploader that uploads part files of the given session in parallel.
+     *
+     * @param sessionName
+     * @return
+     */
+    public BulkImportUploader newBulkImportUploader(String sessionName)
+    {
+        return new BulkImportUploader(new AsyncTDClient(config, httpClient, apiKeyCache), sessionName);
+    }
+
     public void deleteBulkImportPart(String sessionName, String uniquePartName)
     {
         doPost(buildUrl("/v3/bulk_import/delete_part", sessionName, uniquePartName));
@@ -704,6 +1002,20 @@ public class TDClient
     @Override
     public String submitExportJob(TDExportJobRequest jobRequest)
             throws TDClientException
+    {
+        if (logger.isDebugEnabled()) {
+            logger.debug("submit job: " + jobRequest);
+        }
+
+        TDJobSubmitResult result =
+                doPost(
+                        buildUrl("/v3/export/run", jobRequest.getDatabase(), jobRequest.getTable()),
+                        toExportJobQueryParams(jobRequest),
+                        TDJobSubmitResult.class);
+        return result.getJobId();
+    }
+
+    static Map<String, String> toExportJobQueryParams(TDExportJobRequest jobRequest)
     {
         Map<String, String> queryParam = new HashMap<>();
         queryParam.put("from", Long.toString(jobRequest.getFrom().getTime() / 1000));
@@ -718,17 +1030,7 @@ public class TDClient
         if (jobRequest.getPoolName().isPresent()) {
             queryParam.put("pool_name", jobRequest.getPoolName().get());
         }
-
-        if (logger.isDebugEnabled()) {
-            logger.debug("submit job: " + jobRequest);
-        }
-
-        TDJobSubmitResult result =
-                doPost(
-                        buildUrl("/v3/export/run", jobRequest.getDatabase(), jobRequest.getTable()),
-                        queryParam,
-                        TDJobSubmitResult.class);
-        return result.getJobId();
+        return queryParam;
     }
 
     @Override
@@ -752,15 +1054,18 @@ public class TDClient
     public TDBulkLoadSessionStartResult startBulkLoadSession(String name, TDBulkLoadSessionStartRequest request)
     {
         Map<String, String> queryParams = ImmutableMap.of();
-        String payload = null;
+        return doPost(buildUrl("/v3/bulk_loads", name, "jobs"),
+                queryParams, Optional.of(toBulkLoadPayload(request)),
+                TDBulkLoadSessionStartResult.class);
+    }
+
+    static String toBulkLoadPayload(TDBulkLoadSessionStartRequest request)
+    {
         try {
-            payload = ObjectMappers.compactMapper().writeValueAsString(request);
+            return ObjectMappers.compactMapper().writeValueAsString(request);
         }
         catch (JsonProcessingException e) {
             throw Throwables.propagate(e);
         }
-        return doPost(buildUrl("/v3/bulk_loads", name, "jobs"),
-                queryParams, Optional.of(payload),
-                TDBulkLoadSessionStartResult.class);
     }
 }
@@ -32,12 +32,20 @@ import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Properties;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+
 /**
  * TD Client configuration
  */
 public class TDClientConfig
 {
     public static final String ENV_TD_CLIENT_APIKEY = "TD_API_KEY";
+    /**
+     * The defaults of Jetty HttpClient
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_DESTINATION = 64;
+    public static final ExponentialBackOff.Jitter DEFAULT_RETRY_JITTER = ExponentialBackOff.Jitter.EQUAL;
+    public static final int DEFAULT_MAX_REQUESTS_QUEUED_PER_DESTINATION = 1024;
 
     /**
      * Keys for configuring TDClient with a properties file (or System properties)
@@ -54,9 +62,22 @@ public class TDClientConfig
         RETRY_INITIAL_INTERVAL_MILLIS("td.client.retry.initial-interval", "backoff retry interval = (interval) * (multiplier) ^ (retry count)"),
         RETRY_MAX_INTERVAL_MILLIS("td.client.retry.max-interval", "max retry interval"),
         RETRY_MULTIPLIER("td.client.retry.multiplier", "retry interval multiplier"),
+        RETRY_JITTER("td.client.retry.jitter", "randomization of retry intervals: none, equal, full or decorrelated"),
+        RETRY_BUDGET_RATIO("td.client.retry.budget-ratio", "max ratio of retries to recent successful requests. A negative value disables the retry budget"),
+        RETRY_BUDGET_MIN_RETRIES_PER_SECOND("td.client.retry.budget-min-retries-per-second", "retries per second allowed regardless of the retry budget ratio"),
+        CIRCUIT_BREAKER_FAILURE_RATE_THRESHOLD("td.client.circuit-breaker.failure-rate-threshold", "failure rate of an endpoint group to open its circuit breaker. 0 disables circuit breakers"),
+        CIRCUIT_BREAKER_WINDOW_SIZE("td.client.circuit-breaker.window-size", "the number of recent requests to compute the failure rate"),
+        CIRCUIT_BREAKER_OPEN_DURATION_MILLIS("td.client.circuit-breaker.open-duration", "duration to fail requests fast before sending probe requests"),
+        HEDGE_PERCENTILE("td.client.hedge.percentile", "percentile of recent response times to wait before sending a duplicate GET request. 0 disables hedging"),
+        HEDGE_MIN_DELAY_MILLIS("td.client.hedge.min-delay", "minimum delay before sending a duplicate GET request"),
+        HEDGE_MAX_RATIO("td.client.hedge.max-ratio", "max ratio of duplicate GET requests to all GET requests"),
         CONNECT_TIMEOUT_MILLIS("td.client.connect-timeout", "connection timeout before reaching the API"),
         IDLE_TIMEOUT_MILLIS("td.client.idle-timeout", "idle connection timeout when no data is coming from API"),
         CONNECTION_POOL_SIZE("td.client.connection-pool-size", "connection pool size"),
+        MAX_CONNECTIONS_PER_DESTINATION("td.client.max-connections-per-destination", "max number of connections to the API endpoint"),
+        MAX_REQUESTS_QUEUED_PER_DESTINATION("td.client.max-requests-queued-per-destination", "max number of requests waiting for a connection to the API endpoint"),
+        WARM_UP_CONNECTIONS("td.client.warm-up-connections", "number of connections to the API endpoint to open when starting the client"),
+        USE_VIRTUAL_THREADS("td.client.use-virtual-threads", "process http responses on virtual threads (Java 21 or later)"),
         PROXY_HOST("td.client.proxy.host", "Proxy host (e.g., myproxy.com)"),
         PROXY_PORT("td.client.proxy.port", "Proxy port number"),
         PROXY_USER("td.client.proxy.user", "Proxy user name"),
@@ -96,9 +117,30 @@ public class TDClientConfig
     public final int retryInitialIntervalMillis;
     public final int retryMaxIntervalMillis;
     public final double retryMultiplier;
+    public final ExponentialBackOff.Jitter retryJitter;
+    public final double retryBudgetRatio;
+    public final int retryBudgetMinRetriesPerSecond;
+    public final double circuitBreakerFailureRateThreshold;
+    public final int circuitBreakerWindowSize;
+    public final int circuitBreakerOpenDurationMillis;
+    public final double hedgePercentile;
+    public final int hedgeMinDelayMillis;
+    public final double hedgeMaxRatio;
     public final int connectTimeoutMillis;
     public final int idleTimeoutMillis;
     public final int connectionPoolSize;
+    public final int maxConnectionsPerDestination;
+    public final int maxRequestsQueuedPerDestination;
+    public final int warmUpConnections;
+    public final boolean useVirtualThreads;
+    /**
+     * Listener of API request events. This is not a part of the properties
+     */
+    public final TDClientMetrics metrics;
+    /**
+     * Listener of circuit breaker state changes. This is not a part of the properties
+     */
+    public final CircuitBreaker.Listener circuitBreakerListener;
 
     @JsonCreator
     public TDClientConfig(
@@ -117,6 +159,45 @@ public class TDClientConfig
             int idleTimeoutMillis,
             int connectionPoolSize
     )
+    {
+        this(endpoint, port, useSSL, apiKey, user, password, proxy, retryLimit, retryInitialIntervalMillis, retryMaxIntervalMillis, retryMultiplier,
+                DEFAULT_RETRY_JITTER, RetryBudget.DEFAULT_RATIO, RetryBudget.DEFAULT_MIN_RETRIES_PER_SECOND, CircuitBreaker.DISABLED, CircuitBreaker.DEFAULT_WINDOW_SIZE, CircuitBreaker.DEFAULT_OPEN_DURATION_MILLIS,
+                0.0, HedgingPolicy.DEFAULT_MIN_DELAY_MILLIS, HedgingPolicy.DEFAULT_MAX_RATIO,
+                connectTimeoutMillis, idleTimeoutMillis, connectionPoolSize,
+                DEFAULT_MAX_CONNECTIONS_PER_DESTINATION, DEFAULT_MAX_REQUESTS_QUEUED_PER_DESTINATION, 0, false, TDClientMetrics.NONE, CircuitBreaker.Listener.NONE);
+    }
+
+    public TDClientConfig(
+            Optional<String> endpoint,
+            Optional<Integer> port,
+            boolean useSSL,
+            Optional<String> apiKey,
+            Optional<String> user,
+            Optional<String> password,
+            Optional<ProxyConfig> proxy,
+            int retryLimit,
+            int retryInitialIntervalMillis,
+            int retryMaxIntervalMillis,
+            double retryMultiplier,
+            ExponentialBackOff.Jitter retryJitter,
+            double retryBudgetRatio,
+            int retryBudgetMinRetriesPerSecond,
+            double circuitBreakerFailureRateThreshold,
+            int circuitBreakerWindowSize,
+            int circuitBreakerOpenDurationMillis,
+            double hedgePercentile,
+            int hedgeMinDelayMillis,
+            double hedgeMaxRatio,
+            int connectTimeoutMillis,
+            int idleTimeoutMillis,
+            int connectionPoolSize,
+            int maxConnectionsPerDestination,
+            int maxRequestsQueuedPerDestination,
+            int warmUpConnections,
+            boolean useVirtualThreads,
+            TDClientMetrics metrics,
+            CircuitBreaker.Listener circuitBreakerListener
+    )
     {
         this.endpoint = endpoint.or("api.treasuredata.com");
         this.port = port;
@@ -129,9 +210,24 @@ public class TDClientConfig
         this.retryInitialIntervalMillis = retryInitialIntervalMillis;
         this.retryMaxIntervalMillis = retryMaxIntervalMillis;
         this.retryMultiplier = retryMultiplier;
+        this.retryJitter = checkNotNull(retryJitter, "retryJitter is null");
+        this.retryBudgetRatio = retryBudgetRatio;
+        this.retryBudgetMinRetriesPerSecond = retryBudgetMinRetriesPerSecond;
+        this.circuitBreakerFailureRateThreshold = circuitBreakerFailureRateThreshold;
+        this.circuitBreakerWindowSize = circuitBreakerWindowSize;
+        this.circuitBreakerOpenDurationMillis = circuitBreakerOpenDurationMillis;
+        this.hedgePercentile = hedgePercentile;
+        this.hedgeMinDelayMillis = hedgeMinDelayMillis;
+        this.hedgeMaxRatio = hedgeMaxRatio;
         this.connectTimeoutMillis = connectTimeoutMillis;
         this.idleTimeoutMillis = idleTimeoutMillis;
         this.connectionPoolSize = connectionPoolSize;
+        this.maxConnectionsPerDestination = maxConnectionsPerDestination;
+        this.maxRequestsQueuedPerDestination = maxRequestsQueuedPerDestination;
+        this.warmUpConnections = warmUpConnections;
+        this.useVirtualThreads = useVirtualThreads;
+        this.metrics = checkNotNull(metrics, "metrics is null");
+        this.circuitBreakerListener = checkNotNull(circuitBreakerListener, "circuitBreakerListener is null");
     }
 
     private static <V> void saveProperty(Properties p, Type config, V value)
@@ -178,8 +274,21 @@ public class TDClientConfig
         saveProperty(p, Type.RETRY_INITIAL_INTERVAL_MILLIS, retryInitialIntervalMillis);
         saveProperty(p, Type.RETRY_MAX_INTERVAL_MILLIS, retryMaxIntervalMillis);
         saveProperty(p, Type.RETRY_MULTIPLIER, retryMultiplier);
+        saveProperty(p, Type.RETRY_JITTER, retryJitter);
+        saveProperty(p, Type.RETRY_BUDGET_RATIO, retryBudgetRatio);
+        saveProperty(p, Type.RETRY_BUDGET_MIN_RETRIES_PER_SECOND, retryBudgetMinRetriesPerSecond);
+        saveProperty(p, Type.CIRCUIT_BREAKER_FAILURE_RATE_THRESHOLD, circuitBreakerFailureRateThreshold);
+        saveProperty(p, Type.CIRCUIT_BREAKER_WINDOW_SIZE, circuitBreakerWindowSize);
+        saveProperty(p, Type.CIRCUIT_BREAKER_OPEN_DURATION_MILLIS, circuitBreakerOpenDurationMillis);
+        saveProperty(p, Type.HEDGE_PERCENTILE, hedgePercentile);
+        saveProperty(p, Type.HEDGE_MIN_DELAY_MILLIS, hedgeMinDelayMillis);
+        saveProperty(p, Type.HEDGE_MAX_RATIO, hedgeMaxRatio);
         saveProperty(p, Type.CONNECT_TIMEOUT_MILLIS, connectTimeoutMillis);
         saveProperty(p, Type.CONNECTION_POOL_SIZE, connectionPoolSize);
+        saveProperty(p, Type.MAX_CONNECTIONS_PER_DESTINATION, maxConnectionsPerDestination);
+        saveProperty(p, Type.MAX_REQUESTS_QUEUED_PER_DESTINATION, maxRequestsQueuedPerDestination);
+        saveProperty(p, Type.WARM_UP_CONNECTIONS, warmUpConnections);
+        saveProperty(p, Type.USE_VIRTUAL_THREADS, useVirtualThreads);
         return p;
     }
 
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.treasuredata.client;
+
+/**
+ * A listener of API request events, which is registered with {@link AbstractTDClientBuilder#setMetrics(TDClientMetrics)}.
+ * <p/>
+ * Events are reported for each HTTP request attempt, so a call retried twice reports three pairs of
+ * {@link #onRequestStart(String)} and {@link #onRequestEnd(String, int, long, long, long)}.
+ * Endpoints are identified by {@link TDApiRequest#getEndpointName()} (e.g., job.status).
+ * <p/>
+ * Methods are called from Jetty client threads, so implementations must be thread-safe and must not block.
+ *
+ * @see HistogramTDClientMetrics
+ */
+public interface TDClientMetrics
+{
+    /**
+     * A listener that ignores all events
+     */
+    TDClientMetrics NONE = new TDClientMetrics()
+    {
+        @Override
+        public void onRequestStart(String endpoint)
+        {
+        }
+
+        @Override
+        public void onRequestEnd(String endpoint, int statusCode, long elapsedNanos, long bytesSent, long bytesReceived)
+        {
+        }
+
+        @Override
+        public void onRetry(String endpoint, int retryCount, long waitTimeMillis)
+        {
+        }
+
+        @Override
+        public void onTimeout(String endpoint, long elapsedNanos)
+        {
+        }
+
+        @Override
+        public void onResponseDecoded(String endpoint, long compressedBytes, long decodedBytes)
+        {
+        }
+    };
+
+    /**
+     * Called when an HTTP request is about to be sent
+     *
+     * @param endpoint
+     */
+    void onRequestStart(String endpoint);
+
+    /**
+     * Called when an HTTP request has completed, including its response body.
+     *
+     * @param endpoint
+     * @param statusCode the response status code, or 0 if the request failed before receiving the whole response (e.g., connection failures and timeouts)
+     * @param elapsedNanos the time from {@link #onRequestStart(String)}
+     * @param bytesSent the size of the request body
+     * @param bytesReceived the size of the response body as received, which is compressed if the response is compressed
+     */
+    void onRequestEnd(String endpoint, int statusCode, long elapsedNanos, long bytesSent, long bytesReceived);
+
+    /**
+     * Called when a failed request is scheduled to be retried
+     *
+     * @param endpoint
+     * @param retryCount the number of retries including this one
+     * @param waitTimeMillis the wait time before the retry
+     */
+    void onRetry(String endpoint, int retryCount, long waitTimeMillis);
+
+    /**
+     * Called when an HTTP request has timed out. {@link #onRequestEnd(String, int, long, long, long)} is also called for the request.
+     *
+     * @param endpoint
+     * @param elapsedNanos
+     */
+    void onTimeout(String endpoint, long elapsedNanos);
+
+    /**
+     * Called after {@link #onRequestEnd(String, int, long, long, long)} when a compressed response body has been decoded
+     *
+     * @param endpoint
+     * @param compressedBytes the size of the response body as received
+     * @param decodedBytes the size of the decoded response body
+     */
+    void onResponseDecoded(String endpoint, long compressedBytes, long decodedBytes);
+}
@@ -25,19 +25,32 @@ import com.fasterxml.jackson.datatype.guava.GuavaModule;
 import com.fasterxml.jackson.datatype.jsonorg.JsonOrgModule;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
-import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
 import com.google.common.base.Throwables;
 import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 import com.treasuredata.client.impl.ProxyAuthResult;
 import com.treasuredata.client.model.TDApiErrorMessage;
+import org.eclipse.jetty.client.ConnectionPool;
+import org.eclipse.jetty.client.GZIPContentDecoder;
 import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.HttpContentResponse;
 import org.eclipse.jetty.client.HttpProxy;
 import org.eclipse.jetty.client.HttpResponseException;
 import org.eclipse.jetty.client.Origin;
+import org.eclipse.jetty.client.PoolingHttpDestination;
+import org.eclipse.jetty.client.api.Connection;
+import org.eclipse.jetty.client.api.ContentProvider;
 import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.client.api.Destination;
 import org.eclipse.jetty.client.api.Request;
 import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.util.BufferingResponseListener;
+import org.eclipse.jetty.client.util.ByteBufferContentProvider;
 import org.eclipse.jetty.client.util.InputStreamResponseListener;
 import org.eclipse.jetty.client.util.StringContentProvider;
 import org.eclipse.jetty.http.HttpField;
@@ -47,31 +60,42 @@ import org.eclipse.jetty.http.HttpStatus;
 import org.eclipse.jetty.util.HttpCookieStore;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.Scheduler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
-import static com.treasuredata.client.TDApiRequest.urlEncode;
+import static com.treasuredata.client.TDApiRequest.appendUrlEncoded;
 import static com.treasuredata.client.TDClientException.ErrorType.CLIENT_ERROR;
 import static com.treasuredata.client.TDClientException.ErrorType.INVALID_INPUT;
 import static com.treasuredata.client.TDClientException.ErrorType.INVALID_JSON_RESPONSE;
 import static com.treasuredata.client.TDClientException.ErrorType.PROXY_AUTHENTICATION_FAILURE;
 import static com.treasuredata.client.TDClientException.ErrorType.SERVER_ERROR;
 import static com.treasuredata.client.TDClientException.ErrorType.UNEXPECTED_RESPONSE_CODE;
+import static com.treasuredata.client.TDClientHttpTooManyRequestsException.TOO_MANY_REQUESTS_429;
 
 /**
  * An extension of Jetty HttpClient with request retry handler
@@ -83,15 +107,41 @@ public class TDHttpClient
     protected final TDClientConfig config;
     private final HttpClient httpClient;
     private final ObjectMapper objectMapper;
+    private final AdaptiveRateLimiter rateLimiter;
+    private final RetryBudget retryBudget;
+    private final ConcurrentMap<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+    private final Optional<HedgingPolicy> hedgingPolicy;
+    private final Optional<ExecutorService> virtualThreadExecutor;
+    // Parts of requests precomputed from the config
+    private final String scheme;
+    private final String baseUri;
+    private final Optional<String> defaultAuthorizationHeader;
+    private volatile AuthorizationHeader lastAuthorizationHeader;
 
     public TDHttpClient(TDClientConfig config)
     {
         this.config = config;
+        this.scheme = config.useSSL ? "https" : "http";
+        this.baseUri = scheme + "://" + config.endpoint + (config.port.isPresent() ? ":" + config.port.get() : "");
+        this.defaultAuthorizationHeader = config.apiKey.isPresent() ? Optional.of("TD1 " + config.apiKey.get()) : Optional.<String>absent();
+        this.rateLimiter = new AdaptiveRateLimiter(1, maxConcurrentRequestsOf(config), AdaptiveRateLimiter.DEFAULT_DECREASE_FACTOR);
+        this.retryBudget = config.retryBudgetRatio < 0 ? RetryBudget.unlimited() : new RetryBudget(config.retryBudgetRatio, config.retryBudgetMinRetriesPerSecond);
+        this.hedgingPolicy = config.hedgePercentile > 0.0
+                ? Optional.of(new HedgingPolicy(config.hedgePercentile, config.hedgeMinDelayMillis, config.hedgeMaxRatio))
+                : Optional.<HedgingPolicy>absent();
         this.httpClient = config.useSSL ? new HttpClient(new SslContextFactory()) : new HttpClient();
         httpClient.setConnectTimeout(config.connectTimeoutMillis);
         httpClient.setIdleTimeout(config.idleTimeoutMillis);
         httpClient.setTCPNoDelay(true);
-        httpClient.setExecutor(new QueuedThreadPool(config.connectionPoolSize, 2));
+        httpClient.setMaxConnectionsPerDestination(config.maxConnectionsPerDestination);
+        httpClient.setMaxRequestsQueuedPerDestination(config.maxRequestsQueuedPerDestination);
+        this.virtualThreadExecutor = newVirtualThreadExecutor(config);
+        if (virtualThreadExecutor.isPresent()) {
+            httpClient.setExecutor(virtualThreadExecutor.get());
+        }
+        else {
+            httpClient.setExecutor(new QueuedThreadPool(config.connectionPoolSize, 2));
+        }
         httpClient.setCookieStore(new HttpCookieStore.Empty());
         httpClient.setUserAgentField(new HttpField(HttpHeader.USER_AGENT, "td-client-java-" + TDClient.getVersion()));
 
@@ -116,11 +166,93 @@ public class TDHttpClient
 
         try {
             httpClient.start();
+            // Compressed responses are decoded by ResponseDecoder, which also counts the compressed bytes.
+            // The decoder of Jetty is registered in start()
+            httpClient.getContentDecoderFactories().clear();
         }
         catch (Exception e) {
             logger.error("Failed to initialize Jetty client", e);
             throw Throwables.propagate(e);
         }
+        if (config.warmUpConnections > 0) {
+            warmUpConnections(config.warmUpConnections);
+        }
+    }
+
+    private ConnectionPool getConnectionPool()
+    {
+        Destination destination = httpClient.getDestination(scheme, config.endpoint, config.port.or(config.useSSL ? 443 : 80));
+        if (destination instanceof PoolingHttpDestination) {
+            return ((PoolingHttpDestination<?>) destination).getConnectionPool();
+        }
+        return null;
+    }
+
+    /**
+     * Open keep-alive connections to the API endpoint in the background, up to the max connections per destination.
+     * Idle connections are closed after the idle timeout.
+     *
+     * @param numConnections
+     */
+    public void warmUpConnections(int numConnections)
+    {
+        ConnectionPool pool = getConnectionPool();
+        if (pool == null) {
+            return;
+        }
+        logger.debug("Opening {} connections to {}", numConnections, config.endpoint);
+        List<Connection> establishedConnections = new ArrayList<>();
+        for (int i = 0; i < numConnections; ++i) {
+            // Opens a new connection in the background if there is no idle connection.
+            // New connections are added to the idle connections when established.
+            Connection connection = pool.acquire();
+            if (connection != null) {
+                // Hold established connections until the end so as not to acquire them again
+                establishedConnections.add(connection);
+            }
+        }
+        for (Connection connection : establishedConnections) {
+            pool.release(connection);
+        }
+    }
+
+    @VisibleForTesting
+    int getIdleConnectionCount()
+    {
+        ConnectionPool pool = getConnectionPool();
+        return pool == null ? 0 : pool.getIdleConnections().size();
+    }
+
+    /**
+     * Allow as many concurrent requests as Jetty accepts without rejecting them: the requests using all connections
+     * to the API endpoint plus the requests waiting for a connection.
+     */
+    static int maxConcurrentRequestsOf(TDClientConfig config)
+    {
+        long max = (long) Math.max(1, config.maxConnectionsPerDestination) + Math.max(0, config.maxRequestsQueuedPerDestination);
+        return (int) Math.min(Integer.MAX_VALUE, max);
+    }
+
+    private static Optional<ExecutorService> newVirtualThreadExecutor(TDClientConfig config)
+    {
+        if (!config.useVirtualThreads) {
+            return Optional.absent();
+        }
+        if (!VirtualThreads.isAvailable()) {
+            logger.warn("Virtual threads require Java 21 or later. Using a thread pool of {} threads", config.connectionPoolSize);
+            return Optional.absent();
+        }
+        return Optional.of(VirtualThreads.newVirtualThreadPerTaskExecutor("td-client-"));
+    }
+
+    /**
+     * Returns true if http responses are processed on virtual threads
+     *
+     * @return
+     */
+    public boolean isUsingVirtualThreads()
+    {
+        return virtualThreadExecutor.isPresent();
     }
 
     ObjectMapper getObjectMapper()
@@ -128,11 +260,68 @@ public class TDHttpClient
         return objectMapper;
     }
 
+    /**
+     * Get the limiter of concurrent requests shared by all clients using this http client
+     *
+     * @return
+     */
+    public AdaptiveRateLimiter getRateLimiter()
+    {
+        return rateLimiter;
+    }
+
+    /**
+     * Get the retry budget shared by all clients using this http client
+     *
+     * @return
+     */
+    public RetryBudget getRetryBudget()
+    {
+        return retryBudget;
+    }
+
+    /**
+     * Get the circuit breaker of an endpoint group (e.g., "job.result"). This returns absent if circuit breakers are disabled.
+     *
+     * @param endpoint
+     * @return
+     * @see TDApiRequest#getEndpointName()
+     */
+    public Optional<CircuitBreaker> getCircuitBreaker(String endpoint)
+    {
+        if (config.circuitBreakerFailureRateThreshold <= 0.0) {
+            return Optional.absent();
+        }
+        CircuitBreaker circuitBreaker = circuitBreakers.get(endpoint);
+        if (circuitBreaker == null) {
+            CircuitBreaker newCircuitBreaker = new CircuitBreaker(endpoint, config.circuitBreakerFailureRateThreshold,
+                    config.circuitBreakerWindowSize, config.circuitBreakerOpenDurationMillis, config.circuitBreakerListener);
+            circuitBreaker = circuitBreakers.putIfAbsent(endpoint, newCircuitBreaker);
+            if (circuitBreaker == null) {
+                circuitBreaker = newCircuitBreaker;
+            }
+        }
+        return Optional.of(circuitBreaker);
+    }
+
+    /**
+     * Get the hedging policy of GET requests. This returns absent if hedging is disabled.
+     *
+     * @return
+     */
+    public Optional<HedgingPolicy> getHedgingPolicy()
+    {
+        return hedgingPolicy;
+    }
+
     public void close()
     {
         synchronized (this) {
             try {
                 httpClient.stop();
+                if (virtualThreadExecutor.isPresent()) {
+                    virtualThreadExecutor.get().shutdown();
+                }
             }
             catch (Exception e) {
                 logger.error("Failed to terminate Jetty client", e);
@@ -161,6 +350,9 @@ public class TDHttpClient
         }
     }
 
+    private static final String CLIENT_NAME = "td-client-java " + TDClient.getVersion();
+    private static final DateHeaderCache DATE_HEADER = new DateHeaderCache();
+
     private static final ThreadLocal<SimpleDateFormat> RFC2822_FORMAT =
             new ThreadLocal<SimpleDateFormat>()
             {
@@ -179,48 +371,107 @@ public class TDHttpClient
 
     protected String getClientName()
     {
-        return "td-client-java " + TDClient.getVersion();
+        return CLIENT_NAME;
     }
 
-    public Request prepareRequest(TDApiRequest apiRequest, Optional<String> apiKeyCache)
+    private static String encodeQueryParams(Map<String, String> queryParams)
     {
-        String queryStr = "";
-        String portStr = config.port.transform(new Function<Integer, String>()
+        StringBuilder queryStr = new StringBuilder(64);
+        for (Map.Entry<String, String> queryParam : queryParams.entrySet()) {
+            if (queryStr.length() > 0) {
+                queryStr.append('&');
+            }
+            appendUrlEncoded(queryStr, queryParam.getKey()).append('=');
+            appendUrlEncoded(queryStr, queryParam.getValue());
+        }
+        return queryStr.toString();
+    }
+
+    private Optional<String> authorizationHeaderOf(Optional<String> apiKeyCache)
+    {
+        if (!apiKeyCache.isPresent()) {
+            return defaultAuthorizationHeader;
+        }
+        // Clients sharing this http client usually use the same API key
+        AuthorizationHeader cached = lastAuthorizationHeader;
+        if (cached == null || !cached.apiKey.equals(apiKeyCache.get())) {
+            cached = new AuthorizationHeader(apiKeyCache.get());
+            lastAuthorizationHeader = cached;
+        }
+        return cached.header;
+    }
+
+    private static class AuthorizationHeader
+    {
+        private final String apiKey;
+        private final Optional<String> header;
+
+        AuthorizationHeader(String apiKey)
         {
-            @Override
-            public String apply(Integer input)
-            {
-                return ":" + input.toString();
+            this.apiKey = apiKey;
+            this.header = Optional.of("TD1 " + apiKey);
+        }
+    }
+
+    /**
+     * Formats the Date header at most once per second, since the header has the precision of seconds
+     */
+    private static class DateHeaderCache
+    {
+        private volatile FormattedDate last = new FormattedDate(Long.MIN_VALUE, "");
+
+        String get()
+        {
+            long second = System.currentTimeMillis() / 1000;
+            FormattedDate date = last;
+            if (date.second != second) {
+                date = new FormattedDate(second, RFC2822_FORMAT.get().format(new Date(second * 1000)));
+                last = date;
             }
-        }).or("");
-        String requestUri = String.format("%s://%s%s%s", config.useSSL ? "https" : "http", config.endpoint, portStr, apiRequest.getPath());
+            return date.value;
+        }
+    }
+
+    private static class FormattedDate
+    {
+        private final long second;
+        private final String value;
+
+        FormattedDate(long second, String value)
+        {
+            this.second = second;
+            this.value = value;
+        }
+    }
 
+    public Request prepareRequest(TDApiRequest apiRequest, Optional<String> apiKeyCache)
+    {
+        String queryStr = "";
+        String path = apiRequest.getPath();
+        StringBuilder requestUri = new StringBuilder(baseUri.length() + path.length() + 64).append(baseUri).append(path);
         if (!apiRequest.getQueryParams().isEmpty()) {
-            List<String> queryParamList = new ArrayList<String>(apiRequest.getQueryParams().size());
-            for (Map.Entry<String, String> queryParam : apiRequest.getQueryParams().entrySet()) {
-                queryParamList.add(String.format("%s=%s", urlEncode(queryParam.getKey()), urlEncode(queryParam.getValue())));
-            }
-            queryStr = Joiner.on("&").join(queryParamList);
+            queryStr = encodeQueryParams(apiRequest.getQueryParams());
             if (apiRequest.getMethod() == HttpMethod.GET ||
                     (apiRequest.getMethod() == HttpMethod.POST && apiRequest.getPostJson().isPresent())) {
-                requestUri += "?" + queryStr;
+                requestUri.append('?').append(queryStr);
             }
         }
 
-        logger.debug("Sending API request to {}", requestUri);
-        String dateHeader = RFC2822_FORMAT.get().format(new Date());
-        Request request = httpClient.newRequest(requestUri)
+        String uri = requestUri.toString();
+        logger.debug("Sending API request to {}", uri);
+        String dateHeader = DATE_HEADER.get();
+        Request request = httpClient.newRequest(uri)
                 .agent(getClientName())
-                .scheme(config.useSSL ? "https" : "http")
+                .scheme(scheme)
                 .method(apiRequest.getMethod())
                 .header(HttpHeader.DATE, dateHeader);
 
         request = setTDAuthHeaders(request, dateHeader);
 
         // Set API Key
-        Optional<String> apiKey = apiKeyCache.or(config.apiKey);
-        if (apiKey.isPresent()) {
-            request.header(HttpHeader.AUTHORIZATION, "TD1 " + apiKey.get());
+        Optional<String> authorization = authorizationHeaderOf(apiKeyCache);
+        if (authorization.isPresent()) {
+            request.header(HttpHeader.AUTHORIZATION, authorization.get());
         }
 
         // Set other headers
@@ -251,33 +502,63 @@ public class TDHttpClient
                         throw new TDClientException(TDClientException.ErrorType.INVALID_INPUT, "Failed to read input file: " + apiRequest.getPutFile().get());
                     }
                 }
+                else if (apiRequest.getPutContent().isPresent()) {
+                    request.content(new ByteBufferContentProvider(apiRequest.getPutContent().get()), "application/octet-stream");
+                }
                 break;
         }
         return request;
     }
 
+    /**
+     * Submit an API request with a custom response handler, retrying it on the caller thread.
+     *
+     * @deprecated TDClient API calls no longer go through this method and never sleep between retries.
+     * Use {@link #submitRequestAsync(TDApiRequest, Optional)} or the call methods instead.
+     */
+    @Deprecated
     public <ResponseType extends Response, Result> Result submitRequest(TDApiRequest apiRequest, Optional<String> apiKeyCache, Handler<ResponseType, Result> handler)
             throws TDClientException
     {
-        ExponentialBackOff backoff = new ExponentialBackOff(config.retryInitialIntervalMillis, config.retryMaxIntervalMillis, config.retryMultiplier);
+        ExponentialBackOff backoff = new ExponentialBackOff(config.retryInitialIntervalMillis, config.retryMaxIntervalMillis, config.retryMultiplier, config.retryJitter);
+        Optional<CircuitBreaker> circuitBreaker = getCircuitBreaker(apiRequest.getEndpointName());
+        Optional<CircuitBreaker.Permit> circuitBreakerPermit = Optional.absent();
+        if (circuitBreaker.isPresent()) {
+            circuitBreakerPermit = circuitBreaker.get().tryAcquire();
+            if (!circuitBreakerPermit.isPresent()) {
+                throw new TDClientCircuitOpenException(apiRequest.getEndpointName());
+            }
+        }
         Optional<TDClientException> rootCause = Optional.absent();
+        int lastStatusCode = NOT_SENT;
         try {
             final int retryLimit = config.retryLimit;
             for (int retryCount = 0; retryCount <= retryLimit; ++retryCount) {
                 if (retryCount > 0) {
+                    if (!retryBudget.tryAcquireRetry()) {
+                        logger.warn("Retry budget exhausted. Giving up the request to {}", apiRequest.getPath());
+                        break;
+                    }
                     int waitTimeMillis = backoff.nextWaitTimeMillis();
                     logger.warn(String.format("Retrying request to %s (%d/%d) in %.2f sec.", apiRequest.getPath(), backoff.getExecutionCount(), retryLimit, waitTimeMillis / 1000.0));
                     Thread.sleep(waitTimeMillis);
                 }
 
+                if (retryCount > 0 && circuitBreaker.isPresent() && circuitBreaker.get().getState() == CircuitBreaker.State.OPEN) {
+                    // Opened by other requests while waiting for the retry
+                    throw new TDClientCircuitOpenException(apiRequest.getEndpointName());
+                }
                 ResponseType response = null;
                 try {
                     Request request = prepareRequest(apiRequest, apiKeyCache);
+                    lastStatusCode = 0;
                     response = handler.submit(request);
                     int code = response.getStatus();
+                    lastStatusCode = code;
                     if (HttpStatus.isSuccess(code)) {
                         // 2xx success
                         logger.debug(String.format("[%d:%s] API request to %s has succeeded", code, HttpStatus.getMessage(code), apiRequest.getPath()));
+                        retryBudget.recordSuccess();
                         return handler.onSuccess(response);
                     }
                     else {
@@ -308,6 +589,11 @@ public class TDHttpClient
             logger.warn("API request interrupted", e);
             throw new TDClientInterruptedException(e);
         }
+        finally {
+            if (circuitBreakerPermit.isPresent()) {
+                recordOutcome(circuitBreaker.get(), circuitBreakerPermit.get(), lastStatusCode);
+            }
+        }
         logger.warn("API request retry limit exceeded: ({}/{})", config.retryLimit, config.retryLimit);
 
         checkState(rootCause.isPresent(), "rootCause must be present here");
@@ -322,7 +608,7 @@ public class TDHttpClient
         String errorMessage = String.format("[%d:%s] API request to %s has failed%s", code, HttpStatus.getMessage(code), apiRequestPath, responseErrorText);
         if (HttpStatus.isClientError(code)) {
             logger.debug(errorMessage);
-            // 4xx error. We do not retry the execution on this type of error
+            // 4xx error. We do not retry the execution on this type of error except 429
             switch (code) {
                 case HttpStatus.UNAUTHORIZED_401:
                     throw new TDClientHttpUnauthorizedException(errorMessage);
@@ -334,6 +620,9 @@ public class TDHttpClient
                     throw new TDClientHttpException(PROXY_AUTHENTICATION_FAILURE, errorMessage, code);
                 case HttpStatus.UNPROCESSABLE_ENTITY_422:
                     throw new TDClientHttpException(INVALID_INPUT, errorMessage, code);
+                case TOO_MANY_REQUESTS_429:
+                    // Throttled by the API. This error can be retried
+                    return new TDClientHttpTooManyRequestsException(errorMessage);
                 default:
                     throw new TDClientHttpException(CLIENT_ERROR, errorMessage, code);
             }
@@ -363,19 +652,78 @@ public class TDHttpClient
         }
     }
 
-    public String call(TDApiRequest apiRequest, Optional<String> apiKeyCache)
+    // The last status code of a request that has not been sent
+    private static final int NOT_SENT = -1;
+
+    /**
+     * Record the outcome of an API request including its retries to the circuit breaker
+     *
+     * @param circuitBreaker
+     * @param permit
+     * @param lastStatusCode the status code of the last attempt, 0 if no response is received, or {@link #NOT_SENT}
+     */
+    private static void recordOutcome(CircuitBreaker circuitBreaker, CircuitBreaker.Permit permit, int lastStatusCode)
+    {
+        if (lastStatusCode == NOT_SENT) {
+            circuitBreaker.releaseUnused(permit);
+        }
+        else {
+            circuitBreaker.recordResult(permit, lastStatusCode);
+        }
+    }
+
+    private static AdaptiveRateLimiter.Feedback rateLimiterFeedback(int code)
+    {
+        if (code == TOO_MANY_REQUESTS_429 || code == HttpStatus.SERVICE_UNAVAILABLE_503) {
+            return AdaptiveRateLimiter.Feedback.THROTTLED;
+        }
+        else if (code == 0 || HttpStatus.isServerError(code)) {
+            // No response or a server failure unrelated to the request rate
+            return AdaptiveRateLimiter.Feedback.IGNORE;
+        }
+        else {
+            return AdaptiveRateLimiter.Feedback.SUCCESS;
+        }
+    }
+
+    /**
+     * Parse the value of a Retry-After header, which is either a number of seconds or an HTTP date
+     *
+     * @param retryAfter
+     * @param currentTimeMillis
+     * @return the wait time in milliseconds
+     */
+    @VisibleForTesting
+    static Optional<Long> parseRetryAfterMillis(String retryAfter, long currentTimeMillis)
     {
-        ContentResponse response = submitRequest(apiRequest, apiKeyCache, new DefaultContentHandler());
-        String content = response.getContentAsString();
-        if (logger.isTraceEnabled()) {
-            logger.trace("response:\n{}", content);
+        if (retryAfter == null || retryAfter.trim().isEmpty()) {
+            return Optional.absent();
+        }
+        String value = retryAfter.trim();
+        try {
+            return Optional.of(Math.max(0L, Long.parseLong(value) * 1000L));
+        }
+        catch (NumberFormatException e) {
+            // HTTP date format (RFC 1123)
+            SimpleDateFormat httpDateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.ENGLISH);
+            try {
+                return Optional.of(Math.max(0L, httpDateFormat.parse(value).getTime() - currentTimeMillis));
+            }
+            catch (ParseException pe) {
+                logger.debug("Ignoring an invalid Retry-After header: {}", retryAfter);
+                return Optional.absent();
+            }
         }
-        return content;
+    }
+
+    public String call(TDApiRequest apiRequest, Optional<String> apiKeyCache)
+    {
+        return waitFor(callAsync(apiRequest, apiKeyCache));
     }
 
     public <Result> Result call(TDApiRequest apiRequest, Optional<String> apiKeyCache, final Function<InputStream, Result> contentStreamHandler)
     {
-        InputStream input = submitRequest(apiRequest, apiKeyCache, new ContentStreamHandler());
+        InputStream input = waitFor(submitStreamRequestAsync(apiRequest, apiKeyCache));
         return contentStreamHandler.apply(input);
     }
 
@@ -392,18 +740,27 @@ public class TDHttpClient
     public <Result> Result call(TDApiRequest apiRequest, Optional<String> apiKeyCache, final Class<Result> resultType)
             throws TDClientException
     {
-        try {
-            ContentResponse response = submitRequest(apiRequest, apiKeyCache, new DefaultContentHandler());
-            byte[] content = response.getContent();
-            if (logger.isTraceEnabled()) {
-                logger.trace("response:\n{}", new String(content, StandardCharsets.UTF_8));
-            }
-            if (resultType == String.class) {
-                return resultType.cast(new String(content, StandardCharsets.UTF_8));
-            }
-            else {
-                return objectMapper.readValue(content, resultType);
-            }
+        return waitFor(callAsync(apiRequest, apiKeyCache, resultType));
+    }
+
+    /**
+     * Same with {@link #call(TDApiRequest, Optional, Class)}, but binds the JSON data while the response body is being received,
+     * instead of buffering the whole body first. Use this method for responses that can be large.
+     * <p/>
+     * Errors while reading the body are not retried, because a part of the body has been consumed already.
+     *
+     * @param apiRequest
+     * @param apiKeyCache
+     * @param resultType
+     * @param <Result>
+     * @return
+     * @throws TDClientException
+     */
+    public <Result> Result callStreaming(TDApiRequest apiRequest, Optional<String> apiKeyCache, final Class<Result> resultType)
+            throws TDClientException
+    {
+        try (InputStream in = waitFor(submitStreamRequestAsync(apiRequest, apiKeyCache))) {
+            return objectMapper.readValue(in, resultType);
         }
         catch (JsonMappingException e) {
             logger.error("Jackson mapping error", e);
@@ -414,52 +771,884 @@ public class TDHttpClient
         }
     }
 
-    public static interface Handler<ResponseType extends Response, Result>
+    /**
+     * Submit an API request, and iterate over the elements of an array field in the returned JSON object.
+     * Elements are bound into objects of the given type one by one while the response body is being received.
+     * The returned iterator must be consumed to the end or closed.
+     *
+     * @param apiRequest
+     * @param apiKeyCache
+     * @param fieldName
+     * @param elementType
+     * @param <Element>
+     * @return
+     * @throws TDClientException
+     */
+    public <Element> JsonArrayIterator<Element> callForArray(TDApiRequest apiRequest, Optional<String> apiKeyCache, String fieldName, Class<Element> elementType)
+            throws TDClientException
     {
-        ResponseType submit(Request request)
-                throws InterruptedException, ExecutionException, TimeoutException;
+        InputStream in = waitFor(submitStreamRequestAsync(apiRequest, apiKeyCache));
+        return new JsonArrayIterator<>(objectMapper, in, fieldName, elementType);
+    }
 
-        Result onSuccess(ResponseType response);
+    /**
+     * Wait the completion of an asynchronous API call. While the calling thread is blocked here,
+     * retry attempts and the wait time between them are handled by the http client scheduler.
+     */
+    private static <Result> Result waitFor(ListenableFuture<Result> future)
+            throws TDClientException
+    {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            logger.warn("API request interrupted", e);
+            future.cancel(false);
+            throw new TDClientInterruptedException(e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof TDClientException) {
+                throw (TDClientException) e.getCause();
+            }
+            throw new TDClientProcessingException(e);
+        }
+    }
 
-        /**
-         * @param response
-         * @return returned content
-         */
-        byte[] onError(ResponseType response);
+    /**
+     * Submit an API request without blocking the caller thread. The returned future completes with the response
+     * once the API returns a 2xx status code, or fails with a {@link TDClientException} after the retry limit has been reached.
+     * Retries are scheduled on the Jetty client scheduler, so no thread is held while waiting for the next attempt.
+     * <p/>
+     * Listeners of the returned future run on Jetty client threads unless an executor is given, so they must not block.
+     *
+     * @param apiRequest
+     * @param apiKeyCache
+     * @return
+     */
+    public ListenableFuture<ContentResponse> submitRequestAsync(TDApiRequest apiRequest, Optional<String> apiKeyCache)
+    {
+        return execute(new BufferedRequestExecution(apiRequest, apiKeyCache));
     }
 
-    class ContentStreamHandler
-            implements Handler<Response, InputStream>
+    /**
+     * Submit an API request whose response body is read as a stream. The returned future completes
+     * as soon as the response headers with a 2xx status code arrive, and the stream must be closed by the reader.
+     * Error responses are retried in the same manner with {@link #submitRequestAsync(TDApiRequest, Optional)}.
+     *
+     * @param apiRequest
+     * @param apiKeyCache
+     * @return
+     */
+    public ListenableFuture<InputStream> submitStreamRequestAsync(TDApiRequest apiRequest, Optional<String> apiKeyCache)
     {
-        private InputStreamResponseListener listner = null;
+        return Futures.transform(openStreamAsync(apiRequest, apiKeyCache), new Function<StreamResponse, InputStream>()
+        {
+            @Override
+            public InputStream apply(StreamResponse input)
+            {
+                return input.getContent();
+            }
+        });
+    }
 
-        public Response submit(Request request)
-                throws InterruptedException, ExecutionException, TimeoutException
+    /**
+     * Same with {@link #submitStreamRequestAsync(TDApiRequest, Optional)}, but also returns the response status
+     * and headers, which are necessary to read partial content responses.
+     *
+     * @param apiRequest
+     * @param apiKeyCache
+     * @return
+     */
+    public ListenableFuture<StreamResponse> openStreamAsync(TDApiRequest apiRequest, Optional<String> apiKeyCache)
+    {
+        return execute(new StreamRequestExecution(apiRequest, apiKeyCache));
+    }
+
+    /**
+     * A 2xx response whose body is being received
+     */
+    public static class StreamResponse
+    {
+        private final Response response;
+        private final InputStream content;
+
+        StreamResponse(Response response, InputStream content)
         {
-            listner = new InputStreamResponseListener();
-            request.send(listner);
-            long timeout = httpClient.getIdleTimeout();
-            return listner.get(timeout, TimeUnit.MILLISECONDS);
+            this.response = response;
+            this.content = content;
         }
 
-        public InputStream onSuccess(Response response)
+        public int getStatus()
         {
-            checkNotNull(listner, "listener is null");
-            return listner.getInputStream();
+            return response.getStatus();
         }
 
-        public byte[] onError(Response response)
+        public Optional<String> getHeader(String name)
         {
-            try (InputStream in = listner.getInputStream()) {
-                byte[] errorResponse = ByteStreams.toByteArray(in);
-                return errorResponse;
-            }
-            catch (IOException e) {
-                throw new TDClientException(INVALID_JSON_RESPONSE, e);
-            }
+            return Optional.fromNullable(response.getHeaders().get(name));
+        }
+
+        public InputStream getContent()
+        {
+            return content;
         }
     }
 
+    public ListenableFuture<String> callAsync(TDApiRequest apiRequest, Optional<String> apiKeyCache)
+    {
+        return callAsync(apiRequest, apiKeyCache, String.class);
+    }
+
+    /**
+     * An asynchronous version of {@link #call(TDApiRequest, Optional, Class)}.
+     *
+     * @param apiRequest
+     * @param apiKeyCache
+     * @param resultType
+     * @param <Result>
+     * @return
+     */
+    public <Result> ListenableFuture<Result> callAsync(TDApiRequest apiRequest, Optional<String> apiKeyCache, final Class<Result> resultType)
+    {
+        return Futures.transform(submitRequestAsync(apiRequest, apiKeyCache), new Function<ContentResponse, Result>()
+        {
+            @Override
+            public Result apply(ContentResponse response)
+            {
+                return readContent(response.getContent(), resultType);
+            }
+        });
+    }
+
+    private <Result> Result readContent(byte[] content, Class<Result> resultType)
+            throws TDClientException
+    {
+        try {
+            if (logger.isTraceEnabled()) {
+                logger.trace("response:\n{}", new String(content, StandardCharsets.UTF_8));
+            }
+            if (resultType == String.class) {
+                return resultType.cast(new String(content, StandardCharsets.UTF_8));
+            }
+            else {
+                return objectMapper.readValue(content, resultType);
+            }
+        }
+        catch (JsonMappingException e) {
+            logger.error("Jackson mapping error", e);
+            throw new TDClientException(INVALID_JSON_RESPONSE, e);
+        }
+        catch (IOException e) {
+            throw new TDClientException(INVALID_JSON_RESPONSE, e);
+        }
+    }
+
+    /**
+     * Start an API request. Small buffered GET requests are hedged if a hedging policy is configured.
+     * Streaming and Range requests are never hedged, because a duplicate of them would transfer a large body twice.
+     */
+    private <T> ListenableFuture<T> execute(AsyncRequestExecution<T> execution)
+    {
+        if (hedgingPolicy.isPresent() && execution.isHedgeable()) {
+            return new HedgedRequestExecution<>(execution, hedgingPolicy.get()).start();
+        }
+        execution.send();
+        return execution.future;
+    }
+
+    /**
+     * Sends a duplicate of an idempotent request if no response arrives within the hedging delay, and takes the first
+     * successful response. The request fails when all of the sent requests have failed.
+     * If the hedged request wins, the primary request is left running without retries, so that the hedging delay is computed
+     * from the response times of unhedged requests. Otherwise the slow responses would be cut off at the hedging delay.
+     */
+    private class HedgedRequestExecution<T>
+    {
+        private final AsyncRequestExecution<T> primary;
+        private final HedgingPolicy policy;
+        private final SettableFuture<T> future = SettableFuture.create();
+        private final List<AsyncRequestExecution<T>> executions = new ArrayList<>();
+        private int runningExecutions = 0;
+        private long startNanos;
+        private Scheduler.Task hedgeTask;
+
+        HedgedRequestExecution(AsyncRequestExecution<T> primary, HedgingPolicy policy)
+        {
+            this.primary = primary;
+            this.policy = policy;
+        }
+
+        ListenableFuture<T> start()
+        {
+            startNanos = System.nanoTime();
+            Optional<Long> delay = policy.getHedgeDelayMillis(primary.endpoint);
+            future.addListener(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    cancelAll();
+                }
+            }, MoreExecutors.directExecutor());
+            launch(primary);
+            if (delay.isPresent()) {
+                try {
+                    Scheduler.Task task = httpClient.getScheduler().schedule(new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            hedge();
+                        }
+                    }, delay.get(), TimeUnit.MILLISECONDS);
+                    synchronized (this) {
+                        hedgeTask = task;
+                    }
+                }
+                catch (RejectedExecutionException e) {
+                    // The http client is already closed
+                }
+            }
+            return future;
+        }
+
+        private void hedge()
+        {
+            if (future.isDone() || !policy.tryAcquireHedge()) {
+                return;
+            }
+            logger.debug("Sending a hedged request to {}", primary.apiRequest.getPath());
+            launch(primary.duplicate());
+        }
+
+        private void launch(final AsyncRequestExecution<T> execution)
+        {
+            synchronized (this) {
+                if (future.isDone()) {
+                    return;
+                }
+                executions.add(execution);
+                runningExecutions++;
+            }
+            Futures.addCallback(execution.future, new FutureCallback<T>()
+            {
+                @Override
+                public void onSuccess(T result)
+                {
+                    if (execution == primary) {
+                        policy.recordResponseTime(primary.endpoint, System.nanoTime() - startNanos);
+                    }
+                    if (!future.set(result)) {
+                        // Lost the race
+                        execution.discard(result);
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable t)
+                {
+                    synchronized (HedgedRequestExecution.this) {
+                        if (--runningExecutions > 0) {
+                            // Wait for the other request
+                            return;
+                        }
+                    }
+                    if (t instanceof CancellationException) {
+                        future.cancel(false);
+                    }
+                    else {
+                        future.setException(t);
+                    }
+                }
+            });
+            execution.send();
+        }
+
+        private void cancelAll()
+        {
+            List<AsyncRequestExecution<T>> toCancel;
+            synchronized (this) {
+                if (hedgeTask != null) {
+                    hedgeTask.cancel();
+                }
+                toCancel = new ArrayList<>(executions);
+            }
+            for (AsyncRequestExecution<T> execution : toCancel) {
+                if (execution == primary && !future.isCancelled()) {
+                    // Wait for the response time of the primary request
+                    primary.stopRetrying();
+                }
+                else {
+                    execution.future.cancel(false);
+                }
+            }
+        }
+    }
+
+    /**
+     * A state of an asynchronous API request, which sends a new Jetty request for each retry attempt.
+     * Retry attempts are scheduled on the Jetty client scheduler, so no thread waits for the backoff interval.
+     */
+    private abstract class AsyncRequestExecution<T>
+    {
+        protected final TDApiRequest apiRequest;
+        protected final SettableFuture<T> future = SettableFuture.create();
+        private final ExponentialBackOff backoff = new ExponentialBackOff(config.retryInitialIntervalMillis, config.retryMaxIntervalMillis, config.retryMultiplier, config.retryJitter);
+        protected final Optional<String> apiKeyCache;
+        protected final String endpoint;
+        private final Optional<CircuitBreaker> circuitBreaker;
+        private volatile long permitNanos;
+        // True while the current attempt holds a rate limiter permit
+        private final AtomicBoolean holdingPermit = new AtomicBoolean(false);
+        private volatile long attemptStartNanos;
+        protected volatile Request currentRequest;
+        // The circuit breaker records the outcome of the whole request, not of each attempt
+        private volatile Optional<CircuitBreaker.Permit> circuitBreakerPermit = Optional.absent();
+        private volatile boolean succeeded = false;
+        private volatile int lastStatusCode = NOT_SENT;
+        private volatile boolean retryStopped = false;
+
+        AsyncRequestExecution(TDApiRequest apiRequest, Optional<String> apiKeyCache)
+        {
+            this.apiRequest = apiRequest;
+            this.apiKeyCache = apiKeyCache;
+            this.endpoint = apiRequest.getEndpointName();
+            this.circuitBreaker = getCircuitBreaker(endpoint);
+            future.addListener(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    Request request = currentRequest;
+                    if (future.isCancelled() && request != null) {
+                        // Stop receiving the response of a cancelled request
+                        request.abort(new CancellationException("API request is cancelled"));
+                    }
+                    Optional<CircuitBreaker.Permit> permit = circuitBreakerPermit;
+                    if (permit.isPresent()) {
+                        // A cancelled request tells nothing about the API health
+                        recordOutcome(circuitBreaker.get(), permit.get(), future.isCancelled() ? NOT_SENT : succeeded ? HttpStatus.OK_200 : lastStatusCode);
+                    }
+                }
+            }, MoreExecutors.directExecutor());
+        }
+
+        /**
+         * Create a new execution of the same API request
+         */
+        protected abstract AsyncRequestExecution<T> duplicate();
+
+        /**
+         * Return true if a duplicate of this request can be sent while waiting for the response
+         */
+        protected boolean isHedgeable()
+        {
+            return false;
+        }
+
+        /**
+         * Give up the request at the next failure. A retry attempt which is already scheduled is cancelled.
+         */
+        void stopRetrying()
+        {
+            retryStopped = true;
+        }
+
+        /**
+         * Release a result which will not be returned to the caller
+         */
+        protected void discard(T result)
+        {
+        }
+
+        void send()
+        {
+            if (future.isCancelled()) {
+                return;
+            }
+            if (retryStopped) {
+                future.cancel(false);
+                return;
+            }
+            if (circuitBreaker.isPresent()) {
+                if (!circuitBreakerPermit.isPresent()) {
+                    Optional<CircuitBreaker.Permit> permit = circuitBreaker.get().tryAcquire();
+                    if (!permit.isPresent()) {
+                        // Fail fast without retrying
+                        future.setException(new TDClientCircuitOpenException(endpoint));
+                        return;
+                    }
+                    circuitBreakerPermit = permit;
+                }
+                else if (circuitBreaker.get().getState() == CircuitBreaker.State.OPEN) {
+                    // Opened by other requests while waiting for the retry
+                    future.setException(new TDClientCircuitOpenException(endpoint));
+                    return;
+                }
+            }
+            PermitWaiter waiter = new PermitWaiter();
+            if (!rateLimiter.acquire(waiter)) {
+                waiter.startTimer();
+            }
+        }
+
+        /**
+         * Sends a request attempt when a permit of the rate limiter is available. The request fails
+         * if no permit becomes available within the idle timeout.
+         */
+        private class PermitWaiter
+                implements Runnable
+        {
+            private volatile Scheduler.Task timeoutTask;
+
+            @Override
+            public void run()
+            {
+                Scheduler.Task task = timeoutTask;
+                if (task != null) {
+                    task.cancel();
+                }
+                sendWithPermit();
+            }
+
+            void startTimer()
+            {
+                try {
+                    timeoutTask = httpClient.getScheduler().schedule(new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            if (rateLimiter.cancel(PermitWaiter.this)) {
+                                String message = String.format("API request to %s has waited for a rate limiter permit for %d ms", apiRequest.getPath(), config.idleTimeoutMillis);
+                                logger.warn(message);
+                                future.setException(new TDClientTimeoutException(new TimeoutException(message)));
+                            }
+                        }
+                    }, config.idleTimeoutMillis, TimeUnit.MILLISECONDS);
+                }
+                catch (RejectedExecutionException e) {
+                    // The http client is already closed
+                }
+            }
+        }
+
+        private void sendWithPermit()
+        {
+            permitNanos = System.nanoTime();
+            holdingPermit.set(true);
+            if (future.isCancelled()) {
+                releaseUnusedPermits();
+                return;
+            }
+            try {
+                Request request = prepareRequest(apiRequest, apiKeyCache);
+                if (acceptsCompressedResponse(apiRequest)) {
+                    request.header(HttpHeader.ACCEPT_ENCODING, ResponseDecoder.GZIP);
+                }
+                config.metrics.onRequestStart(endpoint);
+                attemptStartNanos = System.nanoTime();
+                currentRequest = request;
+                send(request);
+                if (future.isCancelled()) {
+                    // Cancelled before the request is set
+                    request.abort(new CancellationException("API request is cancelled"));
+                }
+            }
+            catch (TDClientException e) {
+                releaseUnusedPermits();
+                future.setException(e);
+            }
+        }
+
+        private void releaseUnusedPermits()
+        {
+            releasePermit(AdaptiveRateLimiter.Feedback.IGNORE);
+        }
+
+        /**
+         * Release the rate limiter permit of the current attempt unless it has been released already
+         */
+        protected void releasePermit(AdaptiveRateLimiter.Feedback feedback)
+        {
+            if (holdingPermit.compareAndSet(true, false)) {
+                rateLimiter.release(permitNanos, feedback);
+            }
+        }
+
+        /**
+         * Send a Jetty request with a response listener, which must report the outcome to
+         * either of {@link #handleSuccess(int, Object)}, {@link #handleFailure(Throwable)} or {@link #handleErrorResponse(Response, byte[])},
+         * and call {@link #reportCompletion(org.eclipse.jetty.client.api.Result, ResponseDecoder)} when the response is completed.
+         */
+        protected abstract void send(Request request);
+
+        /**
+         * Report the end of a request attempt to the metrics listener and the rate limiter
+         */
+        protected void reportCompletion(org.eclipse.jetty.client.api.Result result, ResponseDecoder decoder)
+        {
+            long elapsedNanos = System.nanoTime() - attemptStartNanos;
+            ContentProvider content = result.getRequest().getContent();
+            long bytesSent = content == null ? 0 : Math.max(0, content.getLength());
+            int code = 0;
+            if (result.isFailed()) {
+                if (result.getFailure() instanceof TimeoutException) {
+                    config.metrics.onTimeout(endpoint, elapsedNanos);
+                }
+            }
+            else {
+                code = result.getResponse().getStatus();
+            }
+            config.metrics.onRequestEnd(endpoint, code, elapsedNanos, bytesSent, decoder.getBytesReceived());
+            if (decoder.isCompressed()) {
+                config.metrics.onResponseDecoded(endpoint, decoder.getBytesReceived(), decoder.getBytesDecoded());
+            }
+            if (future.isCancelled()) {
+                // An aborted request tells nothing about the API health
+                releaseUnusedPermits();
+                return;
+            }
+            releasePermit(rateLimiterFeedback(code));
+            // A streaming response aborted by the reader after receiving the headers is not an API failure
+            int responseCode = result.getResponse() == null ? 0 : result.getResponse().getStatus();
+            boolean timedOut = result.isFailed() && result.getFailure() instanceof TimeoutException;
+            lastStatusCode = timedOut ? 0 : responseCode;
+        }
+
+        protected void handleSuccess(int code, T result)
+        {
+            // 2xx success
+            logger.debug(String.format("[%d:%s] API request to %s has succeeded", code, HttpStatus.getMessage(code), apiRequest.getPath()));
+            retryBudget.recordSuccess();
+            succeeded = true;
+            if (!future.set(result)) {
+                discard(result);
+            }
+        }
+
+        protected void handleFailure(Throwable failure)
+        {
+            try {
+                if (failure instanceof TimeoutException) {
+                    logger.warn(String.format("API request to %s has timed out", apiRequest.getPath()), failure);
+                    retry(new TDClientTimeoutException((TimeoutException) failure), 0);
+                    return;
+                }
+                logger.warn("API request failed", failure);
+                // Jetty client + jersey may return ProcessingException for 401 errors
+                Optional<HttpResponseException> responseError = findHttpResponseException(failure);
+                if (responseError.isPresent()) {
+                    int code = responseError.get().getResponse().getStatus();
+                    future.setException(handleHttpResponseError(apiRequest.getPath(), code, new byte[] {}));
+                }
+                else {
+                    future.setException(new TDClientProcessingException(new ExecutionException(failure)));
+                }
+            }
+            catch (TDClientException e) {
+                future.setException(e);
+            }
+        }
+
+        protected void handleErrorResponse(Response response, byte[] returnedContent)
+        {
+            try {
+                TDClientException cause = handleHttpResponseError(apiRequest.getPath(), response.getStatus(), returnedContent);
+                retry(cause, parseRetryAfterMillis(response.getHeaders().get(HttpHeader.RETRY_AFTER), System.currentTimeMillis()).or(0L));
+            }
+            catch (TDClientException e) {
+                future.setException(e);
+            }
+        }
+
+        /**
+         * Schedule the next attempt after the backoff interval. If the server requested a longer wait with a Retry-After header,
+         * wait for it, up to the max retry interval.
+         */
+        private void retry(TDClientException cause, long retryAfterMillis)
+        {
+            final int retryLimit = config.retryLimit;
+            if (retryStopped) {
+                future.setException(cause);
+                return;
+            }
+            if (backoff.getExecutionCount() >= retryLimit) {
+                logger.warn("API request retry limit exceeded: ({}/{})", retryLimit, retryLimit);
+                // Report the last seen error
+                future.setException(cause);
+                return;
+            }
+            if (!retryBudget.tryAcquireRetry()) {
+                logger.warn("Retry budget exhausted. Giving up the request to {}", apiRequest.getPath());
+                future.setException(cause);
+                return;
+            }
+            int waitTimeMillis = (int) Math.max(backoff.nextWaitTimeMillis(), Math.min(retryAfterMillis, config.retryMaxIntervalMillis));
+            logger.warn(String.format("Retrying request to %s (%d/%d) in %.2f sec.", apiRequest.getPath(), backoff.getExecutionCount(), retryLimit, waitTimeMillis / 1000.0));
+            config.metrics.onRetry(endpoint, backoff.getExecutionCount(), waitTimeMillis);
+            try {
+                httpClient.getScheduler().schedule(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        send();
+                    }
+                }, waitTimeMillis, TimeUnit.MILLISECONDS);
+            }
+            catch (RejectedExecutionException e) {
+                // The http client is already closed
+                future.setException(cause);
+            }
+        }
+    }
+
+    private class BufferedRequestExecution
+            extends AsyncRequestExecution<ContentResponse>
+    {
+        BufferedRequestExecution(TDApiRequest apiRequest, Optional<String> apiKeyCache)
+        {
+            super(apiRequest, apiKeyCache);
+        }
+
+        @Override
+        protected AsyncRequestExecution<ContentResponse> duplicate()
+        {
+            return new BufferedRequestExecution(apiRequest, apiKeyCache);
+        }
+
+        @Override
+        protected boolean isHedgeable()
+        {
+            if (apiRequest.getMethod() != HttpMethod.GET) {
+                return false;
+            }
+            for (String header : apiRequest.getHeaderParams().keySet()) {
+                if (HttpHeader.RANGE.is(header)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        protected void send(Request request)
+        {
+            request.send(new BufferingResponseListener()
+            {
+                private final ResponseDecoder decoder = new ResponseDecoder();
+
+                @Override
+                public void onHeaders(Response response)
+                {
+                    decoder.onHeaders(response);
+                    super.onHeaders(response);
+                }
+
+                @Override
+                public void onContent(Response response, ByteBuffer content)
+                {
+                    for (ByteBuffer decoded : decoder.decode(content)) {
+                        super.onContent(response, decoded);
+                    }
+                }
+
+                @Override
+                public void onComplete(org.eclipse.jetty.client.api.Result result)
+                {
+                    reportCompletion(result, decoder);
+                    if (future.isCancelled()) {
+                        return;
+                    }
+                    if (result.isFailed()) {
+                        handleFailure(result.getFailure());
+                        return;
+                    }
+                    Response response = result.getResponse();
+                    int code = response.getStatus();
+                    if (HttpStatus.isSuccess(code)) {
+                        handleSuccess(code, new HttpContentResponse(response, getContent(), getMediaType(), getEncoding()));
+                    }
+                    else {
+                        handleErrorResponse(response, getContent());
+                    }
+                }
+            });
+        }
+    }
+
+    private class StreamRequestExecution
+            extends AsyncRequestExecution<StreamResponse>
+    {
+        StreamRequestExecution(TDApiRequest apiRequest, Optional<String> apiKeyCache)
+        {
+            super(apiRequest, apiKeyCache);
+        }
+
+        @Override
+        protected AsyncRequestExecution<StreamResponse> duplicate()
+        {
+            return new StreamRequestExecution(apiRequest, apiKeyCache);
+        }
+
+        @Override
+        protected void discard(StreamResponse result)
+        {
+            try {
+                result.getContent().close();
+            }
+            catch (IOException e) {
+                logger.debug("Failed to close a discarded response stream", e);
+            }
+            Request request = currentRequest;
+            if (request != null) {
+                // Stop receiving the rest of the body
+                request.abort(new CancellationException("Discarded the response"));
+            }
+        }
+
+        @Override
+        protected void send(Request request)
+        {
+            request.send(new InputStreamResponseListener()
+            {
+                private final ResponseDecoder decoder = new ResponseDecoder();
+
+                @Override
+                public void onContent(Response response, ByteBuffer content)
+                {
+                    // Decoded while the body is being received
+                    for (ByteBuffer decoded : decoder.decode(content)) {
+                        super.onContent(response, decoded);
+                    }
+                }
+
+                @Override
+                public void onHeaders(Response response)
+                {
+                    decoder.onHeaders(response);
+                    super.onHeaders(response);
+                    int code = response.getStatus();
+                    // The API has processed the request. The reader may hold the stream for long while making other API calls,
+                    // so the permit must not be held until the body is consumed
+                    releasePermit(rateLimiterFeedback(code));
+                    if (HttpStatus.isSuccess(code)) {
+                        // Hand over the stream before receiving the body
+                        handleSuccess(code, new StreamResponse(response, getInputStream()));
+                    }
+                }
+
+                @Override
+                public void onComplete(org.eclipse.jetty.client.api.Result result)
+                {
+                    super.onComplete(result);
+                    reportCompletion(result, decoder);
+                    if (future.isDone()) {
+                        // The body stream has been handed over to the reader, which will see the failure if any
+                        return;
+                    }
+                    if (result.isFailed()) {
+                        handleFailure(result.getFailure());
+                        return;
+                    }
+                    // The whole error response has been buffered at this point
+                    byte[] returnedContent;
+                    try (InputStream in = getInputStream()) {
+                        returnedContent = ByteStreams.toByteArray(in);
+                    }
+                    catch (IOException e) {
+                        future.setException(new TDClientException(INVALID_JSON_RESPONSE, e));
+                        return;
+                    }
+                    handleErrorResponse(result.getResponse(), returnedContent);
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns true if a compressed response can be requested. Byte ranges of compressed responses would be
+     * ranges of the compressed data, so range requests receive uncompressed responses.
+     */
+    private static boolean acceptsCompressedResponse(TDApiRequest apiRequest)
+    {
+        for (String header : apiRequest.getHeaderParams().keySet()) {
+            if (header.equalsIgnoreCase(HttpHeader.RANGE.asString())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes gzip-encoded response bodies chunk by chunk as they are received, and counts the received and decoded bytes
+     */
+    private static class ResponseDecoder
+    {
+        static final String GZIP = "gzip";
+
+        private GZIPContentDecoder gzipDecoder;
+        private long bytesReceived = 0;
+        private long bytesDecoded = 0;
+
+        void onHeaders(Response response)
+        {
+            String contentEncoding = response.getHeaders().get(HttpHeader.CONTENT_ENCODING);
+            if (contentEncoding != null && contentEncoding.trim().equalsIgnoreCase(GZIP)) {
+                gzipDecoder = new GZIPContentDecoder();
+            }
+        }
+
+        List<ByteBuffer> decode(ByteBuffer content)
+        {
+            int length = content.remaining();
+            bytesReceived += length;
+            if (gzipDecoder == null) {
+                bytesDecoded += length;
+                return Collections.singletonList(content);
+            }
+            List<ByteBuffer> decoded = new ArrayList<>(2);
+            while (content.hasRemaining()) {
+                ByteBuffer chunk = gzipDecoder.decode(content);
+                if (chunk.hasRemaining()) {
+                    bytesDecoded += chunk.remaining();
+                    decoded.add(chunk);
+                }
+            }
+            return decoded;
+        }
+
+        boolean isCompressed()
+        {
+            return gzipDecoder != null;
+        }
+
+        long getBytesReceived()
+        {
+            return bytesReceived;
+        }
+
+        long getBytesDecoded()
+        {
+            return bytesDecoded;
+        }
+    }
+
+    public static interface Handler<ResponseType extends Response, Result>
+    {
+        ResponseType submit(Request request)
+                throws InterruptedException, ExecutionException, TimeoutException;
+
+        Result onSuccess(ResponseType response);
+
+        /**
+         * @param response
+         * @return returned content
+         */
+        byte[] onError(ResponseType response);
+    }
+
     public static class DefaultContentHandler
             implements Handler<ContentResponse, ContentResponse>
     {
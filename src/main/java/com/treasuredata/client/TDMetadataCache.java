@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.treasuredata.client;
+
+import com.google.common.base.Optional;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.treasuredata.client.model.TDDatabase;
+import com.treasuredata.client.model.TDTable;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Caches the database list and the table list of each database for a TDClient.
+ * <p/>
+ * Entries expire after ttlMillis. An entry accessed after refreshAfterMillis is reloaded in the background while
+ * the current value is still returned, so frequently used entries are refreshed before they expire.
+ * TDClient invalidates the entries of a database when it creates, deletes, renames or swaps tables, or updates a table schema.
+ *
+ * @see TDClient#withMetadataCache(long, long)
+ */
+public class TDMetadataCache
+{
+    /**
+     * Loads metadata through the API
+     */
+    interface Loader
+    {
+        List<TDDatabase> listDatabases();
+
+        List<TDTable> listTables(String databaseName);
+    }
+
+    private static final String ALL_DATABASES = "";
+
+    private final long ttlMillis;
+    private final long refreshAfterMillis;
+    private final LoadingCache<String, List<TDDatabase>> databases;
+    private final LoadingCache<String, Map<String, TDTable>> tables;
+
+    TDMetadataCache(final Loader loader, long ttlMillis, long refreshAfterMillis)
+    {
+        checkNotNull(loader, "loader is null");
+        checkArgument(ttlMillis > 0, "ttlMillis must be > 0");
+        checkArgument(refreshAfterMillis > 0 && refreshAfterMillis <= ttlMillis, "refreshAfterMillis must be in (0, ttlMillis]");
+        this.ttlMillis = ttlMillis;
+        this.refreshAfterMillis = refreshAfterMillis;
+
+        // A single refresh thread, which exits when idle
+        ThreadPoolExecutor refreshExecutor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("td-metadata-cache-%d").build());
+        refreshExecutor.allowCoreThreadTimeOut(true);
+
+        this.databases = newCacheBuilder().build(CacheLoader.asyncReloading(new CacheLoader<String, List<TDDatabase>>()
+        {
+            @Override
+            public List<TDDatabase> load(String key)
+            {
+                return ImmutableList.copyOf(loader.listDatabases());
+            }
+        }, refreshExecutor));
+        this.tables = newCacheBuilder().build(CacheLoader.asyncReloading(new CacheLoader<String, Map<String, TDTable>>()
+        {
+            @Override
+            public Map<String, TDTable> load(String databaseName)
+            {
+                ImmutableMap.Builder<String, TDTable> b = ImmutableMap.builder();
+                for (TDTable table : loader.listTables(databaseName)) {
+                    b.put(table.getName(), table);
+                }
+                return b.build();
+            }
+        }, refreshExecutor));
+    }
+
+    private CacheBuilder<Object, Object> newCacheBuilder()
+    {
+        CacheBuilder<Object, Object> b = CacheBuilder.newBuilder()
+                .expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS)
+                .recordStats();
+        if (refreshAfterMillis < ttlMillis) {
+            b.refreshAfterWrite(refreshAfterMillis, TimeUnit.MILLISECONDS);
+        }
+        return b;
+    }
+
+    public long getTtlMillis()
+    {
+        return ttlMillis;
+    }
+
+    public long getRefreshAfterMillis()
+    {
+        return refreshAfterMillis;
+    }
+
+    public List<TDDatabase> listDatabases()
+    {
+        return get(databases, ALL_DATABASES);
+    }
+
+    public boolean existsDatabase(String databaseName)
+    {
+        for (TDDatabase db : listDatabases()) {
+            if (db.getName().equals(databaseName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public List<TDTable> listTables(String databaseName)
+    {
+        return ImmutableList.copyOf(get(tables, databaseName).values());
+    }
+
+    /**
+     * @param databaseName
+     * @param tableName
+     * @return the table, or absent if the database has no such table
+     * @throws TDClientHttpNotFoundException if the database does not exist
+     */
+    public Optional<TDTable> getTable(String databaseName, String tableName)
+    {
+        return Optional.fromNullable(get(tables, databaseName).get(tableName));
+    }
+
+    /**
+     * Discard the database list
+     */
+    public void invalidateDatabases()
+    {
+        databases.invalidateAll();
+    }
+
+    /**
+     * Discard the table list of the database
+     *
+     * @param databaseName
+     */
+    public void invalidateTables(String databaseName)
+    {
+        tables.invalidate(databaseName);
+    }
+
+    public void invalidateAll()
+    {
+        databases.invalidateAll();
+        tables.invalidateAll();
+    }
+
+    /**
+     * Hit and miss statistics of the database and table lists
+     *
+     * @return
+     */
+    public CacheStats getStats()
+    {
+        return databases.stats().plus(tables.stats());
+    }
+
+    private static <V> V get(LoadingCache<String, V> cache, String key)
+    {
+        try {
+            return cache.get(key);
+        }
+        catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof TDClientException) {
+                throw (TDClientException) e.getCause();
+            }
+            throw new TDClientException(TDClientException.ErrorType.EXECUTION_FAILURE, e);
+        }
+    }
+}
@@ -0,0 +1,382 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.treasuredata.client;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import org.msgpack.core.MessageFormat;
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessageUnpacker;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * A row cursor over a job result in {@link com.treasuredata.client.model.TDResultFormat#MESSAGE_PACK_GZ} format.
+ * <p/>
+ * Cell values of the current row are decoded into reusable primitive slots, so scanning numeric columns
+ * does not allocate objects per row. Strings are decoded lazily when {@link #getString(int)} is called.
+ * <pre>
+ * {@code
+ * client.readJobResult(jobId, new Function<TDResultReader, Long>() {
+ *     public Long apply(TDResultReader reader) {
+ *         long sum = 0;
+ *         while (reader.next()) {
+ *             sum += reader.getLong(0);
+ *         }
+ *         return sum;
+ *     }
+ * });
+ * }
+ * </pre>
+ */
+public class TDResultReader
+        implements AutoCloseable
+{
+    private static final byte NULL = 0;
+    private static final byte LONG = 1;
+    private static final byte DOUBLE = 2;
+    private static final byte BOOLEAN = 3;
+    private static final byte BYTES = 4;
+    // Nested values and integers out of the long range, held as strings
+    private static final byte TEXT = 5;
+
+    private final MessageUnpacker unpacker;
+    private final List<String> columnNames;
+    private final List<String> columnTypes;
+
+    private final byte[] kinds;
+    private final long[] longs;
+    private final double[] doubles;
+    private final byte[][] bytes;
+    private final int[] lengths;
+    private final String[] strings;
+    private long rowCount = 0;
+    private boolean onRow = false;
+
+    /**
+     * @param msgpackGz result stream in msgpack.gz format
+     * @param resultSchema hive_result_schema of the job, e.g., [["cnt","bigint"],["name","varchar"]]
+     */
+    public TDResultReader(InputStream msgpackGz, String resultSchema)
+    {
+        this(msgpackGz, parseResultSchema(resultSchema));
+    }
+
+    private TDResultReader(InputStream msgpackGz, String[][] schema)
+    {
+        this(msgpackGz, columnNamesOf(schema), columnTypesOf(schema));
+    }
+
+    /**
+     * @param msgpackGz result stream in msgpack.gz format
+     * @param columnNames
+     * @param columnTypes type names in the result schema (e.g., bigint, double, varchar)
+     */
+    public TDResultReader(InputStream msgpackGz, List<String> columnNames, List<String> columnTypes)
+    {
+        checkNotNull(msgpackGz, "msgpackGz is null");
+        checkArgument(columnNames.size() == columnTypes.size(), "The numbers of column names and types differ");
+        this.columnNames = ImmutableList.copyOf(columnNames);
+        this.columnTypes = ImmutableList.copyOf(columnTypes);
+        try {
+            this.unpacker = MessagePack.newDefaultUnpacker(new GZIPInputStream(msgpackGz, 64 * 1024));
+        }
+        catch (IOException e) {
+            throw new TDClientException(TDClientException.ErrorType.EXECUTION_FAILURE, "Failed to read the job result", e);
+        }
+        int n = columnNames.size();
+        this.kinds = new byte[n];
+        this.longs = new long[n];
+        this.doubles = new double[n];
+        this.bytes = new byte[n][];
+        this.lengths = new int[n];
+        this.strings = new String[n];
+    }
+
+    private static String[][] parseResultSchema(String resultSchema)
+    {
+        checkNotNull(resultSchema, "resultSchema is null");
+        try {
+            return new ObjectMapper().readValue(resultSchema, String[][].class);
+        }
+        catch (IOException e) {
+            throw new TDClientException(TDClientException.ErrorType.INVALID_JSON_RESPONSE, "Invalid result schema: " + resultSchema, e);
+        }
+    }
+
+    private static List<String> columnNamesOf(String[][] schema)
+    {
+        ImmutableList.Builder<String> b = ImmutableList.builder();
+        for (String[] column : schema) {
+            b.add(column[0]);
+        }
+        return b.build();
+    }
+
+    private static List<String> columnTypesOf(String[][] schema)
+    {
+        ImmutableList.Builder<String> b = ImmutableList.builder();
+        for (String[] column : schema) {
+            b.add(column.length > 1 ? column[1] : "varchar");
+        }
+        return b.build();
+    }
+
+    public int getColumnCount()
+    {
+        return columnNames.size();
+    }
+
+    public List<String> getColumnNames()
+    {
+        return columnNames;
+    }
+
+    public String getColumnName(int column)
+    {
+        return columnNames.get(column);
+    }
+
+    public String getColumnType(int column)
+    {
+        return columnTypes.get(column);
+    }
+
+    /**
+     * @param name
+     * @return the column index, or -1 if no column has the name
+     */
+    public int getColumnIndex(String name)
+    {
+        return columnNames.indexOf(name);
+    }
+
+    /**
+     * The number of rows read so far
+     */
+    public long getRowCount()
+    {
+        return rowCount;
+    }
+
+    /**
+     * Move to the next row.
+     *
+     * @return false if no more row is available
+     */
+    public boolean next()
+    {
+        try {
+            if (!unpacker.hasNext()) {
+                onRow = false;
+                return false;
+            }
+            int numCells = unpacker.unpackArrayHeader();
+            int n = Math.min(numCells, kinds.length);
+            for (int i = 0; i < n; ++i) {
+                readCell(i);
+            }
+            for (int i = n; i < kinds.length; ++i) {
+                // Missing cells are null
+                kinds[i] = NULL;
+            }
+            if (numCells > n) {
+                unpacker.skipValue(numCells - n);
+            }
+            rowCount++;
+            onRow = true;
+            return true;
+        }
+        catch (IOException e) {
+            throw new TDClientException(TDClientException.ErrorType.EXECUTION_FAILURE, "Failed to read the job result", e);
+        }
+    }
+
+    private void readCell(int i)
+            throws IOException
+    {
+        strings[i] = null;
+        MessageFormat format = unpacker.getNextFormat();
+        switch (format.getValueType()) {
+            case NIL:
+                unpacker.unpackNil();
+                kinds[i] = NULL;
+                break;
+            case BOOLEAN:
+                kinds[i] = BOOLEAN;
+                longs[i] = unpacker.unpackBoolean() ? 1 : 0;
+                break;
+            case INTEGER:
+                if (format == MessageFormat.UINT64) {
+                    BigInteger v = unpacker.unpackBigInteger();
+                    if (v.bitLength() >= 64) {
+                        kinds[i] = TEXT;
+                        strings[i] = v.toString();
+                        break;
+                    }
+                    kinds[i] = LONG;
+                    longs[i] = v.longValue();
+                }
+                else {
+                    kinds[i] = LONG;
+                    longs[i] = unpacker.unpackLong();
+                }
+                break;
+            case FLOAT:
+                kinds[i] = DOUBLE;
+                doubles[i] = unpacker.unpackDouble();
+                break;
+            case STRING:
+                readBytes(i, unpacker.unpackRawStringHeader());
+                break;
+            case BINARY:
+                readBytes(i, unpacker.unpackBinaryHeader());
+                break;
+            default:
+                // array, map and extension values
+                kinds[i] = TEXT;
+                strings[i] = unpacker.unpackValue().toJson();
+                break;
+        }
+    }
+
+    private void readBytes(int i, int len)
+            throws IOException
+    {
+        byte[] buf = bytes[i];
+        if (buf == null || buf.length < len) {
+            buf = new byte[Math.max(len, 32)];
+            bytes[i] = buf;
+        }
+        unpacker.readPayload(buf, 0, len);
+        lengths[i] = len;
+        kinds[i] = BYTES;
+    }
+
+    private byte kindOf(int column)
+    {
+        checkState(onRow, "No current row. Call next() first");
+        return kinds[column];
+    }
+
+    public boolean isNull(int column)
+    {
+        return kindOf(column) == NULL;
+    }
+
+    /**
+     * @return the value as long, or 0 for null
+     * @throws NumberFormatException if the value is a string that is not a number
+     */
+    public long getLong(int column)
+    {
+        switch (kindOf(column)) {
+            case NULL:
+                return 0L;
+            case LONG:
+            case BOOLEAN:
+                return longs[column];
+            case DOUBLE:
+                return (long) doubles[column];
+            default:
+                return Long.parseLong(getString(column));
+        }
+    }
+
+    /**
+     * @return the value as double, or 0.0 for null
+     * @throws NumberFormatException if the value is a string that is not a number
+     */
+    public double getDouble(int column)
+    {
+        switch (kindOf(column)) {
+            case NULL:
+                return 0.0;
+            case LONG:
+            case BOOLEAN:
+                return longs[column];
+            case DOUBLE:
+                return doubles[column];
+            default:
+                return Double.parseDouble(getString(column));
+        }
+    }
+
+    /**
+     * @return the value as boolean, or false for null
+     */
+    public boolean getBoolean(int column)
+    {
+        switch (kindOf(column)) {
+            case NULL:
+                return false;
+            case LONG:
+            case BOOLEAN:
+                return longs[column] != 0;
+            case DOUBLE:
+                return doubles[column] != 0.0;
+            default:
+                return Boolean.parseBoolean(getString(column));
+        }
+    }
+
+    /**
+     * @return the value as string, or null for null. Arrays and maps are returned in JSON.
+     */
+    public String getString(int column)
+    {
+        switch (kindOf(column)) {
+            case NULL:
+                return null;
+            case LONG:
+                return Long.toString(longs[column]);
+            case BOOLEAN:
+                return longs[column] != 0 ? "true" : "false";
+            case DOUBLE:
+                return Double.toString(doubles[column]);
+            case BYTES:
+                if (strings[column] == null) {
+                    strings[column] = new String(bytes[column], 0, lengths[column], StandardCharsets.UTF_8);
+                }
+                return strings[column];
+            default:
+                return strings[column];
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        try {
+            unpacker.close();
+        }
+        catch (IOException e) {
+            throw new TDClientException(TDClientException.ErrorType.EXECUTION_FAILURE, "Failed to close the job result", e);
+        }
+    }
+}
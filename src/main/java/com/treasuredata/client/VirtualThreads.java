@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.treasuredata.client;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates executors running each task on a new virtual thread.
+ * <p/>
+ * Virtual threads are available since Java 21. This class is replaced with META-INF/versions/21/com/treasuredata/client/VirtualThreads.class
+ * of the multi-release jar when running on Java 21 or later, and this version for older Java reports that they are not available.
+ */
+final class VirtualThreads
+{
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreads.class);
+
+    private VirtualThreads()
+    {
+    }
+
+    static boolean isAvailable()
+    {
+        return false;
+    }
+
+    /**
+     * Virtual threads are not available before Java 21, so this returns a cached pool of daemon platform threads instead.
+     *
+     * @param namePrefix
+     * @return
+     */
+    static ExecutorService newVirtualThreadPerTaskExecutor(String namePrefix)
+    {
+        logger.warn("Virtual threads require Java 21 or later. Using a cached thread pool");
+        return Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat(namePrefix + "%d").setDaemon(true).build());
+    }
+}
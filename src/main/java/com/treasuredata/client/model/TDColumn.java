@@ -23,9 +23,6 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.RuntimeJsonMappingException;
 import com.google.common.base.Objects;
-import org.json.simple.JSONArray;
-import org.json.simple.parser.JSONParser;
-import org.json.simple.parser.ParseException;
 import org.slf4j.LoggerFactory;
 
 import java.io.Serializable;
@@ -90,34 +87,19 @@ public class TDColumn implements Serializable
         return new String(key, StandardCharsets.UTF_8);
     }
 
-    private static JSONArray castToArray(Object obj)
-    {
-        if (obj instanceof JSONArray) {
-            return (JSONArray) obj;
-        }
-        else {
-            throw new RuntimeJsonMappingException("Not an json array: " + obj);
-        }
-    }
-
+    /**
+     * Parse a table schema JSON string (e.g., [["key", "type"], ["key", "type", "name"], ...]) into a list of columns.
+     * Returns an empty list if the string is not a valid JSON.
+     *
+     * @param jsonStr
+     * @return
+     */
     public static List<TDColumn> parseTuple(String jsonStr)
     {
-        // unescape json quotation
         try {
-            String unescaped = jsonStr.replaceAll("\\\"", "\"");
-            JSONArray arr = castToArray(new JSONParser().parse(unescaped));
-            List<TDColumn> columnList = new ArrayList<TDColumn>(arr.size());
-            for (Object e : arr) {
-                JSONArray columnNameAndType = castToArray(e);
-                String[] s = new String[columnNameAndType.size()];
-                for (int i = 0; i < columnNameAndType.size(); ++i) {
-                    s[i] = columnNameAndType.get(i).toString();
-                }
-                columnList.add(parseTuple(s));
-            }
-            return columnList;
+            return new SchemaParser(jsonStr).parseColumns();
         }
-        catch (ParseException e) {
+        catch (SchemaParseException e) {
             LoggerFactory.getLogger(TDColumn.class).error("Failed to parse json string", e);
             return new ArrayList<TDColumn>(0);
         }
@@ -183,4 +165,226 @@ public class TDColumn implements Serializable
     {
         return String.format("%s:%s", name, type.toString());
     }
+
+    private static class SchemaParseException
+            extends Exception
+    {
+        SchemaParseException(String message)
+        {
+            super(message);
+        }
+    }
+
+    /**
+     * A single-pass parser of table schema strings. Unlike general-purpose JSON parsers,
+     * it creates no intermediate objects other than the column names and types.
+     */
+    private static class SchemaParser
+    {
+        private final String json;
+        private final int length;
+        private int offset;
+
+        SchemaParser(String json)
+        {
+            this.json = json;
+            this.length = json.length();
+        }
+
+        List<TDColumn> parseColumns()
+                throws SchemaParseException
+        {
+            if (!scan('[')) {
+                throw new RuntimeJsonMappingException("Not an json array: " + json);
+            }
+            List<TDColumn> columns = new ArrayList<>();
+            if (!scan(']')) {
+                do {
+                    columns.add(parseColumn());
+                }
+                while (scan(','));
+                expect(']');
+            }
+            skipSpaces();
+            if (offset < length) {
+                throw error("unexpected character after the schema");
+            }
+            return columns;
+        }
+
+        private TDColumn parseColumn()
+                throws SchemaParseException
+        {
+            if (!scan('[')) {
+                throw new RuntimeJsonMappingException("Not an json array: " + json);
+            }
+            String key = null;
+            String type = null;
+            String name = null;
+            int size = 0;
+            if (!scan(']')) {
+                do {
+                    String value = parseValue();
+                    switch (size++) {
+                        case 0:
+                            key = value;
+                            break;
+                        case 1:
+                            type = value;
+                            break;
+                        case 2:
+                            name = value;
+                            break;
+                        default:
+                            break;
+                    }
+                }
+                while (scan(','));
+                expect(']');
+            }
+            if (size == 2) {
+                // [ key, type ]
+                return new TDColumn(key, TDColumnType.parseColumnType(type), key.getBytes(StandardCharsets.UTF_8));
+            }
+            else if (size == 3) {
+                // [ key, type, name ]
+                return new TDColumn(name, TDColumnType.parseColumnType(type), key.getBytes(StandardCharsets.UTF_8));
+            }
+            throw new RuntimeJsonMappingException("Unexpected string tuple to deserialize TDColumn");
+        }
+
+        private String parseValue()
+                throws SchemaParseException
+        {
+            skipSpaces();
+            if (offset >= length) {
+                throw error("unexpected end of the schema");
+            }
+            char c = json.charAt(offset);
+            if (c == '"') {
+                return parseString();
+            }
+            if (c == '[' || c == '{') {
+                throw new RuntimeJsonMappingException("Unexpected nested value in a column tuple: " + json);
+            }
+            // A number, true, false or null literal is used as is
+            int start = offset;
+            while (offset < length && !isDelimiter(json.charAt(offset))) {
+                offset++;
+            }
+            if (start == offset) {
+                throw error("value is expected");
+            }
+            return json.substring(start, offset);
+        }
+
+        private String parseString()
+                throws SchemaParseException
+        {
+            int start = ++offset;
+            // Fast path for strings without escape sequences
+            while (offset < length) {
+                char c = json.charAt(offset);
+                if (c == '"') {
+                    return json.substring(start, offset++);
+                }
+                if (c == '\\') {
+                    break;
+                }
+                offset++;
+            }
+            StringBuilder sb = new StringBuilder(offset - start + 16);
+            sb.append(json, start, offset);
+            while (offset < length) {
+                char c = json.charAt(offset++);
+                if (c == '"') {
+                    return sb.toString();
+                }
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                if (offset >= length) {
+                    break;
+                }
+                char escaped = json.charAt(offset++);
+                switch (escaped) {
+                    case '"':
+                    case '\\':
+                    case '/':
+                        sb.append(escaped);
+                        break;
+                    case 'b':
+                        sb.append('\b');
+                        break;
+                    case 'f':
+                        sb.append('\f');
+                        break;
+                    case 'n':
+                        sb.append('\n');
+                        break;
+                    case 'r':
+                        sb.append('\r');
+                        break;
+                    case 't':
+                        sb.append('\t');
+                        break;
+                    case 'u':
+                        if (offset + 4 > length) {
+                            throw error("invalid unicode escape");
+                        }
+                        try {
+                            sb.append((char) Integer.parseInt(json.substring(offset, offset + 4), 16));
+                        }
+                        catch (NumberFormatException e) {
+                            throw error("invalid unicode escape");
+                        }
+                        offset += 4;
+                        break;
+                    default:
+                        throw error("invalid escape character");
+                }
+            }
+            throw error("unterminated string");
+        }
+
+        private boolean scan(char c)
+        {
+            skipSpaces();
+            if (offset < length && json.charAt(offset) == c) {
+                offset++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char c)
+                throws SchemaParseException
+        {
+            if (!scan(c)) {
+                throw error(String.format("'%s' is expected", c));
+            }
+        }
+
+        private void skipSpaces()
+        {
+            while (offset < length) {
+                char c = json.charAt(offset);
+                if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                    return;
+                }
+                offset++;
+            }
+        }
+
+        private static boolean isDelimiter(char c)
+        {
+            return c == ',' || c == ']' || c == '}' || c == ' ' || c == '\t' || c == '\n' || c == '\r';
+        }
+
+        private SchemaParseException error(String message)
+        {
+            return new SchemaParseException(String.format("Failed to parse schema at position %d: %s: %s", offset, message, json));
+        }
+    }
 }
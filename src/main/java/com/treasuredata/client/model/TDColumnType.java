@@ -21,6 +21,8 @@ package com.treasuredata.client.model;
 import com.fasterxml.jackson.annotation.JsonValue;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
 import com.treasuredata.client.model.impl.TDColumnTypeDeserializer;
 
@@ -38,14 +40,52 @@ public class TDColumnType implements Serializable
 
     public static final List<TDColumnType> primitiveTypes = ImmutableList.of(INT, LONG, FLOAT, DOUBLE, STRING);
 
+    /**
+     * The maximum number of type strings and composite types kept in the intern cache
+     */
+    static final int MAX_INTERNED_TYPES = 1024;
+
+    /**
+     * Canonical instances keyed by type strings as given to {@link #parseColumnType(String)},
+     * and by {@link #toString()} of array and map types. Real schemas use only a handful of distinct types,
+     * so parsing a type string is usually a single lookup.
+     */
+    private static final Cache<String, TDColumnType> internedTypes = CacheBuilder.newBuilder()
+            .maximumSize(MAX_INTERNED_TYPES)
+            .build();
+
     public static TDColumnType newArrayType(TDColumnType elementType)
     {
-        return new TDColumnType(TDTypeName.ARRAY, Optional.<List<TDColumnType>>of(ImmutableList.of(elementType)));
+        return intern(new TDColumnType(TDTypeName.ARRAY, Optional.<List<TDColumnType>>of(ImmutableList.of(elementType))));
     }
 
     public static TDColumnType newMapType(TDColumnType keyType, TDColumnType valueType)
     {
-        return new TDColumnType(TDTypeName.MAP, Optional.<List<TDColumnType>>of(ImmutableList.of(keyType, valueType)));
+        return intern(new TDColumnType(TDTypeName.MAP, Optional.<List<TDColumnType>>of(ImmutableList.of(keyType, valueType))));
+    }
+
+    /**
+     * Returns the canonical instance equal to the given type. Primitive types are always canonical.
+     * A composite type stays canonical while it is in the intern cache.
+     */
+    private static TDColumnType intern(TDColumnType type)
+    {
+        switch (type.typeName) {
+            case INT:
+                return INT;
+            case LONG:
+                return LONG;
+            case FLOAT:
+                return FLOAT;
+            case DOUBLE:
+                return DOUBLE;
+            case STRING:
+                return STRING;
+            default:
+                String key = type.toString();
+                TDColumnType interned = internedTypes.asMap().putIfAbsent(key, type);
+                return interned != null ? interned : type;
+        }
     }
 
     private final TDTypeName typeName;
@@ -57,6 +97,11 @@ public class TDColumnType implements Serializable
         this.elementTypes = elementTypes;
     }
 
+    private Object readResolve()
+    {
+        return intern(this);
+    }
+
     public TDTypeName getTypeName()
     {
         return typeName;
@@ -140,7 +185,24 @@ public class TDColumnType implements Serializable
         return result;
     }
 
+    /**
+     * Parse a type string. The returned instance is shared by all calls that parse an equal type,
+     * so types can be compared by identity in most cases.
+     *
+     * @param str
+     * @return
+     */
     public static TDColumnType parseColumnType(String str)
+    {
+        TDColumnType type = internedTypes.getIfPresent(str);
+        if (type == null) {
+            type = parseColumnTypeUncached(str);
+            internedTypes.put(str, type);
+        }
+        return type;
+    }
+
+    private static TDColumnType parseColumnTypeUncached(String str)
     {
         Parser p = new Parser(str);
         TDColumnType type = parseColumnTypeRecursive(p);
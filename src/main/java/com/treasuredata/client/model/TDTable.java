@@ -23,6 +23,7 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.base.Joiner;
 import com.google.common.base.Objects;
 
+import java.util.Collections;
 import java.util.List;
 
 public class TDTable
@@ -30,7 +31,8 @@ public class TDTable
     private final String id;
     private final String name;
     private final TDTableType type;
-    private final List<TDColumn> columns;
+    private final String schema;
+    private volatile List<TDColumn> columns;
     private final long rowCount;
     private final long estimatedStorageSize;
     private final String lastLogTimeStamp;
@@ -55,7 +57,7 @@ public class TDTable
         this.id = id;
         this.name = name;
         this.type = type;
-        this.columns = TDColumn.parseTuple(schema);
+        this.schema = schema;
         this.rowCount = rowCount;
         this.estimatedStorageSize = estimatedStroageSize;
         this.lastLogTimeStamp = lastLogTimeStamp;
@@ -81,10 +83,22 @@ public class TDTable
         return type;
     }
 
+    /**
+     * Returns the columns of this table. The schema string is parsed on the first call,
+     * since most table list users never read the columns.
+     *
+     * @return
+     */
     @JsonProperty
     public List<TDColumn> getColumns()
     {
-        return columns;
+        List<TDColumn> result = columns;
+        if (result == null) {
+            // Parsing the same string again in a race is harmless
+            result = schema == null ? Collections.<TDColumn>emptyList() : Collections.unmodifiableList(TDColumn.parseTuple(schema));
+            columns = result;
+        }
+        return result;
     }
 
     /**
@@ -138,18 +152,18 @@ public class TDTable
         TDTable other = (TDTable) obj;
         return Objects.equal(this.name, other.name) &&
                 Objects.equal(this.type, other.type) &&
-                Objects.equal(this.columns, other.columns);
+                Objects.equal(this.getColumns(), other.getColumns());
     }
 
     @Override
     public int hashCode()
     {
-        return Objects.hashCode(name, type, columns);
+        return Objects.hashCode(name, type, getColumns());
     }
 
     @Override
     public String toString()
     {
-        return String.format("%s(%s)", name, Joiner.on(", ").join(columns));
+        return String.format("%s(%s)", name, Joiner.on(", ").join(getColumns()));
     }
 }
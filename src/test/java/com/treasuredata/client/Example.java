@@ -19,24 +19,16 @@
 package com.treasuredata.client;
 
 import com.google.common.base.Function;
-import com.google.common.base.Throwables;
 import com.treasuredata.client.model.TDDatabase;
 import com.treasuredata.client.model.TDJob;
 import com.treasuredata.client.model.TDJobRequest;
-import com.treasuredata.client.model.TDJobSummary;
-import com.treasuredata.client.model.TDResultFormat;
 import com.treasuredata.client.model.TDSaveQueryRequest;
 import com.treasuredata.client.model.TDSavedQuery;
 import com.treasuredata.client.model.TDSavedQueryUpdateRequest;
 import com.treasuredata.client.model.TDTable;
-import org.msgpack.core.MessagePack;
-import org.msgpack.core.MessageUnpacker;
-import org.msgpack.value.ArrayValue;
 
-import java.io.InputStream;
 import java.util.Date;
 import java.util.List;
-import java.util.zip.GZIPInputStream;
 
 /**
  *
@@ -62,12 +54,10 @@ public class Example
             // Submit a new Presto query
             String jobId = client.submit(TDJobRequest.newPrestoQuery("sample_datasets", "select count(1) cnt from www_access"));
 
-            // Wait until the query finishes
-            ExponentialBackOff backOff = new ExponentialBackOff();
-            TDJobSummary job = client.jobStatus(jobId);
-            while (!job.getStatus().isFinished()) {
-                Thread.sleep(backOff.nextWaitTimeMillis());
-                job = client.jobStatus(jobId);
+            // Wait until the query finishes. A JobWatcher can wait for many jobs with a single polling thread
+            try (JobWatcher watcher = client.newJobWatcher()) {
+                TDJob.Status status = watcher.watch(jobId).get();
+                System.out.println("status: " + status);
             }
 
             // Read the detailed job information
@@ -75,25 +65,16 @@ public class Example
             System.out.println("log:\n" + jobInfo.getCmdOut());
             System.out.println("error log:\n" + jobInfo.getStdErr());
 
-            // Read the job results in msgpack.gz format
-            client.jobResult(jobId, TDResultFormat.MESSAGE_PACK_GZ, new Function<InputStream, Integer>()
+            // Read the job results in msgpack.gz format. Each row of the query result is an array (e.g., [1, "name", ...])
+            client.readJobResult(jobId, new Function<TDResultReader, Integer>()
             {
                 @Override
-                public Integer apply(InputStream input)
+                public Integer apply(TDResultReader reader)
                 {
                     int count = 0;
-                    try {
-                        MessageUnpacker unpacker = MessagePack.newDefaultUnpacker(new GZIPInputStream(input));
-                        while (unpacker.hasNext()) {
-                            // Each row of the query result is array type value (e.g., [1, "name", ...])
-                            ArrayValue array = unpacker.unpackValue().asArrayValue();
-                            System.out.println(array);
-                            count++;
-                        }
-                        unpacker.close();
-                    }
-                    catch (Exception e) {
-                        throw Throwables.propagate(e);
+                    while (reader.next()) {
+                        System.out.println(reader.getColumnName(0) + ": " + reader.getLong(0));
+                        count++;
                     }
                     return count;
                 }
@@ -0,0 +1,1137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.treasuredata.client;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessageUnpacker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * An in-memory implementation of the /v3/database, /v3/table, /v3/job, /v3/bulk_import and /v3/schedule APIs
+ * running on an embedded Jetty server.
+ * <p/>
+ * In addition to the API behavior, the server can add latency to each response, inject failures
+ * (5xx, 429, connection resets and slow response bodies), and generate large synthetic payloads, so that
+ * retry, streaming and throughput behaviors of the client can be tested without accessing the real API.
+ * <p/>
+ * Jobs are created in the running state, and finish successfully after {@link #setJobDurationMillis(long)}.
+ */
+public class MockTDApiServer
+        implements AutoCloseable
+{
+    private static final Logger logger = LoggerFactory.getLogger(MockTDApiServer.class);
+
+    public static final String API_KEY = "mock-api-key";
+
+    public static enum Fault
+    {
+        INTERNAL_SERVER_ERROR(HttpStatus.INTERNAL_SERVER_ERROR_500),
+        SERVICE_UNAVAILABLE(HttpStatus.SERVICE_UNAVAILABLE_503),
+        TOO_MANY_REQUESTS(429),
+        /**
+         * Close the connection without sending any response
+         */
+        CONNECTION_RESET(-1),
+        /**
+         * Send the first half of the response body, and the rest after a delay
+         */
+        SLOW_BODY(-1);
+
+        private final int statusCode;
+
+        private Fault(int statusCode)
+        {
+            this.statusCode = statusCode;
+        }
+
+        public boolean isErrorResponse()
+        {
+            return statusCode > 0;
+        }
+    }
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Server server;
+    private final ServerConnector connector;
+
+    private volatile long minLatencyMillis = 0;
+    private volatile long maxLatencyMillis = 0;
+    private volatile long slowBodyDelayMillis = 1000;
+    private volatile int retryAfterSeconds = -1;
+    private volatile long jobDurationMillis = 0;
+
+    // Fault injection, guarded by faultLock
+    private final Object faultLock = new Object();
+    private final List<ScheduledFault> scheduledFaults = new ArrayList<>();
+    private final Random faultRandom = new Random(0);
+    private double faultRate = 0.0;
+    private List<Fault> randomFaults = ImmutableList.of();
+
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final ConcurrentMap<String, AtomicInteger> requestCountPerEndpoint = new ConcurrentHashMap<>();
+
+    // API state, guarded by this
+    private final Map<String, MockDatabase> databases = new TreeMap<>();
+    private final TreeMap<Long, MockJob> jobs = new TreeMap<>();
+    private final Map<String, MockBulkImportSession> bulkImportSessions = new TreeMap<>();
+    private final Map<String, Map<String, Object>> schedules = new TreeMap<>();
+    private long nextJobId = 1;
+    private long nextTableId = 1;
+
+    public MockTDApiServer()
+    {
+        server = new Server();
+        connector = new ServerConnector(server);
+        connector.setHost("localhost");
+        connector.setPort(0);
+        server.addConnector(connector);
+        server.setHandler(new ApiHandler());
+    }
+
+    public MockTDApiServer start()
+            throws Exception
+    {
+        server.start();
+        logger.debug("Started MockTDApiServer at port {}", getPort());
+        return this;
+    }
+
+    @Override
+    public void close()
+    {
+        try {
+            server.stop();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while stopping MockTDApiServer", e);
+        }
+        catch (Exception e) {
+            throw new IllegalStateException("Failed to stop MockTDApiServer", e);
+        }
+    }
+
+    public int getPort()
+    {
+        return connector.getLocalPort();
+    }
+
+    /**
+     * Configure a client builder to access this server
+     *
+     * @param builder
+     * @return
+     */
+    public <ClientImpl> AbstractTDClientBuilder<ClientImpl> configure(AbstractTDClientBuilder<ClientImpl> builder)
+    {
+        return builder
+                .setUseSSL(false)
+                .setEndpoint("localhost")
+                .setPort(getPort())
+                .setApiKey(API_KEY);
+    }
+
+    public TDClient newClient()
+    {
+        return configure(TDClient.newBuilder(false)).build();
+    }
+
+    /**
+     * Delay every response by a random duration between minMillis and maxMillis
+     */
+    public MockTDApiServer setLatency(long minMillis, long maxMillis)
+    {
+        checkArgument(0 <= minMillis && minMillis <= maxMillis, "invalid latency range: %s - %s", minMillis, maxMillis);
+        this.minLatencyMillis = minMillis;
+        this.maxLatencyMillis = maxMillis;
+        return this;
+    }
+
+    public MockTDApiServer setSlowBodyDelayMillis(long slowBodyDelayMillis)
+    {
+        this.slowBodyDelayMillis = slowBodyDelayMillis;
+        return this;
+    }
+
+    /**
+     * Add a Retry-After header to 429 and 503 error responses. A negative value removes the header.
+     */
+    public MockTDApiServer setRetryAfterSeconds(int retryAfterSeconds)
+    {
+        this.retryAfterSeconds = retryAfterSeconds;
+        return this;
+    }
+
+    public MockTDApiServer setJobDurationMillis(long jobDurationMillis)
+    {
+        this.jobDurationMillis = jobDurationMillis;
+        return this;
+    }
+
+    /**
+     * Fail the next count requests with the given fault
+     */
+    public MockTDApiServer failNext(Fault fault, int count)
+    {
+        return failNext(Optional.<String>absent(), fault, count);
+    }
+
+    /**
+     * Fail the next count requests to the endpoint (e.g., "table.list") with the given fault
+     *
+     * @see TDApiRequest#getEndpointName()
+     */
+    public MockTDApiServer failNext(String endpoint, Fault fault, int count)
+    {
+        return failNext(Optional.of(endpoint), fault, count);
+    }
+
+    private MockTDApiServer failNext(Optional<String> endpoint, Fault fault, int count)
+    {
+        checkNotNull(fault, "fault is null");
+        checkArgument(count > 0, "count must be > 0");
+        synchronized (faultLock) {
+            scheduledFaults.add(new ScheduledFault(endpoint, fault, count));
+        }
+        return this;
+    }
+
+    /**
+     * Fail requests randomly with the given rate. The fault of each failure is chosen randomly from the given faults.
+     * The random sequence is seeded, so a test run is reproducible as long as the request order is the same.
+     */
+    public MockTDApiServer setFaultRate(double rate, Fault... faults)
+    {
+        checkArgument(0.0 <= rate && rate <= 1.0, "rate must be between 0.0 and 1.0");
+        checkArgument(rate == 0.0 || faults.length > 0, "no fault is given");
+        synchronized (faultLock) {
+            this.faultRate = rate;
+            this.randomFaults = ImmutableList.copyOf(faults);
+        }
+        return this;
+    }
+
+    public MockTDApiServer clearFaults()
+    {
+        synchronized (faultLock) {
+            scheduledFaults.clear();
+            faultRate = 0.0;
+            randomFaults = ImmutableList.of();
+        }
+        return this;
+    }
+
+    public int getRequestCount()
+    {
+        return requestCount.get();
+    }
+
+    public int getRequestCount(String endpoint)
+    {
+        AtomicInteger count = requestCountPerEndpoint.get(endpoint);
+        return count == null ? 0 : count.get();
+    }
+
+    public synchronized void addDatabase(String database)
+    {
+        if (!databases.containsKey(database)) {
+            databases.put(database, new MockDatabase(database));
+        }
+    }
+
+    /**
+     * Add numTables tables (table_0, table_1, ...) each having numColumns columns to the database
+     */
+    public synchronized void addSyntheticTables(String database, int numTables, int numColumns)
+    {
+        addDatabase(database);
+        MockDatabase db = databases.get(database);
+        StringBuilder schema = new StringBuilder("[");
+        for (int i = 0; i < numColumns; ++i) {
+            if (i > 0) {
+                schema.append(",");
+            }
+            String type = i % 3 == 0 ? "string" : (i % 3 == 1 ? "long" : "array<double>");
+            schema.append(String.format("[\"col%d\",\"%s\",\"col%d\"]", i, type, i));
+        }
+        schema.append("]");
+        for (int i = 0; i < numTables; ++i) {
+            MockTable table = newTable(String.format("table_%d", i), "log");
+            table.schema = schema.toString();
+            table.count = i * 1000L;
+            db.tables.put(table.name, table);
+        }
+    }
+
+    /**
+     * Add numJobs finished jobs querying the database
+     *
+     * @return the ids of the added jobs
+     */
+    public synchronized List<String> addSyntheticJobs(String database, int numJobs)
+    {
+        addDatabase(database);
+        List<String> jobIds = new ArrayList<>(numJobs);
+        long createdAt = System.currentTimeMillis() - jobDurationMillis;
+        for (int i = 0; i < numJobs; ++i) {
+            MockJob job = newJob("presto", database, String.format("select count(*) from table_%d where time > %d", i % 100, i), createdAt);
+            jobIds.add(job.id);
+        }
+        return jobIds;
+    }
+
+    public synchronized void addSyntheticSchedules(String database, int numSchedules)
+    {
+        addDatabase(database);
+        for (int i = 0; i < numSchedules; ++i) {
+            Map<String, Object> schedule = newSchedule(String.format("schedule_%d", i));
+            schedule.put("database", database);
+            schedule.put("query", String.format("select %d", i));
+            schedule.put("cron", "0 * * * *");
+            schedules.put((String) schedule.get("name"), schedule);
+        }
+    }
+
+    /**
+     * Set the result data returned by /v3/job/result
+     */
+    public synchronized void setJobResult(String jobId, byte[] result)
+    {
+        MockJob job = jobs.get(Long.parseLong(jobId));
+        checkArgument(job != null, "job %s is not found", jobId);
+        job.result = result;
+    }
+
+    private class ApiHandler
+            extends AbstractHandler
+    {
+        @Override
+        public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+                throws IOException, ServletException
+        {
+            baseRequest.setHandled(true);
+            String endpoint = TDApiRequest.endpointNameOf(target);
+            requestCount.incrementAndGet();
+            AtomicInteger count = requestCountPerEndpoint.get(endpoint);
+            if (count == null) {
+                AtomicInteger newCount = new AtomicInteger();
+                count = requestCountPerEndpoint.putIfAbsent(endpoint, newCount);
+                if (count == null) {
+                    count = newCount;
+                }
+            }
+            count.incrementAndGet();
+
+            sleepQuietly(minLatencyMillis == maxLatencyMillis ? minLatencyMillis : ThreadLocalRandom.current().nextLong(minLatencyMillis, maxLatencyMillis + 1));
+
+            Optional<Fault> fault = nextFault(endpoint);
+            if (fault.isPresent() && fault.get() == Fault.CONNECTION_RESET) {
+                logger.debug("Resetting the connection of {}", target);
+                baseRequest.getHttpChannel().getEndPoint().close();
+                return;
+            }
+
+            ApiResponse apiResponse;
+            if (fault.isPresent() && fault.get().isErrorResponse()) {
+                apiResponse = error(fault.get().statusCode, "Injected failure");
+                int retryAfter = retryAfterSeconds;
+                if (retryAfter >= 0 && (fault.get() == Fault.TOO_MANY_REQUESTS || fault.get() == Fault.SERVICE_UNAVAILABLE)) {
+                    response.setHeader("Retry-After", Integer.toString(retryAfter));
+                }
+            }
+            else if (!("TD1 " + API_KEY).equals(request.getHeader("Authorization"))) {
+                apiResponse = error(HttpStatus.UNAUTHORIZED_401, "Invalid API key");
+            }
+            else {
+                try {
+                    apiResponse = route(request, splitPath(target));
+                }
+                catch (RuntimeException e) {
+                    logger.warn("Failed to process " + target, e);
+                    apiResponse = error(HttpStatus.INTERNAL_SERVER_ERROR_500, e.toString());
+                }
+            }
+            apiResponse.write(request, response, fault.isPresent() && fault.get() == Fault.SLOW_BODY ? slowBodyDelayMillis : 0);
+        }
+    }
+
+    private Optional<Fault> nextFault(String endpoint)
+    {
+        synchronized (faultLock) {
+            Iterator<ScheduledFault> it = scheduledFaults.iterator();
+            while (it.hasNext()) {
+                ScheduledFault scheduled = it.next();
+                if (!scheduled.endpoint.isPresent() || scheduled.endpoint.get().equals(endpoint)) {
+                    if (--scheduled.remaining == 0) {
+                        it.remove();
+                    }
+                    return Optional.of(scheduled.fault);
+                }
+            }
+            if (faultRate > 0.0 && faultRandom.nextDouble() < faultRate) {
+                return Optional.of(randomFaults.get(faultRandom.nextInt(randomFaults.size())));
+            }
+        }
+        return Optional.absent();
+    }
+
+    private static List<String> splitPath(String target)
+    {
+        List<String> path = new ArrayList<>(Arrays.asList(target.split("/")));
+        Iterator<String> it = path.iterator();
+        while (it.hasNext()) {
+            if (it.next().isEmpty()) {
+                it.remove();
+            }
+        }
+        return path;
+    }
+
+    private ApiResponse route(HttpServletRequest request, List<String> path)
+            throws IOException
+    {
+        if (path.size() < 3 || !path.get(0).equals("v3")) {
+            if (path.size() == 3 && path.get(1).equals("system") && path.get(2).equals("server_status")) {
+                return json(map("status", "ok"));
+            }
+            return notFound("Resource not found");
+        }
+        String group = path.get(1);
+        String action = path.get(2);
+        List<String> args = path.subList(3, path.size());
+        switch (group) {
+            case "database":
+                return handleDatabase(action, args);
+            case "table":
+                return handleTable(request, action, args);
+            case "job":
+                return handleJob(request, action, args);
+            case "bulk_import":
+                return handleBulkImport(request, action, args);
+            case "schedule":
+                return handleSchedule(request, action, args);
+            default:
+                return notFound("Resource not found");
+        }
+    }
+
+    private synchronized ApiResponse handleDatabase(String action, List<String> args)
+    {
+        switch (action) {
+            case "list": {
+                List<Object> list = new ArrayList<>();
+                for (MockDatabase db : databases.values()) {
+                    list.add(map(
+                            "name", db.name,
+                            "count", db.tables.size(),
+                            "created_at", db.createdAt,
+                            "updated_at", db.createdAt,
+                            "permission", "owner"));
+                }
+                return json(map("databases", list));
+            }
+            case "create": {
+                String name = args.get(0);
+                if (databases.containsKey(name)) {
+                    return error(HttpStatus.CONFLICT_409, "Database " + name + " already exists");
+                }
+                databases.put(name, new MockDatabase(name));
+                return json(map("database", name));
+            }
+            case "delete": {
+                String name = args.get(0);
+                if (databases.remove(name) == null) {
+                    return notFound("Database " + name + " does not exist");
+                }
+                return json(map("database", name));
+            }
+            default:
+                return notFound("Resource not found");
+        }
+    }
+
+    private synchronized ApiResponse handleTable(HttpServletRequest request, String action, List<String> args)
+            throws IOException
+    {
+        MockDatabase db = databases.get(args.get(0));
+        if (db == null) {
+            return notFound("Database " + args.get(0) + " does not exist");
+        }
+        if (action.equals("list")) {
+            List<Object> list = new ArrayList<>();
+            for (MockTable table : db.tables.values()) {
+                list.add(table.toJson());
+            }
+            return json(map("database", db.name, "tables", list));
+        }
+        String tableName = args.get(1);
+        MockTable table = db.tables.get(tableName);
+        if (action.equals("create")) {
+            if (table != null) {
+                return error(HttpStatus.CONFLICT_409, "Table " + tableName + " already exists");
+            }
+            table = newTable(tableName, args.size() > 2 ? args.get(2) : "log");
+            db.tables.put(tableName, table);
+            return json(map("database", db.name, "table", tableName, "type", table.type));
+        }
+        if (table == null) {
+            return notFound("Table " + tableName + " does not exist");
+        }
+        switch (action) {
+            case "delete":
+                db.tables.remove(tableName);
+                return json(map("database", db.name, "table", tableName, "type", table.type));
+            case "rename": {
+                String newName = args.get(2);
+                if (db.tables.containsKey(newName) && !"true".equals(request.getParameter("overwrite"))) {
+                    return error(HttpStatus.CONFLICT_409, "Table " + newName + " already exists");
+                }
+                db.tables.remove(tableName);
+                table.name = newName;
+                db.tables.put(newName, table);
+                return json(map("database", db.name, "table", tableName, "type", table.type));
+            }
+            case "swap": {
+                MockTable other = db.tables.get(args.get(2));
+                if (other == null) {
+                    return notFound("Table " + args.get(2) + " does not exist");
+                }
+                table.name = other.name;
+                other.name = tableName;
+                db.tables.put(table.name, table);
+                db.tables.put(other.name, other);
+                return json(map("database", db.name, "table1", tableName, "table2", table.name));
+            }
+            case "update-schema": {
+                Map<String, Object> body = readJson(request);
+                table.schema = mapper.writeValueAsString(body.get("schema"));
+                return json(map("database", db.name, "table", tableName, "type", table.type));
+            }
+            default:
+                return notFound("Resource not found");
+        }
+    }
+
+    private synchronized ApiResponse handleJob(HttpServletRequest request, String action, List<String> args)
+    {
+        switch (action) {
+            case "issue": {
+                String database = args.get(1);
+                if (!databases.containsKey(database)) {
+                    return notFound("Database " + database + " does not exist");
+                }
+                MockJob job = newJob(args.get(0), database, request.getParameter("query"), System.currentTimeMillis());
+                return json(map("job_id", job.id, "database", database));
+            }
+            case "list": {
+                long from = parseLong(request.getParameter("from_id"), 0);
+                long to = parseLong(request.getParameter("to_id"), Long.MAX_VALUE);
+                List<Object> list = new ArrayList<>();
+                for (MockJob job : jobs.descendingMap().subMap(to, true, Math.min(from, to), true).values()) {
+                    list.add(job.toJson());
+                }
+                return json(map("count", list.size(), "from", null, "to", null, "jobs", list));
+            }
+            default:
+                break;
+        }
+        MockJob job = jobs.get(parseLong(args.get(0), -1));
+        if (job == null) {
+            return notFound("Job " + args.get(0) + " was not found");
+        }
+        switch (action) {
+            case "status":
+                return json(job.toSummaryJson());
+            case "show":
+                return json(job.toJson());
+            case "kill": {
+                String formerStatus = job.getStatus();
+                if (!job.isFinished()) {
+                    job.killed = true;
+                    job.endAt = System.currentTimeMillis();
+                }
+                return json(map("job_id", job.id, "former_status", formerStatus));
+            }
+            case "result":
+                return rangeResponse(request, job.result);
+            default:
+                return notFound("Resource not found");
+        }
+    }
+
+    private synchronized ApiResponse handleBulkImport(HttpServletRequest request, String action, List<String> args)
+            throws IOException
+    {
+        if (action.equals("list")) {
+            List<Object> list = new ArrayList<>();
+            for (MockBulkImportSession session : bulkImportSessions.values()) {
+                list.add(session.toJson());
+            }
+            return json(map("bulk_imports", list));
+        }
+        String name = args.get(0);
+        MockBulkImportSession session = bulkImportSessions.get(name);
+        if (action.equals("create")) {
+            if (session != null) {
+                return error(HttpStatus.CONFLICT_409, "Bulk import session " + name + " already exists");
+            }
+            MockDatabase db = databases.get(args.get(1));
+            if (db == null || !db.tables.containsKey(args.get(2))) {
+                return notFound("Table " + args.get(1) + "." + args.get(2) + " does not exist");
+            }
+            bulkImportSessions.put(name, new MockBulkImportSession(name, args.get(1), args.get(2)));
+            return json(map("bulk_import", name));
+        }
+        if (session == null) {
+            return notFound("Bulk import session " + name + " does not exist");
+        }
+        switch (action) {
+            case "show":
+                return json(session.toJson());
+            case "list_parts":
+                return json(map("name", name, "parts", new ArrayList<>(session.parts.keySet())));
+            case "upload_part": {
+                if (session.frozen) {
+                    return error(HttpStatus.UNPROCESSABLE_ENTITY_422, "Bulk import session " + name + " is frozen");
+                }
+                session.parts.put(args.get(1), countRecords(ByteStreams.toByteArray(request.getInputStream())));
+                return json(map("name", name));
+            }
+            case "delete_part":
+                session.parts.remove(args.get(1));
+                return json(map("name", name));
+            case "freeze":
+                session.frozen = true;
+                return json(map("name", name));
+            case "unfreeze":
+                session.frozen = false;
+                return json(map("name", name));
+            case "perform": {
+                MockJob job = newJob("bulk_import", session.database, "", System.currentTimeMillis());
+                session.jobId = Optional.of(job.id);
+                return json(map("name", name, "job_id", job.id));
+            }
+            case "commit": {
+                if (!"ready".equals(session.getStatus())) {
+                    return error(HttpStatus.UNPROCESSABLE_ENTITY_422, "Bulk import session " + name + " is not ready");
+                }
+                MockDatabase db = databases.get(session.database);
+                MockTable table = db == null ? null : db.tables.get(session.table);
+                if (table != null) {
+                    table.count += session.getValidRecords();
+                }
+                session.committed = true;
+                return json(map("name", name));
+            }
+            case "delete":
+                bulkImportSessions.remove(name);
+                return json(map("name", name));
+            case "error_records":
+                return new ApiResponse(HttpStatus.OK_200, "application/x-msgpack", new byte[0]);
+            default:
+                return notFound("Resource not found");
+        }
+    }
+
+    private synchronized ApiResponse handleSchedule(HttpServletRequest request, String action, List<String> args)
+            throws IOException
+    {
+        if (action.equals("list")) {
+            return json(map("schedules", new ArrayList<>(schedules.values())));
+        }
+        String name = args.get(0);
+        Map<String, Object> schedule = schedules.get(name);
+        if (action.equals("create")) {
+            if (schedule != null) {
+                return error(HttpStatus.CONFLICT_409, "Schedule " + name + " already exists");
+            }
+            schedule = newSchedule(name);
+            mergeSchedule(schedule, readJson(request));
+            schedules.put(name, schedule);
+            return json(schedule);
+        }
+        if (schedule == null) {
+            return notFound("Schedule " + name + " does not exist");
+        }
+        switch (action) {
+            case "update": {
+                mergeSchedule(schedule, readJson(request));
+                String newName = (String) schedule.get("name");
+                if (!newName.equals(name)) {
+                    schedules.remove(name);
+                    schedules.put(newName, schedule);
+                }
+                return json(schedule);
+            }
+            case "delete":
+                schedules.remove(name);
+                return json(schedule);
+            case "run": {
+                long scheduledAt = parseLong(args.get(1), 0) * 1000;
+                MockJob job = newJob((String) schedule.get("type"), (String) schedule.get("database"), (String) schedule.get("query"), System.currentTimeMillis());
+                return json(map("jobs", ImmutableList.of(map("job_id", job.id, "type", job.type, "scheduled_at", formatDate(scheduledAt)))));
+            }
+            default:
+                return notFound("Resource not found");
+        }
+    }
+
+    private static void mergeSchedule(Map<String, Object> schedule, Map<String, Object> request)
+    {
+        for (Map.Entry<String, Object> entry : request.entrySet()) {
+            if (schedule.containsKey(entry.getKey()) && entry.getValue() != null) {
+                schedule.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private MockTable newTable(String name, String type)
+    {
+        return new MockTable(Long.toString(nextTableId++), name, type);
+    }
+
+    private MockJob newJob(String type, String database, String query, long createdAt)
+    {
+        MockJob job = new MockJob(Long.toString(nextJobId++), type, database, query, createdAt);
+        jobs.put(Long.parseLong(job.id), job);
+        return job;
+    }
+
+    private static Map<String, Object> newSchedule(String name)
+    {
+        return map(
+                "name", name,
+                "cron", "",
+                "type", "hive",
+                "query", "",
+                "timezone", "UTC",
+                "delay", 0,
+                "database", "",
+                "user_name", "mock",
+                "priority", 0,
+                "retry_limit", 0,
+                "result", "",
+                "next_time", null);
+    }
+
+    private static long countRecords(byte[] msgpackGz)
+    {
+        long count = 0;
+        try {
+            MessageUnpacker unpacker = MessagePack.newDefaultUnpacker(new GZIPInputStream(new ByteArrayInputStream(msgpackGz)));
+            while (unpacker.hasNext()) {
+                unpacker.skipValue();
+                count++;
+            }
+        }
+        catch (IOException e) {
+            // Broken part
+            return -1;
+        }
+        return count;
+    }
+
+    private Map<String, Object> readJson(HttpServletRequest request)
+            throws IOException
+    {
+        byte[] body = ByteStreams.toByteArray(request.getInputStream());
+        if (body.length == 0) {
+            return new LinkedHashMap<>();
+        }
+        return mapper.readValue(body, new TypeReference<Map<String, Object>>()
+        {
+        });
+    }
+
+    private static long parseLong(String s, long defaultValue)
+    {
+        if (s == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(s);
+        }
+        catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static Map<String, Object> map(Object... keyValues)
+    {
+        Map<String, Object> m = new LinkedHashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            m.put((String) keyValues[i], keyValues[i + 1]);
+        }
+        return m;
+    }
+
+    private static String formatDate(long timeMillis)
+    {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss z", Locale.ENGLISH);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(new Date(timeMillis));
+    }
+
+    private static void sleepQuietly(long millis)
+    {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private ApiResponse json(Object value)
+    {
+        try {
+            return new ApiResponse(HttpStatus.OK_200, "application/json", mapper.writeValueAsBytes(value));
+        }
+        catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private ApiResponse error(int statusCode, String message)
+    {
+        ApiResponse response = json(map("error", HttpStatus.getMessage(statusCode), "text", message, "severity", "error"));
+        return new ApiResponse(statusCode, response.contentType, response.body);
+    }
+
+    private ApiResponse notFound(String message)
+    {
+        return error(HttpStatus.NOT_FOUND_404, message);
+    }
+
+    private static ApiResponse rangeResponse(HttpServletRequest request, byte[] data)
+    {
+        String range = request.getHeader("Range");
+        if (range == null || !range.startsWith("bytes=")) {
+            return new ApiResponse(HttpStatus.OK_200, "application/octet-stream", data);
+        }
+        String[] bounds = range.substring("bytes=".length()).split("-", 2);
+        int start = (int) Math.min(parseLong(bounds[0], 0), data.length);
+        int end = (int) Math.min(bounds.length > 1 ? parseLong(bounds[1], data.length - 1) : data.length - 1, data.length - 1);
+        ApiResponse response = new ApiResponse(HttpStatus.PARTIAL_CONTENT_206, "application/octet-stream", Arrays.copyOfRange(data, start, Math.max(start, end + 1)));
+        response.contentRange = Optional.of(String.format("bytes %d-%d/%d", start, end, data.length));
+        return response;
+    }
+
+    private static class ApiResponse
+    {
+        private final int statusCode;
+        private final String contentType;
+        private final byte[] body;
+        private Optional<String> contentRange = Optional.absent();
+
+        ApiResponse(int statusCode, String contentType, byte[] body)
+        {
+            this.statusCode = statusCode;
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        void write(HttpServletRequest request, HttpServletResponse response, long slowBodyDelayMillis)
+                throws IOException
+        {
+            byte[] body = this.body;
+            String acceptEncoding = request.getHeader("Accept-Encoding");
+            if (contentType.equals("application/json") && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                // Compress JSON responses as the API does
+                body = gzip(body);
+                response.setHeader("Content-Encoding", "gzip");
+            }
+            response.setStatus(statusCode);
+            response.setContentType(contentType);
+            response.setContentLength(body.length);
+            if (contentRange.isPresent()) {
+                response.setHeader("Content-Range", contentRange.get());
+            }
+            if (request.getMethod().equals("HEAD")) {
+                return;
+            }
+            OutputStream out = response.getOutputStream();
+            if (slowBodyDelayMillis > 0) {
+                int half = body.length / 2;
+                out.write(body, 0, half);
+                out.flush();
+                sleepQuietly(slowBodyDelayMillis);
+                out.write(body, half, body.length - half);
+            }
+            else {
+                out.write(body);
+            }
+            out.flush();
+        }
+    }
+
+    private static byte[] gzip(byte[] data)
+            throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+            gz.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private static class ScheduledFault
+    {
+        private final Optional<String> endpoint;
+        private final Fault fault;
+        private int remaining;
+
+        ScheduledFault(Optional<String> endpoint, Fault fault, int remaining)
+        {
+            this.endpoint = endpoint;
+            this.fault = fault;
+            this.remaining = remaining;
+        }
+    }
+
+    private static class MockDatabase
+    {
+        private final String name;
+        private final String createdAt = formatDate(System.currentTimeMillis());
+        private final Map<String, MockTable> tables = new TreeMap<>();
+
+        MockDatabase(String name)
+        {
+            this.name = name;
+        }
+    }
+
+    private static class MockTable
+    {
+        private final String id;
+        private final String type;
+        private final String createdAt = formatDate(System.currentTimeMillis());
+        private String name;
+        private String schema = "[]";
+        private long count = 0;
+
+        MockTable(String id, String name, String type)
+        {
+            this.id = id;
+            this.name = name;
+            this.type = type;
+        }
+
+        Map<String, Object> toJson()
+        {
+            return map(
+                    "id", id,
+                    "name", name,
+                    "type", type,
+                    "count", count,
+                    "schema", schema,
+                    "estimated_storage_size", count * 100,
+                    "last_log_timestamp", null,
+                    "expire_days", null,
+                    "created_at", createdAt,
+                    "updated_at", createdAt);
+        }
+    }
+
+    private class MockJob
+    {
+        private final String id;
+        private final String type;
+        private final String database;
+        private final String query;
+        private final long createdAt;
+        private boolean killed = false;
+        private long endAt = -1;
+        private byte[] result = new byte[0];
+
+        MockJob(String id, String type, String database, String query, long createdAt)
+        {
+            this.id = id;
+            this.type = type;
+            this.database = database;
+            this.query = query == null ? "" : query;
+            this.createdAt = createdAt;
+        }
+
+        boolean isFinished()
+        {
+            return killed || System.currentTimeMillis() - createdAt >= jobDurationMillis;
+        }
+
+        String getStatus()
+        {
+            if (killed) {
+                return "killed";
+            }
+            return isFinished() ? "success" : "running";
+        }
+
+        long getEndAt()
+        {
+            return endAt >= 0 ? endAt : createdAt + jobDurationMillis;
+        }
+
+        Map<String, Object> toSummaryJson()
+        {
+            boolean finished = isFinished();
+            return map(
+                    "job_id", id,
+                    "status", getStatus(),
+                    "created_at", formatDate(createdAt),
+                    "updated_at", formatDate(finished ? getEndAt() : createdAt),
+                    "started_at", formatDate(createdAt),
+                    "end_at", finished ? formatDate(getEndAt()) : null,
+                    "duration", finished ? (getEndAt() - createdAt) / 1000 : 0,
+                    "result_size", result.length);
+        }
+
+        Map<String, Object> toJson()
+        {
+            boolean finished = isFinished();
+            return map(
+                    "job_id", id,
+                    "type", type,
+                    "status", getStatus(),
+                    "query", query,
+                    "database", database,
+                    "created_at", formatDate(createdAt),
+                    "start_at", formatDate(createdAt),
+                    "updated_at", formatDate(finished ? getEndAt() : createdAt),
+                    "end_at", finished ? formatDate(getEndAt()) : null,
+                    "hive_result_schema", "[]",
+                    "result", "",
+                    "url", "http://localhost/jobs/" + id,
+                    "user_name", "mock",
+                    "duration", finished ? (getEndAt() - createdAt) / 1000 : 0,
+                    "result_size", result.length,
+                    "debug", null);
+        }
+    }
+
+    private class MockBulkImportSession
+    {
+        private final String name;
+        private final String database;
+        private final String table;
+        // part name -> the number of records, or -1 for broken parts
+        private final Map<String, Long> parts = new TreeMap<>();
+        private boolean frozen = false;
+        private boolean committed = false;
+        private Optional<String> jobId = Optional.absent();
+
+        MockBulkImportSession(String name, String database, String table)
+        {
+            this.name = name;
+            this.database = database;
+            this.table = table;
+        }
+
+        String getStatus()
+        {
+            if (committed) {
+                return "committed";
+            }
+            if (!jobId.isPresent()) {
+                return "uploading";
+            }
+            MockJob job = jobs.get(Long.parseLong(jobId.get()));
+            return job != null && job.isFinished() ? "ready" : "performing";
+        }
+
+        long getValidRecords()
+        {
+            long records = 0;
+            for (long count : parts.values()) {
+                records += Math.max(0, count);
+            }
+            return records;
+        }
+
+        Map<String, Object> toJson()
+        {
+            boolean performed = !getStatus().equals("uploading") && !getStatus().equals("performing");
+            long validParts = 0;
+            long errorParts = 0;
+            for (long count : parts.values()) {
+                if (count >= 0) {
+                    validParts++;
+                }
+                else {
+                    errorParts++;
+                }
+            }
+            return map(
+                    "name", name,
+                    "database", database,
+                    "table", table,
+                    "status", getStatus(),
+                    "upload_frozen", frozen,
+                    "job_id", jobId.orNull(),
+                    "valid_records", performed ? getValidRecords() : 0,
+                    "error_records", 0,
+                    "valid_parts", performed ? validParts : 0,
+                    "error_parts", performed ? errorParts : 0);
+        }
+    }
+}
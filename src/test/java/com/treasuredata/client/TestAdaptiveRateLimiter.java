@@ -0,0 +1,297 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.treasuredata.client;
+
+import com.google.common.base.Optional;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.treasuredata.client.AdaptiveRateLimiter.Feedback;
+import com.treasuredata.client.MockTDApiServer.Fault;
+import com.treasuredata.client.model.TDTable;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestAdaptiveRateLimiter
+{
+    private static class CountingTask
+            implements Runnable
+    {
+        private final AtomicInteger runCount;
+
+        CountingTask(AtomicInteger runCount)
+        {
+            this.runCount = runCount;
+        }
+
+        @Override
+        public void run()
+        {
+            runCount.incrementAndGet();
+        }
+    }
+
+    @Test
+    public void queueRequestsOverLimit()
+    {
+        AdaptiveRateLimiter limiter = new AdaptiveRateLimiter(1, 2, 0.5);
+        AtomicInteger runCount = new AtomicInteger();
+        for (int i = 0; i < 5; ++i) {
+            limiter.acquire(new CountingTask(runCount));
+        }
+        assertEquals(2, runCount.get());
+        assertEquals(2, limiter.getInFlightRequests());
+        assertEquals(3, limiter.getWaitingRequests());
+
+        limiter.release(System.nanoTime(), Feedback.SUCCESS);
+        assertEquals(3, runCount.get());
+        assertEquals(2, limiter.getWaitingRequests());
+    }
+
+    @Test
+    public void cancelWaitingTask()
+    {
+        AdaptiveRateLimiter limiter = new AdaptiveRateLimiter(1, 1, 0.5);
+        AtomicInteger runCount = new AtomicInteger();
+        CountingTask running = new CountingTask(runCount);
+        CountingTask waiting = new CountingTask(runCount);
+        assertTrue(limiter.acquire(running));
+        assertFalse(limiter.acquire(waiting));
+        assertTrue(limiter.cancel(waiting));
+        assertFalse(limiter.cancel(running));
+
+        limiter.release(System.nanoTime(), Feedback.SUCCESS);
+        assertEquals(1, runCount.get());
+        assertEquals(0, limiter.getInFlightRequests());
+        assertEquals(0, limiter.getWaitingRequests());
+    }
+
+    @Test
+    public void maxLimitFromDestinationLimits()
+    {
+        TDClientConfig config = TDClient.newBuilder(false)
+                .setConnectionPoolSize(4)
+                .setMaxConnectionsPerDestination(200)
+                .setMaxRequestsQueuedPerDestination(300)
+                .buildConfig();
+        try (TDHttpClient httpClient = new TDHttpClient(config)) {
+            // Not limited by the number of threads
+            assertEquals(500, httpClient.getRateLimiter().getMaxLimit());
+        }
+    }
+
+    @Test
+    public void failRequestWaitingTooLong()
+            throws Exception
+    {
+        try (MockTDApiServer server = new MockTDApiServer().start()) {
+            TDClient client = server.configure(TDClient.newBuilder(false))
+                    .setMaxConnectionsPerDestination(1)
+                    .setMaxRequestsQueuedPerDestination(1)
+                    .setIdleTimeoutMillis(200)
+                    .setRetryLimit(0)
+                    .build();
+            try {
+                // Take all permits
+                AdaptiveRateLimiter limiter = client.httpClient.getRateLimiter();
+                assertEquals(2, limiter.getMaxLimit());
+                for (int i = 0; i < 2; ++i) {
+                    assertTrue(limiter.acquire(new CountingTask(new AtomicInteger())));
+                }
+                try {
+                    client.listDatabases();
+                    fail("should not reach here");
+                }
+                catch (TDClientTimeoutException e) {
+                    // OK
+                }
+                assertEquals(0, server.getRequestCount("database.list"));
+                assertEquals(0, limiter.getWaitingRequests());
+
+                limiter.release(System.nanoTime(), Feedback.IGNORE);
+                assertTrue(client.listDatabases().isEmpty());
+            }
+            finally {
+                client.close();
+            }
+        }
+    }
+
+    @Test
+    public void increaseAdditivelyAndDecreaseMultiplicatively()
+    {
+        AdaptiveRateLimiter limiter = new AdaptiveRateLimiter(1, 16, 0.5);
+        AtomicInteger runCount = new AtomicInteger();
+        long start = System.nanoTime();
+        for (int i = 0; i < 4; ++i) {
+            limiter.acquire(new CountingTask(runCount));
+        }
+        // Throttled responses to requests sent together decrease the limit only once
+        limiter.release(start, Feedback.THROTTLED);
+        limiter.release(start, Feedback.THROTTLED);
+        assertEquals(8.0, limiter.getLimit(), 1e-9);
+
+        // A request sent after the decrease can decrease the limit again
+        limiter.release(System.nanoTime(), Feedback.THROTTLED);
+        assertEquals(4.0, limiter.getLimit(), 1e-9);
+
+        // The limit grows by one after a limit's worth of successful requests
+        limiter.release(System.nanoTime(), Feedback.IGNORE);
+        for (int i = 0; i < 4; ++i) {
+            limiter.acquire(new CountingTask(runCount));
+            limiter.release(System.nanoTime(), Feedback.SUCCESS);
+        }
+        assertEquals(5.0, limiter.getLimit(), 0.1);
+        assertEquals(0, limiter.getInFlightRequests());
+
+        for (int i = 0; i < 1000; ++i) {
+            limiter.acquire(new CountingTask(runCount));
+            limiter.release(System.nanoTime(), Feedback.SUCCESS);
+        }
+        assertEquals(16.0, limiter.getLimit(), 1e-9);
+    }
+
+    @Test
+    public void parseRetryAfter()
+    {
+        long now = 1445990400000L; // 2015-10-28 00:00:00 GMT
+        assertEquals(Optional.of(120000L), TDHttpClient.parseRetryAfterMillis("120", now));
+        assertEquals(Optional.of(0L), TDHttpClient.parseRetryAfterMillis("-1", now));
+        assertEquals(Optional.of(30000L), TDHttpClient.parseRetryAfterMillis("Wed, 28 Oct 2015 00:00:30 GMT", now));
+        assertEquals(Optional.absent(), TDHttpClient.parseRetryAfterMillis(null, now));
+        assertEquals(Optional.absent(), TDHttpClient.parseRetryAfterMillis("soon", now));
+    }
+
+    @Test
+    public void retryThrottledRequests()
+            throws Exception
+    {
+        try (MockTDApiServer server = new MockTDApiServer().start()) {
+            server.addDatabase("mock_db");
+            TDClient client = server.configure(TDClient.newBuilder(false))
+                    .setRetryInitialIntervalMillis(10)
+                    .setRetryLimit(3)
+                    .build();
+            try {
+                server.setRetryAfterSeconds(1).failNext(Fault.TOO_MANY_REQUESTS, 1);
+                long start = System.currentTimeMillis();
+                assertEquals(1, client.listDatabases().size());
+                assertTrue("Retry-After must be honored", System.currentTimeMillis() - start >= 1000);
+                assertEquals(2, server.getRequestCount("database.list"));
+
+                server.setRetryAfterSeconds(-1).failNext(Fault.TOO_MANY_REQUESTS, 10);
+                try {
+                    client.listDatabases();
+                    fail("should not reach here");
+                }
+                catch (TDClientHttpTooManyRequestsException e) {
+                    assertEquals(429, e.getStatusCode());
+                }
+                assertEquals(2 + 4, server.getRequestCount("database.list"));
+                server.clearFaults();
+
+                AdaptiveRateLimiter limiter = client.httpClient.getRateLimiter();
+                assertTrue(limiter.getLimit() < limiter.getMaxLimit());
+                assertEquals(0, limiter.getInFlightRequests());
+            }
+            finally {
+                client.close();
+            }
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void releaseStreamPermitOnHeaders()
+            throws Exception
+    {
+        try (MockTDApiServer server = new MockTDApiServer().start()) {
+            server.addSyntheticTables("mock_db", 5000, 20);
+            TDClient client = server.configure(TDClient.newBuilder(false))
+                    .setConnectionPoolSize(8)
+                    .setMaxConnectionsPerDestination(4)
+                    .setMaxRequestsQueuedPerDestination(4)
+                    .setIdleTimeoutMillis(5000)
+                    .build();
+            try {
+                // Shrink the limit from 8 to 1
+                AdaptiveRateLimiter limiter = client.httpClient.getRateLimiter();
+                for (int i = 0; i < 3; ++i) {
+                    limiter.acquire(new CountingTask(new AtomicInteger()));
+                    limiter.release(System.nanoTime(), Feedback.THROTTLED);
+                }
+                assertEquals(1, (int) limiter.getLimit());
+
+                // Make other API calls while reading a large streaming response
+                int numTables = 0;
+                try (JsonArrayIterator<TDTable> tables = client.iterateTables("mock_db")) {
+                    assertTrue(tables.hasNext());
+                    long start = System.currentTimeMillis();
+                    assertEquals(1, client.listDatabases().size());
+                    assertTrue("The nested call must not wait for the stream", System.currentTimeMillis() - start < 3000);
+                    while (tables.hasNext()) {
+                        tables.next();
+                        numTables++;
+                    }
+                }
+                assertEquals(5000, numTables);
+                assertEquals(0, limiter.getInFlightRequests());
+            }
+            finally {
+                client.close();
+            }
+        }
+    }
+
+    @Test
+    public void throttleConcurrentRequests()
+            throws Exception
+    {
+        try (MockTDApiServer server = new MockTDApiServer().start()) {
+            server.addDatabase("mock_db");
+            server.setLatency(5, 5).setFaultRate(0.2, Fault.TOO_MANY_REQUESTS, Fault.SERVICE_UNAVAILABLE);
+            AsyncTDClient client = server.configure(AsyncTDClient.newBuilder(false))
+                    .setRetryInitialIntervalMillis(10)
+                    .setRetryMaxIntervalMillis(100)
+                    .setRetryLimit(20)
+                    .build();
+            try {
+                List<ListenableFuture<?>> futures = new ArrayList<>();
+                for (int i = 0; i < 200; ++i) {
+                    futures.add(client.listDatabases());
+                }
+                for (ListenableFuture<?> future : futures) {
+                    future.get();
+                }
+                AdaptiveRateLimiter limiter = client.httpClient.getRateLimiter();
+                assertFalse(limiter.getLimit() > limiter.getMaxLimit());
+                assertEquals(0, limiter.getInFlightRequests());
+                assertEquals(0, limiter.getWaitingRequests());
+            }
+            finally {
+                client.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.treasuredata.client;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.treasuredata.client.model.TDJobSummary;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ *
+ */
+public class TestAsyncTDClient
+{
+    private MockWebServer server;
+    private AsyncTDClient client;
+
+    @Before
+    public void setUp()
+            throws Exception
+    {
+        server = new MockWebServer();
+        server.start();
+        client = AsyncTDClient.newBuilder(false)
+                .setUseSSL(false)
+                .setEndpoint(server.getHostName())
+                .setPort(server.getPort())
+                .setApiKey("dummy")
+                .setRetryLimit(2)
+                .setRetryInitialIntervalMillis(10)
+                .build();
+    }
+
+    @After
+    public void tearDown()
+            throws Exception
+    {
+        client.close();
+        server.shutdown();
+    }
+
+    @Test
+    public void concurrentJobStatus()
+            throws Exception
+    {
+        int numRequests = 20;
+        for (int i = 0; i < numRequests; ++i) {
+            server.enqueue(new MockResponse().setBody("{\"job_id\":\"123\",\"status\":\"running\",\"type\":\"presto\"}"));
+        }
+        List<ListenableFuture<TDJobSummary>> futures = new ArrayList<>();
+        for (int i = 0; i < numRequests; ++i) {
+            futures.add(client.jobStatus("123"));
+        }
+        for (ListenableFuture<TDJobSummary> f : futures) {
+            assertThat(f.get().getJobId(), is("123"));
+        }
+        assertEquals(numRequests, server.getRequestCount());
+        assertThat(server.takeRequest().getPath(), is("/v3/job/status/123"));
+    }
+
+    @Test
+    public void retryOnServerError()
+            throws Exception
+    {
+        server.enqueue(new MockResponse().setResponseCode(500));
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setBody("ok"));
+
+        assertThat(client.serverStatus().get(), is("ok"));
+        assertEquals(3, server.getRequestCount());
+    }
+
+    @Test
+    public void failAfterRetryLimit()
+            throws Exception
+    {
+        for (int i = 0; i < 3; ++i) {
+            server.enqueue(new MockResponse().setResponseCode(500));
+        }
+        try {
+            client.serverStatus().get();
+            fail("cannot reach here");
+        }
+        catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(TDClientHttpException.class));
+            assertEquals(TDClientException.ErrorType.SERVER_ERROR, ((TDClientHttpException) e.getCause()).getErrorType());
+        }
+        assertEquals(3, server.getRequestCount());
+    }
+
+    @Test
+    public void clientErrorIsNotRetried()
+            throws Exception
+    {
+        server.enqueue(new MockResponse().setResponseCode(404).setBody("{\"error\":\"not found\",\"text\":\"not found\",\"severity\":\"error\"}"));
+        try {
+            client.jobInfo("123").get();
+            fail("cannot reach here");
+        }
+        catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(TDClientHttpNotFoundException.class));
+        }
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void ignoreConflict()
+            throws Exception
+    {
+        server.enqueue(new MockResponse().setResponseCode(409));
+        client.createDatabaseIfNotExists("sample_db").get();
+        assertThat(server.takeRequest().getPath(), is("/v3/database/create/sample_db"));
+
+        server.enqueue(new MockResponse().setResponseCode(404));
+        assertTrue(!client.existsTable("sample_db", "sample_table").get());
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.treasuredata.client;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+import com.treasuredata.client.model.TDBulkImportSession;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ *
+ */
+public class TestBulkImportUploader
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MockWebServer server;
+    private AsyncTDClient client;
+
+    @Before
+    public void setUp()
+            throws Exception
+    {
+        server = new MockWebServer();
+        server.start();
+        client = AsyncTDClient.newBuilder(false)
+                .setUseSSL(false)
+                .setEndpoint(server.getHostName())
+                .setPort(server.getPort())
+                .setApiKey("dummy")
+                .setRetryLimit(0)
+                .build();
+    }
+
+    @After
+    public void tearDown()
+            throws Exception
+    {
+        client.close();
+        server.shutdown();
+    }
+
+    private List<File> createPartFiles(int numParts)
+            throws Exception
+    {
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < numParts; ++i) {
+            File f = folder.newFile(String.format("part%d.msgpack.gz", i));
+            Files.write("dummy part " + i, f, StandardCharsets.UTF_8);
+            files.add(f);
+        }
+        return files;
+    }
+
+    @Test
+    public void partNameOf()
+    {
+        assertEquals("part1", BulkImportUploader.partNameOf(new File("/tmp/part1.msgpack.gz")));
+        assertEquals("part2", BulkImportUploader.partNameOf(new File("part2")));
+        assertEquals(".hidden", BulkImportUploader.partNameOf(new File(".hidden")));
+        assertEquals("data.1", BulkImportUploader.partNameOf(new File("data.1.msgpack.gz")));
+        assertEquals("data.2", BulkImportUploader.partNameOf(new File("data.2.msgpack.gz")));
+        assertEquals("part3.msgpack", BulkImportUploader.partNameOf(new File("part3.msgpack.zst")));
+    }
+
+    @Test
+    public void uploadMultiDotFileNames()
+            throws Exception
+    {
+        final List<String> uploadedParts = new CopyOnWriteArrayList<>();
+        server.setDispatcher(new Dispatcher()
+        {
+            @Override
+            public MockResponse dispatch(RecordedRequest request)
+            {
+                uploadedParts.add(request.getPath());
+                return new MockResponse().setBody("{}");
+            }
+        });
+        List<File> files = new ArrayList<>();
+        for (String name : new String[] {"data.1.msgpack.gz", "data.2.msgpack.gz"}) {
+            File f = folder.newFile(name);
+            Files.write(name, f, StandardCharsets.UTF_8);
+            files.add(f);
+        }
+        List<BulkImportUploader.PartResult> results = client.newBulkImportUploader("s1").upload(files);
+        assertEquals("data.1", results.get(0).getPartName());
+        assertEquals("data.2", results.get(1).getPartName());
+        assertEquals(2, uploadedParts.size());
+        assertTrue(uploadedParts.contains("/v3/bulk_import/upload_part/s1/data.1"));
+        assertTrue(uploadedParts.contains("/v3/bulk_import/upload_part/s1/data.2"));
+    }
+
+    @Test
+    public void rejectDuplicatePartNames()
+            throws Exception
+    {
+        List<File> files = ImmutableList.of(folder.newFile("data.msgpack.gz"), folder.newFile("data.gz"));
+        try {
+            client.newBulkImportUploader("s1").upload(files);
+            fail("should not reach here");
+        }
+        catch (TDClientException e) {
+            assertEquals(TDClientException.ErrorType.INVALID_INPUT, e.getErrorType());
+        }
+        // Nothing is uploaded
+        assertEquals(0, server.getRequestCount());
+    }
+
+    @Test
+    public void uploadPartsConcurrently()
+            throws Exception
+    {
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        final AtomicInteger failures = new AtomicInteger();
+        final List<String> uploadedParts = new CopyOnWriteArrayList<>();
+        server.setDispatcher(new Dispatcher()
+        {
+            @Override
+            public MockResponse dispatch(RecordedRequest request)
+                    throws InterruptedException
+            {
+                int n = inFlight.incrementAndGet();
+                synchronized (maxInFlight) {
+                    maxInFlight.set(Math.max(maxInFlight.get(), n));
+                }
+                try {
+                    Thread.sleep(50);
+                    String path = request.getPath();
+                    // The first upload of part3 fails with a server error
+                    if (path.endsWith("/part3") && failures.getAndIncrement() == 0) {
+                        return new MockResponse().setResponseCode(500);
+                    }
+                    uploadedParts.add(path);
+                    return new MockResponse().setBody("{}");
+                }
+                finally {
+                    inFlight.decrementAndGet();
+                }
+            }
+        });
+
+        List<File> files = createPartFiles(6);
+        List<BulkImportUploader.PartResult> results = client.newBulkImportUploader("s1")
+                .setMaxConcurrentUploads(2)
+                .upload(files);
+
+        assertEquals(6, results.size());
+        assertEquals(6, uploadedParts.size());
+        assertEquals(7, server.getRequestCount());
+        assertThat(maxInFlight.get(), lessThanOrEqualTo(2));
+        for (int i = 0; i < results.size(); ++i) {
+            BulkImportUploader.PartResult r = results.get(i);
+            assertTrue(r.isSuccess());
+            assertEquals("part" + i, r.getPartName());
+            assertEquals(files.get(i).length(), r.getBytes());
+            assertEquals(i == 3 ? 2 : 1, r.getAttempts());
+        }
+        assertTrue(uploadedParts.contains("/v3/bulk_import/upload_part/s1/part0"));
+    }
+
+    @Test
+    public void uploadBufferWithoutCopying()
+            throws Exception
+    {
+        final List<String> bodies = new CopyOnWriteArrayList<>();
+        server.setDispatcher(new Dispatcher()
+        {
+            @Override
+            public MockResponse dispatch(RecordedRequest request)
+            {
+                bodies.add(request.getBody().readUtf8());
+                // The first attempt fails, and the retry must send the same bytes again
+                return bodies.size() == 1 ? new MockResponse().setResponseCode(500) : new MockResponse().setBody("{}");
+            }
+        });
+
+        byte[] buffer = "--part content--".getBytes(StandardCharsets.UTF_8);
+        BulkImportUploader.PartResult result = client.newBulkImportUploader("s1")
+                .uploadPart("part1", ByteBuffer.wrap(buffer, 2, 12)).get();
+        assertTrue(result.isSuccess());
+        assertEquals(2, result.getAttempts());
+        assertEquals(12, result.getBytes());
+        assertEquals(ImmutableList.of("part content", "part content"), bodies);
+    }
+
+    @Test
+    public void clientErrorIsNotRetried()
+            throws Exception
+    {
+        server.setDispatcher(new Dispatcher()
+        {
+            @Override
+            public MockResponse dispatch(RecordedRequest request)
+            {
+                if (request.getPath().endsWith("/part1")) {
+                    return new MockResponse().setResponseCode(422);
+                }
+                return new MockResponse().setBody("{}");
+            }
+        });
+
+        BulkImportUploader uploader = client.newBulkImportUploader("s1");
+        List<File> files = createPartFiles(3);
+        BulkImportUploader.PartResult result = uploader.uploadPart("part1", files.get(1)).get();
+        assertFalse(result.isSuccess());
+        assertEquals(1, result.getAttempts());
+        assertEquals(TDClientException.ErrorType.INVALID_INPUT, result.getError().get().getErrorType());
+
+        try {
+            uploader.upload(files);
+            fail("cannot reach here");
+        }
+        catch (TDClientException e) {
+            assertEquals(TDClientException.ErrorType.INVALID_INPUT, e.getErrorType());
+        }
+    }
+
+    @Test
+    public void freezeAndCommit()
+            throws Exception
+    {
+        final ConcurrentMap<String, AtomicInteger> calls = new ConcurrentHashMap<>();
+        server.setDispatcher(new Dispatcher()
+        {
+            @Override
+            public MockResponse dispatch(RecordedRequest request)
+            {
+                String path = request.getPath();
+                calls.putIfAbsent(path, new AtomicInteger());
+                int count = calls.get(path).incrementAndGet();
+                if (path.equals("/v3/bulk_import/show/s1")) {
+                    String status = count == 1 ? "performing" : "ready";
+                    return new MockResponse().setBody("{\"name\":\"s1\",\"status\":\"" + status + "\",\"upload_frozen\":true,\"job_id\":\"100\",\"valid_records\":10,\"error_records\":0,\"valid_parts\":2,\"error_parts\":0}");
+                }
+                if (path.equals("/v3/job/status/100")) {
+                    return new MockResponse().setBody("{\"job_id\":\"100\",\"status\":\"success\",\"type\":\"bulkload\"}");
+                }
+                return new MockResponse().setBody("{}");
+            }
+        });
+
+        TDBulkImportSession session = client.newBulkImportUploader("s1").freezeAndCommit();
+        assertThat(session.getStatus(), is(TDBulkImportSession.ImportStatus.READY));
+        assertEquals(10, session.getValidRecords());
+        for (String path : ImmutableList.of("/v3/bulk_import/freeze/s1", "/v3/bulk_import/perform/s1", "/v3/bulk_import/commit/s1")) {
+            assertTrue(path, calls.containsKey(path));
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.treasuredata.client;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.treasuredata.client.model.TDColumn;
+import com.treasuredata.client.model.TDColumnType;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessageUnpacker;
+import org.msgpack.value.Value;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ *
+ */
+public class TestBulkImportWriter
+{
+    private static final List<TDColumn> COLUMNS = ImmutableList.of(
+            new TDColumn("id", TDColumnType.STRING),
+            new TDColumn("count", TDColumnType.LONG),
+            new TDColumn("score", TDColumnType.DOUBLE));
+
+    private MockWebServer server;
+    private AsyncTDClient client;
+    private final ConcurrentMap<String, byte[]> uploadedParts = new ConcurrentHashMap<>();
+
+    @Before
+    public void setUp()
+            throws Exception
+    {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher()
+        {
+            @Override
+            public MockResponse dispatch(RecordedRequest request)
+            {
+                if (request.getPath().contains("/bad_")) {
+                    return new MockResponse().setResponseCode(422);
+                }
+                uploadedParts.put(request.getPath(), request.getBody().readByteArray());
+                return new MockResponse().setBody("{}");
+            }
+        });
+        server.start();
+        client = AsyncTDClient.newBuilder(false)
+                .setUseSSL(false)
+                .setEndpoint(server.getHostName())
+                .setPort(server.getPort())
+                .setApiKey("dummy")
+                .setRetryLimit(0)
+                .build();
+    }
+
+    @After
+    public void tearDown()
+            throws Exception
+    {
+        client.close();
+        server.shutdown();
+    }
+
+    private static List<Map<String, Value>> readRows(byte[] part)
+            throws Exception
+    {
+        List<Map<String, Value>> rows = new ArrayList<>();
+        try (MessageUnpacker unpacker = MessagePack.newDefaultUnpacker(new GZIPInputStream(new ByteArrayInputStream(part)))) {
+            while (unpacker.hasNext()) {
+                Map<String, Value> row = new TreeMap<>();
+                for (Map.Entry<Value, Value> e : unpacker.unpackValue().asMapValue().map().entrySet()) {
+                    row.put(e.getKey().asStringValue().asString(), e.getValue());
+                }
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    @Test
+    public void writeRowsIntoParts()
+            throws Exception
+    {
+        int numRows = 20000;
+        BulkImportWriter writer = new BulkImportWriter(client.newBulkImportUploader("s1").setMaxConcurrentUploads(2), "p", COLUMNS, 16 * 1024);
+        for (int i = 0; i < numRows; ++i) {
+            if (i % 2 == 0) {
+                writer.write(1400000000L + i, "id-" + i, i, i / 2);
+            }
+            else {
+                writer.write(ImmutableMap.<String, Object>of("time", 1400000000L + i, "id", "id-" + i, "count", i, "score", (double) i / 2, "extra", ImmutableList.of(1, "a")));
+            }
+        }
+        writer.close();
+
+        assertEquals(numRows, writer.getNumberOfRows());
+        assertTrue(writer.getNumberOfParts() > 1);
+        assertEquals(writer.getNumberOfParts(), uploadedParts.size());
+        assertEquals(writer.getNumberOfParts(), writer.getPartResults().size());
+
+        List<Map<String, Value>> rows = new ArrayList<>();
+        for (int p = 0; p < writer.getNumberOfParts(); ++p) {
+            String path = String.format("/v3/bulk_import/upload_part/s1/p_%05d", p);
+            assertTrue(path, uploadedParts.containsKey(path));
+            assertEquals(uploadedParts.get(path).length, writer.getPartResults().get(p).getBytes());
+            rows.addAll(readRows(uploadedParts.get(path)));
+        }
+        assertEquals(numRows, rows.size());
+        for (int i = 0; i < numRows; ++i) {
+            Map<String, Value> row = rows.get(i);
+            assertEquals(1400000000L + i, row.get("time").asIntegerValue().toLong());
+            assertEquals("id-" + i, row.get("id").asStringValue().asString());
+            assertEquals(i, row.get("count").asIntegerValue().toLong());
+            // Integer values of a double column are converted to double
+            assertEquals(i % 2 == 0 ? (double) (i / 2) : i / 2.0, row.get("score").asFloatValue().toDouble(), 1e-9);
+            assertEquals(i % 2 == 0 ? 4 : 5, row.size());
+        }
+    }
+
+    @Test
+    public void growBufferOnDemand()
+            throws Exception
+    {
+        BulkImportWriter writer = new BulkImportWriter(client.newBulkImportUploader("s1"), "p", COLUMNS, BulkImportWriter.DEFAULT_PART_SIZE);
+        writer.write(1400000000L, "id-0", 0, 0.0);
+        // A part with a few rows does not allocate the whole part size
+        int initialCapacity = writer.getBufferCapacity();
+        assertTrue("initial capacity: " + initialCapacity, 0 < initialCapacity && initialCapacity <= 64 * 1024);
+
+        // Random ids are hardly compressed
+        Random random = new Random(0);
+        for (int i = 1; i < 10000; ++i) {
+            writer.write(1400000000L + i, Long.toHexString(random.nextLong()) + Long.toHexString(random.nextLong()), i, i / 2.0);
+        }
+        int capacity = writer.getBufferCapacity();
+        assertTrue("grown capacity: " + capacity, initialCapacity < capacity && capacity < BulkImportWriter.DEFAULT_PART_SIZE);
+        writer.close();
+        assertEquals(1, writer.getNumberOfParts());
+        assertEquals(10000, readRows(uploadedParts.get("/v3/bulk_import/upload_part/s1/p_00000")).size());
+    }
+
+    @Test
+    public void rejectInvalidRows()
+    {
+        BulkImportWriter writer = client.newBulkImportUploader("s1").newWriter("p", COLUMNS);
+        try {
+            writer.write(1400000000L, "id-0");
+            fail("cannot reach here");
+        }
+        catch (TDClientException e) {
+            assertEquals(TDClientException.ErrorType.INVALID_INPUT, e.getErrorType());
+        }
+        try {
+            writer.write(ImmutableMap.<String, Object>of("id", "id-0"));
+            fail("cannot reach here");
+        }
+        catch (TDClientException e) {
+            assertEquals(TDClientException.ErrorType.INVALID_INPUT, e.getErrorType());
+        }
+        writer.close();
+        assertEquals(0, writer.getNumberOfParts());
+        assertTrue(uploadedParts.isEmpty());
+    }
+
+    @Test
+    public void failOnUploadError()
+    {
+        BulkImportWriter writer = client.newBulkImportUploader("s1").newWriter("bad", COLUMNS);
+        writer.write(1400000000L, "id-0", 1, 1.0);
+        try {
+            writer.close();
+            fail("cannot reach here");
+        }
+        catch (TDClientException e) {
+            assertEquals(TDClientException.ErrorType.INVALID_INPUT, e.getErrorType());
+        }
+        assertFalse(uploadedParts.containsKey("/v3/bulk_import/upload_part/s1/bad_00000"));
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.treasuredata.client;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Ticker;
+import com.treasuredata.client.CircuitBreaker.State;
+import com.treasuredata.client.MockTDApiServer.Fault;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestCircuitBreaker
+{
+    private static class ManualTicker
+            extends Ticker
+    {
+        private long nanos = 0;
+
+        @Override
+        public long read()
+        {
+            return nanos;
+        }
+
+        void advanceMillis(long millis)
+        {
+            nanos += TimeUnit.MILLISECONDS.toNanos(millis);
+        }
+    }
+
+    private static class RecordingListener
+            implements CircuitBreaker.Listener
+    {
+        private final List<String> events = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void onStateChange(String endpoint, State from, State to)
+        {
+            events.add(String.format("%s:%s->%s", endpoint, from, to));
+        }
+    }
+
+    private static CircuitBreaker.Permit acquire(CircuitBreaker breaker)
+    {
+        Optional<CircuitBreaker.Permit> permit = breaker.tryAcquire();
+        assertTrue(permit.isPresent());
+        return permit.get();
+    }
+
+    private static void record(CircuitBreaker breaker, int statusCode)
+    {
+        breaker.recordResult(acquire(breaker), statusCode);
+    }
+
+    @Test
+    public void openOnFailureRate()
+    {
+        ManualTicker ticker = new ManualTicker();
+        RecordingListener listener = new RecordingListener();
+        CircuitBreaker breaker = new CircuitBreaker("job.result", 0.5, 4, 1000, listener, ticker);
+
+        // The failure rate is computed after the window is filled
+        record(breaker, 500);
+        record(breaker, 0);
+        record(breaker, 502);
+        assertEquals(State.CLOSED, breaker.getState());
+        record(breaker, 200);
+        assertEquals(State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire().isPresent());
+
+        ticker.advanceMillis(1000);
+        assertEquals(State.HALF_OPEN, breaker.getState());
+        List<CircuitBreaker.Permit> probes = new ArrayList<>();
+        for (int i = 0; i < CircuitBreaker.HALF_OPEN_PROBES; ++i) {
+            CircuitBreaker.Permit probe = acquire(breaker);
+            assertTrue(probe.isProbe());
+            probes.add(probe);
+        }
+        assertFalse(breaker.tryAcquire().isPresent());
+        // A failed probe opens the breaker again
+        breaker.recordResult(probes.get(0), 503);
+        assertEquals(State.OPEN, breaker.getState());
+
+        ticker.advanceMillis(1000);
+        for (int i = 0; i < CircuitBreaker.HALF_OPEN_PROBES; ++i) {
+            record(breaker, 404);
+        }
+        assertEquals(State.CLOSED, breaker.getState());
+        assertEquals(
+                "[job.result:CLOSED->OPEN, job.result:OPEN->HALF_OPEN, job.result:HALF_OPEN->OPEN, job.result:OPEN->HALF_OPEN, job.result:HALF_OPEN->CLOSED]",
+                listener.events.toString());
+    }
+
+    @Test
+    public void slidingWindow()
+    {
+        CircuitBreaker breaker = new CircuitBreaker("table.list", 0.75, 4, 1000, CircuitBreaker.Listener.NONE, new ManualTicker());
+        for (int i = 0; i < 10; ++i) {
+            record(breaker, 500);
+            record(breaker, 200);
+            record(breaker, 200);
+        }
+        assertEquals(State.CLOSED, breaker.getState());
+        record(breaker, 500);
+        record(breaker, 500);
+        assertEquals(State.CLOSED, breaker.getState());
+        // The last 4 results: 200, 500, 500, 500
+        record(breaker, 500);
+        assertEquals(State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void ignoreTooManyRequests()
+    {
+        CircuitBreaker breaker = new CircuitBreaker("job.list", 0.5, 4, 1000, CircuitBreaker.Listener.NONE, new ManualTicker());
+        // 429 is handled by the rate limiter, not by the breaker
+        for (int i = 0; i < 10; ++i) {
+            record(breaker, 429);
+        }
+        assertEquals(State.CLOSED, breaker.getState());
+        record(breaker, 500);
+        record(breaker, 200);
+        record(breaker, 200);
+        record(breaker, 429);
+        assertEquals(State.CLOSED, breaker.getState());
+        record(breaker, 200);
+        assertEquals(State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void returnUnusedProbe()
+    {
+        ManualTicker ticker = new ManualTicker();
+        CircuitBreaker breaker = new CircuitBreaker("job.show", 1.0, 1, 0, CircuitBreaker.Listener.NONE, ticker);
+        record(breaker, 500);
+        assertEquals(State.HALF_OPEN, breaker.getState());
+        List<CircuitBreaker.Permit> probes = new ArrayList<>();
+        for (int i = 0; i < CircuitBreaker.HALF_OPEN_PROBES; ++i) {
+            probes.add(acquire(breaker));
+        }
+        assertFalse(breaker.tryAcquire().isPresent());
+        breaker.releaseUnused(probes.get(0));
+        assertTrue(breaker.tryAcquire().isPresent());
+    }
+
+    @Test
+    public void ignoreRequestsFromPreviousState()
+    {
+        ManualTicker ticker = new ManualTicker();
+        CircuitBreaker breaker = new CircuitBreaker("job.status", 0.5, 2, 1000, CircuitBreaker.Listener.NONE, ticker);
+        // Requests sent before the outage
+        List<CircuitBreaker.Permit> lateRequests = new ArrayList<>();
+        for (int i = 0; i < CircuitBreaker.HALF_OPEN_PROBES + 1; ++i) {
+            lateRequests.add(acquire(breaker));
+        }
+        record(breaker, 500);
+        record(breaker, 500);
+        assertEquals(State.OPEN, breaker.getState());
+
+        ticker.advanceMillis(1000);
+        assertEquals(State.HALF_OPEN, breaker.getState());
+        CircuitBreaker.Permit probe = acquire(breaker);
+        // Late successes of the requests sent while CLOSED are not probes
+        for (int i = 0; i < CircuitBreaker.HALF_OPEN_PROBES; ++i) {
+            breaker.recordResult(lateRequests.get(i), 200);
+        }
+        assertEquals(State.HALF_OPEN, breaker.getState());
+        // Releasing a non-probe permit does not return a probe
+        breaker.releaseUnused(lateRequests.get(CircuitBreaker.HALF_OPEN_PROBES));
+        acquire(breaker);
+        acquire(breaker);
+        assertFalse(breaker.tryAcquire().isPresent());
+
+        breaker.recordResult(probe, 502);
+        assertEquals(State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void failFastWhileOpen()
+            throws Exception
+    {
+        try (MockTDApiServer server = new MockTDApiServer().start()) {
+            server.addDatabase("mock_db");
+            RecordingListener listener = new RecordingListener();
+            TDClient client = server.configure(TDClient.newBuilder(false))
+                    .setRetryInitialIntervalMillis(10)
+                    .setRetryLimit(2)
+                    .setCircuitBreakerFailureRateThreshold(CircuitBreaker.RECOMMENDED_FAILURE_RATE_THRESHOLD)
+                    .setCircuitBreakerWindowSize(4)
+                    .setCircuitBreakerOpenDurationMillis(500)
+                    .setCircuitBreakerListener(listener)
+                    .build();
+            try {
+                server.failNext("table.list", Fault.INTERNAL_SERVER_ERROR, 100);
+                // A request is recorded once, after all of its retries have failed
+                for (int i = 0; i < 4; ++i) {
+                    try {
+                        client.listTables("mock_db");
+                        fail("should not reach here");
+                    }
+                    catch (TDClientHttpException e) {
+                        assertEquals(500, e.getStatusCode());
+                    }
+                }
+                assertEquals(12, server.getRequestCount("table.list"));
+                CircuitBreaker breaker = client.httpClient.getCircuitBreaker("table.list").get();
+                awaitState(breaker, State.OPEN);
+                try {
+                    client.listTables("mock_db");
+                    fail("should not reach here");
+                }
+                catch (TDClientCircuitOpenException e) {
+                    // Fail without sending any request
+                    assertEquals("table.list", e.getEndpoint());
+                    assertEquals(12, server.getRequestCount("table.list"));
+                }
+                // Other endpoint groups are not affected
+                assertEquals(1, client.listDatabases().size());
+
+                server.clearFaults();
+                Thread.sleep(500);
+                for (int i = 0; i < CircuitBreaker.HALF_OPEN_PROBES; ++i) {
+                    assertTrue(client.listTables("mock_db").isEmpty());
+                }
+                awaitState(breaker, State.CLOSED);
+                assertEquals(
+                        "[table.list:CLOSED->OPEN, table.list:OPEN->HALF_OPEN, table.list:HALF_OPEN->CLOSED]",
+                        listener.events.toString());
+            }
+            finally {
+                client.close();
+            }
+        }
+    }
+
+    private static void awaitState(CircuitBreaker breaker, State expected)
+            throws InterruptedException
+    {
+        // The outcome is recorded by a future listener, which may run after the caller has returned
+        for (int i = 0; i < 100 && breaker.getState() != expected; ++i) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, breaker.getState());
+    }
+}
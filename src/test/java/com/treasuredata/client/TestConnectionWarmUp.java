@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.treasuredata.client;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestConnectionWarmUp
+{
+    private MockTDApiServer server;
+
+    @Before
+    public void setUp()
+            throws Exception
+    {
+        server = new MockTDApiServer().start();
+    }
+
+    @After
+    public void tearDown()
+            throws Exception
+    {
+        server.close();
+    }
+
+    private static void waitForIdleConnections(TDHttpClient httpClient, int expected)
+            throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (httpClient.getIdleConnectionCount() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void openConnectionsAtStart()
+            throws Exception
+    {
+        TDClientConfig config = server.configure(TDClient.newBuilder(false)).setWarmUpConnections(4).buildConfig();
+        try (TDHttpClient httpClient = new TDHttpClient(config)) {
+            waitForIdleConnections(httpClient, 4);
+            assertEquals(4, httpClient.getIdleConnectionCount());
+            // No request is sent
+            assertEquals(0, server.getRequestCount());
+        }
+    }
+
+    @Test
+    public void limitConnectionsPerDestination()
+            throws Exception
+    {
+        TDClientConfig config = server.configure(TDClient.newBuilder(false))
+                .setMaxConnectionsPerDestination(2)
+                .setWarmUpConnections(5)
+                .buildConfig();
+        try (TDHttpClient httpClient = new TDHttpClient(config)) {
+            waitForIdleConnections(httpClient, 2);
+            Thread.sleep(100);
+            assertEquals(2, httpClient.getIdleConnectionCount());
+
+            // More connections are not opened
+            httpClient.warmUpConnections(5);
+            Thread.sleep(100);
+            assertEquals(2, httpClient.getIdleConnectionCount());
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.treasuredata.client;
+
+import com.treasuredata.client.ExponentialBackOff.Jitter;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestExponentialBackOff
+{
+    @Test
+    public void noJitter()
+    {
+        ExponentialBackOff backoff = new ExponentialBackOff(100, 1000, 2.0);
+        int[] expected = {100, 200, 400, 800, 1000, 1000};
+        for (int waitTimeMillis : expected) {
+            assertEquals(waitTimeMillis, backoff.nextWaitTimeMillis());
+        }
+        assertEquals(expected.length, backoff.getExecutionCount());
+    }
+
+    @Test
+    public void equalJitter()
+    {
+        Set<Integer> firstWaitTimes = new HashSet<>();
+        for (int n = 0; n < 100; ++n) {
+            ExponentialBackOff backoff = new ExponentialBackOff(100, 1000, 2.0, Jitter.EQUAL);
+            int cap = 100;
+            for (int i = 0; i < 10; ++i) {
+                int waitTimeMillis = backoff.nextWaitTimeMillis();
+                if (i == 0) {
+                    firstWaitTimes.add(waitTimeMillis);
+                }
+                assertTrue(cap / 2 <= waitTimeMillis && waitTimeMillis <= cap);
+                cap = Math.min(cap * 2, 1000);
+            }
+        }
+        assertTrue(firstWaitTimes.size() > 10);
+    }
+
+    @Test
+    public void fullJitter()
+    {
+        Set<Integer> firstWaitTimes = new HashSet<>();
+        for (int n = 0; n < 100; ++n) {
+            ExponentialBackOff backoff = new ExponentialBackOff(100, 1000, 2.0, Jitter.FULL);
+            int cap = 100;
+            for (int i = 0; i < 10; ++i) {
+                int waitTimeMillis = backoff.nextWaitTimeMillis();
+                if (i == 0) {
+                    firstWaitTimes.add(waitTimeMillis);
+                }
+                assertTrue(0 <= waitTimeMillis && waitTimeMillis <= cap);
+                cap = Math.min(cap * 2, 1000);
+            }
+        }
+        // Clients starting retries at the same time must not wait for the same interval
+        assertTrue(firstWaitTimes.size() > 10);
+    }
+
+    @Test
+    public void decorrelatedJitter()
+    {
+        Set<Integer> firstWaitTimes = new HashSet<>();
+        for (int n = 0; n < 100; ++n) {
+            ExponentialBackOff backoff = new ExponentialBackOff(100, 1000, 3.0, Jitter.DECORRELATED);
+            int previous = 100;
+            for (int i = 0; i < 10; ++i) {
+                int waitTimeMillis = backoff.nextWaitTimeMillis();
+                if (i == 0) {
+                    firstWaitTimes.add(waitTimeMillis);
+                }
+                assertTrue(100 <= waitTimeMillis && waitTimeMillis <= Math.min(previous * 3, 1000));
+                previous = waitTimeMillis;
+            }
+        }
+        assertTrue(firstWaitTimes.size() > 10);
+    }
+
+    @Test
+    public void parseJitterName()
+    {
+        for (Jitter jitter : Jitter.values()) {
+            assertEquals(jitter, Jitter.fromName(jitter.getName()));
+        }
+        assertEquals(Jitter.FULL, Jitter.fromName("Full"));
+    }
+}
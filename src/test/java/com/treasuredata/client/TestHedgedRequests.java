@@ -0,0 +1,205 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.treasuredata.client;
+
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.io.ByteStreams;
+import com.treasuredata.client.MockTDApiServer.Fault;
+import com.treasuredata.client.model.TDResultFormat;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestHedgedRequests
+{
+    private static final String ENDPOINT = "job.status";
+
+    private MockTDApiServer server;
+    private String jobId;
+
+    @Before
+    public void setUp()
+            throws Exception
+    {
+        server = new MockTDApiServer().start();
+        jobId = server.addSyntheticJobs("hedge_db", 1).get(0);
+    }
+
+    @After
+    public void tearDown()
+            throws Exception
+    {
+        server.close();
+    }
+
+    private TDClient newClient(double maxRatio)
+    {
+        return server.configure(TDClient.newBuilder(false))
+                .setHedgePercentile(90)
+                .setHedgeMinDelayMillis(50)
+                .setHedgeMaxRatio(maxRatio)
+                .build();
+    }
+
+    private void warmUp(TDClient client)
+    {
+        for (int i = 0; i < HedgingPolicy.MIN_SAMPLES; ++i) {
+            client.jobStatus(jobId);
+        }
+    }
+
+    @Test
+    public void hedgeSlowRequest()
+    {
+        try (TDClient client = newClient(1.0)) {
+            warmUp(client);
+            assertEquals(HedgingPolicy.MIN_SAMPLES, server.getRequestCount(ENDPOINT));
+
+            // The primary request cannot finish before the hedging timer (50 ms) fires
+            server.setSlowBodyDelayMillis(2000);
+            server.failNext(ENDPOINT, Fault.SLOW_BODY, 1);
+            assertEquals(jobId, client.jobStatus(jobId).getJobId());
+            assertEquals(HedgingPolicy.MIN_SAMPLES + 2, server.getRequestCount(ENDPOINT));
+        }
+    }
+
+    @Test
+    public void recordResponseTimeOfLosingPrimary()
+            throws Exception
+    {
+        try (TDClient client = newClient(1.0)) {
+            warmUp(client);
+            HedgingPolicy policy = client.httpClient.getHedgingPolicy().get();
+
+            server.setSlowBodyDelayMillis(300);
+            server.failNext(ENDPOINT, Fault.SLOW_BODY, 1);
+            assertEquals(jobId, client.jobStatus(jobId).getJobId());
+            assertEquals(HedgingPolicy.MIN_SAMPLES + 2, server.getRequestCount(ENDPOINT));
+
+            // The primary request keeps running after the hedged request has returned
+            long[] times = policy.getResponseTimesMillis(ENDPOINT);
+            for (int i = 0; i < 500 && times.length == HedgingPolicy.MIN_SAMPLES; ++i) {
+                Thread.sleep(10);
+                times = policy.getResponseTimesMillis(ENDPOINT);
+            }
+            // Only the primary request is recorded
+            assertEquals(HedgingPolicy.MIN_SAMPLES + 1, times.length);
+            assertTrue("slow response time: " + times[HedgingPolicy.MIN_SAMPLES], times[HedgingPolicy.MIN_SAMPLES] >= 300);
+        }
+    }
+
+    @Test
+    public void noHedgingForStreams()
+    {
+        try (TDClient client = newClient(1.0)) {
+            Function<InputStream, Integer> read = new Function<InputStream, Integer>()
+            {
+                @Override
+                public Integer apply(InputStream input)
+                {
+                    try {
+                        return ByteStreams.toByteArray(input).length;
+                    }
+                    catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+            for (int i = 0; i < HedgingPolicy.MIN_SAMPLES; ++i) {
+                client.jobResult(jobId, TDResultFormat.CSV, read);
+            }
+            server.setLatency(300, 300);
+            client.jobResult(jobId, TDResultFormat.CSV, read);
+            assertEquals(HedgingPolicy.MIN_SAMPLES + 1, server.getRequestCount("job.result"));
+        }
+    }
+
+    @Test
+    public void capExtraLoad()
+    {
+        try (TDClient client = newClient(0.0)) {
+            warmUp(client);
+
+            server.setSlowBodyDelayMillis(300);
+            server.failNext(ENDPOINT, Fault.SLOW_BODY, 1);
+            assertEquals(jobId, client.jobStatus(jobId).getJobId());
+            // No budget for a hedged request
+            assertEquals(HedgingPolicy.MIN_SAMPLES + 1, server.getRequestCount(ENDPOINT));
+        }
+    }
+
+    @Test
+    public void noHedgingByDefault()
+    {
+        try (TDClient client = server.newClient()) {
+            warmUp(client);
+            server.setSlowBodyDelayMillis(300);
+            server.failNext(ENDPOINT, Fault.SLOW_BODY, 1);
+            client.jobStatus(jobId);
+            assertEquals(HedgingPolicy.MIN_SAMPLES + 1, server.getRequestCount(ENDPOINT));
+        }
+    }
+
+    @Test
+    public void hedgeDelay()
+    {
+        HedgingPolicy policy = new HedgingPolicy(90, 5, 0.1);
+        for (int i = 1; i < HedgingPolicy.MIN_SAMPLES; ++i) {
+            policy.recordResponseTime(ENDPOINT, TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        // Not enough samples
+        assertFalse(policy.getHedgeDelayMillis(ENDPOINT).isPresent());
+
+        for (int i = HedgingPolicy.MIN_SAMPLES; i <= 100; ++i) {
+            policy.recordResponseTime(ENDPOINT, TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        assertEquals(Optional.of(90L), policy.getHedgeDelayMillis(ENDPOINT));
+
+        HedgingPolicy fastEndpointPolicy = new HedgingPolicy(90, 20, 0.1);
+        for (int i = 0; i < HedgingPolicy.MIN_SAMPLES; ++i) {
+            fastEndpointPolicy.recordResponseTime(ENDPOINT, TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        // The min delay is used for fast endpoints
+        assertEquals(Optional.of(20L), fastEndpointPolicy.getHedgeDelayMillis(ENDPOINT));
+    }
+
+    @Test
+    public void capHedgesToRatioOfRequests()
+    {
+        HedgingPolicy policy = new HedgingPolicy(90, 5, 0.1);
+        for (int i = 0; i < 30; ++i) {
+            policy.getHedgeDelayMillis(ENDPOINT);
+        }
+        // 10% of 30 requests
+        int hedges = 0;
+        while (policy.tryAcquireHedge()) {
+            hedges++;
+        }
+        assertEquals(3, hedges);
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.treasuredata.client;
+
+import com.treasuredata.client.model.TDResultFormat;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import okio.Buffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ *
+ */
+public class TestJobResultDownloader
+{
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d*)");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MockWebServer server;
+    private TDClient client;
+    private byte[] result;
+    private final AtomicBoolean supportRange = new AtomicBoolean(true);
+    private final AtomicInteger rangeRequests = new AtomicInteger();
+    // The response starting at this offset is broken for numBrokenResponses times
+    private volatile int brokenOffset = 300000;
+    private final AtomicInteger numBrokenResponses = new AtomicInteger(1);
+    private final List<String> ranges = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp()
+            throws Exception
+    {
+        result = new byte[1000000];
+        new Random(0).nextBytes(result);
+
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher()
+        {
+            @Override
+            public MockResponse dispatch(RecordedRequest request)
+            {
+                if (request.getPath().equals("/v3/job/show/1")) {
+                    return new MockResponse().setBody(String.format("{\"job_id\":\"1\",\"status\":\"success\",\"type\":\"presto\",\"query\":\"select 1\",\"result_size\":%d}", result.length));
+                }
+                if (!request.getPath().startsWith("/v3/job/result/1?format=")) {
+                    return new MockResponse().setResponseCode(404);
+                }
+                String range = request.getHeader("Range");
+                if (range == null || !supportRange.get()) {
+                    return breakIfNecessary(0, new MockResponse().setBody(new Buffer().write(result)));
+                }
+                rangeRequests.incrementAndGet();
+                ranges.add(range);
+                Matcher m = RANGE.matcher(range);
+                assertTrue(range, m.matches());
+                int start = Integer.parseInt(m.group(1));
+                int end = m.group(2).isEmpty() ? result.length - 1 : Integer.parseInt(m.group(2));
+                MockResponse response = new MockResponse()
+                        .setResponseCode(206)
+                        .setHeader("Content-Range", String.format("bytes %d-%d/%d", start, end, result.length))
+                        .setBody(new Buffer().write(result, start, end - start + 1));
+                return breakIfNecessary(start, response);
+            }
+        });
+        server.start();
+        client = TDClient.newBuilder(false)
+                .setUseSSL(false)
+                .setEndpoint(server.getHostName())
+                .setPort(server.getPort())
+                .setApiKey("dummy")
+                .setRetryLimit(0)
+                .build();
+    }
+
+    private MockResponse breakIfNecessary(int start, MockResponse response)
+    {
+        if (start == brokenOffset && numBrokenResponses.getAndDecrement() > 0) {
+            response.setSocketPolicy(SocketPolicy.DISCONNECT_DURING_RESPONSE_BODY);
+        }
+        return response;
+    }
+
+    @After
+    public void tearDown()
+            throws Exception
+    {
+        client.close();
+        server.shutdown();
+    }
+
+    @Test
+    public void downloadChunksConcurrently()
+            throws Exception
+    {
+        Path target = folder.getRoot().toPath().resolve("result.msgpack.gz");
+        long size = client.newJobResultDownloader()
+                .setChunkSize(100000)
+                .setMaxConcurrentChunks(3)
+                .download("1", TDResultFormat.MESSAGE_PACK_GZ, result.length, target);
+
+        assertEquals(result.length, size);
+        assertArrayEquals(result, Files.readAllBytes(target));
+        // 10 chunks and a resumed request for the broken one
+        assertEquals(11, rangeRequests.get());
+    }
+
+    @Test
+    public void fallbackToSingleRequest()
+            throws Exception
+    {
+        supportRange.set(false);
+        Path target = folder.getRoot().toPath().resolve("result.msgpack.gz");
+        long size = client.newJobResultDownloader()
+                .setChunkSize(100000)
+                .download("1", TDResultFormat.MESSAGE_PACK_GZ, result.length, target);
+
+        assertEquals(result.length, size);
+        assertArrayEquals(result, Files.readAllBytes(target));
+    }
+
+    @Test
+    public void resumeFromCheckpoint()
+            throws Exception
+    {
+        numBrokenResponses.set(Integer.MAX_VALUE);
+        Path target = folder.getRoot().toPath().resolve("result.msgpack.gz");
+        JobResultDownloader downloader = client.newJobResultDownloader()
+                .setChunkSize(100000)
+                .setMaxConcurrentChunks(1)
+                .setMaxChunkRetries(0);
+        try {
+            downloader.download("1", TDResultFormat.MESSAGE_PACK_GZ, result.length, target);
+            fail("cannot reach here");
+        }
+        catch (TDClientException e) {
+            // expected
+        }
+        assertTrue(Files.exists(JobResultDownloader.checkpointPathOf(target)));
+
+        numBrokenResponses.set(0);
+        ranges.clear();
+        long size = downloader.download("1", TDResultFormat.MESSAGE_PACK_GZ, result.length, target);
+        assertEquals(result.length, size);
+        assertArrayEquals(result, Files.readAllBytes(target));
+        assertFalse(Files.exists(JobResultDownloader.checkpointPathOf(target)));
+        // Chunks before the broken one are not downloaded again, and the broken chunk continues from the middle
+        boolean resumedInTheMiddle = false;
+        for (String range : ranges) {
+            Matcher m = RANGE.matcher(range);
+            assertTrue(range, m.matches());
+            int start = Integer.parseInt(m.group(1));
+            assertTrue(range, start >= 300000);
+            resumedInTheMiddle |= start > 300000 && start < 400000;
+        }
+        assertTrue(ranges.toString(), resumedInTheMiddle);
+    }
+
+    @Test
+    public void resumeBrokenStreamWithRange()
+            throws Exception
+    {
+        // CSV results have no known size, so they are downloaded with a single request
+        brokenOffset = 0;
+        Path target = folder.getRoot().toPath().resolve("result.csv");
+        long size = client.downloadJobResult("1", TDResultFormat.CSV, target);
+
+        assertEquals(result.length, size);
+        assertArrayEquals(result, Files.readAllBytes(target));
+        assertEquals(1, ranges.size());
+        assertTrue(ranges.get(0), ranges.get(0).matches("bytes=[1-9]\\d*-"));
+    }
+
+    @Test
+    public void downloadJobResult()
+            throws Exception
+    {
+        Path target = folder.getRoot().toPath().resolve("result.msgpack.gz");
+        long size = client.downloadJobResult("1", TDResultFormat.MESSAGE_PACK_GZ, target);
+        assertEquals(result.length, size);
+        assertArrayEquals(result, Files.readAllBytes(target));
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.treasuredata.client;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.treasuredata.client.model.TDJob;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ */
+public class TestJobWatcher
+{
+    private MockWebServer server;
+    private AsyncTDClient client;
+
+    @Before
+    public void setUp()
+            throws Exception
+    {
+        server = new MockWebServer();
+        server.start();
+        client = AsyncTDClient.newBuilder(false)
+                .setUseSSL(false)
+                .setEndpoint(server.getHostName())
+                .setPort(server.getPort())
+                .setApiKey("dummy")
+                .build();
+    }
+
+    @After
+    public void tearDown()
+            throws Exception
+    {
+        client.close();
+        server.shutdown();
+    }
+
+    @Test
+    public void groupJobIds()
+    {
+        List<JobWatcher.JobRange> ranges = JobWatcher.groupJobIds(ImmutableList.of("15", "3", "10", "7", "abc"), 2, JobWatcher.DEFAULT_MAX_JOB_ID_SPAN);
+        assertEquals(3, ranges.size());
+        assertEquals(ImmutableList.of("abc"), ranges.get(0).jobIds);
+        assertEquals(ImmutableList.of("3", "7"), ranges.get(1).jobIds);
+        assertEquals(3L, ranges.get(1).fromJobId);
+        assertEquals(7L, ranges.get(1).toJobId);
+        assertEquals(ImmutableList.of("10", "15"), ranges.get(2).jobIds);
+    }
+
+    @Test
+    public void groupSparseJobIds()
+    {
+        // Jobs submitted on different days
+        List<JobWatcher.JobRange> ranges = JobWatcher.groupJobIds(ImmutableList.of("1000", "1010", "1100", "1101", "25000", "90000", "90050"), 20, 100);
+        assertEquals(4, ranges.size());
+        assertEquals(ImmutableList.of("1000", "1010", "1100"), ranges.get(0).jobIds);
+        assertEquals(1000L, ranges.get(0).fromJobId);
+        assertEquals(1100L, ranges.get(0).toJobId);
+        assertEquals(ImmutableList.of("1101"), ranges.get(1).jobIds);
+        assertEquals(ImmutableList.of("25000"), ranges.get(2).jobIds);
+        assertEquals(ImmutableList.of("90000", "90050"), ranges.get(3).jobIds);
+    }
+
+    @Test
+    public void watchJobsWithRangeRequests()
+            throws Exception
+    {
+        final AtomicInteger listRequests = new AtomicInteger(0);
+        server.setDispatcher(new Dispatcher()
+        {
+            @Override
+            public MockResponse dispatch(RecordedRequest request)
+                    throws InterruptedException
+            {
+                if (request.getPath().startsWith("/v3/job/list")) {
+                    // Jobs finish at the second polling round
+                    String status = listRequests.incrementAndGet() < 2 ? "running" : "success";
+                    StringBuilder jobs = new StringBuilder();
+                    for (int i = 100; i < 110; ++i) {
+                        if (i > 100) {
+                            jobs.append(",");
+                        }
+                        jobs.append(String.format("{\"job_id\":\"%d\",\"status\":\"%s\",\"type\":\"presto\",\"query\":\"select 1\"}", i, status));
+                    }
+                    return new MockResponse().setBody("{\"count\":10,\"jobs\":[" + jobs + "]}");
+                }
+                else {
+                    String jobId = request.getPath().substring("/v3/job/status/".length());
+                    String status = jobId.equals("200") ? "error" : "running";
+                    return new MockResponse().setBody(String.format("{\"job_id\":\"%s\",\"status\":\"%s\",\"type\":\"presto\"}", jobId, status));
+                }
+            }
+        });
+
+        try (JobWatcher watcher = new JobWatcher(client, 10, 20)) {
+            List<ListenableFuture<TDJob.Status>> futures = new ArrayList<>();
+            for (int i = 100; i < 110; ++i) {
+                futures.add(watcher.watch(Integer.toString(i)));
+            }
+            ListenableFuture<TDJob.Status> single = watcher.watch("200");
+
+            for (ListenableFuture<TDJob.Status> f : futures) {
+                assertThat(f.get(10, TimeUnit.SECONDS), is(TDJob.Status.SUCCESS));
+            }
+            assertThat(single.get(10, TimeUnit.SECONDS), is(TDJob.Status.ERROR));
+            assertTrue(listRequests.get() >= 2);
+            assertEquals(0, watcher.getNumberOfWatchedJobs());
+        }
+    }
+}
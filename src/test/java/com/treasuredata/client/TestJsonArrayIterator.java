@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.treasuredata.client;
+
+import com.treasuredata.client.model.TDJob;
+import com.treasuredata.client.model.TDJobList;
+import com.treasuredata.client.model.TDTable;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ *
+ */
+public class TestJsonArrayIterator
+{
+    private MockWebServer server;
+    private TDClient client;
+
+    @Before
+    public void setUp()
+            throws Exception
+    {
+        server = new MockWebServer();
+        server.start();
+        client = TDClient.newBuilder(false)
+                .setUseSSL(false)
+                .setEndpoint(server.getHostName())
+                .setPort(server.getPort())
+                .setApiKey("dummy")
+                .setRetryLimit(0)
+                .build();
+    }
+
+    @After
+    public void tearDown()
+            throws Exception
+    {
+        client.close();
+        server.shutdown();
+    }
+
+    private static String tableListJson(int numTables)
+    {
+        StringBuilder json = new StringBuilder();
+        // Fields other than tables are skipped while seeking the array
+        json.append("{\"name\":\"db1\",\"extra\":{\"a\":[1,2,{\"b\":null}]},\"tables\":[");
+        for (int i = 0; i < numTables; ++i) {
+            if (i > 0) {
+                json.append(",");
+            }
+            json.append(String.format("{\"id\":\"%d\",\"name\":\"table_%d\",\"type\":\"log\",\"schema\":\"[[\\\"c1\\\",\\\"string\\\"]]\",\"count\":%d}", i, i, i));
+        }
+        json.append("]}");
+        return json.toString();
+    }
+
+    @Test
+    public void iterateTables()
+            throws Exception
+    {
+        int numTables = 20000;
+        server.enqueue(new MockResponse().setBody(tableListJson(numTables)));
+        int count = 0;
+        try (JsonArrayIterator<TDTable> tables = client.iterateTables("db1")) {
+            while (tables.hasNext()) {
+                TDTable table = tables.next();
+                assertEquals("table_" + count, table.getName());
+                assertEquals(count, table.getRowCount());
+                count++;
+            }
+        }
+        assertEquals(numTables, count);
+        assertEquals("/v3/table/list/db1", server.takeRequest().getPath());
+    }
+
+    @Test
+    public void listTablesRetriesStalledBody()
+            throws Exception
+    {
+        // listTables buffers the whole response, so a response stalled in the middle of the body is retried
+        String json = tableListJson(100);
+        server.enqueue(new MockResponse().setBody(json).throttleBody(json.length() / 2, 2, TimeUnit.SECONDS));
+        server.enqueue(new MockResponse().setBody(json));
+        try (TDClient retryingClient = TDClient.newBuilder(false)
+                .setUseSSL(false)
+                .setEndpoint(server.getHostName())
+                .setPort(server.getPort())
+                .setApiKey("dummy")
+                .setRetryLimit(1)
+                .setRetryInitialIntervalMillis(10)
+                .setIdleTimeoutMillis(300)
+                .build()) {
+            List<TDTable> tables = retryingClient.listTables("db1");
+            assertEquals(100, tables.size());
+            assertEquals("c1", tables.get(0).getColumns().get(0).getName());
+        }
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void iterateJobs()
+            throws Exception
+    {
+        String job = "{\"job_id\":\"%d\",\"status\":\"success\",\"database\":\"db1\",\"query\":\"select 1\",\"type\":\"hive\"}";
+        server.enqueue(new MockResponse().setBody("{\"count\":2,\"jobs\":[" + String.format(job, 10) + "," + String.format(job, 11) + "]}"));
+        try (JsonArrayIterator<TDJob> jobs = client.iterateJobs(10, 11)) {
+            assertEquals("10", jobs.next().getJobId());
+            TDJob job11 = jobs.next();
+            assertEquals("11", job11.getJobId());
+            assertEquals(TDJob.Status.SUCCESS, job11.getStatus());
+            assertFalse(jobs.hasNext());
+        }
+        assertEquals("/v3/job/list?from_id=10&to_id=11", server.takeRequest().getPath());
+
+        server.enqueue(new MockResponse().setBody("{\"count\":2,\"jobs\":[" + String.format(job, 10) + "," + String.format(job, 11) + "]}"));
+        TDJobList jobList = client.listJobs();
+        assertEquals(2, jobList.getJobs().size());
+    }
+
+    @Test
+    public void emptyOrMissingArray()
+            throws Exception
+    {
+        server.enqueue(new MockResponse().setBody("{\"count\":0,\"jobs\":[]}"));
+        server.enqueue(new MockResponse().setBody("{\"count\":0,\"jobs\":null}"));
+        server.enqueue(new MockResponse().setBody("{\"count\":0}"));
+        for (int i = 0; i < 3; ++i) {
+            try (JsonArrayIterator<TDJob> jobs = client.iterateJobs()) {
+                assertFalse(jobs.hasNext());
+            }
+        }
+    }
+
+    @Test
+    public void closeInTheMiddle()
+            throws Exception
+    {
+        server.enqueue(new MockResponse().setBody(tableListJson(20000)));
+        server.enqueue(new MockResponse().setBody(tableListJson(1)));
+        try (JsonArrayIterator<TDTable> tables = client.iterateTables("db1")) {
+            assertTrue(tables.hasNext());
+            assertEquals("table_0", tables.next().getName());
+        }
+        // The client is still usable
+        assertEquals(1, client.listTables("db1").size());
+    }
+
+    @Test
+    public void invalidJson()
+            throws Exception
+    {
+        server.enqueue(new MockResponse().setBody("[]"));
+        server.enqueue(new MockResponse().setBody("{\"tables\":{}}"));
+        server.enqueue(new MockResponse().setBody("{\"tables\":[{\"name\":\"t1\",\"schema\":\"[]\"},"));
+        for (int i = 0; i < 3; ++i) {
+            try (JsonArrayIterator<TDTable> tables = client.iterateTables("db1")) {
+                while (tables.hasNext()) {
+                    tables.next();
+                }
+                fail("should not reach here");
+            }
+            catch (TDClientException e) {
+                assertEquals(TDClientException.ErrorType.INVALID_JSON_RESPONSE, e.getErrorType());
+            }
+        }
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.treasuredata.client;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import com.treasuredata.client.MockTDApiServer.Fault;
+import com.treasuredata.client.model.TDBulkImportSession;
+import com.treasuredata.client.model.TDColumn;
+import com.treasuredata.client.model.TDColumnType;
+import com.treasuredata.client.model.TDJob;
+import com.treasuredata.client.model.TDJobRequest;
+import com.treasuredata.client.model.TDResultFormat;
+import com.treasuredata.client.model.TDSavedQuery;
+import com.treasuredata.client.model.TDTable;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessagePacker;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestMockTDApiServer
+{
+    private MockTDApiServer server;
+    private TDClient client;
+
+    @Before
+    public void setUp()
+            throws Exception
+    {
+        server = new MockTDApiServer().start();
+        client = server.configure(TDClient.newBuilder(false))
+                .setRetryInitialIntervalMillis(10)
+                .setRetryLimit(3)
+                .build();
+    }
+
+    @After
+    public void tearDown()
+            throws Exception
+    {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void databaseAndTableOperations()
+    {
+        client.createDatabase("mock_db");
+        assertEquals(ImmutableList.of("mock_db"), client.listDatabaseNames());
+        try {
+            client.createDatabase("mock_db");
+            fail("should not reach here");
+        }
+        catch (TDClientHttpConflictException e) {
+            // OK
+        }
+
+        client.createTable("mock_db", "tbl1");
+        client.createTable("mock_db", "tbl2");
+        client.renameTable("mock_db", "tbl1", "tbl3");
+        assertFalse(client.existsTable("mock_db", "tbl1"));
+        assertTrue(client.existsTable("mock_db", "tbl3"));
+
+        client.updateTableSchema("mock_db", "tbl3", ImmutableList.of(new TDColumn("c1", TDColumnType.LONG, "c1".getBytes(StandardCharsets.UTF_8))));
+        client.swapTables("mock_db", "tbl2", "tbl3");
+        for (TDTable table : client.listTables("mock_db")) {
+            assertEquals(table.getName().equals("tbl2") ? 1 : 0, table.getColumns().size());
+        }
+
+        client.deleteTable("mock_db", "tbl2");
+        try {
+            client.deleteTable("mock_db", "tbl2");
+            fail("should not reach here");
+        }
+        catch (TDClientHttpNotFoundException e) {
+            // OK
+        }
+        client.deleteDatabase("mock_db");
+        assertTrue(client.listDatabaseNames().isEmpty());
+    }
+
+    @Test
+    public void jobOperations()
+    {
+        client.createDatabase("mock_db");
+        String jobId = client.submit(TDJobRequest.newPrestoQuery("mock_db", "select 1"));
+        assertEquals(TDJob.Status.SUCCESS, client.jobStatus(jobId).getStatus());
+        assertEquals("select 1", client.jobInfo(jobId).getQuery());
+
+        byte[] result = "1\n2\n3\n".getBytes(StandardCharsets.UTF_8);
+        server.setJobResult(jobId, result);
+        byte[] downloaded = client.jobResult(jobId, TDResultFormat.CSV, new Function<InputStream, byte[]>()
+        {
+            @Override
+            public byte[] apply(InputStream input)
+            {
+                try {
+                    return ByteStreams.toByteArray(input);
+                }
+                catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        assertArrayEquals(result, downloaded);
+
+        server.setJobDurationMillis(60000);
+        String runningJobId = client.submit(TDJobRequest.newPrestoQuery("mock_db", "select 2"));
+        assertEquals(TDJob.Status.RUNNING, client.jobStatus(runningJobId).getStatus());
+        client.killJob(runningJobId);
+        assertEquals(TDJob.Status.KILLED, client.jobStatus(runningJobId).getStatus());
+        assertEquals(2, client.listJobs(Long.parseLong(jobId), Long.parseLong(runningJobId)).getJobs().size());
+    }
+
+    @Test
+    public void bulkImportOperations()
+            throws IOException
+    {
+        client.createDatabase("mock_db");
+        client.createTable("mock_db", "tbl1");
+        client.createBulkImportSession("session1", "mock_db", "tbl1");
+        client.uploadBulkImportPart("session1", "part1", msgpackGz(10));
+        client.uploadBulkImportPart("session1", "part2", msgpackGz(5));
+        assertEquals(ImmutableList.of("part1", "part2"), client.listBulkImportParts("session1"));
+
+        client.freezeBulkImportSession("session1");
+        client.performBulkImportSession("session1");
+        TDBulkImportSession session = client.getBulkImportSession("session1");
+        assertEquals(TDBulkImportSession.ImportStatus.READY, session.getStatus());
+        assertEquals(15, session.getValidRecords());
+
+        client.commitBulkImportSession("session1");
+        assertEquals(TDBulkImportSession.ImportStatus.COMMITTED, client.getBulkImportSession("session1").getStatus());
+        assertEquals(15, client.listTables("mock_db").get(0).getRowCount());
+        client.deleteBulkImportSession("session1");
+        assertTrue(client.listBulkImportSessions().isEmpty());
+    }
+
+    @Test
+    public void savedQueryOperations()
+    {
+        client.createDatabase("mock_db");
+        client.saveQuery(TDSavedQuery.newBuilder("query1", TDJob.Type.PRESTO, "mock_db", "select 1", "UTC").setCron("0 * * * *").build());
+        client.updateSavedQuery("query1", TDSavedQuery.newUpdateRequestBuilder().setQuery("select 2").build());
+        List<TDSavedQuery> savedQueries = client.listSavedQueries();
+        assertEquals(1, savedQueries.size());
+        assertEquals("select 2", savedQueries.get(0).getQuery());
+        assertEquals("0 * * * *", savedQueries.get(0).getCron());
+
+        String jobId = client.startSavedQuery("query1", new Date());
+        assertEquals("select 2", client.jobInfo(jobId).getQuery());
+        client.deleteSavedQuery("query1");
+        assertTrue(client.listSavedQueries().isEmpty());
+    }
+
+    @Test
+    public void injectFailures()
+    {
+        server.addDatabase("mock_db");
+
+        server.failNext(Fault.INTERNAL_SERVER_ERROR, 2);
+        assertEquals(1, client.listDatabases().size());
+        assertEquals(3, server.getRequestCount("database.list"));
+
+        server.failNext("table.list", Fault.SERVICE_UNAVAILABLE, 10);
+        try {
+            client.listTables("mock_db");
+            fail("should not reach here");
+        }
+        catch (TDClientHttpException e) {
+            assertEquals(503, e.getStatusCode());
+        }
+        // Other endpoints are not affected
+        assertEquals(1, client.listDatabases().size());
+        server.clearFaults();
+
+        server.failNext(Fault.CONNECTION_RESET, 1);
+        try {
+            client.listDatabases();
+            fail("should not reach here");
+        }
+        catch (TDClientException e) {
+            // OK
+        }
+
+        server.setSlowBodyDelayMillis(100).failNext(Fault.SLOW_BODY, 1);
+        assertEquals(1, client.listDatabases().size());
+    }
+
+    @Test
+    public void largeSyntheticPayloads()
+    {
+        server.addSyntheticTables("mock_db", 2000, 50);
+        List<String> jobIds = server.addSyntheticJobs("mock_db", 1000);
+        server.setLatency(1, 5);
+
+        int numTables = 0;
+        try (JsonArrayIterator<TDTable> tables = client.iterateTables("mock_db")) {
+            while (tables.hasNext()) {
+                assertEquals(50, tables.next().getColumns().size());
+                numTables++;
+            }
+        }
+        assertEquals(2000, numTables);
+        assertEquals(1000, client.listJobs(Long.parseLong(jobIds.get(0)), Long.parseLong(jobIds.get(999))).getJobs().size());
+    }
+
+    private static byte[] msgpackGz(int numRecords)
+            throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MessagePacker packer = MessagePack.newDefaultPacker(new GZIPOutputStream(out));
+        for (int i = 0; i < numRecords; ++i) {
+            packer.packMapHeader(1).packString("time").packLong(i);
+        }
+        packer.close();
+        return out.toByteArray();
+    }
+}
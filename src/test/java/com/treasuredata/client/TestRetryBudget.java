@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.treasuredata.client;
+
+import com.google.common.base.Ticker;
+import com.treasuredata.client.MockTDApiServer.Fault;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestRetryBudget
+{
+    private static class ManualTicker
+            extends Ticker
+    {
+        private long nanos = 0;
+
+        @Override
+        public long read()
+        {
+            return nanos;
+        }
+
+        void advance(long seconds)
+        {
+            nanos += TimeUnit.SECONDS.toNanos(seconds);
+        }
+    }
+
+    @Test
+    public void capRetriesToRatioOfSuccesses()
+    {
+        ManualTicker ticker = new ManualTicker();
+        RetryBudget budget = new RetryBudget(0.5, 0, ticker);
+        assertFalse(budget.tryAcquireRetry());
+
+        for (int i = 0; i < 10; ++i) {
+            budget.recordSuccess();
+        }
+        for (int i = 0; i < 5; ++i) {
+            assertTrue(budget.tryAcquireRetry());
+        }
+        assertFalse(budget.tryAcquireRetry());
+
+        ticker.advance(RetryBudget.WINDOW_SECONDS - 1);
+        budget.recordSuccess();
+        budget.recordSuccess();
+        assertTrue(budget.tryAcquireRetry());
+        assertFalse(budget.tryAcquireRetry());
+
+        // The first 10 successes and 5 retries expire after the window
+        ticker.advance(1);
+        assertFalse(budget.tryAcquireRetry());
+        budget.recordSuccess();
+        budget.recordSuccess();
+        assertTrue(budget.tryAcquireRetry());
+        assertFalse(budget.tryAcquireRetry());
+    }
+
+    @Test
+    public void allowMinRetriesPerSecond()
+    {
+        ManualTicker ticker = new ManualTicker();
+        RetryBudget budget = new RetryBudget(0.1, 1, ticker);
+        for (int i = 0; i < RetryBudget.WINDOW_SECONDS; ++i) {
+            assertTrue(budget.tryAcquireRetry());
+        }
+        assertFalse(budget.tryAcquireRetry());
+        ticker.advance(RetryBudget.WINDOW_SECONDS * 2);
+        assertTrue(budget.tryAcquireRetry());
+
+        RetryBudget unlimited = RetryBudget.unlimited();
+        for (int i = 0; i < 1000; ++i) {
+            assertTrue(unlimited.tryAcquireRetry());
+        }
+    }
+
+    @Test
+    public void stopRetriesWhenBudgetIsExhausted()
+            throws Exception
+    {
+        try (MockTDApiServer server = new MockTDApiServer().start()) {
+            TDClient client = server.configure(TDClient.newBuilder(false))
+                    .setRetryInitialIntervalMillis(1)
+                    .setRetryMaxIntervalMillis(10)
+                    .setRetryLimit(100)
+                    .setRetryBudgetRatio(0.0)
+                    .setRetryBudgetMinRetriesPerSecond(1)
+                    .build();
+            try {
+                server.failNext(Fault.INTERNAL_SERVER_ERROR, 1000);
+                try {
+                    client.listDatabases();
+                    fail("should not reach here");
+                }
+                catch (TDClientHttpException e) {
+                    assertEquals(500, e.getStatusCode());
+                }
+                // The first attempt and the retries allowed by the budget
+                assertEquals(1 + RetryBudget.WINDOW_SECONDS, server.getRequestCount());
+            }
+            finally {
+                client.close();
+            }
+        }
+    }
+}
@@ -18,8 +18,10 @@
  */
 package com.treasuredata.client;
 
+import com.google.common.base.Function;
 import com.google.common.base.Throwables;
 import com.google.common.io.CharStreams;
+import com.treasuredata.client.model.TDResultFormat;
 import org.eclipse.jetty.http.HttpStatus;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.Server;
@@ -36,8 +38,10 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -167,6 +171,55 @@ public class TestServerFailures
         }
     }
 
+    @Test
+    public void retryStreamingResult()
+            throws Exception
+    {
+        final AtomicInteger accessCount = new AtomicInteger(0);
+        server.setHandler(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+                    throws IOException, ServletException
+            {
+                logger.debug("request: " + request);
+                if (accessCount.incrementAndGet() < 3) {
+                    response.setStatus(HttpStatus.SERVICE_UNAVAILABLE_503);
+                    response.getWriter().print("{\"error\":\"unavailable\",\"text\":\"unavailable\",\"severity\":\"error\"}");
+                }
+                else {
+                    response.setStatus(HttpStatus.OK_200);
+                    response.getWriter().print("1,2,3\n");
+                }
+                baseRequest.setHandled(true);
+            }
+        });
+        startServer();
+
+        TDClient client = TDClient
+                .newBuilder()
+                .setEndpoint("localhost")
+                .setUseSSL(false)
+                .setPort(port)
+                .setRetryInitialIntervalMillis(10)
+                .build();
+        String result = client.jobResult("1", TDResultFormat.CSV, new Function<InputStream, String>()
+        {
+            @Override
+            public String apply(InputStream input)
+            {
+                try (InputStreamReader reader = new InputStreamReader(input, StandardCharsets.UTF_8)) {
+                    return CharStreams.toString(reader);
+                }
+                catch (IOException e) {
+                    throw Throwables.propagate(e);
+                }
+            }
+        });
+        assertEquals("1,2,3\n", result);
+        assertEquals(3, accessCount.get());
+    }
+
     @Test
     public void unknownResponseCode()
             throws Exception
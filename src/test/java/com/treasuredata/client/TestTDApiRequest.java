@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.treasuredata.client;
+
+import com.google.common.base.Optional;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.http.HttpHeader;
+import org.junit.Test;
+
+import java.net.URLEncoder;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class TestTDApiRequest
+{
+    @Test
+    public void urlEncodeSameWithURLEncoder()
+            throws Exception
+    {
+        String[] values = {"", "abc", "a b+c", "SELECT * FROM t WHERE x = '1'", "\u65e5\u672c\u8a9e", "\uD83D\uDE00", "\uD800x", "x\uDC00", "~!@#$%^&()={}[]|\\:;\"'<>,?/"};
+        for (String value : values) {
+            assertEquals(URLEncoder.encode(value, "UTF-8"), TDApiRequest.urlEncode(value));
+        }
+        Random random = new Random(0);
+        for (int i = 0; i < 1000; ++i) {
+            char[] chars = new char[random.nextInt(20)];
+            for (int j = 0; j < chars.length; ++j) {
+                chars[j] = random.nextBoolean() ? (char) random.nextInt(0x80) : (char) random.nextInt(0x10000);
+            }
+            String value = new String(chars);
+            assertEquals(URLEncoder.encode(value, "UTF-8"), TDApiRequest.urlEncode(value));
+        }
+    }
+
+    @Test
+    public void endpointNameWithoutResourceName()
+    {
+        // The name of a bulk load must not be a part of the endpoint name
+        assertEquals("bulk_loads.jobs", TDApiRequest.endpointNameOf("/v3/bulk_loads/my_load/jobs"));
+        assertEquals("bulk_loads.jobs", TDApiRequest.endpointNameOf("/v3/bulk_loads/another_load/jobs?x=1"));
+        assertEquals("bulk_loads", TDApiRequest.endpointNameOf("/v3/bulk_loads/my_load"));
+        assertEquals("bulk_loads", TDApiRequest.endpointNameOf("/v3/bulk_loads"));
+        assertEquals("bulk_import.list", TDApiRequest.endpointNameOf("/v3/bulk_import/list"));
+        assertEquals("bulk_loads.jobs", TDApiRequest.Builder.POST(TDClient.buildUrl("/v3/bulk_loads", "my load", "jobs")).build().getEndpointName());
+    }
+
+    @Test
+    public void prepareRequest()
+    {
+        TDClientConfig config = TDClient.newBuilder(false)
+                .setEndpoint("api.example.com")
+                .setPort(8443)
+                .setApiKey("1/abc")
+                .buildConfig();
+        try (TDHttpClient httpClient = new TDHttpClient(config)) {
+            TDApiRequest get = TDApiRequest.Builder.GET("/v3/job/list")
+                    .addQueryParam("from", "1")
+                    .addQueryParam("status", "a b")
+                    .build();
+            Request request = httpClient.prepareRequest(get, Optional.<String>absent());
+            assertEquals("https://api.example.com:8443/v3/job/list?from=1&status=a+b", request.getURI().toString());
+            assertEquals("TD1 1/abc", request.getHeaders().get(HttpHeader.AUTHORIZATION));
+
+            Request withApiKey = httpClient.prepareRequest(get, Optional.of("2/def"));
+            assertEquals("TD1 2/def", withApiKey.getHeaders().get(HttpHeader.AUTHORIZATION));
+            Request next = httpClient.prepareRequest(get, Optional.of("2/def"));
+            // The header of the same API key is reused
+            assertSame(withApiKey.getHeaders().get(HttpHeader.AUTHORIZATION), next.getHeaders().get(HttpHeader.AUTHORIZATION));
+
+            TDApiRequest post = TDApiRequest.Builder.POST("/v3/job/issue/hive/db")
+                    .addQueryParam("query", "select 1")
+                    .build();
+            Request postRequest = httpClient.prepareRequest(post, Optional.<String>absent());
+            assertEquals("https://api.example.com:8443/v3/job/issue/hive/db", postRequest.getURI().toString());
+            assertEquals("application/x-www-form-urlencoded", postRequest.getHeaders().get(HttpHeader.CONTENT_TYPE));
+        }
+    }
+}
@@ -18,6 +18,7 @@
  */
 package com.treasuredata.client;
 
+import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableMap;
 import org.junit.Test;
 
@@ -29,21 +30,34 @@ import java.util.Properties;
 
 import static com.treasuredata.client.TDClientConfig.Type.API_ENDPOINT;
 import static com.treasuredata.client.TDClientConfig.Type.API_PORT;
+import static com.treasuredata.client.TDClientConfig.Type.CIRCUIT_BREAKER_FAILURE_RATE_THRESHOLD;
+import static com.treasuredata.client.TDClientConfig.Type.CIRCUIT_BREAKER_OPEN_DURATION_MILLIS;
+import static com.treasuredata.client.TDClientConfig.Type.CIRCUIT_BREAKER_WINDOW_SIZE;
+import static com.treasuredata.client.TDClientConfig.Type.HEDGE_MAX_RATIO;
+import static com.treasuredata.client.TDClientConfig.Type.HEDGE_MIN_DELAY_MILLIS;
+import static com.treasuredata.client.TDClientConfig.Type.HEDGE_PERCENTILE;
 import static com.treasuredata.client.TDClientConfig.Type.CONNECTION_POOL_SIZE;
 import static com.treasuredata.client.TDClientConfig.Type.CONNECT_TIMEOUT_MILLIS;
 import static com.treasuredata.client.TDClientConfig.Type.IDLE_TIMEOUT_MILLIS;
+import static com.treasuredata.client.TDClientConfig.Type.MAX_CONNECTIONS_PER_DESTINATION;
+import static com.treasuredata.client.TDClientConfig.Type.MAX_REQUESTS_QUEUED_PER_DESTINATION;
 import static com.treasuredata.client.TDClientConfig.Type.PASSOWRD;
 import static com.treasuredata.client.TDClientConfig.Type.PROXY_HOST;
 import static com.treasuredata.client.TDClientConfig.Type.PROXY_PASSWORD;
 import static com.treasuredata.client.TDClientConfig.Type.PROXY_PORT;
 import static com.treasuredata.client.TDClientConfig.Type.PROXY_USER;
 import static com.treasuredata.client.TDClientConfig.Type.PROXY_USESSL;
+import static com.treasuredata.client.TDClientConfig.Type.RETRY_BUDGET_MIN_RETRIES_PER_SECOND;
+import static com.treasuredata.client.TDClientConfig.Type.RETRY_BUDGET_RATIO;
 import static com.treasuredata.client.TDClientConfig.Type.RETRY_INITIAL_INTERVAL_MILLIS;
+import static com.treasuredata.client.TDClientConfig.Type.RETRY_JITTER;
 import static com.treasuredata.client.TDClientConfig.Type.RETRY_LIMIT;
 import static com.treasuredata.client.TDClientConfig.Type.RETRY_MAX_INTERVAL_MILLIS;
 import static com.treasuredata.client.TDClientConfig.Type.RETRY_MULTIPLIER;
 import static com.treasuredata.client.TDClientConfig.Type.USER;
 import static com.treasuredata.client.TDClientConfig.Type.USESSL;
+import static com.treasuredata.client.TDClientConfig.Type.USE_VIRTUAL_THREADS;
+import static com.treasuredata.client.TDClientConfig.Type.WARM_UP_CONNECTIONS;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -65,10 +79,23 @@ public class TestTDClientConfig
         p.put(CONNECT_TIMEOUT_MILLIS, 2345);
         p.put(IDLE_TIMEOUT_MILLIS, 3456);
         p.put(CONNECTION_POOL_SIZE, 234);
+        p.put(MAX_CONNECTIONS_PER_DESTINATION, 16);
+        p.put(MAX_REQUESTS_QUEUED_PER_DESTINATION, 256);
+        p.put(WARM_UP_CONNECTIONS, 4);
+        p.put(USE_VIRTUAL_THREADS, true);
         p.put(RETRY_LIMIT, 11);
         p.put(RETRY_INITIAL_INTERVAL_MILLIS, 456);
         p.put(RETRY_MAX_INTERVAL_MILLIS, 10000);
         p.put(RETRY_MULTIPLIER, 1.5);
+        p.put(RETRY_JITTER, ExponentialBackOff.Jitter.DECORRELATED);
+        p.put(RETRY_BUDGET_RATIO, 0.1);
+        p.put(RETRY_BUDGET_MIN_RETRIES_PER_SECOND, 5);
+        p.put(CIRCUIT_BREAKER_FAILURE_RATE_THRESHOLD, 0.8);
+        p.put(CIRCUIT_BREAKER_WINDOW_SIZE, 50);
+        p.put(CIRCUIT_BREAKER_OPEN_DURATION_MILLIS, 5000);
+        p.put(HEDGE_PERCENTILE, 95.0);
+        p.put(HEDGE_MIN_DELAY_MILLIS, 100);
+        p.put(HEDGE_MAX_RATIO, 0.1);
         p.put(USER, "xxxx");
         p.put(PASSOWRD, "yyyy");
         m = p.build();
@@ -83,11 +110,24 @@ public class TestTDClientConfig
         assertEquals(m.get(USESSL), config.useSSL);
         assertEquals(m.get(CONNECT_TIMEOUT_MILLIS), config.connectTimeoutMillis);
         assertEquals(m.get(CONNECTION_POOL_SIZE), config.connectionPoolSize);
+        assertEquals(m.get(MAX_CONNECTIONS_PER_DESTINATION), config.maxConnectionsPerDestination);
+        assertEquals(m.get(MAX_REQUESTS_QUEUED_PER_DESTINATION), config.maxRequestsQueuedPerDestination);
+        assertEquals(m.get(WARM_UP_CONNECTIONS), config.warmUpConnections);
+        assertEquals(m.get(USE_VIRTUAL_THREADS), config.useVirtualThreads);
         assertEquals(m.get(IDLE_TIMEOUT_MILLIS), config.idleTimeoutMillis);
         assertEquals(m.get(RETRY_INITIAL_INTERVAL_MILLIS), config.retryInitialIntervalMillis);
         assertEquals(m.get(RETRY_MAX_INTERVAL_MILLIS), config.retryMaxIntervalMillis);
         assertEquals((double) m.get(RETRY_MULTIPLIER), config.retryMultiplier, 0.001);
         assertEquals(m.get(RETRY_LIMIT), config.retryLimit);
+        assertEquals(m.get(RETRY_JITTER), config.retryJitter);
+        assertEquals((double) m.get(RETRY_BUDGET_RATIO), config.retryBudgetRatio, 0.001);
+        assertEquals(m.get(RETRY_BUDGET_MIN_RETRIES_PER_SECOND), config.retryBudgetMinRetriesPerSecond);
+        assertEquals((double) m.get(CIRCUIT_BREAKER_FAILURE_RATE_THRESHOLD), config.circuitBreakerFailureRateThreshold, 0.001);
+        assertEquals(m.get(CIRCUIT_BREAKER_WINDOW_SIZE), config.circuitBreakerWindowSize);
+        assertEquals(m.get(CIRCUIT_BREAKER_OPEN_DURATION_MILLIS), config.circuitBreakerOpenDurationMillis);
+        assertEquals((double) m.get(HEDGE_PERCENTILE), config.hedgePercentile, 0.001);
+        assertEquals(m.get(HEDGE_MIN_DELAY_MILLIS), config.hedgeMinDelayMillis);
+        assertEquals((double) m.get(HEDGE_MAX_RATIO), config.hedgeMaxRatio, 0.001);
         assertEquals(m.get(USER), config.user.get());
         assertEquals(m.get(PASSOWRD), config.password.get());
         assertFalse(config.proxy.isPresent());
@@ -112,17 +152,46 @@ public class TestTDClientConfig
         b.setUseSSL(Boolean.parseBoolean(m.get(USESSL).toString()));
         b.setConnectTimeoutMillis(Integer.parseInt(m.get(CONNECT_TIMEOUT_MILLIS).toString()));
         b.setConnectionPoolSize(Integer.parseInt(m.get(CONNECTION_POOL_SIZE).toString()));
+        b.setMaxConnectionsPerDestination(Integer.parseInt(m.get(MAX_CONNECTIONS_PER_DESTINATION).toString()));
+        b.setMaxRequestsQueuedPerDestination(Integer.parseInt(m.get(MAX_REQUESTS_QUEUED_PER_DESTINATION).toString()));
+        b.setWarmUpConnections(Integer.parseInt(m.get(WARM_UP_CONNECTIONS).toString()));
+        b.setUseVirtualThreads(Boolean.parseBoolean(m.get(USE_VIRTUAL_THREADS).toString()));
         b.setIdleTimeoutMillis(Integer.parseInt(m.get(IDLE_TIMEOUT_MILLIS).toString()));
         b.setRetryInitialIntervalMillis(Integer.parseInt(m.get(RETRY_INITIAL_INTERVAL_MILLIS).toString()));
         b.setRetryMaxIntervalMillis(Integer.parseInt(m.get(RETRY_MAX_INTERVAL_MILLIS).toString()));
         b.setRetryMultiplier(Double.parseDouble(m.get(RETRY_MULTIPLIER).toString()));
         b.setRetryLimit(Integer.parseInt(m.get(RETRY_LIMIT).toString()));
+        b.setRetryJitter(ExponentialBackOff.Jitter.fromName(m.get(RETRY_JITTER).toString()));
+        b.setRetryBudgetRatio(Double.parseDouble(m.get(RETRY_BUDGET_RATIO).toString()));
+        b.setRetryBudgetMinRetriesPerSecond(Integer.parseInt(m.get(RETRY_BUDGET_MIN_RETRIES_PER_SECOND).toString()));
+        b.setCircuitBreakerFailureRateThreshold(Double.parseDouble(m.get(CIRCUIT_BREAKER_FAILURE_RATE_THRESHOLD).toString()));
+        b.setCircuitBreakerWindowSize(Integer.parseInt(m.get(CIRCUIT_BREAKER_WINDOW_SIZE).toString()));
+        b.setCircuitBreakerOpenDurationMillis(Integer.parseInt(m.get(CIRCUIT_BREAKER_OPEN_DURATION_MILLIS).toString()));
+        b.setHedgePercentile(Double.parseDouble(m.get(HEDGE_PERCENTILE).toString()));
+        b.setHedgeMinDelayMillis(Integer.parseInt(m.get(HEDGE_MIN_DELAY_MILLIS).toString()));
+        b.setHedgeMaxRatio(Double.parseDouble(m.get(HEDGE_MAX_RATIO).toString()));
         b.setUser(m.get(USER).toString());
         b.setPassword(m.get(PASSOWRD).toString());
         TDClientConfig config2 = b.build().config;
         validate(config2);
     }
 
+    @Test
+    public void sameDefaultsForBuilderAndJsonCreator()
+    {
+        TDClientConfig built = TDClient.newBuilder(false).build().config;
+        TDClientConfig created = new TDClientConfig(Optional.<String>absent(), Optional.<Integer>absent(), true,
+                Optional.<String>absent(), Optional.<String>absent(), Optional.<String>absent(), Optional.<ProxyConfig>absent(),
+                built.retryLimit, built.retryInitialIntervalMillis, built.retryMaxIntervalMillis, built.retryMultiplier,
+                built.connectTimeoutMillis, built.idleTimeoutMillis, built.connectionPoolSize);
+        for (TDClientConfig config : new TDClientConfig[] {built, created}) {
+            assertEquals(ExponentialBackOff.Jitter.EQUAL, config.retryJitter);
+            assertEquals(RetryBudget.DEFAULT_RATIO, config.retryBudgetRatio, 0.001);
+            assertEquals(RetryBudget.DEFAULT_MIN_RETRIES_PER_SECOND, config.retryBudgetMinRetriesPerSecond);
+            assertEquals(CircuitBreaker.DISABLED, config.circuitBreakerFailureRateThreshold, 0.0);
+        }
+    }
+
     @Test
     public void testProxyParam()
     {
@@ -185,6 +254,14 @@ public class TestTDClientConfig
         TDClient.newBuilder().setProperties(p);
     }
 
+    @Test(expected = TDClientException.class)
+    public void readInvalidJitter()
+    {
+        Properties p = new Properties();
+        p.setProperty(RETRY_JITTER.key, "xxx");
+        TDClient.newBuilder().setProperties(p);
+    }
+
     @Test
     public void canConvertToProperties()
     {
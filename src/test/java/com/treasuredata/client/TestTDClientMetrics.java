@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.treasuredata.client;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.SocketPolicy;
+import okio.Buffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ *
+ */
+public class TestTDClientMetrics
+{
+    private MockWebServer server;
+    private HistogramTDClientMetrics metrics;
+    private TDClient client;
+
+    @Before
+    public void setUp()
+            throws Exception
+    {
+        server = new MockWebServer();
+        server.start();
+        metrics = new HistogramTDClientMetrics();
+        client = TDClient.newBuilder(false)
+                .setUseSSL(false)
+                .setEndpoint(server.getHostName())
+                .setPort(server.getPort())
+                .setApiKey("dummy")
+                .setRetryLimit(1)
+                .setRetryInitialIntervalMillis(10)
+                .setIdleTimeoutMillis(500)
+                .setMetrics(metrics)
+                .build();
+    }
+
+    @After
+    public void tearDown()
+            throws Exception
+    {
+        client.close();
+        server.shutdown();
+    }
+
+    @Test
+    public void endpointName()
+    {
+        assertEquals("job.status", TDApiRequest.endpointNameOf("/v3/job/status/12345"));
+        assertEquals("job.list", TDApiRequest.endpointNameOf("/v3/job/list?from_id=1&to_id=10"));
+        assertEquals("database.list", TDApiRequest.endpointNameOf("/v3/database/list"));
+        assertEquals("table.create", TDApiRequest.endpointNameOf("/v3/table/create/db1/tbl1/log"));
+        assertEquals("bulk_import.upload_part", TDApiRequest.endpointNameOf("/v3/bulk_import/upload_part/session/part1"));
+        assertEquals("system.server_status", TDApiRequest.endpointNameOf("/v3//system/server_status"));
+        assertEquals("v4.users", TDApiRequest.endpointNameOf("/v4/users/1"));
+        assertEquals("", TDApiRequest.endpointNameOf("/"));
+    }
+
+    @Test
+    public void collectEndpointStats()
+            throws Exception
+    {
+        String jobStatus = "{\"job_id\":\"1\",\"status\":\"running\"}";
+        for (int i = 0; i < 10; ++i) {
+            server.enqueue(new MockResponse().setBody(jobStatus));
+        }
+        for (int i = 0; i < 10; ++i) {
+            client.jobStatus(Integer.toString(i));
+        }
+        // Retried once, and fails
+        server.enqueue(new MockResponse().setResponseCode(500).setBody("error"));
+        server.enqueue(new MockResponse().setResponseCode(503).setBody("error"));
+        try {
+            client.listDatabases();
+            fail("should not reach here");
+        }
+        catch (TDClientHttpException e) {
+            assertEquals(503, e.getStatusCode());
+        }
+
+        Map<String, HistogramTDClientMetrics.EndpointStats> stats = metrics.getEndpointStats();
+        assertEquals(2, stats.size());
+
+        HistogramTDClientMetrics.EndpointStats jobStats = stats.get("job.status");
+        assertEquals(10, jobStats.getRequestCount());
+        assertEquals(0, jobStats.getErrorCount());
+        assertEquals(0, jobStats.getRetryCount());
+        assertEquals(0, jobStats.getInFlightRequestCount());
+        assertEquals(10L * jobStatus.length(), jobStats.getBytesReceived());
+        assertThat(jobStats.getP50Millis(), greaterThan(0.0));
+        assertThat(jobStats.getP999Millis(), greaterThanOrEqualTo(jobStats.getP99Millis()));
+        assertThat(jobStats.getP99Millis(), greaterThanOrEqualTo(jobStats.getP50Millis()));
+
+        HistogramTDClientMetrics.EndpointStats dbStats = stats.get("database.list");
+        assertEquals(2, dbStats.getRequestCount());
+        assertEquals(2, dbStats.getErrorCount());
+        assertEquals(1, dbStats.getRetryCount());
+        assertTrue(metrics.toString().contains("database.list: requests=2"));
+    }
+
+    @Test
+    public void countBytesSentAndTimeouts()
+            throws Exception
+    {
+        server.enqueue(new MockResponse().setBody("{}"));
+        byte[] part = new byte[1000];
+        client.uploadBulkImportPart("session1", "part1", part);
+
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+        server.enqueue(new MockResponse().setBody("{\"job_id\":\"1\",\"status\":\"running\"}").setBodyDelay(1, TimeUnit.SECONDS));
+        try {
+            client.jobStatus("1");
+            fail("should not reach here");
+        }
+        catch (TDClientException e) {
+            // OK
+        }
+
+        HistogramTDClientMetrics.EndpointStats uploadStats = metrics.getEndpointStats().get("bulk_import.upload_part");
+        assertEquals(1000, uploadStats.getBytesSent());
+
+        HistogramTDClientMetrics.EndpointStats jobStats = metrics.getEndpointStats().get("job.status");
+        assertEquals(2, jobStats.getTimeoutCount());
+        assertEquals(2, jobStats.getErrorCount());
+        assertEquals(1, jobStats.getRetryCount());
+        assertThat(jobStats.getP50Millis(), greaterThanOrEqualTo(400.0));
+    }
+
+    private static Buffer gzip(String json)
+            throws IOException
+    {
+        Buffer buffer = new Buffer();
+        try (GZIPOutputStream out = new GZIPOutputStream(buffer.outputStream())) {
+            out.write(json.getBytes(StandardCharsets.UTF_8));
+        }
+        return buffer;
+    }
+
+    @Test
+    public void decodeCompressedResponses()
+            throws Exception
+    {
+        StringBuilder tables = new StringBuilder("{\"database\":\"db1\",\"tables\":[");
+        for (int i = 0; i < 100; ++i) {
+            if (i > 0) {
+                tables.append(",");
+            }
+            tables.append(String.format("{\"name\":\"table%d\",\"type\":\"log\",\"count\":%d,\"schema\":\"[]\"}", i, i));
+        }
+        tables.append("]}");
+        Buffer compressedTables = gzip(tables.toString());
+        long compressedSize = compressedTables.size();
+        server.enqueue(new MockResponse().setBody(compressedTables).setHeader("Content-Encoding", "gzip"));
+        server.enqueue(new MockResponse().setBody(gzip("{\"job_id\":\"1\",\"status\":\"running\"}")).setHeader("Content-Encoding", "gzip"));
+
+        // Streaming
+        assertEquals(100, client.listTables("db1").size());
+        assertEquals("gzip", server.takeRequest().getHeader("Accept-Encoding"));
+        // Buffered
+        assertEquals("1", client.jobStatus("1").getJobId());
+        assertEquals("gzip", server.takeRequest().getHeader("Accept-Encoding"));
+
+        HistogramTDClientMetrics.EndpointStats tableStats = metrics.getEndpointStats().get("table.list");
+        assertEquals(compressedSize, tableStats.getBytesReceived());
+        assertEquals(compressedSize, tableStats.getCompressedBytesReceived());
+        assertEquals(tables.length(), tableStats.getDecodedBytesReceived());
+        assertThat(tableStats.getDecodedBytesReceived(), greaterThan(5 * tableStats.getCompressedBytesReceived()));
+    }
+}
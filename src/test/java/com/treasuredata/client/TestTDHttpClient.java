@@ -61,6 +61,7 @@ public class TestTDHttpClient
     }
 
     @Test
+    @SuppressWarnings("deprecation")
     public void addHttpRequestHeader()
     {
         TDApiRequest req = TDApiRequest.Builder.GET("/v3/system/server_status").addHeader("TEST_HEADER", "hello td-client-java").build();
@@ -68,6 +69,7 @@ public class TestTDHttpClient
     }
 
     @Test
+    @SuppressWarnings("deprecation")
     public void deleteMethodTest()
     {
         try {
@@ -0,0 +1,207 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.treasuredata.client;
+
+import com.google.common.base.Joiner;
+import com.google.common.cache.CacheStats;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ */
+public class TestTDMetadataCache
+{
+    private MockWebServer server;
+    private TDClient client;
+    private final Set<String> tables = new CopyOnWriteArraySet<>();
+    private final AtomicInteger databaseListRequests = new AtomicInteger();
+    private final AtomicInteger tableListRequests = new AtomicInteger();
+
+    @Before
+    public void setUp()
+            throws Exception
+    {
+        tables.add("t1");
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher()
+        {
+            @Override
+            public MockResponse dispatch(RecordedRequest request)
+                    throws InterruptedException
+            {
+                String path = request.getPath();
+                if (path.equals("/v3/database/list")) {
+                    databaseListRequests.incrementAndGet();
+                    return new MockResponse().setBody("{\"databases\":[{\"name\":\"db1\",\"count\":1,\"created_at\":\"\",\"updated_at\":\"\",\"permission\":\"owner\"}]}");
+                }
+                if (path.equals("/v3/table/list/db1")) {
+                    tableListRequests.incrementAndGet();
+                    List<String> tableJson = new ArrayList<>();
+                    for (String table : tables) {
+                        tableJson.add(String.format("{\"id\":\"%d\",\"name\":\"%s\",\"type\":\"log\",\"schema\":\"[]\",\"count\":0}", tableJson.size(), table));
+                    }
+                    return new MockResponse().setBody("{\"name\":\"db1\",\"tables\":[" + Joiner.on(",").join(tableJson) + "]}");
+                }
+                if (path.startsWith("/v3/table/create/db1/")) {
+                    tables.add(path.split("/")[5]);
+                    return new MockResponse().setBody("{}");
+                }
+                if (path.startsWith("/v3/table/rename/db1/")) {
+                    String[] p = path.split("\\?")[0].split("/");
+                    tables.remove(p[5]);
+                    tables.add(p[6]);
+                    return new MockResponse().setBody("{\"database\":\"db1\",\"table\":\"" + p[6] + "\",\"type\":\"log\"}");
+                }
+                return new MockResponse().setResponseCode(404);
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown()
+            throws Exception
+    {
+        if (client != null) {
+            client.close();
+        }
+        server.shutdown();
+    }
+
+    private TDClient newClient(long ttlMillis, long refreshAfterMillis)
+    {
+        return TDClient.newBuilder(false)
+                .setUseSSL(false)
+                .setEndpoint(server.getHostName())
+                .setPort(server.getPort())
+                .setApiKey("dummy")
+                .setRetryLimit(0)
+                .build()
+                .withMetadataCache(ttlMillis, refreshAfterMillis);
+    }
+
+    @Test
+    public void cacheTableLists()
+            throws Exception
+    {
+        client = newClient(60000, 60000);
+        for (int i = 0; i < 10; ++i) {
+            assertTrue(client.existsDatabase("db1"));
+            assertFalse(client.existsDatabase("db2"));
+            assertTrue(client.existsTable("db1", "t1"));
+            assertFalse(client.existsTable("db1", "tbl2"));
+            assertEquals(1, client.listTables("db1").size());
+        }
+        assertEquals(1, databaseListRequests.get());
+        assertEquals(1, tableListRequests.get());
+
+        CacheStats stats = client.getMetadataCache().get().getStats();
+        assertEquals(2, stats.missCount());
+        assertEquals(48, stats.hitCount());
+    }
+
+    @Test
+    public void invalidateOnUpdate()
+            throws Exception
+    {
+        client = newClient(60000, 60000);
+        assertFalse(client.existsTable("db1", "tbl2"));
+
+        client.createTable("db1", "tbl2");
+        assertTrue(client.existsTable("db1", "tbl2"));
+        assertEquals(2, tableListRequests.get());
+
+        client.renameTable("db1", "tbl2", "tbl3");
+        assertFalse(client.existsTable("db1", "tbl2"));
+        assertTrue(client.existsTable("db1", "tbl3"));
+        assertEquals(3, tableListRequests.get());
+    }
+
+    @Test
+    public void expireAfterTtl()
+            throws Exception
+    {
+        client = newClient(100, 100);
+        assertTrue(client.existsTable("db1", "t1"));
+        // Changed by another client
+        tables.add("tbl2");
+        assertFalse(client.existsTable("db1", "tbl2"));
+
+        Thread.sleep(200);
+        assertTrue(client.existsTable("db1", "tbl2"));
+        assertEquals(2, tableListRequests.get());
+    }
+
+    @Test
+    public void refreshAhead()
+            throws Exception
+    {
+        client = newClient(60000, 100);
+        assertTrue(client.existsTable("db1", "t1"));
+        tables.add("tbl2");
+        Thread.sleep(200);
+
+        // Returns the old list and reloads it in the background
+        assertFalse(client.existsTable("db1", "tbl2"));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!client.existsTable("db1", "tbl2") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(client.existsTable("db1", "tbl2"));
+        assertEquals(2, tableListRequests.get());
+    }
+
+    @Test
+    public void noCacheByDefault()
+            throws Exception
+    {
+        client = newClient(60000, 60000);
+        TDClient uncached = TDClient.newBuilder(false)
+                .setUseSSL(false)
+                .setEndpoint(server.getHostName())
+                .setPort(server.getPort())
+                .setApiKey("dummy")
+                .build();
+        try {
+            assertFalse(uncached.getMetadataCache().isPresent());
+            uncached.existsTable("db1", "t1");
+            uncached.existsTable("db1", "t1");
+            assertEquals(2, tableListRequests.get());
+        }
+        finally {
+            uncached.close();
+        }
+    }
+}
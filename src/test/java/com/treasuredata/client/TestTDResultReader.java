@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.treasuredata.client;
+
+import com.google.common.base.Function;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import org.junit.Test;
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessagePacker;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ */
+public class TestTDResultReader
+{
+    private static final String SCHEMA = "[[\"id\",\"bigint\"],[\"score\",\"double\"],[\"name\",\"varchar\"],[\"flag\",\"boolean\"],[\"tags\",\"array(varchar)\"]]";
+
+    private static byte[] createResult(int numRows)
+            throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (MessagePacker packer = MessagePack.newDefaultPacker(new GZIPOutputStream(out))) {
+            for (int i = 0; i < numRows; ++i) {
+                packer.packArrayHeader(5);
+                packer.packLong(i * 1000003L);
+                packer.packDouble(i / 2.0);
+                packer.packString("name-" + i);
+                packer.packBoolean(i % 2 == 0);
+                packer.packArrayHeader(1);
+                packer.packString("t" + i);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void readRows()
+            throws Exception
+    {
+        int numRows = 100000;
+        try (TDResultReader reader = new TDResultReader(new ByteArrayInputStream(createResult(numRows)), SCHEMA)) {
+            assertEquals(5, reader.getColumnCount());
+            assertEquals("score", reader.getColumnName(1));
+            assertEquals("varchar", reader.getColumnType(2));
+            assertEquals(2, reader.getColumnIndex("name"));
+            assertEquals(-1, reader.getColumnIndex("unknown"));
+
+            int i = 0;
+            while (reader.next()) {
+                assertEquals(i * 1000003L, reader.getLong(0));
+                assertEquals(i / 2.0, reader.getDouble(1), 1e-9);
+                assertEquals("name-" + i, reader.getString(2));
+                assertEquals(i % 2 == 0, reader.getBoolean(3));
+                assertEquals("[\"t" + i + "\"]", reader.getString(4));
+                i++;
+            }
+            assertEquals(numRows, i);
+            assertEquals(numRows, reader.getRowCount());
+        }
+    }
+
+    @Test
+    public void convertValues()
+            throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (MessagePacker packer = MessagePack.newDefaultPacker(new GZIPOutputStream(out))) {
+            // null, number string, long as double
+            packer.packArrayHeader(3);
+            packer.packNil();
+            packer.packString("12");
+            packer.packLong(3);
+            // fewer cells than the schema, and an integer out of the long range
+            packer.packArrayHeader(1);
+            packer.packBigInteger(new BigInteger("18446744073709551615"));
+            // more cells than the schema
+            packer.packArrayHeader(4);
+            packer.packLong(1);
+            packer.packLong(2);
+            byte[] binary = "bin".getBytes(StandardCharsets.UTF_8);
+            packer.packBinaryHeader(binary.length);
+            packer.writePayload(binary);
+            packer.packString("ignored");
+        }
+
+        try (TDResultReader reader = new TDResultReader(new ByteArrayInputStream(out.toByteArray()), "[[\"a\",\"bigint\"],[\"b\",\"varchar\"],[\"c\",\"double\"]]")) {
+            assertTrue(reader.next());
+            assertTrue(reader.isNull(0));
+            assertEquals(0L, reader.getLong(0));
+            assertNull(reader.getString(0));
+            assertEquals(12L, reader.getLong(1));
+            assertEquals(12.0, reader.getDouble(1), 0.0);
+            assertEquals(3.0, reader.getDouble(2), 0.0);
+            assertEquals("3", reader.getString(2));
+
+            assertTrue(reader.next());
+            assertEquals("18446744073709551615", reader.getString(0));
+            assertTrue(reader.isNull(1));
+            assertTrue(reader.isNull(2));
+
+            assertTrue(reader.next());
+            assertEquals(1L, reader.getLong(0));
+            assertEquals("2", reader.getString(1));
+            assertEquals("bin", reader.getString(2));
+
+            assertFalse(reader.next());
+        }
+    }
+
+    @Test
+    public void readJobResult()
+            throws Exception
+    {
+        final Buffer result = new Buffer().write(createResult(10));
+        MockWebServer server = new MockWebServer();
+        server.setDispatcher(new Dispatcher()
+        {
+            @Override
+            public MockResponse dispatch(RecordedRequest request)
+            {
+                if (request.getPath().startsWith("/v3/job/show/1")) {
+                    String schema = SCHEMA.replace("\"", "\\\"");
+                    return new MockResponse().setBody("{\"job_id\":\"1\",\"status\":\"success\",\"type\":\"presto\",\"query\":\"select 1\",\"hive_result_schema\":\"" + schema + "\"}");
+                }
+                if (request.getPath().startsWith("/v3/job/result/1?format=msgpack.gz")) {
+                    return new MockResponse().setBody(result.clone());
+                }
+                return new MockResponse().setResponseCode(404);
+            }
+        });
+        server.start();
+        TDClient client = TDClient.newBuilder(false)
+                .setUseSSL(false)
+                .setEndpoint(server.getHostName())
+                .setPort(server.getPort())
+                .setApiKey("dummy")
+                .build();
+        try {
+            long sum = client.readJobResult("1", new Function<TDResultReader, Long>()
+            {
+                @Override
+                public Long apply(TDResultReader reader)
+                {
+                    long sum = 0;
+                    while (reader.next()) {
+                        sum += reader.getLong(reader.getColumnIndex("id"));
+                    }
+                    return sum;
+                }
+            });
+            assertEquals(45 * 1000003L, sum);
+        }
+        finally {
+            client.close();
+            server.shutdown();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.treasuredata.client;
+
+import com.google.common.base.Optional;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestVirtualThreads
+{
+    private MockTDApiServer server;
+
+    @Before
+    public void setUp()
+            throws Exception
+    {
+        server = new MockTDApiServer().start();
+    }
+
+    @After
+    public void tearDown()
+            throws Exception
+    {
+        server.close();
+    }
+
+    @Test
+    public void processResponsesOnVirtualThreads()
+            throws Exception
+    {
+        String jobId = server.addSyntheticJobs("vt_db", 1).get(0);
+        // Respond after the listener is added
+        server.setLatency(200, 200);
+        TDClientConfig config = server.configure(TDClient.newBuilder(false)).setUseVirtualThreads(true).buildConfig();
+        try (TDHttpClient httpClient = new TDHttpClient(config)) {
+            // Falls back to a thread pool before Java 21
+            assertEquals(VirtualThreads.isAvailable(), httpClient.isUsingVirtualThreads());
+
+            final SettableFuture<String> callbackThread = SettableFuture.create();
+            ListenableFuture<String> future = httpClient.callAsync(TDApiRequest.Builder.GET("/v3/job/status/" + jobId).build(), Optional.<String>absent());
+            future.addListener(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    callbackThread.set(Thread.currentThread().getName());
+                }
+            }, MoreExecutors.directExecutor());
+            assertTrue(future.get().contains(jobId));
+            // The listener may run after get() has returned
+            String threadName = callbackThread.get(10, TimeUnit.SECONDS);
+            if (httpClient.isUsingVirtualThreads()) {
+                assertTrue(threadName, threadName.startsWith("td-client-"));
+            }
+            else {
+                // Jetty thread pool
+                assertFalse(threadName, threadName.startsWith("td-client-"));
+            }
+        }
+    }
+
+    @Test
+    public void newExecutorOnAnyJava()
+            throws Exception
+    {
+        // Falls back to a cached thread pool before Java 21
+        ExecutorService executor = VirtualThreads.newVirtualThreadPerTaskExecutor("td-test-");
+        try {
+            String threadName = executor.submit(new Callable<String>()
+            {
+                @Override
+                public String call()
+                {
+                    return Thread.currentThread().getName();
+                }
+            }).get();
+            assertTrue(threadName, threadName.startsWith("td-test-"));
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -19,15 +19,19 @@
 package com.treasuredata.client.model;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.RuntimeJsonMappingException;
 import com.google.common.collect.ImmutableSet;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import static com.treasuredata.client.model.TDColumnType.FLOAT;
@@ -41,6 +45,7 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -81,6 +86,40 @@ public class TestTDColumn
         assertEquals("mycol", new String(t.getKey(), StandardCharsets.UTF_8));
     }
 
+    @Test
+    public void parseSchema()
+    {
+        List<TDColumn> columns = TDColumn.parseTuple(" [[\"c1\", \"string\"],\n[\"c2\",\"array<map<string, long>>\", \"c2_renamed\"], [\"q\\\"\\\\\\u00e9\\n\",\"int\"] ] ");
+        assertEquals(3, columns.size());
+        assertEquals(new TDColumn("c1", STRING), columns.get(0));
+        assertEquals(new TDColumn("c2_renamed", newArrayType(newMapType(STRING, LONG)), "c2".getBytes(UTF_8)), columns.get(1));
+        assertEquals(new TDColumn("q\"\\\u00e9\n", INT), columns.get(2));
+
+        assertEquals(0, TDColumn.parseTuple("[]").size());
+        assertEquals(0, TDColumn.parseTuple(" [ ] ").size());
+    }
+
+    @Test
+    public void parseBrokenSchema()
+    {
+        // Broken JSON results in an empty schema
+        assertEquals(0, TDColumn.parseTuple("[[\"c1\",\"string\"]").size());
+        assertEquals(0, TDColumn.parseTuple("[[\"c1\",\"string]]").size());
+        assertEquals(0, TDColumn.parseTuple("[[\"c1\",\"string\"]]]").size());
+        assertEquals(0, TDColumn.parseTuple("[[\"c1\" \"string\"]]").size());
+
+        // Unexpected structures
+        for (String schema : new String[] {"{}", "[\"c1\"]", "[[\"c1\"]]", "[[\"c1\",[\"string\"]]]"}) {
+            try {
+                TDColumn.parseTuple(schema);
+                fail("should not reach here: " + schema);
+            }
+            catch (RuntimeJsonMappingException e) {
+                // OK
+            }
+        }
+    }
+
     @Test
     public void parsePrimitiveColumnTypes()
     {
@@ -229,6 +268,44 @@ public class TestTDColumn
         os.close();
     }
 
+    @Test
+    public void internParsedTypes()
+            throws Exception
+    {
+        assertSame(INT, parseColumnType("int"));
+        TDColumnType a1 = parseColumnType("array<int>");
+        assertSame(a1, parseColumnType("array<int>"));
+        assertSame(a1, parseColumnType(" array< int >"));
+        assertSame(a1, newArrayType(INT));
+
+        TDColumnType m1 = parseColumnType("map<string,array<int>>");
+        assertSame(a1, m1.getMapValueType());
+        assertSame(m1, newMapType(STRING, newArrayType(INT)));
+
+        // Deserialized types are also canonical
+        ByteArrayOutputStream b = new ByteArrayOutputStream();
+        try (ObjectOutputStream os = new ObjectOutputStream(b)) {
+            os.writeObject(new TDColumn[] {new TDColumn("c1", LONG), new TDColumn("c2", m1)});
+        }
+        try (ObjectInputStream is = new ObjectInputStream(new ByteArrayInputStream(b.toByteArray()))) {
+            TDColumn[] columns = (TDColumn[]) is.readObject();
+            assertSame(LONG, columns[0].getType());
+            assertSame(m1, columns[1].getType());
+        }
+    }
+
+    @Test
+    public void internCacheIsBounded()
+    {
+        StringBuilder spaces = new StringBuilder();
+        for (int i = 0; i < TDColumnType.MAX_INTERNED_TYPES * 2; ++i) {
+            spaces.append(" ");
+            assertEquals(newArrayType(INT), parseColumnType("array<int>" + spaces));
+        }
+        // Evicted types can be parsed again
+        assertEquals(newArrayType(newArrayType(STRING)), parseColumnType("array<array<string>>"));
+    }
+
     @Test
     public void serializableTest()
             throws Exception
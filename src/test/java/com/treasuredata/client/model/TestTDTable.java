@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.treasuredata.client.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.guava.GuavaModule;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ */
+public class TestTDTable
+{
+    private static TDTable newTable(String schema)
+    {
+        return new TDTable("1", "tbl1", TDTableType.LOG, schema, 10, 100, "", "", "", "");
+    }
+
+    @Test
+    public void parseSchemaLazily()
+    {
+        TDTable table = newTable("[[\"c1\",\"string\"],[\"c2\",\"long\"]]");
+        List<TDColumn> columns = table.getColumns();
+        assertEquals(2, columns.size());
+        assertEquals(new TDColumn("c1", TDColumnType.STRING), columns.get(0));
+        assertEquals(new TDColumn("c2", TDColumnType.LONG), columns.get(1));
+        // Memoized
+        assertSame(columns, table.getColumns());
+        assertSame(columns, table.getSchema());
+
+        assertEquals(table, newTable("[[\"c1\",\"string\"],[\"c2\",\"long\"]]"));
+        assertEquals(table.hashCode(), newTable("[[\"c1\",\"string\"],[\"c2\",\"long\"]]").hashCode());
+    }
+
+    @Test
+    public void readTableWithoutColumns()
+            throws Exception
+    {
+        // A table with a broken schema can be read unless its columns are used
+        String json = "{\"id\":\"1\",\"name\":\"tbl1\",\"type\":\"log\",\"schema\":\"[[\\\"c1\\\",\\\"unknown\\\"]]\",\"count\":10}";
+        TDTable table = new ObjectMapper().registerModule(new GuavaModule()).readValue(json, TDTable.class);
+        assertEquals("tbl1", table.getName());
+        assertEquals(10, table.getRowCount());
+
+        assertTrue(newTable(null).getColumns().isEmpty());
+    }
+}
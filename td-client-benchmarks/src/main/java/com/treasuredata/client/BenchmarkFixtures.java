@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.treasuredata.client;
+
+/**
+ * Synthetic API responses shaped like the ones of large accounts
+ */
+public class BenchmarkFixtures
+{
+    private static final String[] COLUMN_TYPES = {"string", "long", "double", "string", "array<string>", "map<string,string>", "int"};
+
+    private BenchmarkFixtures()
+    {
+    }
+
+    public static String schemaJson(int numColumns)
+    {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < numColumns; ++i) {
+            if (i > 0) {
+                sb.append(",");
+            }
+            String type = COLUMN_TYPES[i % COLUMN_TYPES.length];
+            if (i % 7 == 0) {
+                sb.append(String.format("[\"col_%d\",\"%s\",\"renamed_col_%d\"]", i, type, i));
+            }
+            else {
+                sb.append(String.format("[\"col_%d\",\"%s\"]", i, type));
+            }
+        }
+        return sb.append("]").toString();
+    }
+
+    /**
+     * A response of /v3/table/list/{database}
+     */
+    public static String tableListJson(int numTables, int numColumns)
+    {
+        String schema = schemaJson(numColumns).replace("\"", "\\\"");
+        StringBuilder sb = new StringBuilder("{\"database\":\"benchmark_db\",\"tables\":[");
+        for (int i = 0; i < numTables; ++i) {
+            if (i > 0) {
+                sb.append(",");
+            }
+            sb.append(String.format("{\"id\":%d,\"name\":\"table_%d\",\"estimated_storage_size\":%d,\"counter_updated_at\":\"2016-04-01T00:00:00Z\","
+                            + "\"last_log_timestamp\":\"2016-04-01T00:00:00Z\",\"delete_protected\":false,\"created_at\":\"2016-01-01 00:00:00 UTC\","
+                            + "\"updated_at\":\"2016-04-01 00:00:00 UTC\",\"type\":\"log\",\"include_v\":true,\"count\":%d,\"schema\":\"%s\","
+                            + "\"expire_days\":null,\"primary_key\":null,\"primary_key_type\":null}",
+                    i, i, i * 1024L, i * 100L, schema));
+        }
+        return sb.append("]}").toString();
+    }
+
+    /**
+     * A response of /v3/job/status/{job_id}
+     */
+    public static String jobStatusJson(long jobId)
+    {
+        return String.format("{\"job_id\":\"%d\",\"status\":\"running\",\"created_at\":\"2016-04-01 00:00:00 UTC\","
+                + "\"start_at\":\"2016-04-01 00:00:01 UTC\",\"end_at\":null,\"duration\":null}", jobId);
+    }
+
+    /**
+     * A response of /v3/job/list
+     */
+    public static String jobListJson(int numJobs)
+    {
+        StringBuilder sb = new StringBuilder("{\"count\":").append(numJobs).append(",\"from\":null,\"to\":null,\"jobs\":[");
+        for (int i = 0; i < numJobs; ++i) {
+            if (i > 0) {
+                sb.append(",");
+            }
+            sb.append(String.format("{\"query\":\"SELECT time, col_1, COUNT(1) FROM table_%d WHERE TD_TIME_RANGE(time, '2016-04-01', '2016-04-02') GROUP BY 1, 2\","
+                            + "\"type\":\"presto\",\"priority\":0,\"retry_limit\":0,\"duration\":%d,\"status\":\"success\",\"cpu_time\":null,"
+                            + "\"result_size\":%d,\"job_id\":\"%d\",\"created_at\":\"2016-04-01 00:00:00 UTC\",\"updated_at\":\"2016-04-01 00:01:00 UTC\","
+                            + "\"start_at\":\"2016-04-01 00:00:01 UTC\",\"end_at\":\"2016-04-01 00:01:00 UTC\",\"num_records\":%d,\"database\":\"benchmark_db\","
+                            + "\"user_name\":\"benchmark@example.com\",\"result\":\"\",\"url\":\"https://console.treasuredata.com/jobs/%d\","
+                            + "\"hive_result_schema\":\"[[\\\"time\\\", \\\"bigint\\\"], [\\\"col_1\\\", \\\"varchar\\\"], [\\\"_col2\\\", \\\"bigint\\\"]]\","
+                            + "\"organization\":null}",
+                    i, i % 600, i * 512L, 100000L + i, i * 10L, 100000L + i));
+        }
+        return sb.append("]}").toString();
+    }
+}
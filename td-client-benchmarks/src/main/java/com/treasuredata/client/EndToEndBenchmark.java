@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.treasuredata.client;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.treasuredata.client.model.TDJobList;
+import com.treasuredata.client.model.TDJobSummary;
+import com.treasuredata.client.model.TDTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * API calls through TDClient and AsyncTDClient against {@link StubApiServer}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EndToEndBenchmark
+{
+    @Param({"200"})
+    public int numTables;
+
+    @Param({"32"})
+    public int concurrency;
+
+    private StubApiServer server;
+    private TDClient client;
+    private AsyncTDClient asyncClient;
+
+    @Setup
+    public void setUp()
+            throws Exception
+    {
+        server = new StubApiServer(numTables, 30, 100);
+        client = server.newClientBuilder().build();
+        asyncClient = AsyncTDClient.newBuilder(false)
+                .setUseSSL(false)
+                .setEndpoint("localhost")
+                .setPort(server.getPort())
+                .setApiKey("benchmark")
+                .build();
+    }
+
+    @TearDown
+    public void tearDown()
+            throws Exception
+    {
+        asyncClient.close();
+        client.close();
+        server.close();
+    }
+
+    @Benchmark
+    public TDJobSummary jobStatus()
+    {
+        return client.jobStatus("1");
+    }
+
+    @Benchmark
+    public List<TDTable> listTables()
+    {
+        return client.listTables("benchmark_db");
+    }
+
+    @Benchmark
+    public void iterateTables(Blackhole bh)
+    {
+        try (JsonArrayIterator<TDTable> tables = client.iterateTables("benchmark_db")) {
+            while (tables.hasNext()) {
+                bh.consume(tables.next().getName());
+            }
+        }
+    }
+
+    @Benchmark
+    public TDJobList listJobs()
+    {
+        return client.listJobs();
+    }
+
+    /**
+     * Checks the status of many jobs at once, which is the typical usage of AsyncTDClient
+     */
+    @Benchmark
+    public List<TDJobSummary> concurrentJobStatus()
+            throws Exception
+    {
+        List<ListenableFuture<TDJobSummary>> futures = new ArrayList<>(concurrency);
+        for (int i = 0; i < concurrency; ++i) {
+            futures.add(asyncClient.jobStatus(Integer.toString(i)));
+        }
+        return Futures.allAsList(futures).get();
+    }
+}
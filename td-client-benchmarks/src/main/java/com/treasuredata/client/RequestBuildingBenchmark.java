@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.treasuredata.client;
+
+import com.google.common.base.Joiner;
+import org.eclipse.jetty.client.api.Request;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link TDHttpClient#prepareRequest(TDApiRequest, com.google.common.base.Optional)},
+ * which runs for every API request and retry attempt.
+ * <p/>
+ * Run with <code>-prof gc</code> to compare the allocation per operation (gc.alloc.rate.norm). The *WithFormat benchmarks
+ * build the same query string and Date header in the former way with String.format, Joiner, URLEncoder and SimpleDateFormat.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RequestBuildingBenchmark
+{
+    private TDHttpClient httpClient;
+    private TDApiRequest getRequest;
+    private TDApiRequest postRequest;
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("E, dd MMM yyyy HH:mm:ss Z", Locale.ENGLISH);
+
+    @Setup
+    public void setUp()
+    {
+        TDClientConfig config = TDClient.newBuilder(false)
+                .setEndpoint("api.treasuredata.com")
+                .setApiKey("1/0123456789abcdef0123456789abcdef01234567")
+                .buildConfig();
+        httpClient = new TDHttpClient(config);
+        getRequest = TDApiRequest.Builder.GET("/v3/job/status/123456789").build();
+        postRequest = TDApiRequest.Builder.POST("/v3/job/issue/presto/benchmark_db")
+                .addQueryParam("query", "SELECT time, col_1, COUNT(1) FROM table_1 WHERE TD_TIME_RANGE(time, '2016-04-01', '2016-04-02') GROUP BY 1, 2")
+                .addQueryParam("priority", "0")
+                .addQueryParam("retry_limit", "0")
+                .build();
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        httpClient.close();
+    }
+
+    @Benchmark
+    public Request prepareGet()
+    {
+        return httpClient.prepareRequest(getRequest, httpClient.config.apiKey);
+    }
+
+    @Benchmark
+    public Request preparePostWithQueryParams()
+    {
+        return httpClient.prepareRequest(postRequest, httpClient.config.apiKey);
+    }
+
+    @Benchmark
+    public String encodeQueryParams()
+    {
+        StringBuilder queryStr = new StringBuilder(64);
+        for (Map.Entry<String, String> queryParam : postRequest.getQueryParams().entrySet()) {
+            if (queryStr.length() > 0) {
+                queryStr.append('&');
+            }
+            TDApiRequest.appendUrlEncoded(queryStr, queryParam.getKey()).append('=');
+            TDApiRequest.appendUrlEncoded(queryStr, queryParam.getValue());
+        }
+        return queryStr.toString();
+    }
+
+    @Benchmark
+    public String encodeQueryParamsWithFormat()
+            throws UnsupportedEncodingException
+    {
+        List<String> queryParamList = new ArrayList<String>(postRequest.getQueryParams().size());
+        for (Map.Entry<String, String> queryParam : postRequest.getQueryParams().entrySet()) {
+            queryParamList.add(String.format("%s=%s", URLEncoder.encode(queryParam.getKey(), "UTF-8"), URLEncoder.encode(queryParam.getValue(), "UTF-8")));
+        }
+        return Joiner.on("&").join(queryParamList);
+    }
+
+    @Benchmark
+    public String formatDateHeaderWithFormat()
+    {
+        return dateFormat.format(new Date());
+    }
+
+    @Benchmark
+    public TDApiRequest buildApiRequest()
+    {
+        return TDApiRequest.Builder.GET("/v3/job/status/123456789").build();
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.treasuredata.client;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.treasuredata.client.model.TDJob;
+import com.treasuredata.client.model.TDJobList;
+import com.treasuredata.client.model.TDTable;
+import com.treasuredata.client.model.TDTableList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures Jackson binding of large table and job lists with the object mapper used by TDHttpClient.
+ * Run with -prof gc to compare the allocation of buffered, streaming and iterator-based binding.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ResponseBindingBenchmark
+{
+    @Param({"1000"})
+    public int numTables;
+
+    @Param({"50"})
+    public int numColumns;
+
+    @Param({"1000"})
+    public int numJobs;
+
+    private TDHttpClient httpClient;
+    private ObjectMapper objectMapper;
+    private byte[] tableList;
+    private byte[] jobList;
+
+    @Setup
+    public void setUp()
+    {
+        httpClient = new TDHttpClient(TDClient.newBuilder(false).buildConfig());
+        objectMapper = httpClient.getObjectMapper();
+        tableList = BenchmarkFixtures.tableListJson(numTables, numColumns).getBytes(StandardCharsets.UTF_8);
+        jobList = BenchmarkFixtures.jobListJson(numJobs).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        httpClient.close();
+    }
+
+    @Benchmark
+    public TDTableList bindTableListFromBytes()
+            throws IOException
+    {
+        return objectMapper.readValue(tableList, TDTableList.class);
+    }
+
+    @Benchmark
+    public TDTableList bindTableListFromStream()
+            throws IOException
+    {
+        return objectMapper.readValue(new ByteArrayInputStream(tableList), TDTableList.class);
+    }
+
+    @Benchmark
+    public void bindTableListAndColumns(Blackhole bh)
+            throws IOException
+    {
+        for (TDTable table : objectMapper.readValue(tableList, TDTableList.class).getTables()) {
+            bh.consume(table.getColumns());
+        }
+    }
+
+    @Benchmark
+    public void iterateTables(Blackhole bh)
+    {
+        try (JsonArrayIterator<TDTable> tables = new JsonArrayIterator<>(objectMapper, new ByteArrayInputStream(tableList), "tables", TDTable.class)) {
+            while (tables.hasNext()) {
+                bh.consume(tables.next());
+            }
+        }
+    }
+
+    @Benchmark
+    public TDJobList bindJobList()
+            throws IOException
+    {
+        return objectMapper.readValue(jobList, TDJobList.class);
+    }
+
+    @Benchmark
+    public void iterateJobs(Blackhole bh)
+    {
+        try (JsonArrayIterator<TDJob> jobs = new JsonArrayIterator<>(objectMapper, new ByteArrayInputStream(jobList), "jobs", TDJob.class)) {
+            while (jobs.hasNext()) {
+                bh.consume(jobs.next());
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.treasuredata.client;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the overhead of the retry machinery. The retry interval is set to 0,
+ * so {@link #retriedCall()} shows the cost of an error response, its handling and a rescheduled attempt.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RetryBenchmark
+{
+    private StubApiServer server;
+    private TDClient client;
+
+    @Setup
+    public void setUp()
+            throws Exception
+    {
+        server = new StubApiServer(1, 1, 1);
+        client = server.newClientBuilder()
+                .setRetryLimit(1)
+                .setRetryInitialIntervalMillis(0)
+                .build();
+    }
+
+    @TearDown
+    public void tearDown()
+            throws Exception
+    {
+        client.close();
+        server.close();
+    }
+
+    @Benchmark
+    public int backOffSequence()
+    {
+        ExponentialBackOff backOff = new ExponentialBackOff(500, 60000, 2.0);
+        int total = 0;
+        for (int i = 0; i < 7; ++i) {
+            total += backOff.nextWaitTimeMillis();
+        }
+        return total;
+    }
+
+    @Benchmark
+    public String successfulCall()
+    {
+        return client.doGet("/v3/job/status/1", String.class);
+    }
+
+    /**
+     * Every call fails once with 503 and succeeds in the retry
+     */
+    @Benchmark
+    public String retriedCall()
+    {
+        return client.doGet("/v3/system/flaky", String.class);
+    }
+}
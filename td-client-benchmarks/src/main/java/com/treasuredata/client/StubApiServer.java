@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.treasuredata.client;
+
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An embedded Jetty server returning fixed responses, so that benchmarks measure the client overhead only.
+ * <ul>
+ * <li>/v3/job/status/{job_id}: a job status</li>
+ * <li>/v3/job/list: a list of jobs</li>
+ * <li>/v3/table/list/{database}: a list of tables</li>
+ * <li>/v3/system/flaky: fails with 503 on every other request</li>
+ * </ul>
+ */
+public class StubApiServer
+        implements AutoCloseable
+{
+    private final Server server;
+    private final ServerConnector connector;
+    private final AtomicLong flakyRequestCount = new AtomicLong();
+
+    public StubApiServer(int numTables, int numColumns, int numJobs)
+            throws Exception
+    {
+        final byte[] jobStatus = BenchmarkFixtures.jobStatusJson(1).getBytes(StandardCharsets.UTF_8);
+        final byte[] jobList = BenchmarkFixtures.jobListJson(numJobs).getBytes(StandardCharsets.UTF_8);
+        final byte[] tableList = BenchmarkFixtures.tableListJson(numTables, numColumns).getBytes(StandardCharsets.UTF_8);
+
+        server = new Server();
+        connector = new ServerConnector(server);
+        connector.setHost("localhost");
+        connector.setPort(0);
+        server.addConnector(connector);
+        server.setHandler(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+                    throws IOException
+            {
+                baseRequest.setHandled(true);
+                if (target.startsWith("/v3/job/status/")) {
+                    write(response, HttpStatus.OK_200, jobStatus);
+                }
+                else if (target.startsWith("/v3/job/list")) {
+                    write(response, HttpStatus.OK_200, jobList);
+                }
+                else if (target.startsWith("/v3/table/list/")) {
+                    write(response, HttpStatus.OK_200, tableList);
+                }
+                else if (target.startsWith("/v3/system/flaky")) {
+                    if (flakyRequestCount.getAndIncrement() % 2 == 0) {
+                        write(response, HttpStatus.SERVICE_UNAVAILABLE_503, "{\"error\":\"unavailable\"}".getBytes(StandardCharsets.UTF_8));
+                    }
+                    else {
+                        write(response, HttpStatus.OK_200, "{}".getBytes(StandardCharsets.UTF_8));
+                    }
+                }
+                else {
+                    write(response, HttpStatus.NOT_FOUND_404, "{\"error\":\"not found\"}".getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        });
+        server.start();
+    }
+
+    private static void write(HttpServletResponse response, int status, byte[] body)
+            throws IOException
+    {
+        response.setStatus(status);
+        response.setContentType("application/json");
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+
+    public int getPort()
+    {
+        return connector.getLocalPort();
+    }
+
+    public AbstractTDClientBuilder<TDClient> newClientBuilder()
+    {
+        return TDClient.newBuilder(false)
+                .setUseSSL(false)
+                .setEndpoint("localhost")
+                .setPort(getPort())
+                .setApiKey("benchmark");
+    }
+
+    @Override
+    public void close()
+            throws Exception
+    {
+        server.stop();
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.treasuredata.client.model;
+
+import org.json.simple.JSONArray;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link TDColumn#parseTuple(String)} with the previous json-simple based schema parsing,
+ * and measures {@link TDColumnType#parseColumnType(String)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SchemaParseBenchmark
+{
+    @Param({"10", "200"})
+    public int numColumns;
+
+    private String schema;
+
+    @Setup
+    public void setUp()
+    {
+        String[] types = {"string", "long", "double", "array<string>", "map<string,long>"};
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < numColumns; ++i) {
+            if (i > 0) {
+                sb.append(",");
+            }
+            if (i % 7 == 0) {
+                sb.append(String.format("[\"col_%d\",\"%s\",\"renamed_col_%d\"]", i, types[i % types.length], i));
+            }
+            else {
+                sb.append(String.format("[\"col_%d\",\"%s\"]", i, types[i % types.length]));
+            }
+        }
+        schema = sb.append("]").toString();
+    }
+
+    @Benchmark
+    public List<TDColumn> singlePassParser()
+    {
+        return TDColumn.parseTuple(schema);
+    }
+
+    @Benchmark
+    public List<TDColumn> jsonSimpleParser()
+            throws ParseException
+    {
+        String unescaped = schema.replaceAll("\\\"", "\"");
+        JSONArray arr = (JSONArray) new JSONParser().parse(unescaped);
+        List<TDColumn> columnList = new ArrayList<TDColumn>(arr.size());
+        for (Object e : arr) {
+            JSONArray columnNameAndType = (JSONArray) e;
+            String[] s = new String[columnNameAndType.size()];
+            for (int i = 0; i < columnNameAndType.size(); ++i) {
+                s[i] = columnNameAndType.get(i).toString();
+            }
+            columnList.add(TDColumn.parseTuple(s));
+        }
+        return columnList;
+    }
+
+    @Benchmark
+    public TDColumnType parseColumnType()
+    {
+        return TDColumnType.parseColumnType("map<string,array<long>>");
+    }
+}